@@ -21,7 +21,6 @@
 package edu.byu.ece.rapidSmith.bitstreamTools.configuration;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 
@@ -52,19 +51,14 @@ public class FPGA {
 		this.spec = spec;
 		frameBuffer = new FrameData(spec);
 		frameAddress = new FrameAddressRegister(spec);
+		addressTable = frameAddress.getAddressTable();
 		//configData = new FrameData[frameAddress.getNumberOfFrames()];
-		configData = new Frame[FrameAddressRegister.getNumberOfFrames(spec)];
+		configData = new Frame[addressTable.getNumberOfFrames()];
 		int frameSize = spec.getFrameSize();
-		frameMap = new HashMap<Integer, Integer>();
-		frameAddress.setFAR(0);
 		for (int i = 0; i < configData.length; i++) {
-			int currentFAR = frameAddress.getAddress();
-			configData[i] = new Frame(frameSize,currentFAR);
-			frameMap.put(currentFAR, i);
-			frameAddress.incrementFAR();
+			configData[i] = new Frame(frameSize, addressTable.getFAR(i));
 		    //configData[i] = new FrameData(frameSize);
 		}
-		frameAddress.setFAR(0);
 		init();
 	}
 
@@ -240,9 +234,8 @@ public class FPGA {
 	 * perform a frame address to sequential address translation.
 	 */
 	public Frame getFrame(int farAddress) {
-		//int index = FrameAddressRegister.getConsecutiveAddress(spec,farAddress);
-		int index = frameMap.get(new Integer(farAddress));
-		if (index >= configData.length)
+		int index = addressTable.getConsecutiveAddress(farAddress);
+		if (index < 0 || index >= configData.length)
 			return null;
 		return configData[index];
 	}
@@ -273,7 +266,7 @@ public class FPGA {
 	}
 	
 	public List<Frame> getConsecutiveFrames(int farAddress, int numFrames) {
-		int c_far = FrameAddressRegister.getConsecutiveAddress(spec, farAddress);
+		int c_far = addressTable.getConsecutiveAddress(farAddress);
 		List<Frame> frames = new ArrayList<Frame>(numFrames);
 		for (int i = 0; i < numFrames; i++)
 			frames.add(configData[c_far+i]);
@@ -283,7 +276,7 @@ public class FPGA {
 	public List<Frame> getConfigurationBlockFrames(int topBottom, BlockType blockType, int row, int column) {
 		int blockNum = FrameAddressRegister.getBlockTypeNumber(spec, blockType);
 		int startingFAR = FrameAddressRegister.createFAR(spec, topBottom, blockNum, row, column, 0);
-		int numFrames = FrameAddressRegister.getFramesPerConfigurationBlock(spec, blockNum, column);
+		int numFrames = addressTable.getFramesPerConfigurationBlock(blockNum, column);
 		return getConsecutiveFrames(startingFAR, numFrames);
 	}
 	
@@ -377,6 +370,7 @@ public class FPGA {
 	protected final Frame[] configData;
 	protected FrameAddressRegister frameAddress;
 	protected XilinxConfigurationSpecification spec;
-	private HashMap<Integer, Integer> frameMap;
+	/** Shared FAR address table of the specification. */
+	protected final FrameAddressTable addressTable;
 	
 }
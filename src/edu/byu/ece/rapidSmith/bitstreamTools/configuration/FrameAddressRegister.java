@@ -22,7 +22,6 @@ package edu.byu.ece.rapidSmith.bitstreamTools.configuration;
 
 import edu.byu.ece.rapidSmith.bitstreamTools.bitstream.BitstreamUtils;
 import edu.byu.ece.rapidSmith.bitstreamTools.configurationSpecification.AbstractConfigurationSpecification;
-import edu.byu.ece.rapidSmith.bitstreamTools.configurationSpecification.BlockSubType;
 import edu.byu.ece.rapidSmith.bitstreamTools.configurationSpecification.BlockType;
 import edu.byu.ece.rapidSmith.bitstreamTools.configurationSpecification.XilinxConfigurationSpecification;
 
@@ -43,11 +42,13 @@ public class FrameAddressRegister {
 	 */
 	public FrameAddressRegister(XilinxConfigurationSpecification xcs) {
 		configSpec = xcs;
+		addressTable = FrameAddressTable.getTable(xcs);
 		initFAR();
 	}
 
 	public FrameAddressRegister(XilinxConfigurationSpecification xcs, int farAddress) {
 		configSpec = xcs;
+		addressTable = FrameAddressTable.getTable(xcs);
 		setFAR(farAddress);
 	}
 	
@@ -80,6 +81,30 @@ public class FrameAddressRegister {
 	 * Need better error checking and feedback
 	 */
 	public boolean incrementFAR() {
+		int index = addressTable.getConsecutiveAddress(top_bottom, blockType, row, column, minor);
+		if (index < 0)
+			// Not a frame of the device. Walk the fields to keep the legacy behavior.
+			return walkIncrementFAR();
+
+		if (index + 1 >= addressTable.getNumberOfFrames()) {
+			// Last frame. Move beyond the last block type.
+			top_bottom = 0;
+			row = 0;
+			column = 0;
+			minor = 0;
+			blockType = configSpec.getBlockTypes().size();
+			return false;
+		}
+		setFAR(addressTable.getFAR(index + 1));
+		return true;
+	}
+
+	/**
+	 * Increments the FAR by walking the individual counters. This is only used for
+	 * FAR values that do not address a valid frame and therefore are not covered
+	 * by the address table.
+	 */
+	private boolean walkIncrementFAR() {
 
 		// Check to see if the block number is beyond the last block number.
 		// If so, we can't increment and return false (bad FAR address - beyond the end)
@@ -145,7 +170,12 @@ public class FrameAddressRegister {
 	 * Convert the current FAR address into a consecutive address
 	 */
 	public int getConsecutiveAddress() {
-		int address = 0;
+		int address = addressTable.getConsecutiveAddress(top_bottom, blockType, row, column, minor);
+		if (address >= 0)
+			return address;
+
+		// Not a frame of the device. Compute the address the same way as the FAR walk does.
+		address = 0;
 		int i=0;
 		// add addresses of block types that are *before* the current block type
 		for (i = 0; i < blockType; i++)
@@ -166,6 +196,11 @@ public class FrameAddressRegister {
 	}
 	
 	public void setFARAddressFromConsecutiveAddress(int consecutiveAddress){
+		if (consecutiveAddress >= 0 && consecutiveAddress < addressTable.getNumberOfFrames()) {
+			setFAR(addressTable.getFAR(consecutiveAddress));
+			return;
+		}
+
 		int address = consecutiveAddress;
 		//int i=0;
 
@@ -230,6 +265,13 @@ public class FrameAddressRegister {
 		return configSpec;
 	}
 
+	/**
+	 * Returns the precomputed address table of the configuration specification.
+	 */
+	public FrameAddressTable getAddressTable() {
+		return addressTable;
+	}
+
 	/**
 	 * Returns the FAR address as an integer based on the values of the FAR 
 	 * address fields.
@@ -322,44 +364,32 @@ public class FrameAddressRegister {
 	}
 
 	// Methods for determining frame counts for various bitstream regions
+	// These are answered by the precomputed address table of the specification.
 	public static int getFramesPerFARBlockType(XilinxConfigurationSpecification spec, int block) {	
-		return getFramesInTop(spec, block) + getFramesInBottom(spec, block);
+		return FrameAddressTable.getTable(spec).getFramesPerFARBlockType(block);
 	}
 	
 	public static int getFramesInTop(XilinxConfigurationSpecification spec, int block) {
-		return getFramesPerRow(spec, block) * spec.getTopNumberOfRows();
+		return FrameAddressTable.getTable(spec).getFramesInTop(block);
 	}
 	
 	public static int getFramesInBottom(XilinxConfigurationSpecification spec, int block) {
-		return getFramesPerRow(spec, block) * spec.getBottomNumberOfRows();
+		return FrameAddressTable.getTable(spec).getFramesInBottom(block);
 	}
 	
 	public static int getFramesPerRow(XilinxConfigurationSpecification spec, int block) {
-		int frames = 0;
-		for (int i = 0; i < getNumberOfColumns(spec, block); i++) {
-			frames += getFramesPerConfigurationBlock(spec, block,i);
-		}
-		return frames;
+		return FrameAddressTable.getTable(spec).getFramesPerRow(block);
 	}
 	public static int getFramesPerConfigurationBlock(XilinxConfigurationSpecification spec, int blockNum, int column) {
-		BlockType type = spec.getBlockTypes().get(blockNum);
-		BlockSubType subType = spec.getBlockSubTypeLayout(type).get(column);
-		int result = subType.getFramesPerConfigurationBlock();
-		return result;
+		return FrameAddressTable.getTable(spec).getFramesPerConfigurationBlock(blockNum, column);
 	}
 
 	public static int getNumberOfColumns(XilinxConfigurationSpecification spec, int blockNum) {
-	    BlockType type = spec.getBlockTypes().get(blockNum);
-	    int result = spec.getBlockSubTypeLayout(type).size();
-	    return result;
+		return FrameAddressTable.getTable(spec).getNumberOfColumns(blockNum);
 	}
 
 	public static int getNumberOfFramesPerBlockRow(XilinxConfigurationSpecification spec, int blockNum) {
-		int columns = getNumberOfColumns(spec, blockNum);
-		int frames = 0;
-		for (int i = 0; i < columns; i++)
-			frames+=getFramesPerConfigurationBlock(spec, blockNum, i);
-		return frames;			
+		return FrameAddressTable.getTable(spec).getFramesPerRow(blockNum);
 	}
 	
 	public static int getNumberOfFramesPerBlockTop(XilinxConfigurationSpecification spec, int blockNum) {
@@ -375,11 +405,7 @@ public class FrameAddressRegister {
 	}
 	
 	public static int getNumberOfFrames(XilinxConfigurationSpecification spec) {	    
-	    int blockTypes = spec.getBlockTypes().size();
-		int frames = 0;
-		for (int i = 0; i < blockTypes; i++)
-			frames += getNumberOfFramesPerBlock(spec, i);
-		return frames;
+		return FrameAddressTable.getTable(spec).getNumberOfFrames();
 	}
 
 	// Misc. static methods
@@ -435,6 +461,9 @@ public class FrameAddressRegister {
 	 * used for accessing frame data from the sequential frame data array.
 	 */
 	public static int getConsecutiveAddress(XilinxConfigurationSpecification spec, int address) {
+		int consecutive = FrameAddressTable.getTable(spec).getConsecutiveAddress(address);
+		if (consecutive >= 0)
+			return consecutive;
 		FrameAddressRegister far = new FrameAddressRegister(spec,address);
 		return far.getConsecutiveAddress();		
 		
@@ -452,6 +481,11 @@ public class FrameAddressRegister {
 	 */
 	protected XilinxConfigurationSpecification configSpec;
 
+	/**
+	 * The shared address table of the configuration specification.
+	 */
+	protected final FrameAddressTable addressTable;
+
 	/** 
 	 * Determines if we are accessing the top or bottom partition of the FPGA. 
 	 * 
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.bitstreamTools.configuration;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.byu.ece.rapidSmith.bitstreamTools.configurationSpecification.BlockSubType;
+import edu.byu.ece.rapidSmith.bitstreamTools.configurationSpecification.BlockType;
+import edu.byu.ece.rapidSmith.bitstreamTools.configurationSpecification.XilinxConfigurationSpecification;
+
+/**
+ * Precomputed frame address arithmetic for a single configuration specification.
+ *
+ * The frame address register walks the block/row/column/minor structure of the
+ * configuration specification. This class performs that walk once and stores
+ * the result in arrays so that converting between FAR addresses and consecutive
+ * frame indices, incrementing a FAR and querying frame counts are simple
+ * array lookups.
+ *
+ * Tables are immutable and shared: use {@link #getTable(XilinxConfigurationSpecification)}
+ * to obtain the table of a specification.
+ */
+public class FrameAddressTable {
+
+	/**
+	 * Returns the (cached) address table of the given specification. The table is
+	 * created the first time it is requested and shared by all users of the
+	 * specification afterwards.
+	 */
+	public static FrameAddressTable getTable(XilinxConfigurationSpecification spec) {
+		FrameAddressTable table = _tables.get(spec);
+		if (table == null)
+			table = _tables.computeIfAbsent(spec, FrameAddressTable::new);
+		return table;
+	}
+
+	private FrameAddressTable(XilinxConfigurationSpecification spec) {
+		this.spec = spec;
+		List<BlockType> blockTypes = spec.getBlockTypes();
+		numBlockTypes = blockTypes.size();
+		topRows = spec.getTopNumberOfRows();
+		bottomRows = spec.getBottomNumberOfRows();
+
+		framesPerColumn = new int[numBlockTypes][];
+		columnStart = new int[numBlockTypes][];
+		framesPerRow = new int[numBlockTypes];
+		blockStart = new int[numBlockTypes + 1];
+
+		int frames = 0;
+		for (int b = 0; b < numBlockTypes; b++) {
+			List<BlockSubType> layout = spec.getBlockSubTypeLayout(blockTypes.get(b));
+			framesPerColumn[b] = new int[layout.size()];
+			columnStart[b] = new int[layout.size()];
+			int rowFrames = 0;
+			for (int c = 0; c < layout.size(); c++) {
+				columnStart[b][c] = rowFrames;
+				framesPerColumn[b][c] = layout.get(c).getFramesPerConfigurationBlock();
+				rowFrames += framesPerColumn[b][c];
+			}
+			framesPerRow[b] = rowFrames;
+			blockStart[b] = frames;
+			frames += rowFrames * (topRows + bottomRows);
+		}
+		blockStart[numBlockTypes] = frames;
+		numFrames = frames;
+
+		// Enumerate the frames in the same order as the FAR is incremented:
+		// minor, column, row, top/bottom and then block type.
+		farAddresses = new int[numFrames];
+		int index = 0;
+		for (int b = 0; b < numBlockTypes; b++) {
+			for (int tb = 0; tb < 2; tb++) {
+				int rows = (tb == 0) ? topRows : bottomRows;
+				for (int r = 0; r < rows; r++) {
+					for (int c = 0; c < framesPerColumn[b].length; c++) {
+						for (int m = 0; m < framesPerColumn[b][c]; m++) {
+							farAddresses[index++] = FrameAddressRegister.createFAR(spec, tb, b, r, c, m);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	public XilinxConfigurationSpecification getConfigurationSpecification() {
+		return spec;
+	}
+
+	/**
+	 * Returns the total number of frames of the device.
+	 */
+	public int getNumberOfFrames() {
+		return numFrames;
+	}
+
+	/**
+	 * Returns the FAR address of the frame at the given consecutive address.
+	 */
+	public int getFAR(int consecutiveAddress) {
+		return farAddresses[consecutiveAddress];
+	}
+
+	/**
+	 * Returns the consecutive address of the given FAR address, or -1 if the
+	 * FAR address does not point to a frame of the device.
+	 */
+	public int getConsecutiveAddress(int farAddress) {
+		return getConsecutiveAddress(
+				FrameAddressRegister.getTopBottomFromAddress(spec, farAddress),
+				FrameAddressRegister.getBlockTypeFromAddress(spec, farAddress),
+				FrameAddressRegister.getRowFromAddress(spec, farAddress),
+				FrameAddressRegister.getColumnFromAddress(spec, farAddress),
+				FrameAddressRegister.getMinorFromAddress(spec, farAddress));
+	}
+
+	/**
+	 * Returns the consecutive address of the frame identified by the given FAR fields,
+	 * or -1 if the fields do not identify a frame of the device.
+	 */
+	public int getConsecutiveAddress(int topBottom, int blockType, int row, int column, int minor) {
+		if (blockType < 0 || blockType >= numBlockTypes)
+			return -1;
+		if (topBottom == 0) {
+			if (row < 0 || row >= topRows)
+				return -1;
+		} else if (topBottom == 1) {
+			if (row < 0 || row >= bottomRows)
+				return -1;
+		} else {
+			return -1;
+		}
+		int[] columns = framesPerColumn[blockType];
+		if (column < 0 || column >= columns.length)
+			return -1;
+		if (minor < 0 || minor >= columns[column])
+			return -1;
+
+		int address = blockStart[blockType];
+		if (topBottom > 0)
+			address += getFramesInTop(blockType);
+		address += row * framesPerRow[blockType];
+		address += columnStart[blockType][column];
+		return address + minor;
+	}
+
+	/**
+	 * Returns the consecutive address of the first frame of the given block type.
+	 */
+	public int getBlockStart(int blockType) {
+		return blockStart[blockType];
+	}
+
+	public int getNumberOfBlockTypes() {
+		return numBlockTypes;
+	}
+
+	public int getNumberOfColumns(int blockType) {
+		return framesPerColumn[blockType].length;
+	}
+
+	public int getFramesPerConfigurationBlock(int blockType, int column) {
+		return framesPerColumn[blockType][column];
+	}
+
+	public int getFramesPerRow(int blockType) {
+		return framesPerRow[blockType];
+	}
+
+	public int getFramesInTop(int blockType) {
+		return framesPerRow[blockType] * topRows;
+	}
+
+	public int getFramesInBottom(int blockType) {
+		return framesPerRow[blockType] * bottomRows;
+	}
+
+	public int getFramesPerFARBlockType(int blockType) {
+		return blockStart[blockType + 1] - blockStart[blockType];
+	}
+
+	////////////////////////////////
+	// Class Fields
+	////////////////////////////////
+
+	/**
+	 * Tables of all specifications seen so far. The specifications are singletons
+	 * of the part libraries, so they are used as identity keys.
+	 */
+	private static final Map<XilinxConfigurationSpecification, FrameAddressTable> _tables =
+			new ConcurrentHashMap<>();
+
+	private final XilinxConfigurationSpecification spec;
+
+	private final int numBlockTypes;
+	private final int topRows;
+	private final int bottomRows;
+	private final int numFrames;
+
+	/** Number of frames of each column, indexed by [blockType][column]. */
+	private final int[][] framesPerColumn;
+
+	/** Offset of each column within a row, indexed by [blockType][column]. */
+	private final int[][] columnStart;
+
+	/** Number of frames in a single row of each block type. */
+	private final int[] framesPerRow;
+
+	/** Consecutive address of the first frame of each block type (plus the total at the end). */
+	private final int[] blockStart;
+
+	/** FAR address of each frame, indexed by consecutive address. */
+	private final int[] farAddresses;
+}
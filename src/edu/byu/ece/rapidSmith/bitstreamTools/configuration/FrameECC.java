@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.bitstreamTools.configuration;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import edu.byu.ece.rapidSmith.bitstreamTools.bitstream.BitstreamUtils;
+
+/**
+ * Computes and verifies the frame ECC (a Hamming SECDED code stored in the
+ * low 12 bits of the middle word of a frame) for whole FPGAs at once.
+ *
+ * The code layout is the one used by the CheckFrameECC example for 41 word
+ * frames: every data bit contributes a fixed 12 bit code word and the ECC is
+ * the XOR of the code words of all set bits. Instead of walking the frame bit by
+ * bit, the code words are folded into one parity mask per frame word and ECC
+ * bit, so each ECC bit is the parity of a handful of {@link Integer#bitCount}
+ * results.
+ */
+public class FrameECC {
+
+	/** Number of 32-bit words of a frame covered by this code. */
+	public static final int FRAME_SIZE = 41;
+
+	/** Index of the frame word holding the ECC bits. */
+	public static final int ECC_WORD = FRAME_SIZE / 2;
+
+	/** Number of ECC bits (11 Hamming bits plus the overall parity bit). */
+	public static final int ECC_BITS = 12;
+
+	/**
+	 * Calculates the ECC bits of the given frame data.
+	 */
+	public static int calculateECCBits(FrameData data) {
+		return calculateECCBits(data, null);
+	}
+
+	/**
+	 * Calculates the ECC bits of the given frame data, ignoring the bits that are set
+	 * in the mask (for example the dynamic bits of a readback mask file).
+	 * @param mask the mask frame or null to consider every bit
+	 */
+	public static int calculateECCBits(FrameData data, FrameData mask) {
+		checkSize(data);
+		int ecc = 0;
+		for (int w = 0; w < FRAME_SIZE; w++) {
+			int word = data.get(w);
+			if (mask != null)
+				word &= ~mask.get(w);
+			word &= DATA_MASKS[w];
+			if (word == 0)
+				continue;
+			int[] masks = PARITY_MASKS[w];
+			for (int k = 0; k < ECC_BITS; k++)
+				ecc ^= (Integer.bitCount(word & masks[k]) & 0x1) << k;
+		}
+		return ecc;
+	}
+
+	/**
+	 * Returns the syndrome of the frame: the difference between the calculated ECC
+	 * and the ECC stored in the frame. A syndrome of 0 means the frame is consistent.
+	 */
+	public static int getSyndrome(FrameData data, FrameData mask) {
+		return calculateECCBits(data, mask) ^ data.getECCBits();
+	}
+
+	/**
+	 * Returns the frame bit index (as used by {@link FrameData#getBit(int)}) of the bit
+	 * that is in error, or -1 if the syndrome does not describe a single bit error.
+	 */
+	public static int getErrorBit(int syndrome) {
+		return SYNDROME_TO_BIT[syndrome & 0xFFF];
+	}
+
+	/**
+	 * Verifies the ECC of all configured frames of the FPGA.
+	 */
+	public static Report verify(FPGA fpga) {
+		return verify(fpga, null);
+	}
+
+	/**
+	 * Verifies the ECC of all configured frames of the FPGA. The frames are checked in
+	 * parallel.
+	 * @param mask an FPGA configured with a mask bitstream whose set bits are ignored,
+	 *             or null to consider every bit
+	 */
+	public static Report verify(FPGA fpga, FPGA mask) {
+		if (fpga.getDeviceSpecification().getFrameSize() != FRAME_SIZE)
+			throw new IllegalArgumentException("Frame ECC is only supported for frames of " +
+					FRAME_SIZE + " words, not " + fpga.getDeviceSpecification().getFrameSize());
+		if (mask != null && mask.getDeviceSpecification() != fpga.getDeviceSpecification())
+			throw new IllegalArgumentException("Mask FPGA is a different device");
+
+		Frame[] frames = fpga.configData;
+		Frame[] maskFrames = mask != null ? mask.configData : null;
+
+		int[] syndromes = new int[frames.length];
+		IntStream.range(0, frames.length).parallel().forEach(i -> {
+			Frame frame = frames[i];
+			if (!frame.isConfigured())
+				return;
+			FrameData maskData = null;
+			if (maskFrames != null && maskFrames[i].isConfigured())
+				maskData = maskFrames[i].getData();
+			syndromes[i] = getSyndrome(frame.getData(), maskData);
+		});
+
+		int[] errors = IntStream.range(0, frames.length).filter(i -> syndromes[i] != 0).toArray();
+		int[] farAddresses = new int[errors.length];
+		int[] errorSyndromes = new int[errors.length];
+		for (int i = 0; i < errors.length; i++) {
+			farAddresses[i] = frames[errors[i]].getFrameAddress();
+			errorSyndromes[i] = syndromes[errors[i]];
+		}
+		return new Report(frames.length, errors, farAddresses, errorSyndromes);
+	}
+
+	private static void checkSize(FrameData data) {
+		if (data.size() != FRAME_SIZE)
+			throw new IllegalArgumentException("Frame ECC is only supported for frames of " +
+					FRAME_SIZE + " words, not " + data.size());
+	}
+
+	/**
+	 * Result of verifying the ECC of an FPGA. Only the mismatching frames are stored,
+	 * as parallel arrays of consecutive frame index, FAR address and syndrome.
+	 */
+	public static class Report {
+
+		private final int checkedFrames;
+		private final int[] frameIndices;
+		private final int[] farAddresses;
+		private final int[] syndromes;
+
+		Report(int checkedFrames, int[] frameIndices, int[] farAddresses, int[] syndromes) {
+			this.checkedFrames = checkedFrames;
+			this.frameIndices = frameIndices;
+			this.farAddresses = farAddresses;
+			this.syndromes = syndromes;
+		}
+
+		public int getNumberOfCheckedFrames() {
+			return checkedFrames;
+		}
+
+		public int getNumberOfErrors() {
+			return frameIndices.length;
+		}
+
+		public boolean isClean() {
+			return frameIndices.length == 0;
+		}
+
+		/** Consecutive index of the i-th mismatching frame. */
+		public int getFrameIndex(int i) {
+			return frameIndices[i];
+		}
+
+		/** FAR address of the i-th mismatching frame. */
+		public int getFrameAddress(int i) {
+			return farAddresses[i];
+		}
+
+		public int getSyndrome(int i) {
+			return syndromes[i];
+		}
+
+		/**
+		 * Returns the bit index of the error in the i-th mismatching frame, or -1 if the
+		 * error is not a correctable single bit error.
+		 */
+		public int getErrorBit(int i) {
+			return FrameECC.getErrorBit(syndromes[i]);
+		}
+
+		/**
+		 * A single bit error flips an odd number of syndrome bits. An even number
+		 * indicates (at least) a double bit error.
+		 */
+		public boolean isSingleBitError(int i) {
+			return (Integer.bitCount(syndromes[i]) & 0x1) == 1 && getErrorBit(i) >= 0;
+		}
+
+		public int[] getFrameAddresses() {
+			return Arrays.copyOf(farAddresses, farAddresses.length);
+		}
+
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("Checked ").append(checkedFrames).append(" frames, ")
+					.append(frameIndices.length).append(" ECC mismatches\n");
+			for (int i = 0; i < frameIndices.length; i++) {
+				sb.append("FAR=").append(BitstreamUtils.toHexString(farAddresses[i]));
+				sb.append(" syndrome=0x").append(Integer.toHexString(syndromes[i]));
+				int bit = getErrorBit(i);
+				if (isSingleBitError(i))
+					sb.append(" bit=").append(bit);
+				else
+					sb.append(" uncorrectable");
+				sb.append("\n");
+			}
+			return sb.toString();
+		}
+	}
+
+	////////////////////////////////
+	// Precomputed tables
+	////////////////////////////////
+
+	/** Per word mask of the bits covered by the code (all but the ECC bits themselves). */
+	private static final int[] DATA_MASKS = new int[FRAME_SIZE];
+
+	/** Per word and ECC bit mask of the data bits whose code word has that ECC bit set. */
+	private static final int[][] PARITY_MASKS = new int[FRAME_SIZE][ECC_BITS];
+
+	/** Maps the syndrome of a single bit error to the frame bit index in error. */
+	private static final int[] SYNDROME_TO_BIT = new int[1 << ECC_BITS];
+
+	static {
+		Arrays.fill(DATA_MASKS, 0xFFFFFFFF);
+		DATA_MASKS[ECC_WORD] = 0xFFFFF000;
+		Arrays.fill(SYNDROME_TO_BIT, -1);
+
+		int eccStart = ECC_WORD * 32 + 20;
+		int eccEnd = eccStart + ECC_BITS;
+		int code = 704;
+		for (int bit = 0; bit < FRAME_SIZE * 32; bit++) {
+			if (bit == 320)
+				code += 32;
+			if (bit == eccStart)
+				// skip the code bits themselves
+				code += ECC_BITS;
+			if (bit >= eccStart && bit < eccEnd)
+				continue;
+			int codeWord = getCodeWord(code++);
+			int word = bit / 32;
+			int wordBit = 1 << (31 - (bit % 32));
+			for (int k = 0; k < ECC_BITS; k++)
+				if ((codeWord & (1 << k)) != 0)
+					PARITY_MASKS[word][k] |= wordBit;
+			SYNDROME_TO_BIT[codeWord] = bit;
+		}
+		// A flipped ECC bit shows up as a syndrome with only that bit set.
+		for (int k = 0; k < ECC_BITS; k++)
+			if (SYNDROME_TO_BIT[1 << k] < 0)
+				SYNDROME_TO_BIT[1 << k] = eccEnd - 1 - k;
+	}
+
+	/**
+	 * The code word of a data bit, including its contribution to the overall
+	 * parity bit.
+	 */
+	private static int getCodeWord(int code) {
+		int hamming = code ^ 0x1F;
+		return hamming | (((Integer.bitCount(hamming) + 1) & 0x1) << 11);
+	}
+}
@@ -66,6 +66,22 @@ public class AreaGroupRange {
 		upperRightCoordinate = new AreaGroupCoordinate(x, y);
 	}
 	
+	public int getLowerLeftX() {
+		return lowerLeftCoordinate.getX();
+	}
+	
+	public int getLowerLeftY() {
+		return lowerLeftCoordinate.getY();
+	}
+	
+	public int getUpperRightX() {
+		return upperRightCoordinate.getX();
+	}
+	
+	public int getUpperRightY() {
+		return upperRightCoordinate.getY();
+	}
+	
 	public void setPrimitiveType(PrimitiveType rangeType) {
 		this.rangeType = rangeType;
 	}
@@ -24,6 +24,8 @@ import edu.byu.ece.rapidSmith.design.parser.DesignParser;
 import edu.byu.ece.rapidSmith.device.Device;
 import edu.byu.ece.rapidSmith.device.PrimitiveSite;
 import edu.byu.ece.rapidSmith.device.PrimitiveType;
+import edu.byu.ece.rapidSmith.device.SiteOccupancy;
+import edu.byu.ece.rapidSmith.device.Tile;
 import edu.byu.ece.rapidSmith.device.WireEnumerator;
 import edu.byu.ece.rapidSmith.primitiveDefs.Element;
 import edu.byu.ece.rapidSmith.primitiveDefs.PrimitiveDef;
@@ -42,20 +44,15 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.io.Serializable;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Stream;
 
 /**
  * The design class houses an entire XDL design or hard macro.  It keeps
@@ -105,6 +102,15 @@ public class Design implements Serializable {
 	 * A map used to keep track of all used primitive sites used by the design
 	 */
 	private HashMap<PrimitiveSite, Instance> usedPrimitiveSites;
+	/**
+	 * The used primitive sites as an overlay of the device's spatial site index,
+	 * created on demand and kept up to date with usedPrimitiveSites
+	 */
+	private transient SiteOccupancy siteOccupancy;
+	/**
+	 * Dense ids of the netlist, created on demand by getNetlistIndex()
+	 */
+	private transient NetlistIndex netlistIndex;
 	/**
 	 * This is a list of all the nets in the design
 	 */
@@ -193,6 +199,8 @@ public class Design implements Serializable {
 	public void loadDeviceAndWireEnumerator() {
 		we = DeviceDatabaseProvider.getDeviceDatabase().loadWireEnumerator(partName);
 		dev = DeviceDatabaseProvider.getDeviceDatabase().loadDevice(partName);
+		siteOccupancy = null;
+		netlistIndex = null;
 	}
 
 	/**
@@ -216,6 +224,12 @@ public class Design implements Serializable {
 		if (site == null) {
 			return null;
 		}
+		if (siteOccupancy != null) {
+			siteOccupancy.setUsed(site, true);
+		}
+		if (netlistIndex != null) {
+			netlistIndex.setSite(site, inst);
+		}
 		return usedPrimitiveSites.put(site, inst);
 	}
 
@@ -229,7 +243,64 @@ public class Design implements Serializable {
 	}
 
 	protected Instance releasePrimitiveSite(PrimitiveSite site) {
-		return usedPrimitiveSites.remove(site);
+		Instance released = usedPrimitiveSites.remove(site);
+		if (released != null && siteOccupancy != null) {
+			siteOccupancy.setUsed(site, false);
+		}
+		if (released != null && netlistIndex != null) {
+			netlistIndex.setSite(site, null);
+		}
+		return released;
+	}
+
+	/**
+	 * Gets (creates if null) the used primitive sites of this design as an overlay
+	 * of the device's spatial site index. The occupancy is updated whenever an
+	 * instance is placed or unplaced.
+	 *
+	 * @return The occupancy of the primitive sites of the device.
+	 */
+	public SiteOccupancy getSiteOccupancy() {
+		if (siteOccupancy == null) {
+			siteOccupancy = new SiteOccupancy(dev.getSiteSpatialIndex());
+			for (PrimitiveSite site : usedPrimitiveSites.keySet()) {
+				siteOccupancy.setUsed(site, true);
+			}
+		}
+		return siteOccupancy;
+	}
+
+	/**
+	 * Finds the free primitive site nearest to a tile on which an instance of
+	 * the given type can be placed.
+	 *
+	 * @param type The type of the instance to place.
+	 * @param tile The tile to search around.
+	 * @return The nearest free compatible site, or null if there is none.
+	 */
+	public PrimitiveSite getNearestFreePrimitiveSite(PrimitiveType type, Tile tile) {
+		return dev.getSiteSpatialIndex().getNearestSite(type, tile, getSiteOccupancy());
+	}
+
+	/**
+	 * Gets (creates if null) the dense ids of the instances, nets and pins of
+	 * this design. The index is updated whenever the netlist or the placement
+	 * of this design changes.
+	 *
+	 * @return The netlist index of this design.
+	 */
+	public NetlistIndex getNetlistIndex() {
+		if (netlistIndex == null) {
+			netlistIndex = new NetlistIndex(this);
+		}
+		return netlistIndex;
+	}
+
+	/**
+	 * @return The netlist index of this design, or null if it has not been created.
+	 */
+	NetlistIndex getNetlistIndexIfCreated() {
+		return netlistIndex;
 	}
 
 	/**
@@ -549,6 +620,9 @@ public class Design implements Serializable {
 		}
 		inst.setDesign(this);
 		instances.put(inst.getName(), inst);
+		if (netlistIndex != null) {
+			netlistIndex.addInstance(inst);
+		}
 	}
 
 	/**
@@ -560,6 +634,9 @@ public class Design implements Serializable {
 		if (nets.put(net.getName(), net) != null) {
 			throw new RuntimeException("duplicate net name: " + net.getName());
 		}
+		if (netlistIndex != null) {
+			netlistIndex.addNet(net);
+		}
 	}
 
 	/**
@@ -580,6 +657,9 @@ public class Design implements Serializable {
 	 * @param net The net to remove from the design.
 	 */
 	public void removeNet(Net net) {
+		if (netlistIndex != null) {
+			netlistIndex.removeNet(net);
+		}
 		for (Pin p : net.getPins()) {
 			p.getInstance().getNetList().remove(net);
 			if (net == p.getNet()) {
@@ -622,12 +702,18 @@ public class Design implements Serializable {
 			if (p.getNet() != null) {
 				p.getNet().unroute();
 				if (p.getNet().getPins().size() == 1) {
+					if (netlistIndex != null) {
+						netlistIndex.removeNet(p.getNet());
+					}
 					nets.remove(p.getNet().getName());
 				} else {
 					p.getNet().removePin(p);
 				}
 			}
 		}
+		if (netlistIndex != null) {
+			netlistIndex.removeInstance(instance);
+		}
 		instances.remove(instance.getName());
 		releasePrimitiveSite(instance.getPrimitiveSite());
 		instance.setDesign(null);
@@ -713,6 +799,12 @@ public class Design implements Serializable {
 	 */
 	public void clearUsedPrimitiveSites() {
 		usedPrimitiveSites.clear();
+		if (siteOccupancy != null) {
+			siteOccupancy.clear();
+		}
+		if (netlistIndex != null) {
+			netlistIndex.clearSites();
+		}
 	}
 
 	/**
@@ -791,6 +883,8 @@ public class Design implements Serializable {
 	 */
 	public void setDevice(Device dev) {
 		this.dev = dev;
+		this.siteOccupancy = null;
+		this.netlistIndex = null;
 	}
 
 	/**
@@ -808,6 +902,24 @@ public class Design implements Serializable {
 		loadDeviceAndWireEnumerator();
 	}
 
+	/**
+	 * Sets the Xilinx part name of a design whose device is already loaded,
+	 * without loading the device from the database again. The wire enumerator
+	 * is loaded, it does not replace the device.
+	 *
+	 * @param partName Name of the Xilinx FPGA part, with package and speed grade.
+	 * @param dev The loaded device of the part.
+	 */
+	public void setPartName(String partName, Device dev) {
+		if (this.partName != null) {
+			MessageGenerator.briefErrorAndExit("Sorry, cannot change a Design part name" +
+					"after one has already been set. Please create a new Design for that.");
+		}
+		this.partName = partName;
+		setDevice(dev);
+		setWireEnumerator(DeviceDatabaseProvider.getDeviceDatabase().loadWireEnumerator(partName));
+	}
+
 	/**
 	 * Sets the NCD version as shown in the XDL file.
 	 *
@@ -834,6 +946,9 @@ public class Design implements Serializable {
 	 * nets of the design.
 	 */
 	public void setNets(Collection<Net> netList) {
+		if (netlistIndex != null) {
+			nets.values().forEach(netlistIndex::removeNet);
+		}
 		nets.clear();
 		for (Net net : netList) {
 			addNet(net);
@@ -878,6 +993,23 @@ public class Design implements Serializable {
 		parser.parseXDL();
 	}
 
+	/**
+	 * Loads this instance of design with the XDL design found in the file
+	 * fileName, using an already loaded device instead of loading the one
+	 * named in the file.
+	 *
+	 * @param fileName The name of the XDL file to load.
+	 * @param dev The device to use.
+	 * @throws IllegalArgumentException If the file is for another part, this
+	 * is found from the header before any device is loaded.
+	 */
+	public void loadXDLFile(Path fileName, Device dev) {
+		DesignParser parser = new DesignParser(fileName);
+		parser.setDesign(this);
+		parser.setDevice(dev);
+		parser.parseXDL();
+	}
+
 	/**
 	 * Saves the XDL design to a minimalist XDL file.  This is the same
 	 * as saveXDLFile(fileName, false);
@@ -936,252 +1068,8 @@ public class Design implements Serializable {
 	 * Xilinx xdl tool.
 	 */
 	public void saveXDLFile(Path file, boolean addComments, boolean sortPips) {
-		String nl = System.getProperty("line.separator");
-
 		try {
-			PrintWriter pw = new PrintWriter(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
-
-			if (addComments) {
-				pw.write(nl + "# =======================================================" + nl);
-				pw.write("# " + this.getClass().getCanonicalName() + " XDL Generation $Revision: 1.01$" + nl);
-				pw.write("# time: " + FileTools.getTimeString() + nl + nl);
-				pw.write("# =======================================================" + nl + nl + nl);
-
-				pw.write("# =======================================================" + nl);
-				pw.write("# The syntax for the design statement is:                " + nl);
-				pw.write("# design <design_name> <part> <ncd version>;             " + nl);
-				pw.write("# or                                                     " + nl);
-				pw.write("# design <design_name> <device> <package> <speed> <ncd_version>" + nl);
-				pw.write("# =======================================================" + nl);
-			}
-
-			comments.forEach(c -> pw.format("# %s%n", c));
-
-			if (!isHardMacro) {
-				pw.write("design \"" + name + "\" " + partName + " " + NCDVersion + " ," + nl);
-				pw.write("  cfg \"");
-				for (Attribute attr : attributes) {
-					pw.write(nl + "       " + attr.toString());
-				}
-				pw.write("\";" + nl + nl + nl);
-			} else {
-				pw.write("design \"" + name + "\" " + partName + ";" + nl + nl);
-			}
-
-
-			if (modules.size() > 0) {
-				if (addComments) {
-					pw.write("# =======================================================" + nl);
-					pw.write("# The syntax for modules is:" + nl);
-					pw.write("#     module <name> <inst_name> ;" + nl);
-					pw.write("#     port <name> <inst_name> <inst_pin> ;" + nl);
-					pw.write("#     ." + nl);
-					pw.write("#     ." + nl);
-					pw.write("#     instance ... ;" + nl);
-					pw.write("#     ." + nl);
-					pw.write("#     ." + nl);
-					pw.write("#     net ... ;" + nl);
-					pw.write("#     ." + nl);
-					pw.write("#     ." + nl);
-					pw.write("#     endmodule <name> ;" + nl);
-					pw.write("# =======================================================" + nl + nl);
-				}
-
-				for (String moduleName : modules.keySet()) {
-					Module module = modules.get(moduleName);
-					if (addComments) {
-						pw.write("# =======================================================" + nl);
-						pw.write("# MODULE of \"" + moduleName + "\"" + nl);
-						pw.write("# =======================================================" + nl);
-					}
-
-					if (module.getAnchor() == null) {
-						if (addComments) {
-							pw.write("# This module is a routing only block" + nl);
-						}
-						continue;
-					}
-
-					pw.write("module " + "\"" + moduleName + "\" " + "\"" + module.getAnchor().getName() + "\" , cfg \"");
-
-					for (Attribute attr : module.getAttributes()) {
-						pw.write(attr.toString() + " ");
-					}
-					pw.write("\";" + nl);
-					for (Port port : module.getPorts()) {
-						pw.write("  port \"" + port.getName() + "\" \"" + port.getInstanceName() + "\" \"" + port.getPinName() + "\";" + nl);
-					}
-					for (Instance inst : module.getInstances()) {
-						String placed = inst.isPlaced()? "placed " + inst.getTile() + " " + inst.getPrimitiveSiteName() : "unplaced";
-						pw.write("  inst \"" + inst.getName() + "\" \"" + inst.getType() + "\"," + placed + "  ," + nl);
-						pw.write("    cfg \"");
-						for (Attribute attr : inst.getAttributes()) {
-							pw.write(" " + attr.toString());
-						}
-						pw.write(" \"" + nl + "    ;" + nl);
-					}
-
-					writeNets(nl, pw, module.getNets(), sortPips);
-
-					pw.write("endmodule \"" + moduleName + "\" ;" + nl + nl);
-				}
-			}
-			if (!isHardMacro) {
-				if (addComments) {
-					if (moduleInstances.size() > 0) {
-						pw.write(nl);
-						pw.write("#  =======================================================" + nl);
-						pw.write("#  MODULE INSTANCES" + nl);
-						pw.write("#  =======================================================" + nl);
-						for (ModuleInstance mi : moduleInstances.values()) {
-							pw.write("# instance \"" + mi.getName() + "\" \"" + mi.getModule().getName() + "\" , ");
-							if (mi.getAnchor() == null) {
-								System.out.println("Anchor is null");
-							}
-							if (mi.getAnchor() != null && mi.getAnchor().isPlaced()) {
-								pw.write("placed " + mi.getAnchor().getTile() + " " +
-										mi.getAnchor().getPrimitiveSiteName() + " ;" + nl);
-							} else {
-								pw.write("unplaced  ;" + nl);
-							}
-						}
-						pw.write(nl);
-					}
-
-					pw.write("#  =======================================================" + nl);
-					pw.write("#  The syntax for instances is:" + nl);
-					pw.write("#      instance <name> <sitedef>, placed <tile> <site>, cfg <string> ;" + nl);
-					pw.write("#  or" + nl);
-					pw.write("#      instance <name> <sitedef>, unplaced, cfg <string> ;" + nl);
-					pw.write("# " + nl);
-					pw.write("#  For typing convenience you can abbreviate instance to inst." + nl);
-					pw.write("# " + nl);
-					pw.write("#  For IOs there are two special keywords: bonded and unbonded" + nl);
-					pw.write("#  that can be used to designate whether the PAD of an unplaced IO is" + nl);
-					pw.write("#  bonded out. If neither keyword is specified, bonded is assumed." + nl);
-					pw.write("# " + nl);
-					pw.write("#  The bonding of placed IOs is determined by the site they are placed in." + nl);
-					pw.write("# " + nl);
-					pw.write("#  If you specify bonded or unbonded for an instance that is not an" + nl);
-					pw.write("#  IOB it is ignored." + nl);
-					pw.write("# " + nl);
-					pw.write("#  Shown below are three examples for IOs. " + nl);
-					pw.write("#     instance IO1 IOB, unplaced ;          # This will be bonded" + nl);
-					pw.write("#     instance IO1 IOB, unplaced bonded ;   # This will be bonded" + nl);
-					pw.write("#     instance IO1 IOB, unplaced unbonded ; # This will be unbonded" + nl);
-					pw.write("#  =======================================================" + nl);
-				}
-				for (Instance inst : getInstances()) {
-					String placed = inst.isPlaced()? "placed " + inst.getTile() +
-							" " + inst.getPrimitiveSiteName() : "unplaced";
-					String module = inst.getModuleInstanceName() == null? "" : "module \"" +
-							inst.getModuleInstanceName() + "\" \"" + inst.getModuleTemplate().getName() + "\" \"" +
-							inst.getModuleTemplateInstance().getName() + "\" ,";
-					pw.write("inst \"" + inst.getName() + "\" \"" + inst.getType() + "\"," + placed + "  ," + module + nl);
-					pw.write("  cfg \"");
-					for (Attribute attr : inst.getAttributes()) {
-						if (attr.getPhysicalName().charAt(0) == '_') {
-							pw.write(nl + "      ");
-						}
-						pw.write(" " + attr.toString());
-					}
-					pw.write(" \"" + nl + "  ;" + nl);
-				}
-				pw.write(nl);
-
-				if (addComments) {
-					pw.write("#  ================================================" + nl);
-					pw.write("#  The syntax for nets is:" + nl);
-					pw.write("#     net <name> <type>," + nl);
-					pw.write("#       outpin <inst_name> <inst_pin>," + nl);
-					pw.write("#       ." + nl);
-					pw.write("#       ." + nl);
-					pw.write("#       inpin <inst_name> <inst_pin>," + nl);
-					pw.write("#       ." + nl);
-					pw.write("#       ." + nl);
-					pw.write("#       pip <tile> <wire0> <dir> <wire1> , # [<rt>]" + nl);
-					pw.write("#       ." + nl);
-					pw.write("#       ." + nl);
-					pw.write("#       ;" + nl);
-					pw.write("# " + nl);
-					pw.write("#  There are three available wire types: wire, power and ground." + nl);
-					pw.write("#  If no type is specified, wire is assumed." + nl);
-					pw.write("# " + nl);
-					pw.write("#  Wire indicates that this a normal wire." + nl);
-					pw.write("#  Power indicates that this net is tied to a DC power source." + nl);
-					pw.write("#  You can use \"power\", \"vcc\" or \"vdd\" to specify a power net." + nl);
-					pw.write("# " + nl);
-					pw.write("#  Ground indicates that this net is tied to ground." + nl);
-					pw.write("#  You can use \"ground\", or \"gnd\" to specify a ground net." + nl);
-					pw.write("# " + nl);
-					pw.write("#  The <dir> token will be one of the following:" + nl);
-					pw.write("# " + nl);
-					pw.write("#     Symbol Description" + nl);
-					pw.write("#     ====== ==========================================" + nl);
-					pw.write("#       ==   Bidirectional, unbuffered." + nl);
-					pw.write("#       =>   Bidirectional, buffered in one direction." + nl);
-					pw.write("#       =-   Bidirectional, buffered in both directions." + nl);
-					pw.write("#       ->   Directional, buffered." + nl);
-					pw.write("# " + nl);
-					pw.write("#  No pips exist for unrouted nets." + nl);
-					pw.write("#  ================================================" + nl);
-				}
-
-				writeNets(nl, pw, getNets(), sortPips);
-
-				pw.write(nl);
-
-				if (addComments) {
-					int sliceCount = 0;
-					int bramCount = 0;
-					int dspCount = 0;
-					for (Instance instance : instances.values()) {
-						PrimitiveType type = instance.getType();
-						if (sliceTypes.contains(type)) {
-							sliceCount++;
-						} else if (dspTypes.contains(type)) {
-							dspCount++;
-						} else if (bramTypes.contains(type)) {
-							bramCount++;
-						}
-					}
-
-					pw.write("# =======================================================" + nl);
-					pw.write("# SUMMARY" + nl);
-					pw.write("# Number of Module Defs: " + modules.size() + nl);
-					pw.write("# Number of Module Insts: " + moduleInstances.size() + nl);
-					pw.write("# Number of Primitive Insts: " + instances.size() + nl);
-					pw.write("#     Number of SLICES: " + sliceCount + nl);
-					pw.write("#     Number of DSP48s: " + dspCount + nl);
-					pw.write("#     Number of BRAMs: " + bramCount + nl);
-					pw.write("# Number of Nets: " + nets.size() + nl);
-					pw.write("# =======================================================" + nl + nl + nl);
-				}
-			} else {
-				if (addComments) {
-					Module mod = getHardMacro();
-					pw.write("# =======================================================" + nl);
-					pw.write("# MACRO SUMMARY" + nl);
-					pw.write("# Number of Module Insts: " + mod.getInstances().size() + nl);
-					HashMap<PrimitiveType, Integer> instTypeCount = new HashMap<PrimitiveType, Integer>();
-					for (Instance inst : mod.getInstances()) {
-						Integer count = instTypeCount.get(inst.getType());
-						if (count == null) {
-							instTypeCount.put(inst.getType(), 1);
-						} else {
-							count++;
-							instTypeCount.put(inst.getType(), count);
-						}
-					}
-					for (PrimitiveType type : instTypeCount.keySet()) {
-						pw.write("#   Number of " + type.toString() + "s: " + instTypeCount.get(type) + nl);
-					}
-					pw.write("# Number of Module Ports: " + mod.getPorts().size() + nl);
-					pw.write("# Number of Module Nets: " + mod.getNets().size() + nl);
-					pw.write("# =======================================================" + nl + nl + nl);
-				}
-			}
-			pw.close();
+			new XDLWriter().setAddComments(addComments).setSortPips(sortPips).write(this, file);
 		} catch (IOException e) {
 			logger.error("Failed to write XDL File {}", file, e);
 			MessageGenerator.briefErrorAndExit("Error writing XDL file: " +
@@ -1189,39 +1077,6 @@ public class Design implements Serializable {
 		}
 	}
 
-	private void writeNets(String nl, PrintWriter pw, Collection<Net> nets, boolean sortEntries) {
-		nets.stream().sorted(Comparator.comparing(Net::getName)).forEach(net -> {
-			pw.write("  net \"" + net.getName() + "\" " + net.getType().toString() + ",");
-			if (net.getAttributes() != null) {
-				pw.write("cfg \"");
-				for (Attribute attr : net.getAttributes()) {
-					pw.write(" " + attr.toString());
-				}
-				pw.write("\",");
-			}
-			pw.write(nl);
-			Stream<Pin> pinStream = net.getPins().stream();
-			if (sortEntries) {
-				pinStream = pinStream.sorted(Comparator.<Pin, Boolean>comparing(p -> net.getSource() != p).thenComparing(Comparator.comparing(Pin::getInstanceName)));
-			}
-			pinStream.forEach(pin -> {
-				pw.write("  " + pin.getPinType().toString().toLowerCase() + " \"" + pin.getInstanceName() + "\" " + pin.getName() + " ," + nl);
-			});
-
-			if (net.getPIPs().stream().anyMatch(pip -> pip.getTile() == null || pip.getDirection() == null)) {
-				throw new RuntimeException("invalid pip for net " + net + ": " + net.getPIPs());
-			}
-			Stream<PIP> pipStream = net.getPIPs().stream();
-			if (sortEntries) {
-				pipStream = pipStream.sorted(Comparator.<PIP, String>comparing(pip -> pip.getTile().toString()).thenComparing(pip -> pip.getStartWireName(we)));
-			}
-			pipStream.forEach(pip -> {
-				pw.write("  pip " + pip.getTile() + " " + pip.getStartWireName(we) + " " + pip.getDirection().connString + " " + pip.getEndWireName(we) + " , " + nl);
-			});
-			pw.write("  ;" + nl);
-		});
-	}
-
 	public void saveComparableXDLFile(Path fileName) {
 		saveXDLFile(fileName, true, true);
 	}
@@ -1379,4 +1234,18 @@ public class Design implements Serializable {
 	public void addComment(String comment) {
 		comments.add(comment);
 	}
+
+	/**
+	 * Returns the comments saved to the output file.
+	 */
+	List<String> getComments() {
+		return comments;
+	}
+
+	/**
+	 * Returns the modules of the design by the name they were added with.
+	 */
+	Map<String, Module> getModuleMap() {
+		return modules;
+	}
 }
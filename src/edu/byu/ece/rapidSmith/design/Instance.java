@@ -96,6 +96,8 @@ public class Instance implements Serializable, JacksonDeserListener, INamed {
 	private Module moduleTemplate;
 	/** The instance in the module template corresponding to this instance */
 	private Instance moduleTemplateInstance;
+	/** Id of this instance in the netlist index of the design */
+	transient int netlistId = NetlistIndex.NO_ID;
 
 	/**
 	 * Creates a new Instance, everything is empty, false or -1
@@ -531,14 +533,23 @@ public class Instance implements Serializable, JacksonDeserListener, INamed {
 	 * @param pin The pin to add.
 	 */
 	public void addPin(Pin pin){
-		if(pin.getName() != null) this.pinMap.put(pin.getName(), pin);
+		if(pin.getName() == null) return;
+		Pin old = this.pinMap.put(pin.getName(), pin);
+		NetlistIndex index = NetlistIndex.of(this);
+		if(index != null){
+			if(old != null && old != pin) index.removePin(old);
+			index.addPin(pin);
+		}
 	}
 
 	/**
 	 * Removes the pin from the list
 	 */
 	public Pin removePin(Pin pin){
-		return this.pinMap.remove(pin.getName());
+		Pin removed = this.pinMap.remove(pin.getName());
+		NetlistIndex index = NetlistIndex.of(this);
+		if(index != null && removed != null) index.removePin(removed);
+		return removed;
 	}
 
 	/**
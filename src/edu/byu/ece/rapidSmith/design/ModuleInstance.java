@@ -223,6 +223,18 @@ public class ModuleInstance{
 	}
 
 
+	/**
+	 * Finds all valid locations of where this module instance can be placed without
+	 * moving it. The candidate anchor sites are checked in parallel by a
+	 * {@link ModulePlacementChecker}.
+	 * @param checkUsedSites If true, locations which overlap sites used by instances
+	 * outside of this module instance are not valid.
+	 * @return A list of valid anchor sites for the module instance to be placed.
+	 */
+	public List<PrimitiveSite> getAllValidPlacements(boolean checkUsedSites){
+		return new ModulePlacementChecker(this, checkUsedSites).getAllValidPlacements();
+	}
+
 	/**
 	 * Places the module instance anchor at the newAnchorSite as well as all other
 	 * instances and nets within the module instance at their relative offsets of the new site.
@@ -320,15 +332,19 @@ public class ModuleInstance{
 					//System.out.println("invalid pip: "+newPip);
 					return false;
 				}
-				net.addPIP(newPip);
-				// Special cases for Virtex 5
+				// Special cases for Virtex 5, the start wire is fixed before the PIP is added
+				boolean carryWire = true;
 				if(newPip.getStartWire() == mCout && newPipTile.getType().equals(TileType.CLBLL)){
 					newPip.setStartWire(llCout);
 				}
 				else if(newPip.getStartWire() == llCout && newPipTile.getType().equals(TileType.CLBLM)){
 					newPip.setStartWire(mCout);
 				}
-				else if(newPip.getEndWire() == wl5beg_s0){
+				else{
+					carryWire = false;
+				}
+				net.addPIP(newPip);
+				if(!carryWire && newPip.getEndWire() == wl5beg_s0){
 					TileType check = dev.getTile(newPipTile.getRow(), newPipTile.getColumn()-1).getType();
 					TileType check2 = dev.getTile(newPipTile.getRow(), newPipTile.getColumn()-2).getType();
 					if(check.equals(TileType.INT_BUFS_R) || check2.equals(TileType.INT_BUFS_R)){
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2010 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.design;
+
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.PrimitiveSite;
+import edu.byu.ece.rapidSmith.device.PrimitiveType;
+import edu.byu.ece.rapidSmith.device.Tile;
+import edu.byu.ece.rapidSmith.device.WireConnection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Checks where a module instance can be placed without modifying the design.
+ *
+ * {@link ModuleInstance#place(PrimitiveSite, Device, java.util.function.BiConsumer)}
+ * has to move every instance and net of the module to test a single anchor site.
+ * This class instead computes the tile offsets, site indices and PIPs of the module
+ * relative to its anchor once. Testing an anchor site then only adds these offsets
+ * to the anchor tile coordinates and looks the tiles up in a coordinate grid.
+ * The checks are the same as the ones done by place(), optionally extended by a
+ * check that the target sites are not used by other instances of the design.
+ *
+ * The checker does not modify the design, so many anchors are checked in parallel.
+ * The design must not be modified while a search is running.
+ */
+public class ModulePlacementChecker {
+
+	/** The module instance to place */
+	private final ModuleInstance moduleInstance;
+	/** The design used to check for used sites, or null to ignore used sites */
+	private final Design design;
+	/** The device to place on */
+	private final Device dev;
+
+	/** Type of the anchor instance */
+	private final PrimitiveType anchorType;
+	/** Index of the anchor site within the anchor tile of the module */
+	private final int anchorSiteIndex;
+	/** X/Y coordinates of the anchor tile of the module */
+	private final int anchorX;
+	private final int anchorY;
+
+	/** Width and height of the tile coordinate grid */
+	private final int gridWidth;
+	private final int gridHeight;
+	/** One grid of tiles per tile name prefix (such as CLBLL_X) used by the module */
+	private final List<Tile[]> grids = new ArrayList<>();
+
+	/** Placed instances of the module: tile offset, grid, site index and type */
+	private final int[] instDX;
+	private final int[] instDY;
+	private final int[] instGrid;
+	private final int[] instSiteIndex;
+	private final PrimitiveType[] instType;
+
+	/** PIPs of the module: tile offset, grid and wires */
+	private final int[] pipDX;
+	private final int[] pipDY;
+	private final int[] pipGrid;
+	private final int[] pipStartWire;
+	private final int[] pipEndWire;
+
+	/**
+	 * Creates a checker for the given module instance which ignores the sites used by
+	 * the design, just like {@link ModuleInstance#place(PrimitiveSite, Device, java.util.function.BiConsumer)}.
+	 * @param moduleInstance The module instance to place.
+	 */
+	public ModulePlacementChecker(ModuleInstance moduleInstance) {
+		this(moduleInstance, false);
+	}
+
+	/**
+	 * Creates a checker for the given module instance.
+	 * @param moduleInstance The module instance to place.
+	 * @param checkUsedSites If true, anchors for which a site of the module is used by an
+	 * instance outside of the module instance are not valid.
+	 */
+	public ModulePlacementChecker(ModuleInstance moduleInstance, boolean checkUsedSites) {
+		this.moduleInstance = moduleInstance;
+		this.design = checkUsedSites ? moduleInstance.getDesign() : null;
+		this.dev = moduleInstance.getDesign().getDevice();
+
+		Module module = moduleInstance.getModule();
+		Instance moduleAnchor = module.getAnchor();
+		PrimitiveSite anchorTemplateSite = moduleAnchor.getPrimitiveSite();
+		anchorType = moduleAnchor.getType();
+		anchorSiteIndex = getSiteIndex(anchorTemplateSite);
+		anchorX = anchorTemplateSite.getTile().getTileXCoordinate();
+		anchorY = anchorTemplateSite.getTile().getTileYCoordinate();
+
+		int maxX = 0;
+		int maxY = 0;
+		for (Tile[] row : dev.getTiles()) {
+			for (Tile t : row) {
+				maxX = Math.max(maxX, t.getTileXCoordinate());
+				maxY = Math.max(maxY, t.getTileYCoordinate());
+			}
+		}
+		gridWidth = maxX + 1;
+		gridHeight = maxY + 1;
+		Map<String, Integer> gridIndices = new HashMap<>();
+
+		List<Instance> placedInstances = new ArrayList<>();
+		for (Instance inst : moduleInstance.getInstances()) {
+			if (inst.getModuleTemplateInstance().getPrimitiveSite() != null)
+				placedInstances.add(inst);
+		}
+		instDX = new int[placedInstances.size()];
+		instDY = new int[placedInstances.size()];
+		instGrid = new int[placedInstances.size()];
+		instSiteIndex = new int[placedInstances.size()];
+		instType = new PrimitiveType[placedInstances.size()];
+		for (int i = 0; i < placedInstances.size(); i++) {
+			Instance inst = placedInstances.get(i);
+			PrimitiveSite templateSite = inst.getModuleTemplateInstance().getPrimitiveSite();
+			Tile templateTile = templateSite.getTile();
+			instDX[i] = templateTile.getTileXCoordinate() - anchorX;
+			instDY[i] = templateTile.getTileYCoordinate() - anchorY;
+			instGrid[i] = getGridIndex(templateTile, gridIndices);
+			instSiteIndex[i] = getSiteIndex(templateSite);
+			instType[i] = inst.getType();
+		}
+
+		List<PIP> pips = new ArrayList<>();
+		for (Net net : moduleInstance.getNets()) {
+			Net templateNet = net.getModuleTemplateNet();
+			if (templateNet == null)
+				throw new RuntimeException("net " + net.getName() + " does not have a template");
+			pips.addAll(templateNet.getPIPs());
+		}
+		pipDX = new int[pips.size()];
+		pipDY = new int[pips.size()];
+		pipGrid = new int[pips.size()];
+		pipStartWire = new int[pips.size()];
+		pipEndWire = new int[pips.size()];
+		for (int i = 0; i < pips.size(); i++) {
+			PIP pip = pips.get(i);
+			pipDX[i] = pip.getTile().getTileXCoordinate() - anchorX;
+			pipDY[i] = pip.getTile().getTileYCoordinate() - anchorY;
+			pipGrid[i] = getGridIndex(pip.getTile(), gridIndices);
+			pipStartWire[i] = pip.getStartWire();
+			pipEndWire[i] = pip.getEndWire();
+		}
+	}
+
+	/**
+	 * Checks if the module instance can be placed with its anchor at the given site.
+	 * @param anchorSite The proposed anchor site.
+	 * @return True if the module instance can be placed there, false otherwise.
+	 */
+	public boolean isValidPlacement(PrimitiveSite anchorSite) {
+		if (anchorSite == null)
+			return false;
+		Tile anchorTile = anchorSite.getTile();
+		if (getSite(anchorTile, anchorSiteIndex, anchorType) != anchorSite)
+			return false;
+		int x = anchorTile.getTileXCoordinate();
+		int y = anchorTile.getTileYCoordinate();
+
+		for (int i = 0; i < instGrid.length; i++) {
+			Tile tile = getTile(instGrid[i], x + instDX[i], y + instDY[i]);
+			PrimitiveSite site = getSite(tile, instSiteIndex[i], instType[i]);
+			if (site == null)
+				return false;
+			if (design != null && design.isPrimitiveSiteUsed(site)) {
+				Instance user = design.getInstanceAtPrimitiveSite(site);
+				if (user == null || user.getModuleInstance() != moduleInstance)
+					return false;
+			}
+		}
+
+		for (int i = 0; i < pipGrid.length; i++) {
+			Tile tile = getTile(pipGrid[i], x + pipDX[i], y + pipDY[i]);
+			if (tile == null)
+				return false;
+			if (!hasConnection(tile, pipStartWire[i], pipEndWire[i]) &&
+					!hasConnection(tile, pipEndWire[i], pipStartWire[i]))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks all compatible sites of the anchor in parallel.
+	 * @return The valid anchor sites, in the order of {@link Device#getAllCompatibleSites(PrimitiveType)}.
+	 */
+	public List<PrimitiveSite> getAllValidPlacements() {
+		PrimitiveSite[] sites = dev.getAllCompatibleSites(moduleInstance.getAnchor().getType());
+		if (sites == null) {
+			return Collections.emptyList();
+		}
+		return getValidPlacements(Arrays.asList(sites));
+	}
+
+	/**
+	 * Checks the given anchor sites in parallel.
+	 * @return The valid anchor sites, in the order of the candidates.
+	 */
+	public List<PrimitiveSite> getValidPlacements(List<PrimitiveSite> candidates) {
+		return candidates.parallelStream()
+				.filter(this::isValidPlacement)
+				.collect(Collectors.toList());
+	}
+
+	private Tile getTile(int grid, int x, int y) {
+		if (x < 0 || y < 0 || x >= gridWidth || y >= gridHeight)
+			return null;
+		return grids.get(grid)[x * gridHeight + y];
+	}
+
+	private static PrimitiveSite getSite(Tile tile, int index, PrimitiveType type) {
+		if (tile == null || index < 0)
+			return null;
+		PrimitiveSite[] sites = tile.getPrimitiveSites();
+		if (sites == null || index >= sites.length)
+			return null;
+		PrimitiveSite site = sites[index];
+		return site.isCompatiblePrimitiveType(type) ? site : null;
+	}
+
+	private static int getSiteIndex(PrimitiveSite site) {
+		PrimitiveSite[] sites = site.getTile().getPrimitiveSites();
+		for (int i = 0; i < sites.length; i++) {
+			if (site.equals(sites[i]))
+				return i;
+		}
+		return -1;
+	}
+
+	private static boolean hasConnection(Tile tile, int startWire, int endWire) {
+		WireConnection[] wireConns = tile.getWireConnections(startWire);
+		if (wireConns == null)
+			return false;
+		for (WireConnection wc : wireConns) {
+			if (wc.getWire() == endWire && wc.isPIP())
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the index of the grid that resolves tiles named like the template tile,
+	 * creating the grid if needed. The grid is filled in the same way as
+	 * {@link Module#getCorrespondingTile(Tile, int, int, Device)} looks up tiles: tiles
+	 * with the same name prefix first, then tiles of compatible types.
+	 */
+	private int getGridIndex(Tile templateTile, Map<String, Integer> gridIndices) {
+		String name = templateTile.getName();
+		String prefix = name.substring(0, name.lastIndexOf('X') + 1);
+		Integer index = gridIndices.get(prefix);
+		if (index != null)
+			return index;
+
+		Tile[] grid = fillGrid(prefix);
+		Set<String> comp = Module.getCompatibleTiles(dev).get(Module.baseName(name));
+		if (comp != null) {
+			for (String s : comp) {
+				Tile[] compGrid = fillGrid(s + "_X");
+				for (int i = 0; i < grid.length; i++) {
+					if (grid[i] == null)
+						grid[i] = compGrid[i];
+				}
+			}
+		}
+
+		index = grids.size();
+		grids.add(grid);
+		gridIndices.put(prefix, index);
+		return index;
+	}
+
+	/**
+	 * Creates a grid containing the tiles whose names start with the given prefix.
+	 */
+	private Tile[] fillGrid(String prefix) {
+		Tile[] grid = new Tile[gridWidth * gridHeight];
+		for (Tile[] row : dev.getTiles()) {
+			for (Tile t : row) {
+				String tName = t.getName();
+				if (tName.startsWith(prefix) && tName.lastIndexOf('X') + 1 == prefix.length())
+					grid[t.getTileXCoordinate() * gridHeight + t.getTileYCoordinate()] = t;
+			}
+		}
+		return grid;
+	}
+}
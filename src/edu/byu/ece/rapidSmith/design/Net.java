@@ -74,7 +74,7 @@ public class Net implements Comparable<Net>, Serializable, WireContainer, Jackso
 	 * Routing resources or Programmable-Interconnect-Points
 	 */
 	@JsonProperty("pips")
-	private List<PIP> pips;
+	private PIPList pips;
 	/**
 	 * The source pin for the net
 	 */
@@ -97,6 +97,10 @@ public class Net implements Comparable<Net>, Serializable, WireContainer, Jackso
 	 * The net in the module template corresponding to this net
 	 */
 	private Net moduleTemplateNet;
+	/**
+	 * Id of this net in the netlist index of the design
+	 */
+	transient int netlistId = NetlistIndex.NO_ID;
 
 	/**
 	 * Default Constructor
@@ -105,7 +109,7 @@ public class Net implements Comparable<Net>, Serializable, WireContainer, Jackso
 		this.name = null;
 		this.type = NetType.WIRE;
 		this.pins = new ArrayList<Pin>();
-		this.pips = new ArrayList<PIP>();
+		this.pips = new PIPList();
 		this.source = null;
 		this.fanOut = 0;
 		moduleInstance = null;
@@ -123,7 +127,7 @@ public class Net implements Comparable<Net>, Serializable, WireContainer, Jackso
 		this.name = name;
 		this.type = type;
 		this.pins = new ArrayList<Pin>();
-		this.pips = new ArrayList<PIP>();
+		this.pips = new PIPList();
 		this.source = null;
 		this.fanOut = 0;
 		moduleInstance = null;
@@ -173,11 +177,12 @@ public class Net implements Comparable<Net>, Serializable, WireContainer, Jackso
 	}
 
 	/**
-	 * Gets the PIPs (routing resources) used by the net.
+	 * Gets the PIPs (routing resources) used by the net.  The PIPs are stored
+	 * packed, the PIP objects of the list are created on access, see {@link PIPList}.
 	 *
 	 * @return The PIPs used by the net.
 	 */
-	public List<PIP> getPIPs() {
+	public PIPList getPIPs() {
 		return pips;
 	}
 
@@ -271,12 +276,13 @@ public class Net implements Comparable<Net>, Serializable, WireContainer, Jackso
 	}
 
 	/**
-	 * Sets the PIPs of the net.
+	 * Sets the PIPs of the net.  The PIPs are copied, later changes to the list
+	 * do not change the net.
 	 *
 	 * @param list The new list of PIPs.
 	 */
-	public void setPIPs(ArrayList<PIP> list) {
-		this.pips = list;
+	public void setPIPs(Collection<PIP> list) {
+		this.pips = new PIPList(list);
 	}
 
 	/**
@@ -352,6 +358,18 @@ public class Net implements Comparable<Net>, Serializable, WireContainer, Jackso
 		pips.add(pip);
 	}
 
+	/**
+	 * Adds a PIP to the net without creating a PIP object.
+	 *
+	 * @param tile The tile of the PIP.
+	 * @param startWire The start wire of the PIP.
+	 * @param endWire The end wire of the PIP.
+	 * @param direction The direction of the PIP.
+	 */
+	public void addPIP(Tile tile, int startWire, int endWire, PipDirection direction) {
+		pips.add(tile, startWire, endWire, direction);
+	}
+
 	/**
 	 * Removes a PIP from the net.
 	 *
@@ -687,7 +705,7 @@ public class Net implements Comparable<Net>, Serializable, WireContainer, Jackso
 			clone.attributes = attributes.stream().map(Attribute::clone).collect(Collectors.toList());
 		}
 		clone.pins = pins.stream().map(mapPin).collect(Collectors.toList());
-		clone.pips = pips.stream().map(PIP::clone).collect(Collectors.toList());
+		clone.pips = new PIPList(pips);
 		if (source != null) {
 			clone.source = mapPin.apply(source);
 		}
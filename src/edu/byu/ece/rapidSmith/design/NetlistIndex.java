@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2010 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.design;
+
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.PrimitiveSite;
+import edu.byu.ece.rapidSmith.device.Tile;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Dense integer ids for the instances, nets and pins of a design, with arrays
+ * mapping pins to their net and instance and primitive sites to the instance
+ * placed on them. Tools that work on the whole netlist can keep their own state
+ * in arrays indexed by these ids instead of hash maps keyed by the objects.
+ *
+ * Single lookups do not need the index: {@link Pin#getNet()} is a field and
+ * {@link Design#getInstanceAtPrimitiveSite(PrimitiveSite)}, {@link Design#getInstance(String)}
+ * and {@link Design#getNet(String)} are hash lookups, which is all that flattening,
+ * the hard macro generator and the timing report parser do per element.
+ *
+ * A design keeps its index up to date when instances, nets and pins are added,
+ * removed, connected or placed, see {@link Design#getNetlistIndex()}. The ids of
+ * removed elements are reused, so ids should not be kept across netlist changes.
+ * All lookups take constant time. This class is not thread safe.
+ */
+public class NetlistIndex {
+
+	/** Id of elements which are not in the index */
+	public static final int NO_ID = -1;
+
+	private final Design design;
+
+	private Instance[] instances = new Instance[16];
+	private int[] instanceFree = new int[16];
+	private int instanceIds, instanceFreeCount, instanceCount;
+
+	private Net[] nets = new Net[16];
+	private int[] netFree = new int[16];
+	private int netIds, netFreeCount, netCount;
+
+	private Pin[] pins = new Pin[16];
+	private int[] pinFree = new int[16];
+	private int pinIds, pinFreeCount, pinCount;
+	/** Id of the net of every pin, NO_ID if unconnected */
+	private int[] pinNet = new int[16];
+	/** Id of the instance of every pin */
+	private int[] pinInstance = new int[16];
+
+	/** First site id of every tile, indexed by the unique tile address */
+	private final int[] siteBase;
+	/** Id of the instance placed on every site, NO_ID if free */
+	private final int[] siteInstance;
+
+	/**
+	 * Creates the index of all instances, nets and pins of a design.
+	 */
+	NetlistIndex(Design design) {
+		this.design = design;
+		Device dev = design.getDevice();
+		int tiles = dev == null ? 0 : dev.getRows() * dev.getColumns();
+		siteBase = new int[tiles + 1];
+		for (int t = 0; t < tiles; t++) {
+			PrimitiveSite[] sites = dev.getTile(t / dev.getColumns(), t % dev.getColumns()).getPrimitiveSites();
+			siteBase[t + 1] = siteBase[t] + (sites == null ? 0 : sites.length);
+		}
+		siteInstance = new int[siteBase[tiles]];
+		Arrays.fill(siteInstance, NO_ID);
+
+		for (Instance inst : design.getInstances())
+			addInstance(inst);
+		for (Net net : design.getNets())
+			addNet(net);
+	}
+
+	public Design getDesign() {
+		return design;
+	}
+
+	//========================================================================//
+	// Lookups
+	//========================================================================//
+
+	/** Returns the id of an instance, NO_ID if it is not part of the design */
+	public int getId(Instance inst) {
+		int id = inst.netlistId;
+		return id >= 0 && id < instanceIds && instances[id] == inst ? id : NO_ID;
+	}
+
+	/** Returns the id of a net, NO_ID if it is not part of the design */
+	public int getId(Net net) {
+		int id = net.netlistId;
+		return id >= 0 && id < netIds && nets[id] == net ? id : NO_ID;
+	}
+
+	/** Returns the id of a pin, NO_ID if its instance is not part of the design */
+	public int getId(Pin pin) {
+		int id = pin.netlistId;
+		return id >= 0 && id < pinIds && pins[id] == pin ? id : NO_ID;
+	}
+
+	public Instance getInstance(int id) {
+		return instances[id];
+	}
+
+	public Net getNet(int id) {
+		return nets[id];
+	}
+
+	public Pin getPin(int id) {
+		return pins[id];
+	}
+
+	/** Returns the id of the net of a pin, NO_ID if the pin is not connected to a net of the design */
+	public int getNetOfPin(int pinId) {
+		return pinNet[pinId];
+	}
+
+	/** Returns the id of the instance of a pin */
+	public int getInstanceOfPin(int pinId) {
+		return pinInstance[pinId];
+	}
+
+	/** Checks if a pin is connected to a net */
+	public boolean isPinOfNet(Pin pin, Net net) {
+		int pinId = getId(pin);
+		int netId = getId(net);
+		return pinId != NO_ID && netId != NO_ID && pinNet[pinId] == netId;
+	}
+
+	/**
+	 * Returns the ids of the pins of a net.
+	 */
+	public int[] getPinIds(Net net) {
+		List<Pin> netPins = net.getPins();
+		int[] ids = new int[netPins.size()];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = getId(netPins.get(i));
+		return ids;
+	}
+
+	/**
+	 * Returns a dense id of a primitive site of the device of the design, the
+	 * ids run from 0 to {@link #getSiteIdLimit()}.
+	 */
+	public int getSiteId(PrimitiveSite site) {
+		Tile tile = site.getTile();
+		PrimitiveSite[] sites = tile.getPrimitiveSites();
+		int address = tile.getUniqueAddress();
+		if (sites == null || address >= siteBase.length - 1)
+			return NO_ID;
+		int base = siteBase[address];
+		for (int i = 0; i < sites.length; i++) {
+			if (sites[i] == site)
+				return base + i;
+		}
+		return NO_ID;
+	}
+
+	/** Returns the id of the instance placed on a site, NO_ID if the site is free */
+	public int getInstanceAtSite(int siteId) {
+		return siteInstance[siteId];
+	}
+
+	/** Returns the instance placed on a site, null if the site is free */
+	public Instance getInstanceAt(PrimitiveSite site) {
+		int id = getSiteId(site);
+		return id == NO_ID || siteInstance[id] == NO_ID ? null : instances[siteInstance[id]];
+	}
+
+	/** Upper bound (exclusive) of the instance ids, size arrays indexed by instance id with this */
+	public int getInstanceIdLimit() {
+		return instanceIds;
+	}
+
+	public int getNetIdLimit() {
+		return netIds;
+	}
+
+	public int getPinIdLimit() {
+		return pinIds;
+	}
+
+	public int getSiteIdLimit() {
+		return siteInstance.length;
+	}
+
+	public int getNumberOfInstances() {
+		return instanceCount;
+	}
+
+	public int getNumberOfNets() {
+		return netCount;
+	}
+
+	public int getNumberOfPins() {
+		return pinCount;
+	}
+
+	//========================================================================//
+	// Updates, called by the design and its instances, nets and pins
+	//========================================================================//
+
+	void addInstance(Instance inst) {
+		if (getId(inst) != NO_ID)
+			return;
+		int id;
+		if (instanceFreeCount > 0) {
+			id = instanceFree[--instanceFreeCount];
+		} else {
+			id = instanceIds++;
+			if (id == instances.length)
+				instances = Arrays.copyOf(instances, id * 2);
+		}
+		instances[id] = inst;
+		inst.netlistId = id;
+		instanceCount++;
+		for (Pin pin : inst.getPins())
+			addPin(pin);
+		if (inst.isPlaced())
+			setSite(inst.getPrimitiveSite(), inst);
+	}
+
+	void removeInstance(Instance inst) {
+		int id = getId(inst);
+		if (id == NO_ID)
+			return;
+		for (Pin pin : inst.getPins())
+			removePin(pin);
+		if (inst.isPlaced() && getInstanceAt(inst.getPrimitiveSite()) == inst)
+			setSite(inst.getPrimitiveSite(), null);
+		instances[id] = null;
+		inst.netlistId = NO_ID;
+		instanceFree = push(instanceFree, instanceFreeCount++, id);
+		instanceCount--;
+	}
+
+	void addNet(Net net) {
+		if (getId(net) != NO_ID)
+			return;
+		int id;
+		if (netFreeCount > 0) {
+			id = netFree[--netFreeCount];
+		} else {
+			id = netIds++;
+			if (id == nets.length)
+				nets = Arrays.copyOf(nets, id * 2);
+		}
+		nets[id] = net;
+		net.netlistId = id;
+		netCount++;
+		for (Pin pin : net.getPins())
+			pinNetChanged(pin);
+	}
+
+	void removeNet(Net net) {
+		int id = getId(net);
+		if (id == NO_ID)
+			return;
+		nets[id] = null;
+		net.netlistId = NO_ID;
+		netFree = push(netFree, netFreeCount++, id);
+		netCount--;
+		for (Pin pin : net.getPins()) {
+			int pinId = getId(pin);
+			if (pinId != NO_ID && pinNet[pinId] == id)
+				pinNet[pinId] = NO_ID;
+		}
+	}
+
+	void addPin(Pin pin) {
+		int instanceId = getId(pin.getInstance());
+		if (instanceId == NO_ID || getId(pin) != NO_ID)
+			return;
+		int id;
+		if (pinFreeCount > 0) {
+			id = pinFree[--pinFreeCount];
+		} else {
+			id = pinIds++;
+			if (id == pins.length) {
+				pins = Arrays.copyOf(pins, id * 2);
+				pinNet = Arrays.copyOf(pinNet, id * 2);
+				pinInstance = Arrays.copyOf(pinInstance, id * 2);
+			}
+		}
+		pins[id] = pin;
+		pin.netlistId = id;
+		pinInstance[id] = instanceId;
+		pinNet[id] = pin.getNet() == null ? NO_ID : getId(pin.getNet());
+		pinCount++;
+	}
+
+	void removePin(Pin pin) {
+		int id = getId(pin);
+		if (id == NO_ID)
+			return;
+		pins[id] = null;
+		pin.netlistId = NO_ID;
+		pinFree = push(pinFree, pinFreeCount++, id);
+		pinCount--;
+	}
+
+	void pinNetChanged(Pin pin) {
+		int id = getId(pin);
+		if (id != NO_ID)
+			pinNet[id] = pin.getNet() == null ? NO_ID : getId(pin.getNet());
+	}
+
+	void setSite(PrimitiveSite site, Instance inst) {
+		int siteId = getSiteId(site);
+		if (siteId != NO_ID)
+			siteInstance[siteId] = inst == null ? NO_ID : getId(inst);
+	}
+
+	void clearSites() {
+		Arrays.fill(siteInstance, NO_ID);
+	}
+
+	private static int[] push(int[] stack, int size, int value) {
+		if (size == stack.length)
+			stack = Arrays.copyOf(stack, size * 2);
+		stack[size] = value;
+		return stack;
+	}
+
+	/**
+	 * Returns the index of the design of an instance if it has been created.
+	 */
+	static NetlistIndex of(Instance inst) {
+		if (inst == null || inst.getDesign() == null)
+			return null;
+		return inst.getDesign().getNetlistIndexIfCreated();
+	}
+}
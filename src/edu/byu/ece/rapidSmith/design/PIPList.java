@@ -0,0 +1,367 @@
+/*
+ * Copyright (c) 2010 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.design;
+
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.Tile;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * The PIPs of a net, packed into a long[] instead of a list of PIP objects.
+ * Each entry holds the unique address of the tile, the start and end wires
+ * and the direction of one PIP, so a routed net only costs 8 bytes per PIP.
+ *
+ * The list implements List&lt;PIP&gt; for compatibility: the list keeps copies of
+ * the PIPs added to it and {@link #get(int)} returns a new PIP for every call, so
+ * changing a PIP after it was added or read does not change the list, use
+ * {@link #set(int, PIP)} instead. Code iterating over many PIPs
+ * should use the primitive getters or {@link #forEachPIP(PIPVisitor)}.
+ *
+ * PIPs which cannot be packed (no tile or direction, a tile from another device,
+ * wires out of range) are kept as objects, this costs nothing as long as there
+ * are none.
+ */
+public class PIPList extends AbstractList<PIP> implements RandomAccess, Serializable {
+
+	private static final long serialVersionUID = -4585542046520958412L;
+
+	private static final int DIRECTION_BITS = 2;
+	private static final int WIRE_BITS = 19;
+	private static final int TILE_BITS = 64 - 2 * WIRE_BITS - DIRECTION_BITS;
+	private static final int END_SHIFT = DIRECTION_BITS;
+	private static final int START_SHIFT = END_SHIFT + WIRE_BITS;
+	private static final int TILE_SHIFT = START_SHIFT + WIRE_BITS;
+	private static final long WIRE_MASK = (1L << WIRE_BITS) - 1;
+	private static final long DIRECTION_MASK = (1L << DIRECTION_BITS) - 1;
+	/** Tile addresses below this limit can be packed, so no packed entry is LOOSE */
+	private static final int TILE_LIMIT = (1 << TILE_BITS) - 1;
+	/** Marks entries kept as objects in {@link #loose} */
+	private static final long LOOSE = -1L;
+
+	private static final PipDirection[] directions = PipDirection.values();
+
+	static {
+		assert directions.length <= (1 << DIRECTION_BITS);
+	}
+
+	/**
+	 * Receives the PIPs of a list without creating PIP objects.
+	 */
+	public interface PIPVisitor {
+		void visit(Tile tile, int startWire, int endWire, PipDirection direction);
+	}
+
+	private transient long[] packed;
+	/** PIPs which could not be packed, null until there is one */
+	private transient PIP[] loose;
+	private transient int size;
+	/** The device of the packed tiles, taken from the first PIP */
+	private transient Device device;
+
+	public PIPList() {
+		packed = new long[4];
+	}
+
+	public PIPList(Collection<? extends PIP> pips) {
+		packed = new long[Math.max(4, pips.size())];
+		addAll(pips);
+	}
+
+	/**
+	 * Creates a copy of another list.
+	 */
+	public PIPList(PIPList other) {
+		packed = Arrays.copyOf(other.packed, Math.max(4, other.size));
+		if (other.loose != null) {
+			loose = Arrays.copyOf(other.loose, packed.length);
+			for (int i = 0; i < other.size; i++) {
+				if (loose[i] != null)
+					loose[i] = loose[i].clone();
+			}
+		}
+		size = other.size;
+		device = other.device;
+	}
+
+	//========================================================================//
+	// Packing
+	//========================================================================//
+
+	/**
+	 * Packs a PIP, returns LOOSE if it does not fit.
+	 */
+	private long pack(Tile tile, int startWire, int endWire, PipDirection direction) {
+		if (tile == null || direction == null || tile.getDevice() == null)
+			return LOOSE;
+		if (device != null && tile.getDevice() != device)
+			return LOOSE;
+		int address = tile.getUniqueAddress();
+		if (address < 0 || address >= TILE_LIMIT)
+			return LOOSE;
+		if ((startWire & ~WIRE_MASK) != 0 || (endWire & ~WIRE_MASK) != 0)
+			return LOOSE;
+		device = tile.getDevice();
+		return ((long) address << TILE_SHIFT) | ((long) startWire << START_SHIFT) |
+				((long) endWire << END_SHIFT) | direction.ordinal();
+	}
+
+	private void store(int index, PIP pip, Tile tile, int startWire, int endWire, PipDirection direction) {
+		long value = pack(tile, startWire, endWire, direction);
+		packed[index] = value;
+		if (value == LOOSE) {
+			if (loose == null)
+				loose = new PIP[packed.length];
+			loose[index] = pip != null ? pip.clone() : new PIP(tile, startWire, endWire, direction);
+		} else if (loose != null) {
+			loose[index] = null;
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > packed.length) {
+			int length = Math.max(capacity, packed.length * 2);
+			packed = Arrays.copyOf(packed, length);
+			if (loose != null)
+				loose = Arrays.copyOf(loose, length);
+		}
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+	}
+
+	//========================================================================//
+	// Primitive access
+	//========================================================================//
+
+	public Tile getTile(int index) {
+		checkIndex(index);
+		long value = packed[index];
+		return value == LOOSE ? loose[index].getTile() : device.getTile((int) (value >>> TILE_SHIFT));
+	}
+
+	public int getStartWire(int index) {
+		checkIndex(index);
+		long value = packed[index];
+		return value == LOOSE ? loose[index].getStartWire() : (int) ((value >>> START_SHIFT) & WIRE_MASK);
+	}
+
+	public int getEndWire(int index) {
+		checkIndex(index);
+		long value = packed[index];
+		return value == LOOSE ? loose[index].getEndWire() : (int) ((value >>> END_SHIFT) & WIRE_MASK);
+	}
+
+	public PipDirection getDirection(int index) {
+		checkIndex(index);
+		long value = packed[index];
+		return value == LOOSE ? loose[index].getDirection() : directions[(int) (value & DIRECTION_MASK)];
+	}
+
+	/**
+	 * Adds a PIP without creating a PIP object.
+	 */
+	public void add(Tile tile, int startWire, int endWire, PipDirection direction) {
+		modCount++;
+		ensureCapacity(size + 1);
+		store(size++, null, tile, startWire, endWire, direction);
+	}
+
+	/**
+	 * Checks if the list has a PIP without creating a PIP object, the direction
+	 * is ignored as in {@link PIP#equals(Object)}.
+	 */
+	public boolean contains(Tile tile, int startWire, int endWire) {
+		if (tile == null || tile.getDevice() != device || device == null)
+			return contains(new PIP(tile, startWire, endWire));
+		long key = pack(tile, startWire, endWire, PipDirection.DIRECTIONAL);
+		if (key == LOOSE)
+			return contains(new PIP(tile, startWire, endWire));
+		for (int i = 0; i < size; i++) {
+			long value = packed[i];
+			if (value == LOOSE ? loose[i].equals(new PIP(tile, startWire, endWire)) :
+					(value & ~DIRECTION_MASK) == (key & ~DIRECTION_MASK))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Passes all PIPs of the list to a visitor, in order.
+	 */
+	public void forEachPIP(PIPVisitor visitor) {
+		for (int i = 0; i < size; i++) {
+			long value = packed[i];
+			if (value == LOOSE) {
+				PIP pip = loose[i];
+				visitor.visit(pip.getTile(), pip.getStartWire(), pip.getEndWire(), pip.getDirection());
+			} else {
+				visitor.visit(device.getTile((int) (value >>> TILE_SHIFT)),
+						(int) ((value >>> START_SHIFT) & WIRE_MASK),
+						(int) ((value >>> END_SHIFT) & WIRE_MASK),
+						directions[(int) (value & DIRECTION_MASK)]);
+			}
+		}
+	}
+
+	//========================================================================//
+	// List
+	//========================================================================//
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a new PIP with the values of an entry, see the class comment.
+	 */
+	@Override
+	public PIP get(int index) {
+		checkIndex(index);
+		long value = packed[index];
+		if (value == LOOSE)
+			return loose[index].clone();
+		return new PIP(device.getTile((int) (value >>> TILE_SHIFT)),
+				(int) ((value >>> START_SHIFT) & WIRE_MASK),
+				(int) ((value >>> END_SHIFT) & WIRE_MASK),
+				directions[(int) (value & DIRECTION_MASK)]);
+	}
+
+	@Override
+	public PIP set(int index, PIP pip) {
+		PIP old = get(index);
+		store(index, pip, pip.getTile(), pip.getStartWire(), pip.getEndWire(), pip.getDirection());
+		return old;
+	}
+
+	@Override
+	public boolean add(PIP pip) {
+		modCount++;
+		ensureCapacity(size + 1);
+		store(size++, pip, pip.getTile(), pip.getStartWire(), pip.getEndWire(), pip.getDirection());
+		return true;
+	}
+
+	@Override
+	public void add(int index, PIP pip) {
+		if (index < 0 || index > size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		modCount++;
+		ensureCapacity(size + 1);
+		System.arraycopy(packed, index, packed, index + 1, size - index);
+		if (loose != null)
+			System.arraycopy(loose, index, loose, index + 1, size - index);
+		size++;
+		store(index, pip, pip.getTile(), pip.getStartWire(), pip.getEndWire(), pip.getDirection());
+	}
+
+	@Override
+	public PIP remove(int index) {
+		PIP old = get(index);
+		modCount++;
+		System.arraycopy(packed, index + 1, packed, index, size - index - 1);
+		if (loose != null) {
+			System.arraycopy(loose, index + 1, loose, index, size - index - 1);
+			loose[size - 1] = null;
+		}
+		size--;
+		return old;
+	}
+
+	@Override
+	public void clear() {
+		modCount++;
+		if (loose != null)
+			Arrays.fill(loose, 0, size, null);
+		size = 0;
+		device = null;
+	}
+
+	/**
+	 * Finds a PIP by comparing the packed values, PIPs are equal if their
+	 * tiles and wires are, the direction is ignored as in {@link PIP#equals(Object)}.
+	 */
+	@Override
+	public int indexOf(Object o) {
+		if (!(o instanceof PIP))
+			return -1;
+		PIP pip = (PIP) o;
+		Tile tile = pip.getTile();
+		long key = tile == null || device == null || tile.getDevice() != device ? LOOSE :
+				pack(tile, pip.getStartWire(), pip.getEndWire(), PipDirection.DIRECTIONAL);
+		for (int i = 0; i < size; i++) {
+			long value = packed[i];
+			if (value == LOOSE) {
+				if (pip.equals(loose[i]))
+					return i;
+			} else if (key == LOOSE) {
+				if (pip.equals(get(i)))
+					return i;
+			} else if ((value & ~DIRECTION_MASK) == (key & ~DIRECTION_MASK)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return indexOf(o) >= 0;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		int index = indexOf(o);
+		if (index < 0)
+			return false;
+		remove(index);
+		return true;
+	}
+
+	//========================================================================//
+	// Serialization, the PIPs are written as objects like with an ArrayList
+	//========================================================================//
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(size);
+		for (int i = 0; i < size; i++)
+			out.writeObject(get(i));
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		int count = in.readInt();
+		packed = new long[Math.max(4, count)];
+		for (int i = 0; i < count; i++)
+			add((PIP) in.readObject());
+	}
+}
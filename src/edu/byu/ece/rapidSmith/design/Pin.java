@@ -84,6 +84,10 @@ public class Pin extends RoutingElement implements Serializable, Cloneable, Jack
 	private Net net;
 
 	private boolean isDeadEnd;
+	/**
+	 * Id of this pin in the netlist index of the design
+	 */
+	transient int netlistId = NetlistIndex.NO_ID;
 
 	/**
 	 * Constructor setting things to null and false.
@@ -249,6 +253,10 @@ public class Pin extends RoutingElement implements Serializable, Cloneable, Jack
 	 */
 	public void setNet(Net net) {
 		this.net = net;
+		NetlistIndex index = NetlistIndex.of(instance);
+		if (index != null) {
+			index.pinNetChanged(this);
+		}
 	}
 
 	/**
@@ -0,0 +1,613 @@
+/*
+ * Copyright (c) 2010 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.design;
+
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.PrimitiveType;
+import edu.byu.ece.rapidSmith.device.Tile;
+import edu.byu.ece.rapidSmith.device.WireEnumerator;
+import edu.byu.ece.rapidSmith.util.FileTools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Writes designs to XDL files. The instances and nets of a design are formatted
+ * into byte buffers in parallel, in chunks, and the chunks are written to the
+ * file in order as soon as they are done, so the memory used does not depend on
+ * the size of the design. The names of wires and tiles are encoded once and
+ * reused for every PIP.
+ *
+ * The output is the same, byte for byte, as the one of the sequential writer
+ * used before (line separator and charset of the platform), see
+ * {@link Design#saveXDLFile(Path, boolean, boolean)}.
+ *
+ * The writer keeps no state between writes except its settings, so one writer
+ * can write several designs at the same time.
+ */
+public class XDLWriter {
+
+	/** Number of instances or nets formatted by a single task */
+	private static final int CHUNK_SIZE = 256;
+
+	private final String nl = System.getProperty("line.separator");
+	private final Charset charset = Charset.defaultCharset();
+	/** True if ASCII characters are encoded as single bytes of the same value */
+	private final boolean asciiCompatible = charset.equals(StandardCharsets.UTF_8) ||
+			charset.equals(StandardCharsets.ISO_8859_1) || charset.equals(StandardCharsets.US_ASCII);
+
+	private boolean addComments = false;
+	private boolean sortPips = false;
+	private int threads = ForkJoinPool.getCommonPoolParallelism();
+
+	public XDLWriter() {
+	}
+
+	/**
+	 * Adds the same comments found in XDL designs created by the Xilinx xdl tool.
+	 */
+	public XDLWriter setAddComments(boolean addComments) {
+		this.addComments = addComments;
+		return this;
+	}
+
+	/**
+	 * Sorts the pins and PIPs of every net, so two designs can be compared textually.
+	 */
+	public XDLWriter setSortPips(boolean sortPips) {
+		this.sortPips = sortPips;
+		return this;
+	}
+
+	/**
+	 * Sets the number of threads used to format the design, 1 formats in the
+	 * calling thread.
+	 */
+	public XDLWriter setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+		return this;
+	}
+
+	/**
+	 * Writes a design to an XDL file.
+	 * @param design The design to write.
+	 * @param file The file to write, existing files are overwritten.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public void write(Design design, Path file) throws IOException {
+		Names names = new Names(design, charset);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			if (threads == 1) {
+				writeDesign(design, names, channel);
+			} else {
+				ForkJoinPool pool = new ForkJoinPool(threads);
+				try {
+					pool.submit(() -> {
+						writeDesign(design, names, channel);
+						return null;
+					}).get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while writing " + file, e);
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException)
+						throw (IOException) e.getCause();
+					if (e.getCause() instanceof RuntimeException)
+						throw (RuntimeException) e.getCause();
+					throw new RuntimeException(e.getCause());
+				} finally {
+					pool.shutdown();
+				}
+			}
+		}
+	}
+
+	private void writeDesign(Design design, Names names, FileChannel channel) throws IOException {
+		Out out = new Out();
+		writeHeader(design, out);
+		if (design.getModuleMap().size() > 0) {
+			writeModules(design, names, out);
+		}
+		if (!design.isHardMacro()) {
+			writeModuleInstanceComments(design, out);
+			flush(out, channel);
+			writeParallel(new ArrayList<>(design.getInstances()), this::writeInstance, channel);
+			out.append(nl);
+			writeNetComments(out);
+			flush(out, channel);
+			writeParallel(sortedByName(design.getNets()), (net, o) -> writeNet(net, names, o), channel);
+			out.append(nl);
+			writeSummary(design, out);
+		} else {
+			writeMacroSummary(design, out);
+		}
+		flush(out, channel);
+	}
+
+	//========================================================================//
+	// Sections
+	//========================================================================//
+
+	private void writeHeader(Design design, Out out) {
+		if (addComments) {
+			out.append(nl + "# =======================================================" + nl);
+			out.append("# " + Design.class.getCanonicalName() + " XDL Generation $Revision: 1.01$" + nl);
+			out.append("# time: " + FileTools.getTimeString() + nl + nl);
+			out.append("# =======================================================" + nl + nl + nl);
+
+			out.append("# =======================================================" + nl);
+			out.append("# The syntax for the design statement is:                " + nl);
+			out.append("# design <design_name> <part> <ncd version>;             " + nl);
+			out.append("# or                                                     " + nl);
+			out.append("# design <design_name> <device> <package> <speed> <ncd_version>" + nl);
+			out.append("# =======================================================" + nl);
+		}
+
+		for (String c : design.getComments()) {
+			out.append("# " + c + nl);
+		}
+
+		if (!design.isHardMacro()) {
+			out.append("design \"" + design.getName() + "\" " + design.getPartName() + " " + design.getNCDVersion() + " ," + nl);
+			out.append("  cfg \"");
+			for (Attribute attr : design.getAttributes()) {
+				out.append(nl + "       " + attr.toString());
+			}
+			out.append("\";" + nl + nl + nl);
+		} else {
+			out.append("design \"" + design.getName() + "\" " + design.getPartName() + ";" + nl + nl);
+		}
+	}
+
+	private void writeModules(Design design, Names names, Out out) {
+		if (addComments) {
+			out.append("# =======================================================" + nl);
+			out.append("# The syntax for modules is:" + nl);
+			out.append("#     module <name> <inst_name> ;" + nl);
+			out.append("#     port <name> <inst_name> <inst_pin> ;" + nl);
+			out.append("#     ." + nl);
+			out.append("#     ." + nl);
+			out.append("#     instance ... ;" + nl);
+			out.append("#     ." + nl);
+			out.append("#     ." + nl);
+			out.append("#     net ... ;" + nl);
+			out.append("#     ." + nl);
+			out.append("#     ." + nl);
+			out.append("#     endmodule <name> ;" + nl);
+			out.append("# =======================================================" + nl + nl);
+		}
+
+		for (Map.Entry<String, Module> entry : design.getModuleMap().entrySet()) {
+			String moduleName = entry.getKey();
+			Module module = entry.getValue();
+			if (addComments) {
+				out.append("# =======================================================" + nl);
+				out.append("# MODULE of \"" + moduleName + "\"" + nl);
+				out.append("# =======================================================" + nl);
+			}
+
+			if (module.getAnchor() == null) {
+				if (addComments) {
+					out.append("# This module is a routing only block" + nl);
+				}
+				continue;
+			}
+
+			out.append("module " + "\"" + moduleName + "\" " + "\"" + module.getAnchor().getName() + "\" , cfg \"");
+
+			for (Attribute attr : module.getAttributes()) {
+				out.append(attr.toString() + " ");
+			}
+			out.append("\";" + nl);
+			for (Port port : module.getPorts()) {
+				out.append("  port \"" + port.getName() + "\" \"" + port.getInstanceName() + "\" \"" + port.getPinName() + "\";" + nl);
+			}
+			for (Instance inst : module.getInstances()) {
+				String placed = inst.isPlaced()? "placed " + inst.getTile() + " " + inst.getPrimitiveSiteName() : "unplaced";
+				out.append("  inst \"" + inst.getName() + "\" \"" + inst.getType() + "\"," + placed + "  ," + nl);
+				out.append("    cfg \"");
+				for (Attribute attr : inst.getAttributes()) {
+					out.append(" " + attr.toString());
+				}
+				out.append(" \"" + nl + "    ;" + nl);
+			}
+
+			for (Net net : sortedByName(module.getNets())) {
+				writeNet(net, names, out);
+			}
+
+			out.append("endmodule \"" + moduleName + "\" ;" + nl + nl);
+		}
+	}
+
+	private void writeModuleInstanceComments(Design design, Out out) {
+		if (!addComments) {
+			return;
+		}
+		Collection<ModuleInstance> moduleInstances = design.getModuleInstances();
+		if (moduleInstances.size() > 0) {
+			out.append(nl);
+			out.append("#  =======================================================" + nl);
+			out.append("#  MODULE INSTANCES" + nl);
+			out.append("#  =======================================================" + nl);
+			for (ModuleInstance mi : moduleInstances) {
+				out.append("# instance \"" + mi.getName() + "\" \"" + mi.getModule().getName() + "\" , ");
+				if (mi.getAnchor() != null && mi.getAnchor().isPlaced()) {
+					out.append("placed " + mi.getAnchor().getTile() + " " +
+							mi.getAnchor().getPrimitiveSiteName() + " ;" + nl);
+				} else {
+					out.append("unplaced  ;" + nl);
+				}
+			}
+			out.append(nl);
+		}
+
+		out.append("#  =======================================================" + nl);
+		out.append("#  The syntax for instances is:" + nl);
+		out.append("#      instance <name> <sitedef>, placed <tile> <site>, cfg <string> ;" + nl);
+		out.append("#  or" + nl);
+		out.append("#      instance <name> <sitedef>, unplaced, cfg <string> ;" + nl);
+		out.append("# " + nl);
+		out.append("#  For typing convenience you can abbreviate instance to inst." + nl);
+		out.append("# " + nl);
+		out.append("#  For IOs there are two special keywords: bonded and unbonded" + nl);
+		out.append("#  that can be used to designate whether the PAD of an unplaced IO is" + nl);
+		out.append("#  bonded out. If neither keyword is specified, bonded is assumed." + nl);
+		out.append("# " + nl);
+		out.append("#  The bonding of placed IOs is determined by the site they are placed in." + nl);
+		out.append("# " + nl);
+		out.append("#  If you specify bonded or unbonded for an instance that is not an" + nl);
+		out.append("#  IOB it is ignored." + nl);
+		out.append("# " + nl);
+		out.append("#  Shown below are three examples for IOs. " + nl);
+		out.append("#     instance IO1 IOB, unplaced ;          # This will be bonded" + nl);
+		out.append("#     instance IO1 IOB, unplaced bonded ;   # This will be bonded" + nl);
+		out.append("#     instance IO1 IOB, unplaced unbonded ; # This will be unbonded" + nl);
+		out.append("#  =======================================================" + nl);
+	}
+
+	private void writeNetComments(Out out) {
+		if (!addComments) {
+			return;
+		}
+		out.append("#  ================================================" + nl);
+		out.append("#  The syntax for nets is:" + nl);
+		out.append("#     net <name> <type>," + nl);
+		out.append("#       outpin <inst_name> <inst_pin>," + nl);
+		out.append("#       ." + nl);
+		out.append("#       ." + nl);
+		out.append("#       inpin <inst_name> <inst_pin>," + nl);
+		out.append("#       ." + nl);
+		out.append("#       ." + nl);
+		out.append("#       pip <tile> <wire0> <dir> <wire1> , # [<rt>]" + nl);
+		out.append("#       ." + nl);
+		out.append("#       ." + nl);
+		out.append("#       ;" + nl);
+		out.append("# " + nl);
+		out.append("#  There are three available wire types: wire, power and ground." + nl);
+		out.append("#  If no type is specified, wire is assumed." + nl);
+		out.append("# " + nl);
+		out.append("#  Wire indicates that this a normal wire." + nl);
+		out.append("#  Power indicates that this net is tied to a DC power source." + nl);
+		out.append("#  You can use \"power\", \"vcc\" or \"vdd\" to specify a power net." + nl);
+		out.append("# " + nl);
+		out.append("#  Ground indicates that this net is tied to ground." + nl);
+		out.append("#  You can use \"ground\", or \"gnd\" to specify a ground net." + nl);
+		out.append("# " + nl);
+		out.append("#  The <dir> token will be one of the following:" + nl);
+		out.append("# " + nl);
+		out.append("#     Symbol Description" + nl);
+		out.append("#     ====== ==========================================" + nl);
+		out.append("#       ==   Bidirectional, unbuffered." + nl);
+		out.append("#       =>   Bidirectional, buffered in one direction." + nl);
+		out.append("#       =-   Bidirectional, buffered in both directions." + nl);
+		out.append("#       ->   Directional, buffered." + nl);
+		out.append("# " + nl);
+		out.append("#  No pips exist for unrouted nets." + nl);
+		out.append("#  ================================================" + nl);
+	}
+
+	private void writeSummary(Design design, Out out) {
+		if (!addComments) {
+			return;
+		}
+		int sliceCount = 0;
+		int bramCount = 0;
+		int dspCount = 0;
+		for (Instance instance : design.getInstances()) {
+			PrimitiveType type = instance.getType();
+			if (Design.sliceTypes.contains(type)) {
+				sliceCount++;
+			} else if (Design.dspTypes.contains(type)) {
+				dspCount++;
+			} else if (Design.bramTypes.contains(type)) {
+				bramCount++;
+			}
+		}
+
+		out.append("# =======================================================" + nl);
+		out.append("# SUMMARY" + nl);
+		out.append("# Number of Module Defs: " + design.getModuleMap().size() + nl);
+		out.append("# Number of Module Insts: " + design.getModuleInstances().size() + nl);
+		out.append("# Number of Primitive Insts: " + design.getInstances().size() + nl);
+		out.append("#     Number of SLICES: " + sliceCount + nl);
+		out.append("#     Number of DSP48s: " + dspCount + nl);
+		out.append("#     Number of BRAMs: " + bramCount + nl);
+		out.append("# Number of Nets: " + design.getNets().size() + nl);
+		out.append("# =======================================================" + nl + nl + nl);
+	}
+
+	private void writeMacroSummary(Design design, Out out) {
+		if (!addComments) {
+			return;
+		}
+		Module mod = design.getHardMacro();
+		out.append("# =======================================================" + nl);
+		out.append("# MACRO SUMMARY" + nl);
+		out.append("# Number of Module Insts: " + mod.getInstances().size() + nl);
+		HashMap<PrimitiveType, Integer> instTypeCount = new HashMap<PrimitiveType, Integer>();
+		for (Instance inst : mod.getInstances()) {
+			Integer count = instTypeCount.get(inst.getType());
+			if (count == null) {
+				instTypeCount.put(inst.getType(), 1);
+			} else {
+				count++;
+				instTypeCount.put(inst.getType(), count);
+			}
+		}
+		for (PrimitiveType type : instTypeCount.keySet()) {
+			out.append("#   Number of " + type.toString() + "s: " + instTypeCount.get(type) + nl);
+		}
+		out.append("# Number of Module Ports: " + mod.getPorts().size() + nl);
+		out.append("# Number of Module Nets: " + mod.getNets().size() + nl);
+		out.append("# =======================================================" + nl + nl + nl);
+	}
+
+	//========================================================================//
+	// Instances and Nets
+	//========================================================================//
+
+	private void writeInstance(Instance inst, Out out) {
+		String placed = inst.isPlaced()? "placed " + inst.getTile() +
+				" " + inst.getPrimitiveSiteName() : "unplaced";
+		String module = inst.getModuleInstanceName() == null? "" : "module \"" +
+				inst.getModuleInstanceName() + "\" \"" + inst.getModuleTemplate().getName() + "\" \"" +
+				inst.getModuleTemplateInstance().getName() + "\" ,";
+		out.append("inst \"" + inst.getName() + "\" \"" + inst.getType() + "\"," + placed + "  ," + module + nl);
+		out.append("  cfg \"");
+		for (Attribute attr : inst.getAttributes()) {
+			if (attr.getPhysicalName().charAt(0) == '_') {
+				out.append(nl + "      ");
+			}
+			out.append(" ");
+			out.append(attr.toString());
+		}
+		out.append(" \"" + nl + "  ;" + nl);
+	}
+
+	private static List<Net> sortedByName(Collection<Net> nets) {
+		List<Net> sorted = new ArrayList<>(nets);
+		sorted.sort(Comparator.comparing(Net::getName));
+		return sorted;
+	}
+
+	private void writeNet(Net net, Names names, Out out) {
+		WireEnumerator we = names.we;
+		out.append("  net \"" + net.getName() + "\" " + net.getType().toString() + ",");
+		if (net.getAttributes() != null) {
+			out.append("cfg \"");
+			for (Attribute attr : net.getAttributes()) {
+				out.append(" ");
+				out.append(attr.toString());
+			}
+			out.append("\",");
+		}
+		out.append(nl);
+		Stream<Pin> pinStream = net.getPins().stream();
+		if (sortPips) {
+			pinStream = pinStream.sorted(Comparator.<Pin, Boolean>comparing(p -> net.getSource() != p).thenComparing(Comparator.comparing(Pin::getInstanceName)));
+		}
+		pinStream.forEach(pin -> {
+			out.append("  " + pin.getPinType().toString().toLowerCase() + " \"" + pin.getInstanceName() + "\" " + pin.getName() + " ," + nl);
+		});
+
+		PIPList pips = net.getPIPs();
+		for (int i = 0; i < pips.size(); i++) {
+			if (pips.getTile(i) == null || pips.getDirection(i) == null) {
+				throw new RuntimeException("invalid pip for net " + net + ": " + pips);
+			}
+		}
+		if (sortPips) {
+			pips = new PIPList(pips);
+			pips.sort(Comparator.<PIP, String>comparing(pip -> pip.getTile().toString()).thenComparing(pip -> pip.getStartWireName(we)));
+		}
+		for (int i = 0; i < pips.size(); i++) {
+			out.append(PIP_PREFIX);
+			out.append(names.tileName(pips.getTile(i)));
+			out.append(SPACE);
+			out.append(names.wireName(pips.getStartWire(i)));
+			out.append(" " + pips.getDirection(i).connString + " ");
+			out.append(names.wireName(pips.getEndWire(i)));
+			out.append(" , " + nl);
+		}
+		out.append("  ;" + nl);
+	}
+
+	private static final byte[] PIP_PREFIX = {' ', ' ', 'p', 'i', 'p', ' '};
+	private static final byte[] SPACE = {' '};
+
+	/**
+	 * The encoded names of all wires and tiles of the design's device. The names
+	 * are encoded before the formatting starts and never changed, so the tasks
+	 * can share them without synchronization.
+	 */
+	private static class Names {
+		final WireEnumerator we;
+		final Charset charset;
+		/** Encoded wire names, by wire enumeration */
+		final byte[][] wireNames;
+		/** Encoded tile names, by unique tile address, null without a device */
+		final byte[][] tileNames;
+
+		Names(Design design, Charset charset) {
+			this.we = design.getWireEnumerator();
+			this.charset = charset;
+			String[] wires = we == null ? null : we.getWires();
+			wireNames = new byte[wires == null ? 0 : wires.length][];
+			for (int w = 0; w < wireNames.length; w++) {
+				wireNames[w] = String.valueOf(wires[w]).getBytes(charset);
+			}
+			Device dev = design.getDevice();
+			if (dev == null || dev.getTiles() == null) {
+				tileNames = null;
+			} else {
+				tileNames = new byte[dev.getRows() * dev.getColumns()][];
+				for (int row = 0; row < dev.getRows(); row++) {
+					for (int column = 0; column < dev.getColumns(); column++) {
+						tileNames[row * dev.getColumns() + column] =
+								String.valueOf(dev.getTile(row, column)).getBytes(charset);
+					}
+				}
+			}
+		}
+
+		byte[] tileName(Tile tile) {
+			if (tileNames == null) {
+				return String.valueOf(tile).getBytes(charset);
+			}
+			return tileNames[tile.getUniqueAddress()];
+		}
+
+		byte[] wireName(int wire) {
+			if (wire < 0 || wire >= wireNames.length) {
+				// Let the wire enumerator report the invalid wire
+				return String.valueOf(we.getWireName(wire)).getBytes(charset);
+			}
+			return wireNames[wire];
+		}
+	}
+
+	//========================================================================//
+	// Output
+	//========================================================================//
+
+	/**
+	 * Formats the items in chunks, in parallel, and writes the chunks in order.
+	 * At most a few chunks per thread are kept in memory.
+	 */
+	private <T> void writeParallel(List<T> items, BiConsumer<T, Out> formatter, FileChannel channel) throws IOException {
+		int chunks = (items.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		int window = Math.max(1, 4 * threads);
+		for (int first = 0; first < chunks; first += window) {
+			int last = Math.min(chunks, first + window);
+			byte[][] formatted = new byte[last - first][];
+			int base = first;
+			IntStream range = IntStream.range(first, last);
+			if (threads > 1) {
+				range = range.parallel();
+			}
+			range.forEach(c -> {
+				Out out = new Out();
+				int end = Math.min(items.size(), (c + 1) * CHUNK_SIZE);
+				for (int i = c * CHUNK_SIZE; i < end; i++) {
+					formatter.accept(items.get(i), out);
+				}
+				formatted[c - base] = out.toByteArray();
+			});
+			for (byte[] bytes : formatted) {
+				writeFully(channel, bytes, bytes.length);
+			}
+		}
+	}
+
+	private static void flush(Out out, FileChannel channel) throws IOException {
+		writeFully(channel, out.bytes, out.size);
+		out.size = 0;
+	}
+
+	private static void writeFully(FileChannel channel, byte[] bytes, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * A growable byte buffer encoding strings with the platform charset.
+	 */
+	private class Out {
+		private byte[] bytes = new byte[8192];
+		private int size;
+
+		private void ensure(int extra) {
+			if (size + extra > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+			}
+		}
+
+		void append(String s) {
+			int length = s.length();
+			if (asciiCompatible) {
+				ensure(length);
+				int start = size;
+				for (int i = 0; i < length; i++) {
+					char c = s.charAt(i);
+					if (c >= 0x80) {
+						size = start;
+						append(s.getBytes(charset));
+						return;
+					}
+					bytes[size++] = (byte) c;
+				}
+			} else {
+				append(s.getBytes(charset));
+			}
+		}
+
+		void append(byte[] b) {
+			ensure(b.length);
+			System.arraycopy(b, 0, bytes, size, b.length);
+			size += b.length;
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(bytes, size);
+		}
+	}
+}
@@ -38,6 +38,7 @@ import edu.byu.ece.rapidSmith.device.Tile;
 import edu.byu.ece.rapidSmith.device.Utils;
 import edu.byu.ece.rapidSmith.device.WireEnumerator;
 import edu.byu.ece.rapidSmith.util.MessageGenerator;
+import edu.byu.ece.rapidSmith.util.PartNameTools;
 import edu.byu.ece.rapidSmith.util.StringPool;
 
 import java.io.BufferedInputStream;
@@ -97,12 +98,25 @@ public class DesignParser{
 		this.design = design;
 	}
 
+	/**
+	 * Makes the parser use a loaded device instead of loading the device of
+	 * the part named in the XDL file. Files for other parts are rejected when
+	 * their header is read.
+	 * @param dev The device to use.
+	 */
+	public void setDevice(Device dev){
+		this.dev = dev;
+	}
+
 	private BufferedInputStream reader;
 	
 	private Path fileName;
 	
 	private ParserState state;
 	
+	/** Stop after the design name, see {@link #parseDesignName()} */
+	private boolean headerOnly = false;
+	
 	private int lineNumber;
 	
 	/** A unique set of strings used to avoid duplicate strings in memory */
@@ -185,6 +199,10 @@ public class DesignParser{
 						if(idx > 0){
 							parseToken(new String(buffer,0, idx));
 							idx = 0;
+							if(headerOnly && state.equals(ParserState.PART_NAME)){
+								reader.close();
+								return design;
+							}
 						}
 						break;
 					case '#':
@@ -205,6 +223,19 @@ public class DesignParser{
 		return design;
 	}
 
+	/**
+	 * Reads only the design name from the header of the XDL file. Nothing
+	 * after the name is parsed, so no device is loaded.
+	 * @return The name of the design, null if the file has no header.
+	 */
+	public String parseDesignName(){
+		if(design == null){
+			design = new Design();
+		}
+		headerOnly = true;
+		return parseXDL().getName();
+	}
+
 	Tile tempTile;
 	
 	/**
@@ -237,7 +268,16 @@ public class DesignParser{
 				else{
 					state = ParserState.NCD_VERSION;					
 				}
-				design.setPartName(pool.getUnique(token));
+				if(dev == null){
+					design.setPartName(pool.getUnique(token));
+				}
+				else if(PartNameTools.removeSpeedGrade(token).equals(dev.getPartName())){
+					design.setPartName(pool.getUnique(token), dev);
+				}
+				else{
+					throw new IllegalArgumentException("Design " + design.getName() + " is for part " +
+							token + ", not " + dev.getPartName() + " in file " + fileName);
+				}
 				we = design.getWireEnumerator();
 				dev = design.getDevice();
 				break;
@@ -471,7 +511,6 @@ public class DesignParser{
 			case NET_STATEMENT:
 				if(token.equals(PIP)){
 					currPIP = new PIP();
-					currNet.addPIP(currPIP);
 					state = ParserState.PIP_TILE; 
 				}
 				else if(token.equals(INPIN)){
@@ -560,6 +599,8 @@ public class DesignParser{
 							token + " found on line " + lineNumber);
 				}
 				currPIP.setEndWire(wire1);
+				// Nets pack their PIPs, so the PIP is added once it is complete
+				currNet.addPIP(currPIP);
 				state = ParserState.NET_STATEMENT; 
 				break;
 			case MODULE_NAME:
@@ -81,6 +81,10 @@ public class Device implements Serializable{
 	private ArrayList<PrimitiveSite[]> primitiveSiteIndex;
 	/** Created on demand when user calls getCompatibleSites(), where the ArrayList index is the ordinal of the PrimitiveType */
 	private ArrayList<PrimitiveSite[]> compatibleSiteIndex;
+	/** Created on demand when user calls getSiteSpatialIndex() */
+	private SiteSpatialIndex siteSpatialIndex;
+	/** Created on demand when user calls getWireReachability() */
+	private WireReachability wireReachability;
 	/** A set of all TileTypes that have switch matrices in them */
 	private HashSet<TileType> switchMatrixTypes;
 
@@ -535,6 +539,19 @@ public class Device implements Serializable{
 		return compatibleSiteIndex;
 	}
 
+	/**
+	 * This method will get (create if null) a spatial index of the primitive
+	 * sites of this device, which finds the nearest (free) sites of a type and
+	 * the sites in a region without scanning all sites of the type.
+	 * @return The spatial index of the primitive sites.
+	 */
+	public SiteSpatialIndex getSiteSpatialIndex(){
+		if(siteSpatialIndex == null){
+			siteSpatialIndex = new SiteSpatialIndex(this);
+		}
+		return siteSpatialIndex;
+	}
+
 	/**
 	 * This method will get all primitive sites with the same base type as
 	 * that passed as a parameter type.  This does not get all
@@ -728,131 +745,38 @@ public class Device implements Serializable{
 	 * @param we The corresponding wire enumerator for this device.
 	 */
 	public void populateSinkPins(WireEnumerator we){
-		HashSet<Integer> setOfExternalPrimitivePins = new HashSet<Integer>();
-		HashSet<TileType> switchMatrixTileTypes = getSwitchMatrixTypes();
-		int watchDog = 0;
-
-		for(String wire : we.getWires()) {
-			int w = we.getWireEnum(wire);
-			if(we.getWireType(w).equals(WireType.SITE_SINK)){
-				setOfExternalPrimitivePins.add(w);
-			}
-		}
-
+		wireReachability = WireReachability.analyze(this, we);
 		for(Tile[] tileArray : tiles){
-			for (Tile tile : tileArray) {
-				// Only get the switch box tiles
-//System.out.println("===========================================");
-//System.out.println(tile.getType().name());
-//System.out.println("===========================================");
-
-
-				if (switchMatrixTileTypes.contains(tile.getType())) {
-					if(tile.getWireHashMap() == null) continue;
-					for(Integer wire : tile.getWireHashMap().keySet()){
-						if(we.getWireType(wire).equals(WireType.INT_SINK)){
-							int currINTSinkWire = wire;
-							boolean debug = false;
-							if(tile.getName().equals("INT_X12Y1") && currINTSinkWire == we.getWireEnum("IMUX_B18")){
-								debug = false;
-							}
-//System.out.println("Wire:"+we.getWireName(wire));
-							// There should only be one wire that leaves the tile
-							for (WireConnection w : tile.getWireHashMap().get(wire)) {
-								if(w.getColumnOffset() != 0 || w.getRowOffset() != 0){
-
-									Stack<Tile> tileStack = new Stack<Tile>();
-									Stack<WireConnection> wireStack = new Stack<WireConnection>();
-									HashSet<Node> visited = new HashSet<Node>();
-
-									tileStack.push(tile);
-									wireStack.push(new WireConnection(wire,0,0,true));
-									if(debug) System.out.println("PUSH: " + tile + " " + we.getWireName(wire));
-									watchDog = 0;
-									while (!tileStack.isEmpty() && watchDog < 1000) {   //100
-										watchDog++;
-										Tile t1 = tileStack.pop();
-										WireConnection w1 = wireStack.pop();
-										if(debug) System.out.println("  POP: " + t1 + " " + we.getWireName(w1.getWire()));
-										WireConnection[] connections = t1.getWireHashMap().get(w1.getWire());
-										if(connections == null || visited.contains(new Node(t1,w1.getWire(),null,0))){
-											continue;
-										}
-//System.out.println("  W1:"+we.getWireName(w1.getWire()));
-										for (WireConnection wire2 : connections) {
-
-//System.out.println("    Wire2:"+we.getWireName(wire2.getWire()));
-//System.out.println("Wire: "+we.getWireName(wire2.getWire())+"  Rowoffset: "+wire2.getRowOffset()+"  ColOffset: "+wire2.getColumnOffset());
-
-//					if(we.getWireName(wire2.getWire()).contains("CLK") && !switchMatrixTileTypes.contains(wire2.getTile(t1).getType()))
-//						System.out.println("found CLK (wire2) on Tile "+wire2.getTile(t1).getName());
-//					if(we.getWireName(w1.getWire()).contains("CLK") && !switchMatrixTileTypes.contains(t1.getType()))
-//
-											System.out.println("found CLK (w1) on Tile "+t1.getName());
-//================================================================
-// added for Spartan6 adaption
-//----------------------------------------------------------------					
-											if(setOfExternalPrimitivePins.contains(wire2.getWire()) && !switchMatrixTileTypes.contains(wire2.getTile(t1).getType())){
-//================================================================
-
-												SinkPin found = wire2.getTile(t1).getSinks().get(wire2.getWire());
-												int xOffset = (tile.getColumn() - wire2.getTile(t1).getColumn());
-												int yOffset = (tile.getRow() - wire2.getTile(t1).getRow());
-
-
-//												System.out.println(xOffset+" "+yOffset+"   Tile "+tile.getName()+" x:"+tile.getColumn()+" y:"+tile.getRow()+" Tile1 "+wire2.getTile(t1).getName()+"    t1:"+t1.getName()+" x:"+wire2.getTile(t1).getColumn()+" y:"+wire2.getTile(t1).getRow()+"  Wire "+we.getWireName(wire2.getWire()));
-												if(found == null){
-													/*System.out.println("Null Sink: " + wire2.getTile(this, t1) + " " + we.getWireName(wire2.getWire()));
-													for(Integer sink : wire2.getTile(this, t1).getSinks().keySet()){
-														System.out.println("  " + we.getWireName(sink));
-													}
-													System.out.println("SOURCES: ");
-													for(Integer source : wire2.getTile(this, t1).getSources()){
-														System.out.println("  " + we.getWireName(source));
-													}*/
-//													System.out.println(xOffset+" "+yOffset+"   Tile "+tile.getName()+" x:"+tile.getColumn()+" y:"+tile.getRow()+" Tile1 "+wire2.getTile(t1).getName()+"    t1:"+t1.getName()+" x:"+wire2.getTile(t1).getColumn()+" y:"+wire2.getTile(t1).getRow()+"  Wire "+we.getWireName(wire2.getWire()));
-
-//													System.out.println("skip!  watchdog:"+watchDog);
-													continue;
-												}
-//												System.out.println("Eintrag!");
-
-												found.switchMatrixSinkWire = currINTSinkWire;
-												found.switchMatrixTileOffset = (xOffset << 16) | (yOffset & 0xFFFF);
-
-												if(debug) System.out.println("  FOUND: " + wire2.getTile(t1) + " " + we.getWireName(wire2.getWire()) +" xOffset="+ xOffset + " yOffset=" + yOffset);
-
-												if(debug) System.out.println("  SECOND: " + wire2.getTile(t1) + " " + we.getWireName(wire2.getWire()));
-												if(!visited.contains(new Node(t1,w1.getWire(),null,0))) {
-													tileStack.push(wire2.getTile(t1));
-													wireStack.push(wire2);
-												}
-											}
-//================================================================
-// added for Spartan6 adaption
-//----------------------------------------------------------------
-											else if(wire2.getTile(t1) != null && (!switchMatrixTileTypes.contains(wire2.getTile(t1).getType()) || we.getWireName(wire2.getWire()).contains("CLK"))){
-//================================================================
-												if(debug) System.out.println("  POTENTIAL: " + wire2.getTile(t1) + " " + we.getWireName(wire2.getWire()));
-												if(!visited.contains(new Node(t1,w1.getWire(),null,0))) {
-													tileStack.push(wire2.getTile(t1));
-													wireStack.push(wire2);
-												}
-											}
-										}
-										visited.add(new Node(t1,w1.getWire(),null,0));
-									}
-									tileStack.clear();
-									wireStack.clear();
-								}
-							}
-						}
-					}
+			for(Tile sinkTile : tileArray){
+				if(sinkTile.getSinks() == null) continue;
+				for(int wire : sinkTile.getSinks().keyArray()){
+					List<Node> switchBoxSinks = wireReachability.getSwitchBoxSinks(sinkTile, wire);
+					if(switchBoxSinks.isEmpty()) continue;
+					// The switch box found last by the sink pin walk wins
+					Node sink = switchBoxSinks.get(switchBoxSinks.size() - 1);
+					SinkPin found = sinkTile.getSinks().get(wire);
+					int xOffset = (sink.getTile().getColumn() - sinkTile.getColumn());
+					int yOffset = (sink.getTile().getRow() - sinkTile.getRow());
+					found.switchMatrixSinkWire = sink.getWire();
+					found.switchMatrixTileOffset = (xOffset << 16) | (yOffset & 0xFFFF);
 				}
 			}
 		}
 	}
 
+	/**
+	 * Gets the precomputed wire reachability summaries of this device. On the
+	 * first call they are read from the file written with the device file, or
+	 * computed if there is none (populateSinkPins() computes them as well).
+	 * @return The wire reachability summaries of this device.
+	 */
+	public WireReachability getWireReachability(){
+		if(wireReachability == null){
+			wireReachability = WireReachability.loadOrAnalyze(this, getWireEnumerator());
+		}
+		return wireReachability;
+	}
+
 	//========================================================================//
 	// Object Compact Methods
 	//========================================================================//
@@ -1230,12 +1154,6 @@ public class Device implements Serializable{
 				wireArrays.add(tmp);
 			}
 
-			//Create a set of Integer objects to avoid duplication
-			Integer[] allInts = new Integer[getFamilyWireCount(fileName)];
-			for (int i = 0; i < allInts.length; i++) {
-				allInts[i] = new Integer(i);
-			}
-
 			//=======================================================//
 			/* - wireConnectionPool -                                */
 			//=======================================================//
@@ -1249,12 +1167,12 @@ public class Device implements Serializable{
 			/* - tileSinksPool -                                     */
 			//=======================================================//
 			size = his.readInt();
-			ArrayList<HashMap<Integer,SinkPin>> sinks = new ArrayList<HashMap<Integer,SinkPin>>();
+			ArrayList<IntHashMap<SinkPin>> sinks = new ArrayList<IntHashMap<SinkPin>>();
 			for(int i=0; i < size; i++){
 				int length = his.readInt();
-				HashMap<Integer,SinkPin> tmp = new HashMap<Integer,SinkPin>();
+				IntHashMap<SinkPin> tmp = new IntHashMap<SinkPin>(length);
 				for(int j = 0; j < length; j++){
-					tmp.put(allInts[his.readInt()], new SinkPin(his.readInt(),his.readInt()));
+					tmp.put(his.readInt(), new SinkPin(his.readInt(),his.readInt()));
 				}
 				sinks.add(tmp);
 			}
@@ -1322,9 +1240,9 @@ public class Device implements Serializable{
 			/* - primitivePinPool -                                  */
 			//=======================================================//
 			size = his.readInt();
-			ArrayList<HashMap<String,Integer>> primitivePinMaps = new ArrayList<HashMap<String,Integer>>();
+			ArrayList<StringIntHashMap> primitivePinMaps = new ArrayList<StringIntHashMap>();
 			for(int i=0; i < size; i++){
-				primitivePinMaps.add(FileTools.readHashMap(his, allInts));
+				primitivePinMaps.add(FileTools.readPinMap(his));
 			}
 
 			//=======================================================//
@@ -1405,7 +1323,7 @@ public class Device implements Serializable{
 					if(t.getPrimitiveSites() != null){
 						for(PrimitiveSite ps : t.getPrimitiveSites()){
 							bw.write("  PrimitiveSite: " + ps.toString() + " " + ps.getType() + nl);
-							HashMap<String,Integer> tmp = ps.getPins();
+							StringIntHashMap tmp = ps.getPins();
 							String[] keys = new String[tmp.size()];
 							keys = tmp.keySet().toArray(keys);
 							Arrays.sort(keys);
@@ -1416,7 +1334,7 @@ public class Device implements Serializable{
 					}
 
 					// Sinks
-					HashMap<Integer, SinkPin> tmp = t.getSinks();
+					IntHashMap<SinkPin> tmp = t.getSinks();
 					Integer[] keys = new Integer[tmp.size()];
 					keys = tmp.keySet().toArray(keys);
 					Arrays.sort(keys);
@@ -1467,54 +1385,4 @@ public class Device implements Serializable{
 			MessageGenerator.briefErrorAndExit("Error writing device debug file");
 		}
 	}
-
-	private int getFamilyWireCount(String fileName){
-		int end = fileName.lastIndexOf(File.separator);
-		int start = fileName.lastIndexOf(File.separator, end-1);
-		FamilyType familyType = FamilyType.valueOf(fileName.substring(start+1, end).toUpperCase());
-		switch(familyType){
-			case ARTIX7:
-				return 50309;
-			case KINTEX7:
-				return 42123;
-			case SPARTAN2:
-				return 4041;
-			case SPARTAN2E:
-				return 4693;
-			case SPARTAN3:
-				return 3901;
-			case SPARTAN3A:
-				return 6284;
-			case SPARTAN3ADSP:
-				return 8842;
-			case SPARTAN3E:
-				return 6745;
-			case SPARTAN6:
-//================================================================
-// added for Spartan6 adaption
-//----------------------------------------------------------------
-				return 100000;//46932;
-//================================================================
-			case VIRTEX:
-				return 4081;
-			case VIRTEX2:
-				return 5283;
-			case VIRTEX2P:
-				return 23497;
-			case VIRTEX4:
-				return 57631;
-			case VIRTEX5:
-				return 72523;
-			case VIRTEX6:
-				return 46781;
-			case VIRTEX7:
-				return 53331;
-			case VIRTEXE:
-				return 4224;
-			case ZYNQ:
-				return 67919;
-			default:
-				return 0;
-		}
-	}
 }
@@ -254,6 +254,9 @@ public class DeviceFilesCreator{
 			// Write the Device to File
 			parser.getDevice().writeDeviceToCompactFile(deviceFileName);
 
+			// Write the wire reachability summaries next to it
+			writeWireReachability(parser.getDevice(), we);
+
 			// Remove backwards edges
 			//removeBackwardsEdgesFromDevice(partName);
 			//TODO commented out until it is corrected for Spartan 6
@@ -409,6 +412,23 @@ public class DeviceFilesCreator{
 
 		// Overwrite old file
 		dev.writeDeviceToCompactFile(FileDeviceDatabase.getDeviceFileName(partName));
+		writeWireReachability(dev, we);
+	}
+
+	/**
+	 * Computes the wire reachability summaries of a device and writes them next to
+	 * the device file, so they are not computed again whenever the device is used.
+	 * @param dev The device, as written to the device file.
+	 * @param we The wire enumerator of the device.
+	 */
+	private static void writeWireReachability(Device dev, WireEnumerator we){
+		try{
+			WireReachability.analyze(dev, we).save(WireReachability.getCacheFile(dev));
+		}
+		catch(IOException e){
+			MessageGenerator.briefError("Warning: could not write the wire reachability file of " +
+					dev.getPartName() + ": " + e.getMessage());
+		}
 	}
 
 	/**
@@ -22,7 +22,8 @@ package edu.byu.ece.rapidSmith.device;
 
 import java.io.Serializable;
 import java.util.Arrays;
-import java.util.HashMap;
+
+import edu.byu.ece.rapidSmith.device.helper.StringIntHashMap;
 
 /**
  * This is a helper class to help keep the Device files compact.
@@ -31,9 +32,9 @@ import java.util.HashMap;
 public class PrimitivePinMap implements Serializable {
 
 	private static final long serialVersionUID = -6398806038703155389L;
-	public HashMap<String,Integer> pins;
+	public StringIntHashMap pins;
 	
-	public PrimitivePinMap(HashMap<String, Integer> pins) {
+	public PrimitivePinMap(StringIntHashMap pins) {
 		this.pins = pins;
 	}
 
@@ -20,6 +20,7 @@
  */
 package edu.byu.ece.rapidSmith.device;
 
+import edu.byu.ece.rapidSmith.device.helper.StringIntHashMap;
 import edu.byu.ece.rapidSmith.util.FamilyType;
 import edu.byu.ece.rapidSmith.util.PartNameTools;
 
@@ -42,7 +43,7 @@ public class PrimitiveSite implements Serializable{
 	/** The tile where this site resides */
 	protected Tile tile;
 	/** Keeps track of all the in/out pins in the primitive with their wire enumeration value */
-	protected HashMap<String,Integer> pins;
+	protected StringIntHashMap pins;
 	/** The X coordinate of the instance (ex: SLICE_X#Y5) */
 	protected int instanceX;
 	/** The Y coordinate of the instance (ex: SLICE_X5Y#) */
@@ -57,7 +58,7 @@ public class PrimitiveSite implements Serializable{
 	public PrimitiveSite(){
 		name = null;
 		tile = null;
-		pins = new HashMap<String,Integer>();
+		pins = new StringIntHashMap();
 		instanceX = -1;
 		instanceY = -1;
 	}
@@ -114,7 +115,7 @@ public class PrimitiveSite implements Serializable{
 	 * the internal to external name mappings.
 	 * @return the pins of this primitive site.
 	 */
-	public HashMap<String, Integer> getPins(){
+	public StringIntHashMap getPins(){
 		return pins;
 	}
 	
@@ -124,7 +125,7 @@ public class PrimitiveSite implements Serializable{
 	 * @param pins The mapping of input/output pins from internal to 
 	 * external names.
 	 */
-	public void setPins(HashMap<String, Integer> pins) {
+	public void setPins(StringIntHashMap pins) {
 		this.pins = pins;
 	} 
 	
@@ -135,7 +136,7 @@ public class PrimitiveSite implements Serializable{
 	 * @param externalPin The external wire integer of the mapping.
 	 */
 	public void addPin(String internalPinName, Integer externalPin){
-		this.pins.put(internalPinName, externalPin);
+		this.pins.put(internalPinName, externalPin.intValue());
 	}
 	
 	/**
@@ -146,7 +147,8 @@ public class PrimitiveSite implements Serializable{
 	 * wire name. 
 	 */
 	public Integer getExternalPinWireEnum(String internalName){
-		return this.pins.get(internalName);
+		int wire = this.pins.getInt(internalName);
+		return wire == StringIntHashMap.NO_VALUE ? null : wire;
 	}
 	
 	/**
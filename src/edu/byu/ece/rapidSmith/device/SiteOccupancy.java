@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2010 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.device;
+
+/**
+ * The free/used state of the primitive sites of a device, as an overlay of a
+ * {@link SiteSpatialIndex}. For every node of the index trees it stores the
+ * number of free sites in the subtree, so nearest free site queries skip fully
+ * used regions. Marking a site takes logarithmic time.
+ *
+ * A design keeps its occupancy up to date, see
+ * {@link edu.byu.ece.rapidSmith.design.Design#getSiteOccupancy()}. This class is
+ * not thread safe.
+ */
+public class SiteOccupancy {
+
+	private final SiteSpatialIndex index;
+	/** Number of free sites of every subtree, indexed by [type][tree position] */
+	final int[][] freeCount;
+	/** State of every site, indexed by [type][tree position] */
+	private final boolean[][] used;
+	private int usedSites;
+
+	/**
+	 * Creates an occupancy with all sites free.
+	 */
+	public SiteOccupancy(SiteSpatialIndex index) {
+		this.index = index;
+		freeCount = new int[index.getNumberOfTypes()][];
+		used = new boolean[index.getNumberOfTypes()][];
+		for (int t = 0; t < freeCount.length; t++) {
+			freeCount[t] = index.createFreeCounts(t);
+			used[t] = new boolean[index.getTreeSize(t)];
+		}
+	}
+
+	public SiteSpatialIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Checks if a site is marked as used.
+	 */
+	public boolean isUsed(PrimitiveSite site) {
+		int p = index.getPosition(site);
+		if (p < 0)
+			return false;
+		return used[site.getType().ordinal()][p];
+	}
+
+	/**
+	 * Marks a site as used or free.
+	 * @return True if the state of the site changed.
+	 */
+	public boolean setUsed(PrimitiveSite site, boolean isUsed) {
+		int p = index.getPosition(site);
+		if (p < 0)
+			return false;
+		int type = site.getType().ordinal();
+		if (used[type][p] == isUsed)
+			return false;
+		used[type][p] = isUsed;
+		int delta = isUsed ? -1 : 1;
+		int[] free = freeCount[type];
+		for (; p >= 0; p = index.getParent(type, p))
+			free[p] += delta;
+		usedSites -= delta;
+		return true;
+	}
+
+	/**
+	 * Marks all sites as free.
+	 */
+	public void clear() {
+		for (int t = 0; t < freeCount.length; t++) {
+			freeCount[t] = index.createFreeCounts(t);
+			used[t] = new boolean[index.getTreeSize(t)];
+		}
+		usedSites = 0;
+	}
+
+	/**
+	 * Returns the number of sites marked as used.
+	 */
+	public int getNumberOfUsedSites() {
+		return usedSites;
+	}
+
+	/**
+	 * Returns the number of free sites of exactly the given type.
+	 */
+	public int getNumberOfFreeSites(PrimitiveType type) {
+		int[] free = freeCount[type.ordinal()];
+		if (free == null || free.length == 0)
+			return 0;
+		// the root of the tree is the node of the range [0, length)
+		return free[free.length >>> 1];
+	}
+}
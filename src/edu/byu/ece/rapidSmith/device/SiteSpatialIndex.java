@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2010 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.device;
+
+import edu.byu.ece.rapidSmith.constraints.AreaGroupRange;
+import edu.byu.ece.rapidSmith.util.FamilyType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A spatial index over the primitive sites of a device. There is one balanced
+ * 2-d tree per primitive type, keyed by the column and row of the site's tile
+ * (the coordinates of {@link Device#getTile(int, int)}), and a second one keyed by
+ * the X/Y coordinates of the site name (SLICE_X5Y10), which are the coordinates
+ * used by area group ranges.
+ *
+ * Nearest, k-nearest and rectangle queries take logarithmic time. The nearest
+ * queries can be restricted to free sites with a {@link SiteOccupancy}, which
+ * keeps the number of free sites of every subtree so fully used regions are
+ * skipped. Distances are Manhattan distances in tiles.
+ *
+ * The index is immutable and shared, use {@link Device#getSiteSpatialIndex()}.
+ */
+public class SiteSpatialIndex {
+
+	private final Device dev;
+	/** Tree of every primitive type keyed by tile column/row, or null if there are no sites */
+	private final SiteTree[] tileTrees;
+	/** Tree of every primitive type keyed by the site name X/Y, or null */
+	private final SiteTree[] instanceTrees;
+	/** Position of every site in the tile tree of its type */
+	private final HashMap<PrimitiveSite, Integer> positions;
+
+	SiteSpatialIndex(Device dev) {
+		this.dev = dev;
+		PrimitiveType[] types = PrimitiveType.values();
+		tileTrees = new SiteTree[types.length];
+		instanceTrees = new SiteTree[types.length];
+		positions = new HashMap<>();
+		for (PrimitiveType type : types) {
+			PrimitiveSite[] sites = dev.getAllPrimitiveSitesOfType(type);
+			if (sites == null)
+				continue;
+			SiteTree tree = new SiteTree(sites, true);
+			tileTrees[type.ordinal()] = tree;
+			for (int p = 0; p < tree.sites.length; p++)
+				positions.put(tree.sites[p], p);
+			instanceTrees[type.ordinal()] = new SiteTree(sites, false);
+		}
+	}
+
+	public Device getDevice() {
+		return dev;
+	}
+
+	/**
+	 * Finds the site nearest to the given tile that can hold the given type.
+	 * @param type The primitive type to place.
+	 * @param tile The tile to measure the distance from.
+	 * @param occupancy The used sites to skip, or null to consider all sites.
+	 * @return The nearest site or null if there is no such site.
+	 */
+	public PrimitiveSite getNearestSite(PrimitiveType type, Tile tile, SiteOccupancy occupancy) {
+		return getNearestSite(type, true, tile.getColumn(), tile.getRow(), occupancy);
+	}
+
+	/**
+	 * Finds the site nearest to the given tile coordinates.
+	 * @param type The primitive type.
+	 * @param compatible If true, sites of all types compatible with type are considered
+	 * (SLICEM sites for a SLICEL), otherwise only sites of exactly that type.
+	 * @param column The tile column to measure the distance from.
+	 * @param row The tile row to measure the distance from.
+	 * @param occupancy The used sites to skip, or null to consider all sites.
+	 * @return The nearest site or null if there is no such site.
+	 */
+	public PrimitiveSite getNearestSite(PrimitiveType type, boolean compatible, int column, int row,
+										SiteOccupancy occupancy) {
+		List<PrimitiveSite> nearest = getNearestSites(type, compatible, column, row, 1, occupancy);
+		return nearest.isEmpty() ? null : nearest.get(0);
+	}
+
+	/**
+	 * Finds the k sites nearest to the given tile coordinates.
+	 * @return Up to k sites, sorted by increasing distance.
+	 * @see #getNearestSite(PrimitiveType, boolean, int, int, SiteOccupancy)
+	 */
+	public List<PrimitiveSite> getNearestSites(PrimitiveType type, boolean compatible, int column, int row,
+											   int k, SiteOccupancy occupancy) {
+		if (k <= 0)
+			return Collections.emptyList();
+		checkOccupancy(occupancy);
+		// Max heap of {distance, type, position} candidates, the worst on top
+		PriorityQueue<long[]> best = new PriorityQueue<>(k + 1, (a, b) -> Long.compare(b[0], a[0]));
+		for (PrimitiveType t : getTypes(type, compatible)) {
+			SiteTree tree = tileTrees[t.ordinal()];
+			if (tree == null)
+				continue;
+			int[] free = occupancy == null ? null : occupancy.freeCount[t.ordinal()];
+			tree.nearest(0, tree.sites.length, 0, column, row, k, free, t.ordinal(), best);
+		}
+		long[][] result = best.toArray(new long[best.size()][]);
+		Arrays.sort(result, Comparator.comparingLong((long[] a) -> a[0]));
+		List<PrimitiveSite> sites = new ArrayList<>(result.length);
+		for (long[] r : result)
+			sites.add(tileTrees[(int) r[1]].sites[(int) r[2]]);
+		return sites;
+	}
+
+	/**
+	 * Returns all sites in the rectangle of tile coordinates (inclusive).
+	 */
+	public List<PrimitiveSite> getSitesInRectangle(PrimitiveType type, boolean compatible,
+												   int minColumn, int minRow, int maxColumn, int maxRow) {
+		List<PrimitiveSite> result = new ArrayList<>();
+		for (PrimitiveType t : getTypes(type, compatible)) {
+			SiteTree tree = tileTrees[t.ordinal()];
+			if (tree != null)
+				tree.range(0, tree.sites.length, 0, minColumn, minRow, maxColumn, maxRow, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns all sites of an area group range. The range is given in the X/Y
+	 * coordinates of the site names and includes its bounds, see
+	 * {@link AreaGroupRange#containsPoint(int, int)}.
+	 */
+	public List<PrimitiveSite> getSitesInRange(AreaGroupRange range) {
+		List<PrimitiveSite> result = new ArrayList<>();
+		for (PrimitiveType t : getTypes(range.getPrimitiveType(), true)) {
+			SiteTree tree = instanceTrees[t.ordinal()];
+			if (tree != null)
+				tree.range(0, tree.sites.length, 0, range.getLowerLeftX(), range.getLowerLeftY(),
+						range.getUpperRightX(), range.getUpperRightY(), result);
+		}
+		return result;
+	}
+
+	int getNumberOfTypes() {
+		return tileTrees.length;
+	}
+
+	int getTreeSize(int type) {
+		return tileTrees[type] == null ? 0 : tileTrees[type].sites.length;
+	}
+
+	/** Returns the position of the site in the tree of its type, or -1 */
+	int getPosition(PrimitiveSite site) {
+		Integer p = positions.get(site);
+		return p == null ? -1 : p;
+	}
+
+	/** Returns the parent position of a tree position, or -1 for the root */
+	int getParent(int type, int position) {
+		return tileTrees[type].parent[position];
+	}
+
+	/** Initializes the free counts of a tree, as if all sites were free */
+	int[] createFreeCounts(int type) {
+		SiteTree tree = tileTrees[type];
+		if (tree == null)
+			return null;
+		int[] free = new int[tree.sites.length];
+		tree.initFreeCounts(0, tree.sites.length, free);
+		return free;
+	}
+
+	private void checkOccupancy(SiteOccupancy occupancy) {
+		if (occupancy != null && occupancy.getIndex() != this)
+			throw new IllegalArgumentException("Occupancy belongs to a different device");
+	}
+
+	private List<PrimitiveType> getTypes(PrimitiveType type, boolean compatible) {
+		List<PrimitiveType> types = new ArrayList<>();
+		types.add(type);
+		if (compatible) {
+			FamilyType family = dev.getFamilyType();
+			PrimitiveType[] compatibleTypes = PrimitiveSite.compatibleTypesArray[family.ordinal()].get(type);
+			if (compatibleTypes != null)
+				types.addAll(Arrays.asList(compatibleTypes));
+		}
+		return types;
+	}
+
+	/**
+	 * An implicit balanced 2-d tree: the node of the range [lo, hi) is the site at
+	 * (lo + hi) / 2, its children are the ranges left and right of it. Even depths
+	 * split by X, odd depths by Y.
+	 */
+	private static class SiteTree {
+		private final PrimitiveSite[] sites;
+		private final int[] xs;
+		private final int[] ys;
+		private final int[] parent;
+
+		SiteTree(PrimitiveSite[] unsorted, boolean tileCoordinates) {
+			int n = unsorted.length;
+			Integer[] order = new Integer[n];
+			int[] x = new int[n];
+			int[] y = new int[n];
+			for (int i = 0; i < n; i++) {
+				order[i] = i;
+				PrimitiveSite site = unsorted[i];
+				x[i] = tileCoordinates ? site.getTile().getColumn() : site.getInstanceX();
+				y[i] = tileCoordinates ? site.getTile().getRow() : site.getInstanceY();
+			}
+			build(order, x, y, 0, n, 0);
+			sites = new PrimitiveSite[n];
+			xs = new int[n];
+			ys = new int[n];
+			parent = new int[n];
+			for (int p = 0; p < n; p++) {
+				sites[p] = unsorted[order[p]];
+				xs[p] = x[order[p]];
+				ys[p] = y[order[p]];
+			}
+			setParents(0, n, -1);
+		}
+
+		private static void build(Integer[] order, int[] x, int[] y, int lo, int hi, int depth) {
+			if (hi - lo <= 1)
+				return;
+			int[] key = (depth & 1) == 0 ? x : y;
+			int[] other = (depth & 1) == 0 ? y : x;
+			Arrays.sort(order, lo, hi, (a, b) -> key[a] != key[b] ? Integer.compare(key[a], key[b]) :
+					other[a] != other[b] ? Integer.compare(other[a], other[b]) : Integer.compare(a, b));
+			int mid = (lo + hi) >>> 1;
+			build(order, x, y, lo, mid, depth + 1);
+			build(order, x, y, mid + 1, hi, depth + 1);
+		}
+
+		private void setParents(int lo, int hi, int parentPos) {
+			if (lo >= hi)
+				return;
+			int mid = (lo + hi) >>> 1;
+			parent[mid] = parentPos;
+			setParents(lo, mid, mid);
+			setParents(mid + 1, hi, mid);
+		}
+
+		private void initFreeCounts(int lo, int hi, int[] free) {
+			if (lo >= hi)
+				return;
+			free[(lo + hi) >>> 1] = hi - lo;
+			initFreeCounts(lo, (lo + hi) >>> 1, free);
+			initFreeCounts(((lo + hi) >>> 1) + 1, hi, free);
+		}
+
+		private void nearest(int lo, int hi, int depth, int qx, int qy, int k, int[] free, int type,
+							 PriorityQueue<long[]> best) {
+			if (lo >= hi)
+				return;
+			int mid = (lo + hi) >>> 1;
+			if (free != null && free[mid] == 0)
+				// all sites of the subtree are used
+				return;
+			boolean midFree = free == null || isFree(lo, hi, mid, free);
+			if (midFree) {
+				long dist = Math.abs(xs[mid] - qx) + Math.abs(ys[mid] - qy);
+				if (best.size() < k) {
+					best.add(new long[]{dist, type, mid});
+				} else if (dist < best.peek()[0]) {
+					best.poll();
+					best.add(new long[]{dist, type, mid});
+				}
+			}
+			int diff = (depth & 1) == 0 ? qx - xs[mid] : qy - ys[mid];
+			boolean leftFirst = diff <= 0;
+			if (leftFirst)
+				nearest(lo, mid, depth + 1, qx, qy, k, free, type, best);
+			else
+				nearest(mid + 1, hi, depth + 1, qx, qy, k, free, type, best);
+			if (best.size() < k || Math.abs(diff) < best.peek()[0]) {
+				if (leftFirst)
+					nearest(mid + 1, hi, depth + 1, qx, qy, k, free, type, best);
+				else
+					nearest(lo, mid, depth + 1, qx, qy, k, free, type, best);
+			}
+		}
+
+		/**
+		 * The site of a node is free if the free count of the node is larger than the
+		 * free counts of its children.
+		 */
+		private static boolean isFree(int lo, int hi, int mid, int[] free) {
+			int children = 0;
+			if (mid > lo)
+				children += free[(lo + mid) >>> 1];
+			if (mid + 1 < hi)
+				children += free[(mid + 1 + hi) >>> 1];
+			return free[mid] > children;
+		}
+
+		private void range(int lo, int hi, int depth, int minX, int minY, int maxX, int maxY,
+						   List<PrimitiveSite> result) {
+			if (lo >= hi)
+				return;
+			int mid = (lo + hi) >>> 1;
+			int x = xs[mid];
+			int y = ys[mid];
+			int split = (depth & 1) == 0 ? x : y;
+			int min = (depth & 1) == 0 ? minX : minY;
+			int max = (depth & 1) == 0 ? maxX : maxY;
+			if (min <= split)
+				range(lo, mid, depth + 1, minX, minY, maxX, maxY, result);
+			if (x >= minX && x <= maxX && y >= minY && y <= maxY)
+				result.add(sites[mid]);
+			if (max >= split)
+				range(mid + 1, hi, depth + 1, minX, minY, maxX, maxY, result);
+		}
+	}
+}
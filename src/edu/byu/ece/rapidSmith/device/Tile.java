@@ -22,6 +22,7 @@ package edu.byu.ece.rapidSmith.device;
 
 
 import edu.byu.ece.rapidSmith.design.PIP;
+import edu.byu.ece.rapidSmith.device.helper.IntHashMap;
 import edu.byu.ece.rapidSmith.device.helper.WireHashMap;
 
 import java.io.Serializable;
@@ -44,7 +45,7 @@ public class Tile implements Serializable {
 	/** XDL Tile Type (INT,CLB,...)*/
 	private TileType type;
 	/** This is a list of the sinks within the tile (generally in the primitives) */
-	private HashMap<Integer,SinkPin> sinks;
+	private IntHashMap<SinkPin> sinks;
 	/** This is a list of the sources within the tile (generally in the primitives) */
 	private int[] sources;
 	/** This variable holds all the wires and their connections within the tile */
@@ -91,11 +92,11 @@ public class Tile implements Serializable {
 	}
 
 	/**
-	 * Gets and returns the HashMap containing the sinks for this tile.  The keys are
+	 * Gets and returns the map containing the sinks for this tile.  The keys are
 	 * the actual sink wires and the values are the SinkPin objects.
-	 * @return The HashMap of sink wire mappings in this tile.
+	 * @return The map of sink wire mappings in this tile.
 	 */
-	public HashMap<Integer,SinkPin> getSinks(){
+	public IntHashMap<SinkPin> getSinks(){
 		return sinks;
 	}
 
@@ -104,7 +105,7 @@ public class Tile implements Serializable {
 	 * @param sink The sink wire.
 	 * @return The sink pin object based on the given sink wire.
 	 */
-	public SinkPin getSinkPin(Integer sink){
+	public SinkPin getSinkPin(int sink){
 		return sinks==null? null : sinks.get(sink);
 	}
 	
@@ -113,7 +114,7 @@ public class Tile implements Serializable {
 	 * during normal usage.
 	 * @param sinks The new sinks to set for this tile.
 	 */
-	public void setSinks(HashMap<Integer,SinkPin> sinks){
+	public void setSinks(IntHashMap<SinkPin> sinks){
 		this.sinks = sinks;
 	}
 	
@@ -0,0 +1,764 @@
+/*
+ * Copyright (c) 2010 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.device;
+
+import edu.byu.ece.rapidSmith.device.database.FileDeviceDatabase;
+import edu.byu.ece.rapidSmith.router.Node;
+import edu.byu.ece.rapidSmith.util.MessageGenerator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Precomputed reachability summaries of the routing graph of a device:
+ * <ul>
+ * <li>which site input pins are reached from an INT_SINK wire of a switch box,
+ * and the reverse, which switch box wires feed a site input pin,</li>
+ * <li>which INT_SOURCE wires of a switch box are driven by a site output pin,</li>
+ * <li>which BOUNCE wires of a switch box can drive an INT_SINK wire of the same
+ * switch box (per switch box tile type),</li>
+ * <li>the tile span of every LONG wire.</li>
+ * </ul>
+ * The graph walks are done once (in parallel over the tiles) and the results are
+ * kept in CSR arrays indexed by the unique tile address, so a query is an array
+ * lookup and a binary search over the few wires of a tile.
+ *
+ * As the analysis walks the whole device, the summaries are written next to the
+ * device file when the device files are created (see {@link DeviceFilesCreator}).
+ * Use {@link Device#getWireReachability()} to get the summaries of a device, the
+ * device reads that file on the first call, or computes them if there is none.
+ */
+public class WireReachability {
+
+	private static final int FILE_VERSION = 2;
+
+	/** Maximum number of wires visited by a single walk, as in the original sink pin search */
+	private static final int WATCH_DOG = 1000;
+
+	private final Device dev;
+	private final int numTiles;
+
+	/** (switch box tile, INT_SINK wire) to (site tile, site input pin wire) */
+	private final PairIndex switchBoxToSinkPin;
+	/** (site tile, site input pin wire) to (switch box tile, INT_SINK wire) */
+	private final PairIndex sinkPinToSwitchBox;
+	/** (site tile, site output pin wire) to (switch box tile, INT_SOURCE wire) */
+	private final PairIndex sourcePinToSwitchBox;
+	/** INT_SINK wire to the BOUNCE wires of the same tile driving it, per switch box tile type */
+	private final Map<TileType, WireIndex> bounceWires;
+	/** Long line spans, per tile: sorted wires and four ints (min column, min row, max column, max row) each */
+	private final int[] spanTileStart;
+	private final int[] spanWires;
+	private final int[] spans;
+
+	private WireReachability(Device dev, PairIndex switchBoxToSinkPin, PairIndex sinkPinToSwitchBox,
+							 PairIndex sourcePinToSwitchBox, Map<TileType, WireIndex> bounceWires,
+							 int[] spanTileStart, int[] spanWires, int[] spans) {
+		this.dev = dev;
+		this.numTiles = dev.getRows() * dev.getColumns();
+		this.switchBoxToSinkPin = switchBoxToSinkPin;
+		this.sinkPinToSwitchBox = sinkPinToSwitchBox;
+		this.sourcePinToSwitchBox = sourcePinToSwitchBox;
+		this.bounceWires = bounceWires;
+		this.spanTileStart = spanTileStart;
+		this.spanWires = spanWires;
+		this.spans = spans;
+	}
+
+	//========================================================================//
+	// Queries
+	//========================================================================//
+
+	/**
+	 * Returns the switch box wires (INT_SINK) that feed a site input pin.
+	 * @param sinkTile The tile of the site.
+	 * @param sinkPinWire The external wire of the site input pin.
+	 * @return The feeding switch box wires, empty if there are none.
+	 */
+	public List<Node> getSwitchBoxSinks(Tile sinkTile, int sinkPinWire) {
+		return sinkPinToSwitchBox.getNodes(dev, sinkTile.getUniqueAddress(), sinkPinWire);
+	}
+
+	/**
+	 * Returns the site input pins reached from an INT_SINK wire of a switch box.
+	 */
+	public List<Node> getSinkPins(Tile switchBox, int intSinkWire) {
+		return switchBoxToSinkPin.getNodes(dev, switchBox.getUniqueAddress(), intSinkWire);
+	}
+
+	/**
+	 * Returns the switch box wires (INT_SOURCE) driven by a site output pin.
+	 */
+	public List<Node> getSwitchBoxSources(Tile sourceTile, int sourcePinWire) {
+		return sourcePinToSwitchBox.getNodes(dev, sourceTile.getUniqueAddress(), sourcePinWire);
+	}
+
+	/**
+	 * Returns the BOUNCE wires of a switch box that drive the given INT_SINK wire
+	 * of the same switch box. The returned array is shared and must not be modified.
+	 */
+	public int[] getBounceWires(Tile switchBox, int intSinkWire) {
+		WireIndex index = bounceWires.get(switchBox.getType());
+		return index == null ? EMPTY : index.get(intSinkWire);
+	}
+
+	/**
+	 * Returns the tiles spanned by a LONG wire as {min column, min row, max column, max row},
+	 * or null if the wire is not a long line of the tile.
+	 */
+	public int[] getLongLineSpan(Tile tile, int wire) {
+		int t = tile.getUniqueAddress();
+		int k = Arrays.binarySearch(spanWires, spanTileStart[t], spanTileStart[t + 1], wire);
+		if (k < 0)
+			return null;
+		return Arrays.copyOfRange(spans, 4 * k, 4 * k + 4);
+	}
+
+	public Device getDevice() {
+		return dev;
+	}
+
+	//========================================================================//
+	// Analysis
+	//========================================================================//
+
+	/**
+	 * Walks the routing graph of the device and computes all summaries.
+	 */
+	public static WireReachability analyze(Device dev, WireEnumerator we) {
+		int numTiles = dev.getRows() * dev.getColumns();
+		WireClasses classes = new WireClasses(dev, we);
+
+		Edges sinkEdges = findSwitchBoxSinkPins(dev, classes);
+		PairIndex switchBoxToSinkPin = new PairIndex(numTiles, sinkEdges.size, sinkEdges.keyTile,
+				sinkEdges.keyWire, sinkEdges.valTile, sinkEdges.valWire);
+		PairIndex sinkPinToSwitchBox = new PairIndex(numTiles, sinkEdges.size, sinkEdges.valTile,
+				sinkEdges.valWire, sinkEdges.keyTile, sinkEdges.keyWire);
+
+		Edges[] sourceEdges = new Edges[numTiles];
+		IntStream.range(0, numTiles).parallel().forEach(t ->
+				sourceEdges[t] = findSwitchBoxSources(getTile(dev, t), classes));
+		Edges sources = Edges.concat(sourceEdges);
+		PairIndex sourcePinToSwitchBox = new PairIndex(numTiles, sources.size, sources.keyTile,
+				sources.keyWire, sources.valTile, sources.valWire);
+
+		Map<TileType, WireIndex> bounceWires = findBounceWires(dev, classes);
+
+		int[][] tileSpans = new int[numTiles][];
+		IntStream.range(0, numTiles).parallel().forEach(t ->
+				tileSpans[t] = findLongLineSpans(getTile(dev, t), classes));
+		int[] spanTileStart = new int[numTiles + 1];
+		for (int t = 0; t < numTiles; t++)
+			spanTileStart[t + 1] = spanTileStart[t] + tileSpans[t].length / 5;
+		int[] spanWires = new int[spanTileStart[numTiles]];
+		int[] spans = new int[4 * spanWires.length];
+		for (int t = 0; t < numTiles; t++) {
+			int[] s = tileSpans[t];
+			for (int i = 0; i < s.length / 5; i++) {
+				int k = spanTileStart[t] + i;
+				spanWires[k] = s[5 * i];
+				System.arraycopy(s, 5 * i + 1, spans, 4 * k, 4);
+			}
+		}
+
+		return new WireReachability(dev, switchBoxToSinkPin, sinkPinToSwitchBox, sourcePinToSwitchBox,
+				bounceWires, spanTileStart, spanWires, spans);
+	}
+
+	private static Tile getTile(Device dev, int address) {
+		return dev.getTile(address / dev.getColumns(), address % dev.getColumns());
+	}
+
+	/**
+	 * Finds the site input pins reached from the INT_SINK wires of all switch boxes.
+	 * This is the walk used to populate the sink pins of a device: starting at an
+	 * INT_SINK wire that leaves its tile, the walk follows connections through
+	 * non-switch box tiles (and CLK wires) until it reaches site input pins. The
+	 * edges are returned in the order they are found, tile by tile.
+	 */
+	private static Edges findSwitchBoxSinkPins(Device dev, WireClasses classes) {
+		int numTiles = dev.getRows() * dev.getColumns();
+		Edges[] perTile = new Edges[numTiles];
+		IntStream.range(0, numTiles).parallel().forEach(t -> {
+			Tile tile = getTile(dev, t);
+			Edges edges = new Edges();
+			if (classes.switchMatrixTypes.contains(tile.getType()) && tile.getWireHashMap() != null) {
+				Walk walk = new Walk();
+				for (Integer wire : tile.getWireHashMap().keySet()) {
+					if (classes.types[wire] != WireType.INT_SINK || !leavesTile(tile, wire))
+						continue;
+					walkToSinkPins(tile, wire, classes, walk, edges);
+				}
+			}
+			perTile[t] = edges;
+		});
+		return Edges.concat(perTile);
+	}
+
+	private static boolean leavesTile(Tile tile, int wire) {
+		for (WireConnection w : tile.getWireConnections(wire)) {
+			if (w.getColumnOffset() != 0 || w.getRowOffset() != 0)
+				return true;
+		}
+		return false;
+	}
+
+	private static void walkToSinkPins(Tile start, int startWire, WireClasses classes, Walk walk, Edges edges) {
+		int startAddress = start.getUniqueAddress();
+		walk.reset();
+		walk.push(start, startWire);
+		int watchDog = 0;
+		while (!walk.isEmpty() && watchDog < WATCH_DOG) {
+			watchDog++;
+			walk.pop();
+			Tile t1 = walk.tile;
+			int w1 = walk.wire;
+			WireConnection[] connections = t1.getWireConnections(w1);
+			if (connections == null || walk.isVisited(t1, w1))
+				continue;
+			for (WireConnection wire2 : connections) {
+				Tile t2 = wire2.getTile(t1);
+				if (t2 == null)
+					continue;
+				int w2 = wire2.getWire();
+				boolean switchBox = classes.switchMatrixTypes.contains(t2.getType());
+				if (classes.sitePinSinks[w2] && !switchBox) {
+					if (t2.getSinks() == null || t2.getSinks().get(w2) == null)
+						continue;
+					edges.add(startAddress, startWire, t2.getUniqueAddress(), w2);
+					walk.push(t2, w2);
+				} else if (!switchBox || classes.clkNames[w2]) {
+					walk.push(t2, w2);
+				}
+			}
+			walk.visit(t1, w1);
+		}
+	}
+
+	/**
+	 * Follows the connections of every site output pin of the tile through
+	 * non-switch box tiles until INT_SOURCE wires are reached.
+	 */
+	private static Edges findSwitchBoxSources(Tile tile, WireClasses classes) {
+		Edges edges = new Edges();
+		int[] sources = tile.getSources();
+		if (sources == null || tile.getWireHashMap() == null)
+			return edges;
+		Walk walk = new Walk();
+		int address = tile.getUniqueAddress();
+		for (int source : sources) {
+			if (classes.types[source] != WireType.SITE_SOURCE)
+				continue;
+			walk.reset();
+			walk.push(tile, source);
+			int watchDog = 0;
+			while (!walk.isEmpty() && watchDog++ < WATCH_DOG) {
+				walk.pop();
+				Tile t1 = walk.tile;
+				int w1 = walk.wire;
+				WireConnection[] connections = t1.getWireConnections(w1);
+				if (connections == null || walk.isVisited(t1, w1))
+					continue;
+				walk.visit(t1, w1);
+				for (WireConnection c : connections) {
+					Tile t2 = c.getTile(t1);
+					if (t2 == null)
+						continue;
+					int w2 = c.getWire();
+					if (classes.types[w2] == WireType.INT_SOURCE)
+						edges.add(address, source, t2.getUniqueAddress(), w2);
+					else if (!classes.switchMatrixTypes.contains(t2.getType()))
+						walk.push(t2, w2);
+				}
+			}
+		}
+		return edges;
+	}
+
+	/**
+	 * Finds the BOUNCE wires driving INT_SINK wires inside a switch box. All switch
+	 * boxes of a tile type share the same wiring, so the first tile of each type is
+	 * analyzed.
+	 */
+	private static Map<TileType, WireIndex> findBounceWires(Device dev, WireClasses classes) {
+		Map<TileType, WireIndex> result = new EnumMap<>(TileType.class);
+		for (Tile[] row : dev.getTiles()) {
+			for (Tile tile : row) {
+				if (!classes.switchMatrixTypes.contains(tile.getType()) || result.containsKey(tile.getType()) ||
+						tile.getWireHashMap() == null)
+					continue;
+				Edges edges = new Edges();
+				for (Integer wire : tile.getWires()) {
+					if (classes.types[wire] != WireType.BOUNCE)
+						continue;
+					for (WireConnection c : tile.getWireConnections(wire)) {
+						if (c.getRowOffset() == 0 && c.getColumnOffset() == 0 && c.isPIP() &&
+								classes.types[c.getWire()] == WireType.INT_SINK)
+							edges.add(0, c.getWire(), 0, wire);
+					}
+				}
+				PairIndex index = new PairIndex(1, edges.size, edges.keyTile, edges.keyWire, edges.valTile,
+						edges.valWire);
+				result.put(tile.getType(), new WireIndex(index.keyWires, index.keyStart, index.valWires));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the spans of the LONG wires of a tile as groups of five ints: wire,
+	 * min column, min row, max column and max row. Sorted by wire.
+	 */
+	private static int[] findLongLineSpans(Tile tile, WireClasses classes) {
+		if (tile.getWireHashMap() == null)
+			return EMPTY;
+		List<int[]> found = new ArrayList<>();
+		for (Integer wire : tile.getWires()) {
+			if (classes.types[wire] != WireType.LONG)
+				continue;
+			int[] span = {wire, tile.getColumn(), tile.getRow(), tile.getColumn(), tile.getRow()};
+			boolean leaves = false;
+			for (WireConnection c : tile.getWireConnections(wire)) {
+				if (c.getRowOffset() == 0 && c.getColumnOffset() == 0)
+					continue;
+				leaves = true;
+				int column = tile.getColumn() - c.getColumnOffset();
+				int row = tile.getRow() - c.getRowOffset();
+				span[1] = Math.min(span[1], column);
+				span[2] = Math.min(span[2], row);
+				span[3] = Math.max(span[3], column);
+				span[4] = Math.max(span[4], row);
+			}
+			if (leaves)
+				found.add(span);
+		}
+		found.sort((a, b) -> Integer.compare(a[0], b[0]));
+		int[] result = new int[5 * found.size()];
+		for (int i = 0; i < found.size(); i++)
+			System.arraycopy(found.get(i), 0, result, 5 * i, 5);
+		return result;
+	}
+
+	//========================================================================//
+	// Persistence
+	//========================================================================//
+
+	/**
+	 * Returns the file of the summaries of a device, next to the device file in
+	 * the folder of the part.
+	 */
+	public static Path getCacheFile(Device dev) {
+		return Paths.get(FileDeviceDatabase.getPartFolderPath(dev.getPartName()),
+				dev.getPartName() + "_wireReachability.dat");
+	}
+
+	/**
+	 * Loads the summaries of a device from the file written with its device file,
+	 * or computes them if there is no such file or it does not fit the device.
+	 * @see #getCacheFile(Device)
+	 */
+	public static WireReachability loadOrAnalyze(Device dev, WireEnumerator we) {
+		Path file = null;
+		try {
+			file = getCacheFile(dev);
+		} catch (RuntimeException e) {
+			// No device database, the device was created otherwise
+		}
+		if (file != null && Files.exists(file)) {
+			try {
+				return load(dev, file);
+			} catch (IOException e) {
+				MessageGenerator.briefError("Warning: could not load the wire reachability of " +
+						dev.getPartName() + ", computing it: " + e.getMessage());
+			}
+		}
+		return analyze(dev, we);
+	}
+
+	/**
+	 * Writes the summaries to a (compressed) file, keyed by the part name and
+	 * the version of the device file.
+	 */
+	public void save(Path file) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new GZIPOutputStream(Files.newOutputStream(file))))) {
+			out.writeInt(FILE_VERSION);
+			out.writeUTF(dev.getPartName());
+			out.writeUTF(Device.deviceFileVersion);
+			out.writeInt(numTiles);
+			switchBoxToSinkPin.write(out);
+			sinkPinToSwitchBox.write(out);
+			sourcePinToSwitchBox.write(out);
+			out.writeInt(bounceWires.size());
+			for (Map.Entry<TileType, WireIndex> e : bounceWires.entrySet()) {
+				out.writeUTF(e.getKey().name());
+				writeArray(out, e.getValue().keys);
+				writeArray(out, e.getValue().start);
+				writeArray(out, e.getValue().values);
+			}
+			writeArray(out, spanTileStart);
+			writeArray(out, spanWires);
+			writeArray(out, spans);
+		}
+	}
+
+	/**
+	 * Reads summaries written by {@link #save(Path)} for the given device.
+	 * @throws IOException if the file cannot be read or was written for another device.
+	 */
+	public static WireReachability load(Device dev, Path file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new GZIPInputStream(Files.newInputStream(file))))) {
+			if (in.readInt() != FILE_VERSION)
+				throw new IOException("Unsupported wire reachability file version: " + file);
+			String partName = in.readUTF();
+			String version = in.readUTF();
+			if (!partName.equals(dev.getPartName()) || !version.equals(Device.deviceFileVersion)
+					|| in.readInt() != dev.getRows() * dev.getColumns())
+				throw new IOException(file + " was written for " + partName + " version " + version +
+						", not " + dev.getPartName() + " version " + Device.deviceFileVersion);
+			PairIndex switchBoxToSinkPin = PairIndex.read(in);
+			PairIndex sinkPinToSwitchBox = PairIndex.read(in);
+			PairIndex sourcePinToSwitchBox = PairIndex.read(in);
+			Map<TileType, WireIndex> bounceWires = new EnumMap<>(TileType.class);
+			int types = in.readInt();
+			for (int i = 0; i < types; i++) {
+				TileType type = TileType.valueOf(in.readUTF());
+				bounceWires.put(type, new WireIndex(readArray(in), readArray(in), readArray(in)));
+			}
+			int[] spanTileStart = readArray(in);
+			int[] spanWires = readArray(in);
+			int[] spans = readArray(in);
+			return new WireReachability(dev, switchBoxToSinkPin, sinkPinToSwitchBox, sourcePinToSwitchBox,
+					bounceWires, spanTileStart, spanWires, spans);
+		}
+	}
+
+	private static void writeArray(DataOutputStream out, int[] array) throws IOException {
+		out.writeInt(array.length);
+		for (int v : array)
+			out.writeInt(v);
+	}
+
+	private static int[] readArray(DataInputStream in) throws IOException {
+		int[] array = new int[in.readInt()];
+		for (int i = 0; i < array.length; i++)
+			array[i] = in.readInt();
+		return array;
+	}
+
+	//========================================================================//
+	// Helper Classes
+	//========================================================================//
+
+	private static final int[] EMPTY = new int[0];
+
+	/**
+	 * Per wire enumeration flags used by the walks.
+	 */
+	private static class WireClasses {
+		final WireType[] types;
+		final boolean[] sitePinSinks;
+		final boolean[] clkNames;
+		final Set<TileType> switchMatrixTypes;
+
+		WireClasses(Device dev, WireEnumerator we) {
+			int numWires = we.getWires().length;
+			types = new WireType[numWires];
+			sitePinSinks = new boolean[numWires];
+			clkNames = new boolean[numWires];
+			for (int w = 0; w < numWires; w++) {
+				types[w] = we.getWireType(w);
+				sitePinSinks[w] = types[w] == WireType.SITE_SINK;
+				clkNames[w] = we.getWireName(w).contains("CLK");
+			}
+			switchMatrixTypes = new HashSet<>(dev.getSwitchMatrixTypes());
+		}
+	}
+
+	/**
+	 * Growable lists of (key tile, key wire, value tile, value wire) edges.
+	 */
+	private static class Edges {
+		int size;
+		int[] keyTile = new int[16];
+		int[] keyWire = new int[16];
+		int[] valTile = new int[16];
+		int[] valWire = new int[16];
+
+		void add(int kt, int kw, int vt, int vw) {
+			if (size == keyTile.length) {
+				keyTile = Arrays.copyOf(keyTile, size * 2);
+				keyWire = Arrays.copyOf(keyWire, size * 2);
+				valTile = Arrays.copyOf(valTile, size * 2);
+				valWire = Arrays.copyOf(valWire, size * 2);
+			}
+			keyTile[size] = kt;
+			keyWire[size] = kw;
+			valTile[size] = vt;
+			valWire[size] = vw;
+			size++;
+		}
+
+		static Edges concat(Edges[] parts) {
+			Edges all = new Edges();
+			int total = 0;
+			for (Edges e : parts)
+				total += e.size;
+			all.keyTile = new int[total];
+			all.keyWire = new int[total];
+			all.valTile = new int[total];
+			all.valWire = new int[total];
+			for (Edges e : parts) {
+				System.arraycopy(e.keyTile, 0, all.keyTile, all.size, e.size);
+				System.arraycopy(e.keyWire, 0, all.keyWire, all.size, e.size);
+				System.arraycopy(e.valTile, 0, all.valTile, all.size, e.size);
+				System.arraycopy(e.valWire, 0, all.valWire, all.size, e.size);
+				all.size += e.size;
+			}
+			return all;
+		}
+	}
+
+	/**
+	 * The state of a depth first walk: the stack and the visited (tile, wire) pairs.
+	 * The visited set is an open addressing hash set of tile address/wire pairs.
+	 */
+	private static class Walk {
+		private Tile[] stackTiles = new Tile[64];
+		private int[] stackWires = new int[64];
+		private int top;
+		Tile tile;
+		int wire;
+		private long[] visited = new long[256];
+		private int visitedCount;
+
+		void reset() {
+			top = 0;
+			if (visitedCount > 0) {
+				Arrays.fill(visited, 0);
+				visitedCount = 0;
+			}
+		}
+
+		boolean isEmpty() {
+			return top == 0;
+		}
+
+		void push(Tile tile, int wire) {
+			if (top == stackTiles.length) {
+				stackTiles = Arrays.copyOf(stackTiles, top * 2);
+				stackWires = Arrays.copyOf(stackWires, top * 2);
+			}
+			stackTiles[top] = tile;
+			stackWires[top++] = wire;
+		}
+
+		/** Removes the top element, its tile and wire are then in {@link #tile} and {@link #wire} */
+		void pop() {
+			top--;
+			tile = stackTiles[top];
+			wire = stackWires[top];
+			stackTiles[top] = null;
+		}
+
+		private static long key(Tile tile, int wire) {
+			// + 1 so that no key is 0, which marks empty slots
+			return (((long) tile.getUniqueAddress()) << 32 | (wire & 0xFFFFFFFFL)) + 1;
+		}
+
+		private int slot(long key) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h >>> 40) & (visited.length - 1);
+		}
+
+		boolean isVisited(Tile tile, int wire) {
+			long key = key(tile, wire);
+			for (int i = slot(key); visited[i] != 0; i = (i + 1) & (visited.length - 1)) {
+				if (visited[i] == key)
+					return true;
+			}
+			return false;
+		}
+
+		void visit(Tile tile, int wire) {
+			if (isVisited(tile, wire))
+				return;
+			if (2 * (visitedCount + 1) > visited.length) {
+				long[] old = visited;
+				visited = new long[old.length * 2];
+				for (long k : old) {
+					if (k != 0)
+						insert(k);
+				}
+			}
+			insert(key(tile, wire));
+			visitedCount++;
+		}
+
+		private void insert(long key) {
+			int i = slot(key);
+			while (visited[i] != 0)
+				i = (i + 1) & (visited.length - 1);
+			visited[i] = key;
+		}
+	}
+
+	/**
+	 * Sorted wire keys with a list of wires per key.
+	 */
+	private static class WireIndex {
+		final int[] keys;
+		final int[] start;
+		final int[] values;
+
+		WireIndex(int[] keys, int[] start, int[] values) {
+			this.keys = keys;
+			this.start = start;
+			this.values = values;
+		}
+
+		int[] get(int key) {
+			int k = Arrays.binarySearch(keys, key);
+			return k < 0 ? EMPTY : Arrays.copyOfRange(values, start[k], start[k + 1]);
+		}
+	}
+
+	/**
+	 * A map of (tile, wire) pairs to lists of (tile, wire) pairs in CSR arrays.
+	 * The keys of a tile are found with tileStart, sorted by wire. The values of
+	 * key k are found with keyStart. Duplicate values of a key are removed, the
+	 * values keep the order in which they were added.
+	 */
+	private static class PairIndex {
+		final int[] tileStart;
+		final int[] keyWires;
+		final int[] keyStart;
+		final int[] valTiles;
+		final int[] valWires;
+
+		private PairIndex(int[] tileStart, int[] keyWires, int[] keyStart, int[] valTiles, int[] valWires) {
+			this.tileStart = tileStart;
+			this.keyWires = keyWires;
+			this.keyStart = keyStart;
+			this.valTiles = valTiles;
+			this.valWires = valWires;
+		}
+
+		/**
+		 * Indexes the first n edges of the arrays, the rest of the arrays is ignored.
+		 */
+		PairIndex(int numTiles, int n, int[] keyTile, int[] keyWire, int[] valTile, int[] valWire) {
+			// stable counting sort by key tile
+			int[] count = new int[numTiles + 1];
+			for (int e = 0; e < n; e++)
+				count[keyTile[e] + 1]++;
+			for (int t = 0; t < numTiles; t++)
+				count[t + 1] += count[t];
+			int[] order = new int[n];
+			int[] fill = Arrays.copyOf(count, numTiles);
+			for (int e = 0; e < n; e++)
+				order[fill[keyTile[e]]++] = e;
+
+			tileStart = new int[numTiles + 1];
+			List<Integer> keys = new ArrayList<>();
+			List<Integer> starts = new ArrayList<>();
+			int[] vt = new int[n];
+			int[] vw = new int[n];
+			int values = 0;
+			for (int t = 0; t < numTiles; t++) {
+				tileStart[t] = keys.size();
+				// stable sort of the edges of the tile by key wire
+				Integer[] tileEdges = new Integer[count[t + 1] - count[t]];
+				for (int i = 0; i < tileEdges.length; i++)
+					tileEdges[i] = order[count[t] + i];
+				Arrays.sort(tileEdges, (a, b) -> Integer.compare(keyWire[a], keyWire[b]));
+				int i = 0;
+				while (i < tileEdges.length) {
+					int wire = keyWire[tileEdges[i]];
+					keys.add(wire);
+					starts.add(values);
+					int first = values;
+					for (; i < tileEdges.length && keyWire[tileEdges[i]] == wire; i++) {
+						int e = tileEdges[i];
+						if (!contains(vt, vw, first, values, valTile[e], valWire[e])) {
+							vt[values] = valTile[e];
+							vw[values++] = valWire[e];
+						}
+					}
+				}
+			}
+			tileStart[numTiles] = keys.size();
+			starts.add(values);
+			keyWires = keys.stream().mapToInt(Integer::intValue).toArray();
+			keyStart = starts.stream().mapToInt(Integer::intValue).toArray();
+			valTiles = Arrays.copyOf(vt, values);
+			valWires = Arrays.copyOf(vw, values);
+		}
+
+		private static boolean contains(int[] vt, int[] vw, int from, int to, int tile, int wire) {
+			for (int i = from; i < to; i++) {
+				if (vt[i] == tile && vw[i] == wire)
+					return true;
+			}
+			return false;
+		}
+
+		List<Node> getNodes(Device dev, int tile, int wire) {
+			int k = Arrays.binarySearch(keyWires, tileStart[tile], tileStart[tile + 1], wire);
+			if (k < 0)
+				return Collections.emptyList();
+			List<Node> nodes = new ArrayList<>(keyStart[k + 1] - keyStart[k]);
+			for (int v = keyStart[k]; v < keyStart[k + 1]; v++)
+				nodes.add(new Node(getTile(dev, valTiles[v]), valWires[v], null, 0));
+			return nodes;
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			writeArray(out, tileStart);
+			writeArray(out, keyWires);
+			writeArray(out, keyStart);
+			writeArray(out, valTiles);
+			writeArray(out, valWires);
+		}
+
+		static PairIndex read(DataInputStream in) throws IOException {
+			return new PairIndex(readArray(in), readArray(in), readArray(in), readArray(in), readArray(in));
+		}
+	}
+}
@@ -20,6 +20,7 @@
  */
 package edu.byu.ece.rapidSmith.device;
 
+import edu.byu.ece.rapidSmith.device.helper.IntHashMap;
 import edu.byu.ece.rapidSmith.device.helper.WireHashMap;
 import edu.byu.ece.rapidSmith.examples.SinkPinsPopulator;
 import edu.byu.ece.rapidSmith.primitiveDefs.*;
@@ -33,7 +34,6 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 
 //================================================================
 // added for Spartan6 adaption
@@ -337,7 +337,7 @@ public class XDLRCParser{
 					for(Tile tile : tiles){
 						tile.setWireHashMap(new WireHashMap());
 
-						tile.setSinks(new HashMap<Integer, SinkPin>());
+						tile.setSinks(new IntHashMap<SinkPin>());
 					}
 				}
 				dev.populateTileMap(DeviceFilesCreator.createDeviceTileMap(dev.getPartName()));
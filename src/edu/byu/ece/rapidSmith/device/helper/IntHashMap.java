@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.device.helper;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An open addressing hash map with primitive int keys, used for the tile sinks
+ * of the Device.  Like {@link WireHashMap}, keys and values are kept in two
+ * parallel arrays and a null value marks an empty slot, so no entry objects or
+ * boxed keys are created.  Null values are not allowed.
+ *
+ * The map implements {@link java.util.Map} so it can be used where a
+ * HashMap&lt;Integer,V&gt; was used before, but the int methods
+ * ({@link #get(int)}, {@link #put(int, Object)}, {@link #containsKey(int)})
+ * should be preferred.
+ */
+public class IntHashMap<V> extends AbstractMap<Integer,V> implements Serializable {
+
+	private static final long serialVersionUID = -3069421385123706391L;
+
+	/** The default initial capacity - MUST be a power of two. */
+	static final int DEFAULT_INITIAL_CAPACITY = 4;
+
+	/** The load factor, the tables are kept at most half full */
+	static final float LOAD_FACTOR = 0.5f;
+
+	/** The keys table. Length MUST Always be a power of two. */
+	private int[] keys;
+	/** The corresponding values table, null for empty slots */
+	private Object[] values;
+	/** The number of key-value mappings contained in this map */
+	private int size;
+	/** The next size value at which to resize (capacity * load factor) */
+	private int threshold;
+
+	public IntHashMap(int capacity){
+		int finalCapacity = DEFAULT_INITIAL_CAPACITY;
+		while(finalCapacity * LOAD_FACTOR < capacity)
+			finalCapacity <<= 1;
+		keys = new int[finalCapacity];
+		values = new Object[finalCapacity];
+		threshold = (int)(finalCapacity * LOAD_FACTOR);
+	}
+
+	public IntHashMap(){
+		this(DEFAULT_INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Returns the first slot to probe for a key.  The wire enumerations used as
+	 * keys are dense, so the key is mixed before it is masked.
+	 */
+	private static int indexFor(int key, int length){
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (length-1);
+	}
+
+	/**
+	 * Returns the slot of the key or the empty slot where it would be inserted.
+	 */
+	private int slot(int key){
+		int i = indexFor(key, keys.length);
+		while(values[i] != null && keys[i] != key){
+			i = (i + 1) & (keys.length-1);
+		}
+		return i;
+	}
+
+	@Override
+	public int size(){
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty(){
+		return size == 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int key){
+		return (V) values[slot(key)];
+	}
+
+	public boolean containsKey(int key){
+		return values[slot(key)] != null;
+	}
+
+	/**
+	 * Adds or replaces the mapping of a key.
+	 * @return The previous value of the key, null if there was none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value){
+		if(value == null)
+			throw new NullPointerException("IntHashMap does not allow null values");
+		int i = slot(key);
+		V old = (V) values[i];
+		keys[i] = key;
+		values[i] = value;
+		if(old == null && ++size > threshold){
+			grow();
+		}
+		return old;
+	}
+
+	/**
+	 * Removes the mapping of a key.
+	 * @return The removed value, null if there was none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key){
+		int i = slot(key);
+		V old = (V) values[i];
+		if(old == null)
+			return null;
+		values[i] = null;
+		size--;
+		// Move the following entries of the probe sequence back into the hole
+		int mask = keys.length - 1;
+		for(int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask){
+			int home = indexFor(keys[j], keys.length);
+			if(((j - home) & mask) >= ((j - i) & mask)){
+				keys[i] = keys[j];
+				values[i] = values[j];
+				values[j] = null;
+				i = j;
+			}
+		}
+		return old;
+	}
+
+	private void grow(){
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new int[oldKeys.length * 2];
+		values = new Object[oldKeys.length * 2];
+		threshold = (int)(keys.length * LOAD_FACTOR);
+		for(int i = 0; i < oldValues.length; i++){
+			if(oldValues[i] != null){
+				int j = slot(oldKeys[i]);
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Returns the keys of this map in a new array, in no particular order.
+	 */
+	public int[] keyArray(){
+		int[] result = new int[size];
+		int n = 0;
+		for(int i = 0; i < values.length; i++)
+			if(values[i] != null)
+				result[n++] = keys[i];
+		return result;
+	}
+
+	@Override
+	public V get(Object key){
+		return key instanceof Integer ? get(((Integer) key).intValue()) : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key){
+		return key instanceof Integer && containsKey(((Integer) key).intValue());
+	}
+
+	@Override
+	public V put(Integer key, V value){
+		return put(key.intValue(), value);
+	}
+
+	@Override
+	public V remove(Object key){
+		return key instanceof Integer ? remove(((Integer) key).intValue()) : null;
+	}
+
+	@Override
+	public void clear(){
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	@Override
+	public Set<Entry<Integer,V>> entrySet(){
+		return new AbstractSet<Entry<Integer,V>>(){
+			@Override
+			public Iterator<Entry<Integer,V>> iterator(){
+				return new EntryIterator();
+			}
+
+			@Override
+			public int size(){
+				return size;
+			}
+		};
+	}
+
+	private class EntryIterator implements Iterator<Entry<Integer,V>> {
+		private int next = advance(0);
+
+		private int advance(int i){
+			while(i < values.length && values[i] == null)
+				i++;
+			return i;
+		}
+
+		@Override
+		public boolean hasNext(){
+			return next < values.length;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public Entry<Integer,V> next(){
+			if(next >= values.length)
+				throw new NoSuchElementException();
+			int i = next;
+			next = advance(next + 1);
+			return new SimpleImmutableEntry<>(keys[i], (V) values[i]);
+		}
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.device.helper;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An open addressing hash map from strings to primitive ints, used for the pin
+ * name to external wire mappings of primitive sites.  Keys and values are kept
+ * in two parallel arrays and a null key marks an empty slot, so no entry objects
+ * or boxed wire enumerations are created.  Null keys are not allowed.
+ *
+ * The map implements {@link java.util.Map} so it can be used where a
+ * HashMap&lt;String,Integer&gt; was used before, but {@link #getInt(String)} and
+ * {@link #put(String, int)} should be preferred.
+ */
+public class StringIntHashMap extends AbstractMap<String,Integer> implements Serializable {
+
+	private static final long serialVersionUID = 6177532467716032254L;
+
+	/** Returned by {@link #getInt(String)} for missing keys */
+	public static final int NO_VALUE = -1;
+
+	/** The default initial capacity - MUST be a power of two. */
+	static final int DEFAULT_INITIAL_CAPACITY = 4;
+
+	/** The load factor, the tables are kept at most half full */
+	static final float LOAD_FACTOR = 0.5f;
+
+	/** The keys table, null for empty slots. Length MUST Always be a power of two. */
+	private String[] keys;
+	/** The corresponding values table */
+	private int[] values;
+	/** The number of key-value mappings contained in this map */
+	private int size;
+	/** The next size value at which to resize (capacity * load factor) */
+	private int threshold;
+
+	public StringIntHashMap(int capacity){
+		int finalCapacity = DEFAULT_INITIAL_CAPACITY;
+		while(finalCapacity * LOAD_FACTOR < capacity)
+			finalCapacity <<= 1;
+		keys = new String[finalCapacity];
+		values = new int[finalCapacity];
+		threshold = (int)(finalCapacity * LOAD_FACTOR);
+	}
+
+	public StringIntHashMap(){
+		this(DEFAULT_INITIAL_CAPACITY);
+	}
+
+	private static int indexFor(String key, int length){
+		int h = key.hashCode() * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (length-1);
+	}
+
+	/**
+	 * Returns the slot of the key or the empty slot where it would be inserted.
+	 */
+	private int slot(String key){
+		int i = indexFor(key, keys.length);
+		while(keys[i] != null && !keys[i].equals(key)){
+			i = (i + 1) & (keys.length-1);
+		}
+		return i;
+	}
+
+	@Override
+	public int size(){
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty(){
+		return size == 0;
+	}
+
+	/**
+	 * Gets the value of a key.
+	 * @return The value of the key or {@link #NO_VALUE} if the key is not in the map.
+	 */
+	public int getInt(String key){
+		int i = slot(key);
+		return keys[i] == null ? NO_VALUE : values[i];
+	}
+
+	/**
+	 * Adds or replaces the mapping of a key.
+	 */
+	public void put(String key, int value){
+		int i = slot(key);
+		values[i] = value;
+		if(keys[i] == null){
+			keys[i] = key;
+			if(++size > threshold)
+				grow();
+		}
+	}
+
+	private void grow(){
+		String[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new String[oldKeys.length * 2];
+		values = new int[oldKeys.length * 2];
+		threshold = (int)(keys.length * LOAD_FACTOR);
+		for(int i = 0; i < oldKeys.length; i++){
+			if(oldKeys[i] != null){
+				int j = slot(oldKeys[i]);
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+			}
+		}
+	}
+
+	@Override
+	public Integer get(Object key){
+		if(!(key instanceof String))
+			return null;
+		int i = slot((String) key);
+		return keys[i] == null ? null : values[i];
+	}
+
+	@Override
+	public boolean containsKey(Object key){
+		return key instanceof String && keys[slot((String) key)] != null;
+	}
+
+	@Override
+	public Integer put(String key, Integer value){
+		Integer old = get(key);
+		put(key, value.intValue());
+		return old;
+	}
+
+	@Override
+	public Integer remove(Object key){
+		if(!(key instanceof String))
+			return null;
+		int i = slot((String) key);
+		if(keys[i] == null)
+			return null;
+		int old = values[i];
+		keys[i] = null;
+		size--;
+		// Move the following entries of the probe sequence back into the hole
+		int mask = keys.length - 1;
+		for(int j = (i + 1) & mask; keys[j] != null; j = (j + 1) & mask){
+			int home = indexFor(keys[j], keys.length);
+			if(((j - home) & mask) >= ((j - i) & mask)){
+				keys[i] = keys[j];
+				values[i] = values[j];
+				keys[j] = null;
+				i = j;
+			}
+		}
+		return old;
+	}
+
+	@Override
+	public void clear(){
+		Arrays.fill(keys, null);
+		size = 0;
+	}
+
+	@Override
+	public Set<Entry<String,Integer>> entrySet(){
+		return new AbstractSet<Entry<String,Integer>>(){
+			@Override
+			public Iterator<Entry<String,Integer>> iterator(){
+				return new EntryIterator();
+			}
+
+			@Override
+			public int size(){
+				return size;
+			}
+		};
+	}
+
+	private class EntryIterator implements Iterator<Entry<String,Integer>> {
+		private int next = advance(0);
+
+		private int advance(int i){
+			while(i < keys.length && keys[i] == null)
+				i++;
+			return i;
+		}
+
+		@Override
+		public boolean hasNext(){
+			return next < keys.length;
+		}
+
+		@Override
+		public Entry<String,Integer> next(){
+			if(next >= keys.length)
+				throw new NoSuchElementException();
+			int i = next;
+			next = advance(next + 1);
+			return new SimpleImmutableEntry<>(keys[i], values[i]);
+		}
+	}
+}
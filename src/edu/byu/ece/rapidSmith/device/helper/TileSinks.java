@@ -22,7 +22,6 @@ package edu.byu.ece.rapidSmith.device.helper;
 
 import java.io.Serializable;
 import java.util.Arrays;
-import java.util.HashMap;
 
 import edu.byu.ece.rapidSmith.device.SinkPin;
 
@@ -35,13 +34,13 @@ public class TileSinks implements Serializable{
 
 	private static final long serialVersionUID = -4542976263775993364L;
 	/** Sinks and mappings for the tile */
-	public HashMap<Integer,SinkPin> sinks;
+	public IntHashMap<SinkPin> sinks;
 
 	/**
 	 * Constructor
 	 * @param sinks Mappings for this tileSink.
 	 */
-	public TileSinks(HashMap<Integer,SinkPin> sinks){
+	public TileSinks(IntHashMap<SinkPin> sinks){
 		this.sinks = sinks;
 	}
 
@@ -9,6 +9,7 @@ import edu.byu.ece.rapidSmith.device.Tile;
 import edu.byu.ece.rapidSmith.device.TileType;
 import edu.byu.ece.rapidSmith.device.WireConnection;
 import edu.byu.ece.rapidSmith.device.WireEnumerator;
+import edu.byu.ece.rapidSmith.device.helper.IntHashMap;
 import edu.byu.ece.rapidSmith.util.DeviceDatabaseProvider;
 
 import java.io.File;
@@ -32,7 +33,7 @@ public class BounceMapCreator {
 
 	private static void createSinkWireList(PrimitiveSite site)
 	{
-		HashMap<Integer,SinkPin> sinkMap = site.getTile().getSinks();
+		IntHashMap<SinkPin> sinkMap = site.getTile().getSinks();
 		Iterator<SinkPin> iter = sinkMap.values().iterator();
 
 		while(iter.hasNext()) {
@@ -0,0 +1,333 @@
+/*
+ * _______________________________________________________________________________
+ *
+ *  Copyright (c) 2012 TU Dresden, Chair for Embedded Systems
+ *  Copyright (c) 2013-2016 TU Darmstadt, Computer Systems Group
+ *  (http://www.rs.tu-darmstadt.de) All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement: "This product includes
+ *     software developed by the TU Dresden Chair for Embedded Systems, TU Darmstadt Computer Systems Group and
+ *     its contributors."
+ *
+ *  4. Neither the name of the TU Dresden Chair for Embedded Systems, TU Darmstadt Computer Systems Group nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY TU DRESDEN CHAIR FOR EMBEDDED SYSTEMS, TU DARMSTADT COMPUTER SYSTEMS GROUP AND
+ *  CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ *  BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ *  FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ *  REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ *  TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ *  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ *  NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * _______________________________________________________________________________
+ */
+
+package edu.byu.ece.rapidSmith.gui;
+
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.Tile;
+import edu.byu.ece.rapidSmith.router.pathfinder.PathfinderListener;
+import edu.byu.ece.rapidSmith.router.pathfinder.PathfinderMetrics;
+import edu.byu.ece.rapidSmith.router.pathfinder.PathfinderNodeFactory;
+import edu.byu.ece.rapidSmith.timing.PathDelay;
+import edu.byu.ece.rapidSmith.timing.PathElement;
+import org.apache.batik.dom.GenericDOMImplementation;
+import org.apache.batik.svggen.SVGGraphics2D;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+
+import javax.imageio.ImageIO;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Draws a {@link TileHeatmap} with optional path overlays as PNG or SVG, without a display.
+ *
+ * Every tile is a square of {@link #setCellSize(int) cellSize} pixels, with row 0 at the top as in the device
+ * browser. Tiles with a value of 0 are left at the background color, the others go from blue to red relative to
+ * the largest value of the map. Overlays are drawn as lines through the centers of their tiles, e.g. the tiles of
+ * the pins of a critical path.
+ */
+public class HeatmapRenderer {
+
+	private static final int LEGEND_HEIGHT = 20;
+	private static final Color BACKGROUND = new Color(0x20, 0x20, 0x20);
+	private static final Color PATH_COLOR = Color.WHITE;
+
+	private int cellSize = 4;
+	private final List<List<Tile>> paths = new ArrayList<>();
+
+	public int getCellSize() {
+		return cellSize;
+	}
+
+	public void setCellSize(int cellSize) {
+		this.cellSize = cellSize;
+	}
+
+	//========================================================================//
+	// Overlays
+	//========================================================================//
+
+	/**
+	 * Draw a line through tiles on top of the map
+	 */
+	public void addPath(List<Tile> tiles) {
+		paths.add(new ArrayList<>(tiles));
+	}
+
+	/**
+	 * Draw the tiles of the pins of a timing path on top of the map
+	 */
+	public void addPath(PathDelay path) {
+		List<Tile> tiles = new ArrayList<>();
+		for (PathElement element : path.getMaxDataPath()) {
+			if (element.getPin() != null && element.getPin().getTile() != null) {
+				Tile tile = element.getPin().getTile();
+				if (tiles.isEmpty() || tiles.get(tiles.size() - 1) != tile) {
+					tiles.add(tile);
+				}
+			}
+		}
+		paths.add(tiles);
+	}
+
+	public void clearPaths() {
+		paths.clear();
+	}
+
+	//========================================================================//
+	// Drawing
+	//========================================================================//
+
+	public int getWidth(TileHeatmap map) {
+		return map.getDevice().getColumns() * cellSize;
+	}
+
+	public int getHeight(TileHeatmap map) {
+		return map.getDevice().getRows() * cellSize + LEGEND_HEIGHT;
+	}
+
+	/**
+	 * Draw a map and the overlays, starting at (0, 0)
+	 */
+	public void paint(Graphics2D g, TileHeatmap map) {
+		int rows = map.getDevice().getRows();
+		int columns = map.getDevice().getColumns();
+		float max = map.getMax();
+
+		g.setColor(BACKGROUND);
+		g.fillRect(0, 0, getWidth(map), getHeight(map));
+
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				float value = map.getValue(row, column);
+				if (value > 0) {
+					g.setColor(getColor(value / max));
+					g.fillRect(column * cellSize, row * cellSize, cellSize, cellSize);
+				}
+			}
+		}
+
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setColor(PATH_COLOR);
+		g.setStroke(new BasicStroke(Math.max(1f, cellSize / 2f), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+		for (List<Tile> path : paths) {
+			if (path.isEmpty()) {
+				continue;
+			}
+			Path2D line = new Path2D.Float();
+			line.moveTo(centerX(path.get(0)), centerY(path.get(0)));
+			for (Tile tile : path) {
+				line.lineTo(centerX(tile), centerY(tile));
+			}
+			g.draw(line);
+		}
+
+		paintLegend(g, map, rows * cellSize, max);
+	}
+
+	private void paintLegend(Graphics2D g, TileHeatmap map, int top, float max) {
+		int width = Math.min(200, getWidth(map) / 2);
+		for (int x = 0; x < width; x++) {
+			g.setColor(getColor((x + 1f) / width));
+			g.fillRect(x + 4, top + 4, 1, LEGEND_HEIGHT / 2);
+		}
+		g.setColor(Color.WHITE);
+		String label = String.format("%s, max %.2f", map.getTitle() == null ? "" : map.getTitle(), max);
+		g.drawString(label, width + 10, top + LEGEND_HEIGHT - 4);
+	}
+
+	private float centerX(Tile tile) {
+		return tile.getColumn() * cellSize + cellSize / 2f;
+	}
+
+	private float centerY(Tile tile) {
+		return tile.getRow() * cellSize + cellSize / 2f;
+	}
+
+	/**
+	 * Get the color of a value relative to the maximum, blue for small and red for large values
+	 */
+	public static Color getColor(float relative) {
+		float clamped = Math.max(0, Math.min(1, relative));
+		return Color.getHSBColor((1 - clamped) * 2f / 3f, 1, 1);
+	}
+
+	//========================================================================//
+	// Files
+	//========================================================================//
+
+	public BufferedImage render(TileHeatmap map) {
+		BufferedImage image = new BufferedImage(getWidth(map), getHeight(map), BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		try {
+			paint(g, map);
+		} finally {
+			g.dispose();
+		}
+		return image;
+	}
+
+	public void writePng(TileHeatmap map, OutputStream out) throws IOException {
+		ImageIO.write(render(map), "png", out);
+	}
+
+	public void writeSvg(TileHeatmap map, Writer out) throws IOException {
+		DOMImplementation domImpl = GenericDOMImplementation.getDOMImplementation();
+		Document document = domImpl.createDocument("http://www.w3.org/2000/svg", "svg", null);
+		SVGGraphics2D g = new SVGGraphics2D(document);
+		g.setSVGCanvasSize(new Dimension(getWidth(map), getHeight(map)));
+		paint(g, map);
+		g.stream(out, true);
+	}
+
+	/**
+	 * Write a map to a file, as SVG if the file name ends with .svg, as PNG otherwise
+	 */
+	public void write(TileHeatmap map, Path file) throws IOException {
+		if (file.getFileName().toString().toLowerCase().endsWith(".svg")) {
+			try (Writer out = Files.newBufferedWriter(file)) {
+				writeSvg(map, out);
+			}
+		} else {
+			try (OutputStream out = Files.newOutputStream(file)) {
+				writePng(map, out);
+			}
+		}
+	}
+
+	/**
+	 * Get a listener that writes the present and historical congestion of a router after every iteration.
+	 *
+	 * The congestion is collected on the router thread in one pass over the cluster index, the files are written
+	 * by a background thread while the router continues with the next iteration. At most one iteration is written
+	 * at a time, the router waits for the previous one before handing over the next. The remaining files are
+	 * written when routing finishes, failures to write are thrown from there or from the next iteration.
+	 *
+	 * Paths and cell size are taken as they are when an iteration finishes.
+	 *
+	 * @param factory the node factory of the router
+	 * @param directory where to write the files, named congestion_&lt;iteration&gt; and history_&lt;iteration&gt;
+	 * @param extension "png" or "svg"
+	 */
+	public PathfinderListener congestionPerIteration(PathfinderNodeFactory factory, Path directory, String extension) {
+		Device device = factory.getClusterIndex().getDevice();
+		ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "HeatmapRenderer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		return new PathfinderListener() {
+			private Future<?> writing;
+
+			@Override
+			public void iterationFinished(PathfinderMetrics.IterationStats stats) {
+				TileHeatmap present = new TileHeatmap(device, "Present overuse");
+				TileHeatmap historical = new TileHeatmap(device, "Historical overuse");
+				TileHeatmap.collectCongestion(factory, present, historical);
+				HeatmapRenderer renderer = copy();
+				int iteration = stats.getIteration();
+				awaitWriting();
+				writing = executor.submit(() -> {
+					renderer.write(present, directory.resolve("congestion_" + iteration + "." + extension));
+					renderer.write(historical, directory.resolve("history_" + iteration + "." + extension));
+					return null;
+				});
+			}
+
+			@Override
+			public void routingFinished(PathfinderMetrics metrics, boolean converged) {
+				try {
+					awaitWriting();
+				} finally {
+					executor.shutdown();
+				}
+			}
+
+			private void awaitWriting() {
+				if (writing == null) {
+					return;
+				}
+				try {
+					writing.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException) {
+						throw new UncheckedIOException((IOException) e.getCause());
+					}
+					throw new RuntimeException(e.getCause());
+				} finally {
+					writing = null;
+				}
+			}
+		};
+	}
+
+	/**
+	 * Get a renderer with the same settings and paths, which is not affected by later changes to this one
+	 */
+	private HeatmapRenderer copy() {
+		HeatmapRenderer res = new HeatmapRenderer();
+		res.cellSize = cellSize;
+		for (List<Tile> path : paths) {
+			res.addPath(path);
+		}
+		return res;
+	}
+}
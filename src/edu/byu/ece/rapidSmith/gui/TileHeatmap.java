@@ -0,0 +1,158 @@
+/*
+ * _______________________________________________________________________________
+ *
+ *  Copyright (c) 2012 TU Dresden, Chair for Embedded Systems
+ *  Copyright (c) 2013-2016 TU Darmstadt, Computer Systems Group
+ *  (http://www.rs.tu-darmstadt.de) All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement: "This product includes
+ *     software developed by the TU Dresden Chair for Embedded Systems, TU Darmstadt Computer Systems Group and
+ *     its contributors."
+ *
+ *  4. Neither the name of the TU Dresden Chair for Embedded Systems, TU Darmstadt Computer Systems Group nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY TU DRESDEN CHAIR FOR EMBEDDED SYSTEMS, TU DARMSTADT COMPUTER SYSTEMS GROUP AND
+ *  CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ *  BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ *  FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ *  REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ *  TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ *  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ *  NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * _______________________________________________________________________________
+ */
+
+package edu.byu.ece.rapidSmith.gui;
+
+import edu.byu.ece.rapidSmith.design.Design;
+import edu.byu.ece.rapidSmith.design.Instance;
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.Tile;
+import edu.byu.ece.rapidSmith.router.pathfinder.PathfinderNode;
+import edu.byu.ece.rapidSmith.router.pathfinder.PathfinderNodeFactory;
+import edu.byu.ece.rapidSmith.router.wireCluster.WireClusterIndex;
+
+import java.util.Arrays;
+
+/**
+ * A value for every tile of a device, to be drawn by {@link HeatmapRenderer}.
+ *
+ * Values are kept in a float array by unique tile address. The collect methods fill them in a single pass over
+ * the arrays of the {@link WireClusterIndex} or the instances of a design, and an existing map can be cleared and
+ * filled again, e.g. once per router iteration.
+ */
+public class TileHeatmap {
+
+	private final Device device;
+	private final String title;
+	private final float[] values;
+
+	public TileHeatmap(Device device, String title) {
+		this.device = device;
+		this.title = title;
+		this.values = new float[device.getRows() * device.getColumns()];
+	}
+
+	public Device getDevice() {
+		return device;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public float getValue(int row, int column) {
+		return values[row * device.getColumns() + column];
+	}
+
+	public float getValue(Tile tile) {
+		return values[tile.getUniqueAddress()];
+	}
+
+	public void setValue(Tile tile, float value) {
+		values[tile.getUniqueAddress()] = value;
+	}
+
+	public void addValue(Tile tile, float value) {
+		values[tile.getUniqueAddress()] += value;
+	}
+
+	public float getMax() {
+		float max = 0;
+		for (float value : values) {
+			max = Math.max(max, value);
+		}
+		return max;
+	}
+
+	public void clear() {
+		Arrays.fill(values, 0);
+	}
+
+	//========================================================================//
+	// Collecting
+	//========================================================================//
+
+	/**
+	 * Add up the overuse of the routing nodes of every tile.
+	 *
+	 * Every wire of a tile counts the overuse of the node it belongs to, so nodes spanning many tiles show up in
+	 * all of them. Nodes that were never used by the router are skipped without creating them, as are the site
+	 * pin nodes outside of the cluster index.
+	 *
+	 * @param factory the node factory of the router
+	 * @param present receives the present overuse (usage above 1), may be null
+	 * @param historical receives the historical overuse, may be null
+	 */
+	public static void collectCongestion(PathfinderNodeFactory factory, TileHeatmap present, TileHeatmap historical) {
+		WireClusterIndex index = factory.getClusterIndex();
+		int tiles = index.getDevice().getRows() * index.getDevice().getColumns();
+		float[] presentValues = present == null ? null : present.values;
+		float[] historicalValues = historical == null ? null : historical.values;
+		for (int t = 0; t < tiles; t++) {
+			for (int i = index.getTileStart(t); i < index.getTileStart(t + 1); i++) {
+				PathfinderNode node = factory.getCreatedNode(index.getClusterId(i));
+				if (node == null) {
+					continue;
+				}
+				if (presentValues != null && node.getCurrentUsage() > 1) {
+					presentValues[t] += node.getCurrentUsage() - 1;
+				}
+				if (historicalValues != null) {
+					historicalValues[t] += node.getHistoricalOveruse();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the fraction of the primitive sites of every tile used by an instance of a design
+	 */
+	public static TileHeatmap siteUtilization(Design design) {
+		TileHeatmap res = new TileHeatmap(design.getDevice(), "Site utilization");
+		for (Instance instance : design.getInstances()) {
+			Tile tile = instance.getTile();
+			if (tile != null && tile.getPrimitiveSites() != null) {
+				res.values[tile.getUniqueAddress()] += 1f / tile.getPrimitiveSites().length;
+			}
+		}
+		return res;
+	}
+}
@@ -0,0 +1,596 @@
+/*
+ * Copyright (c) 2010 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.placer;
+
+import edu.byu.ece.rapidSmith.design.Design;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * A quadratic global placer followed by a greedy legalizer.
+ *
+ * The placer works in four phases:
+ * <ol>
+ * <li>Build: the nets of the {@link PlacementModel} are turned into a sparse,
+ * symmetric connectivity matrix (CSR arrays). Small nets use the clique model,
+ * large nets are connected to the center of their pins, which is updated in every
+ * iteration.</li>
+ * <li>Solve: the X and Y coordinates are solved independently with a Jacobi
+ * preconditioned conjugate gradient solver.</li>
+ * <li>Spread: instances are spread over the compatible sites of their type, strip
+ * by strip, and anchored to their spread positions with increasing weight for the
+ * next solve.</li>
+ * <li>Legalize: every movable instance is put on the nearest free compatible site.</li>
+ * </ol>
+ * The time spent in every phase is available from {@link #getPhaseTimes()}.
+ */
+public class AnalyticalPlacer {
+
+	private static final Logger logger = LoggerFactory.getLogger(AnalyticalPlacer.class);
+
+	/** Nets with more instances are connected to their center instead of as a clique */
+	private static final int CLIQUE_LIMIT = 10;
+
+	/** Weight that keeps otherwise unconnected instances at their start position */
+	private static final double MIN_ANCHOR_WEIGHT = 1E-3;
+
+	private final PlacementModel model;
+	private final int numMovable;
+
+	// Options
+	private int iterations = 8;
+	private int binSize = 4;
+	private double initialAnchorWeight = 0.01;
+	private double cgTolerance = 1E-5;
+	private int maxCGIterations = 500;
+
+	/** Positions of the movable instances */
+	private final double[] x;
+	private final double[] y;
+	/** Positions of all instances placed at the start, NaN for unplaced ones */
+	private final double[] fixedX;
+	private final double[] fixedY;
+
+	// Connectivity matrix of the movable instances, without the diagonal
+	private int[] rowStart;
+	private int[] cols;
+	private double[] vals;
+	/** Diagonal of the connectivity matrix, without anchors */
+	private double[] diag;
+	/** Right hand side caused by connections to fixed instances */
+	private double[] fixedBX;
+	private double[] fixedBY;
+	/** Large nets, connected to their center */
+	private int[] bigNets;
+	private double[] bigNetWeight;
+
+	// Movable instances grouped by their (shared) candidate array
+	private List<int[]> groupCandidates;
+	private List<int[]> groupInstances;
+
+	private final Map<String, Long> phaseTimes = new LinkedHashMap<>();
+	private int cgIterations;
+
+	public AnalyticalPlacer(PlacementModel model) {
+		this.model = model;
+		this.numMovable = model.getNumMovable();
+		x = new double[numMovable];
+		y = new double[numMovable];
+		fixedX = new double[model.getNumInstances()];
+		fixedY = new double[model.getNumInstances()];
+
+		int[] sites = model.getInitialSites();
+		for (int i = 0; i < sites.length; i++) {
+			fixedX[i] = sites[i] < 0 ? Double.NaN : model.getSiteX(sites[i]);
+			fixedY[i] = sites[i] < 0 ? Double.NaN : model.getSiteY(sites[i]);
+		}
+		for (int i = 0; i < numMovable; i++) {
+			if (sites[i] >= 0) {
+				x[i] = fixedX[i];
+				y[i] = fixedY[i];
+			} else {
+				// the center of the compatible sites
+				int[] candidates = model.getCandidates(i);
+				x[i] = IntStream.of(candidates).map(model::getSiteX).average().orElse(0);
+				y[i] = IntStream.of(candidates).map(model::getSiteY).average().orElse(0);
+			}
+		}
+	}
+
+	/** Sets the number of solve/spread iterations. Defaults to 8. */
+	public void setIterations(int iterations) {
+		this.iterations = iterations;
+	}
+
+	/** Sets the size of the spreading strips in tiles. Defaults to 4. */
+	public void setBinSize(int binSize) {
+		this.binSize = binSize;
+	}
+
+	/** Sets the weight of the spreading anchors in the first iteration. It doubles every iteration. */
+	public void setInitialAnchorWeight(double initialAnchorWeight) {
+		this.initialAnchorWeight = initialAnchorWeight;
+	}
+
+	/** Sets the relative residual at which the conjugate gradient solver stops. */
+	public void setCGTolerance(double cgTolerance) {
+		this.cgTolerance = cgTolerance;
+	}
+
+	public void setMaxCGIterations(int maxCGIterations) {
+		this.maxCGIterations = maxCGIterations;
+	}
+
+	/**
+	 * Returns the time spent in every phase of the last run, in milliseconds.
+	 */
+	public Map<String, Long> getPhaseTimes() {
+		return Collections.unmodifiableMap(phaseTimes);
+	}
+
+	/**
+	 * Returns the total number of conjugate gradient iterations of the last run.
+	 */
+	public int getCGIterations() {
+		return cgIterations;
+	}
+
+	/** Returns the X coordinates of the movable instances before legalization */
+	public double[] getGlobalX() {
+		return Arrays.copyOf(x, numMovable);
+	}
+
+	/** Returns the Y coordinates of the movable instances before legalization */
+	public double[] getGlobalY() {
+		return Arrays.copyOf(y, numMovable);
+	}
+
+	/**
+	 * Places all movable instances of the model and writes the placement to the design.
+	 * @return The site of every instance of the model.
+	 */
+	public int[] place() {
+		phaseTimes.clear();
+		cgIterations = 0;
+		if (numMovable == 0)
+			return model.getInitialSites();
+
+		long start = System.nanoTime();
+		buildMatrix();
+		buildGroups();
+		addPhaseTime("build", start);
+
+		double[] anchorX = new double[numMovable];
+		double[] anchorY = new double[numMovable];
+		double[] anchorWeight = new double[numMovable];
+		Arrays.fill(anchorWeight, MIN_ANCHOR_WEIGHT);
+		System.arraycopy(x, 0, anchorX, 0, numMovable);
+		System.arraycopy(y, 0, anchorY, 0, numMovable);
+
+		double weight = initialAnchorWeight;
+		for (int it = 0; it < iterations; it++) {
+			start = System.nanoTime();
+			solve(anchorX, anchorY, anchorWeight);
+			addPhaseTime("solve", start);
+
+			start = System.nanoTime();
+			spread(anchorX, anchorY);
+			Arrays.fill(anchorWeight, weight);
+			weight *= 2;
+			addPhaseTime("spread", start);
+			logger.debug("Iteration {}: HPWL {}", it, getGlobalHPWL());
+		}
+
+		start = System.nanoTime();
+		int[] instSite = legalize();
+		addPhaseTime("legalize", start);
+
+		start = System.nanoTime();
+		model.apply(instSite);
+		addPhaseTime("apply", start);
+
+		logger.info("Placed {} instances, HPWL {}, {} CG iterations, phase times (ms) {}",
+				numMovable, model.getTotalHPWL(instSite), cgIterations, phaseTimes);
+		return instSite;
+	}
+
+	private void addPhaseTime(String phase, long start) {
+		phaseTimes.merge(phase, (System.nanoTime() - start) / 1000000, Long::sum);
+	}
+
+	////////////////////////////////
+	// Build
+	////////////////////////////////
+
+	private void buildMatrix() {
+		int[] netInsts = model.getNetInstances();
+		int numNets = model.getNumNets();
+		diag = new double[numMovable];
+		fixedBX = new double[numMovable];
+		fixedBY = new double[numMovable];
+
+		// Count the off diagonal entries of every row
+		int[] rowCount = new int[numMovable];
+		int numBig = 0;
+		for (int n = 0; n < numNets; n++) {
+			int start = model.getNetStart(n);
+			int end = model.getNetEnd(n);
+			if (end - start > CLIQUE_LIMIT) {
+				numBig++;
+				continue;
+			}
+			int movable = 0;
+			for (int p = start; p < end; p++)
+				if (netInsts[p] < numMovable) movable++;
+			for (int p = start; p < end; p++)
+				if (netInsts[p] < numMovable) rowCount[netInsts[p]] += movable - 1;
+		}
+		rowStart = new int[numMovable + 1];
+		for (int i = 0; i < numMovable; i++)
+			rowStart[i + 1] = rowStart[i] + rowCount[i];
+		cols = new int[rowStart[numMovable]];
+		vals = new double[rowStart[numMovable]];
+		bigNets = new int[numBig];
+		bigNetWeight = new double[numBig];
+
+		int[] fill = Arrays.copyOf(rowStart, numMovable);
+		numBig = 0;
+		for (int n = 0; n < numNets; n++) {
+			int start = model.getNetStart(n);
+			int end = model.getNetEnd(n);
+			int pins = end - start;
+			double w = 1.0 / (pins - 1);
+			if (pins > CLIQUE_LIMIT) {
+				bigNets[numBig] = n;
+				bigNetWeight[numBig++] = w * 2;
+				for (int p = start; p < end; p++)
+					if (netInsts[p] < numMovable) diag[netInsts[p]] += w * 2;
+				continue;
+			}
+			for (int p = start; p < end; p++) {
+				int i = netInsts[p];
+				if (i >= numMovable)
+					continue;
+				for (int q = start; q < end; q++) {
+					int j = netInsts[q];
+					if (i == j)
+						continue;
+					diag[i] += w;
+					if (j < numMovable) {
+						cols[fill[i]] = j;
+						vals[fill[i]++] = -w;
+					} else {
+						fixedBX[i] += w * fixedX[j];
+						fixedBY[i] += w * fixedY[j];
+					}
+				}
+			}
+		}
+	}
+
+	private void buildGroups() {
+		Map<int[], List<Integer>> groups = new IdentityHashMap<>();
+		for (int i = 0; i < numMovable; i++)
+			groups.computeIfAbsent(model.getCandidates(i), k -> new ArrayList<>()).add(i);
+		groupCandidates = new ArrayList<>(groups.keySet());
+		// Legalize the types with the fewest sites first, they have the fewest alternatives
+		groupCandidates.sort((a, b) -> Integer.compare(a.length, b.length));
+		groupInstances = new ArrayList<>();
+		for (int[] candidates : groupCandidates)
+			groupInstances.add(groups.get(candidates).stream().mapToInt(Integer::intValue).toArray());
+	}
+
+	////////////////////////////////
+	// Solve
+	////////////////////////////////
+
+	private void solve(double[] anchorX, double[] anchorY, double[] anchorWeight) {
+		// Centers of the large nets, from the last solution
+		double[] centerX = new double[bigNets.length];
+		double[] centerY = new double[bigNets.length];
+		int[] netInsts = model.getNetInstances();
+		for (int b = 0; b < bigNets.length; b++) {
+			int start = model.getNetStart(bigNets[b]);
+			int end = model.getNetEnd(bigNets[b]);
+			for (int p = start; p < end; p++) {
+				int inst = netInsts[p];
+				centerX[b] += inst < numMovable ? x[inst] : fixedX[inst];
+				centerY[b] += inst < numMovable ? y[inst] : fixedY[inst];
+			}
+			centerX[b] /= end - start;
+			centerY[b] /= end - start;
+		}
+
+		double[] d = new double[numMovable];
+		double[] bx = new double[numMovable];
+		double[] by = new double[numMovable];
+		for (int i = 0; i < numMovable; i++) {
+			d[i] = diag[i] + anchorWeight[i];
+			bx[i] = fixedBX[i] + anchorWeight[i] * anchorX[i];
+			by[i] = fixedBY[i] + anchorWeight[i] * anchorY[i];
+		}
+		for (int b = 0; b < bigNets.length; b++) {
+			double w = bigNetWeight[b];
+			for (int p = model.getNetStart(bigNets[b]); p < model.getNetEnd(bigNets[b]); p++) {
+				int inst = netInsts[p];
+				if (inst < numMovable) {
+					bx[inst] += w * centerX[b];
+					by[inst] += w * centerY[b];
+				}
+			}
+		}
+
+		int[] iterationCount = new int[2];
+		IntStream.range(0, 2).parallel().forEach(dim -> iterationCount[dim] = dim == 0 ?
+				conjugateGradient(d, bx, x) : conjugateGradient(d, by, y));
+		cgIterations += iterationCount[0] + iterationCount[1];
+	}
+
+	/**
+	 * Solves (A + diag(d)) * v = b, where A is the off diagonal part of the matrix.
+	 * v holds the start value and receives the solution.
+	 * @return the number of iterations
+	 */
+	private int conjugateGradient(double[] d, double[] b, double[] v) {
+		int n = numMovable;
+		double[] r = new double[n];
+		double[] z = new double[n];
+		double[] p = new double[n];
+		double[] q = new double[n];
+
+		multiply(d, v, q);
+		double bNorm = 0;
+		double rz = 0;
+		for (int i = 0; i < n; i++) {
+			r[i] = b[i] - q[i];
+			z[i] = r[i] / d[i];
+			p[i] = z[i];
+			rz += r[i] * z[i];
+			bNorm += b[i] * b[i];
+		}
+		double limit = cgTolerance * cgTolerance * Math.max(bNorm, 1E-30);
+
+		for (int it = 0; it < maxCGIterations; it++) {
+			double rNorm = 0;
+			for (int i = 0; i < n; i++)
+				rNorm += r[i] * r[i];
+			if (rNorm <= limit)
+				return it;
+
+			multiply(d, p, q);
+			double pq = 0;
+			for (int i = 0; i < n; i++)
+				pq += p[i] * q[i];
+			double alpha = rz / pq;
+			double rzNew = 0;
+			for (int i = 0; i < n; i++) {
+				v[i] += alpha * p[i];
+				r[i] -= alpha * q[i];
+				z[i] = r[i] / d[i];
+				rzNew += r[i] * z[i];
+			}
+			double beta = rzNew / rz;
+			rz = rzNew;
+			for (int i = 0; i < n; i++)
+				p[i] = z[i] + beta * p[i];
+		}
+		return maxCGIterations;
+	}
+
+	/**
+	 * out = (A + diag(d)) * v
+	 */
+	private void multiply(double[] d, double[] v, double[] out) {
+		IntStream.range(0, numMovable).parallel().forEach(i -> {
+			double sum = d[i] * v[i];
+			for (int k = rowStart[i]; k < rowStart[i + 1]; k++)
+				sum += vals[k] * v[cols[k]];
+			out[i] = sum;
+		});
+	}
+
+	////////////////////////////////
+	// Spread
+	////////////////////////////////
+
+	/**
+	 * Computes spread positions of all movable instances. Every type is spread over its
+	 * compatible sites, first along X within horizontal strips, then along Y within
+	 * vertical strips: the k-th instance of a strip (in coordinate order) is moved
+	 * towards the coordinate of the matching quantile of the sites of that strip. The
+	 * move is scaled by the utilization of the strip, so sparsely used regions are not
+	 * spread over the whole device.
+	 */
+	private void spread(double[] targetX, double[] targetY) {
+		System.arraycopy(x, 0, targetX, 0, numMovable);
+		System.arraycopy(y, 0, targetY, 0, numMovable);
+		IntStream.range(0, groupCandidates.size()).parallel().forEach(g -> {
+			int[] candidates = groupCandidates.get(g);
+			int[] insts = groupInstances.get(g);
+			spreadDimension(insts, candidates, targetX, targetY, true);
+			spreadDimension(insts, candidates, targetX, targetY, false);
+		});
+	}
+
+	private void spreadDimension(int[] insts, int[] candidates, double[] targetX, double[] targetY,
+								 boolean alongX) {
+		// strips orthogonal to the spreading direction
+		double[] along = alongX ? targetX : targetY;
+		double[] across = alongX ? targetY : targetX;
+		int numStrips = (alongX ? model.getHeight() : model.getWidth()) / binSize + 1;
+
+		List<List<Integer>> stripSites = new ArrayList<>(numStrips);
+		List<List<Integer>> stripInsts = new ArrayList<>(numStrips);
+		for (int s = 0; s < numStrips; s++) {
+			stripSites.add(new ArrayList<>());
+			stripInsts.add(new ArrayList<>());
+		}
+		for (int site : candidates) {
+			int c = alongX ? model.getSiteY(site) : model.getSiteX(site);
+			stripSites.get(c / binSize).add(alongX ? model.getSiteX(site) : model.getSiteY(site));
+		}
+		for (int inst : insts) {
+			int s = (int) Math.round(across[inst]) / binSize;
+			stripInsts.get(Math.max(0, Math.min(numStrips - 1, s))).add(inst);
+		}
+
+		for (int s = 0; s < numStrips; s++) {
+			List<Integer> instList = stripInsts.get(s);
+			if (instList.isEmpty())
+				continue;
+			List<Integer> coords = stripSites.get(s);
+			if (coords.isEmpty())
+				// the next dimension moves them to a strip with sites
+				continue;
+			Collections.sort(coords);
+			instList.sort((a, b) -> Double.compare(along[a], along[b]));
+			int numInsts = instList.size();
+			int numSites = coords.size();
+			double utilization = Math.min(1.0, numInsts / (double) numSites);
+			for (int k = 0; k < numInsts; k++) {
+				int inst = instList.get(k);
+				int quantile = (int) ((k + 0.5) * numSites / numInsts);
+				double spread = coords.get(Math.min(numSites - 1, quantile));
+				along[inst] += (spread - along[inst]) * utilization;
+			}
+		}
+	}
+
+	private long getGlobalHPWL() {
+		int[] netInsts = model.getNetInstances();
+		double total = 0;
+		for (int n = 0; n < model.getNumNets(); n++) {
+			double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE;
+			double minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+			for (int p = model.getNetStart(n); p < model.getNetEnd(n); p++) {
+				int inst = netInsts[p];
+				double px = inst < numMovable ? x[inst] : fixedX[inst];
+				double py = inst < numMovable ? y[inst] : fixedY[inst];
+				minX = Math.min(minX, px);
+				maxX = Math.max(maxX, px);
+				minY = Math.min(minY, py);
+				maxY = Math.max(maxY, py);
+			}
+			total += (maxX - minX) + (maxY - minY);
+		}
+		return Math.round(total);
+	}
+
+	////////////////////////////////
+	// Legalize
+	////////////////////////////////
+
+	/**
+	 * Puts every movable instance on the free compatible site nearest to its global
+	 * position. Sites are searched in rings of growing distance around the position.
+	 */
+	private int[] legalize() {
+		int width = model.getWidth();
+		int height = model.getHeight();
+		int[] instSite = model.getInitialSites();
+		boolean[] used = new boolean[model.getNumSites()];
+		for (int i = numMovable; i < instSite.length; i++)
+			used[instSite[i]] = true;
+
+		for (int g = 0; g < groupCandidates.size(); g++) {
+			int[] candidates = groupCandidates.get(g);
+			// Sites of the group per tile, as CSR arrays over the tile grid
+			int[] tileStart = new int[width * height + 1];
+			for (int site : candidates)
+				tileStart[model.getSiteX(site) * height + model.getSiteY(site) + 1]++;
+			for (int t = 0; t < width * height; t++)
+				tileStart[t + 1] += tileStart[t];
+			int[] tileSites = new int[candidates.length];
+			int[] fill = Arrays.copyOf(tileStart, width * height);
+			for (int site : candidates)
+				tileSites[fill[model.getSiteX(site) * height + model.getSiteY(site)]++] = site;
+
+			int[] insts = groupInstances.get(g);
+			int[] order = IntStream.of(insts).boxed()
+					.sorted((a, b) -> x[a] != x[b] ? Double.compare(x[a], x[b]) : Double.compare(y[a], y[b]))
+					.mapToInt(Integer::intValue).toArray();
+			for (int inst : order) {
+				int site = findNearestFreeSite(x[inst], y[inst], tileStart, tileSites, used, width, height);
+				if (site < 0)
+					throw new IllegalStateException("Legalization failed, no free site for instance " +
+							model.getInstance(inst).getName());
+				used[site] = true;
+				instSite[inst] = site;
+			}
+		}
+		return instSite;
+	}
+
+	private int findNearestFreeSite(double px, double py, int[] tileStart, int[] tileSites,
+									boolean[] used, int width, int height) {
+		int cx = Math.max(0, Math.min(width - 1, (int) Math.round(px)));
+		int cy = Math.max(0, Math.min(height - 1, (int) Math.round(py)));
+		int maxRadius = Math.max(width, height);
+		int best = -1;
+		double bestDist = Double.MAX_VALUE;
+		for (int r = 0; r <= maxRadius; r++) {
+			// Sites on ring r are at least r-1 away from the position
+			if (r - 1 > bestDist)
+				break;
+			for (int tx = cx - r; tx <= cx + r; tx++) {
+				if (tx < 0 || tx >= width)
+					continue;
+				boolean edge = tx == cx - r || tx == cx + r;
+				for (int ty = cy - r; ty <= cy + r; ty += edge ? 1 : Math.max(1, 2 * r)) {
+					if (ty < 0 || ty >= height)
+						continue;
+					int tile = tx * height + ty;
+					for (int k = tileStart[tile]; k < tileStart[tile + 1]; k++) {
+						int site = tileSites[k];
+						if (used[site])
+							continue;
+						double dist = Math.abs(tx - px) + Math.abs(ty - py);
+						if (dist < bestDist) {
+							bestDist = dist;
+							best = site;
+						}
+					}
+				}
+			}
+		}
+		return best;
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println("USAGE: AnalyticalPlacer <input.xdl> <output.xdl>");
+			return;
+		}
+		Design design = new Design(Paths.get(args[0]));
+		new AnalyticalPlacer(new PlacementModel(design, true)).place();
+		design.saveXDLFile(Paths.get(args[1]));
+	}
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2010 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.placer;
+
+import edu.byu.ece.rapidSmith.design.Design;
+import edu.byu.ece.rapidSmith.design.Instance;
+import edu.byu.ece.rapidSmith.design.Net;
+import edu.byu.ece.rapidSmith.design.Pin;
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.PrimitiveSite;
+import edu.byu.ece.rapidSmith.device.PrimitiveType;
+import edu.byu.ece.rapidSmith.device.Tile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A flat, array based view of a design for placement. Instances, primitive
+ * sites and nets are given dense integer ids so that placers can keep their
+ * state in primitive arrays:
+ * <ul>
+ * <li>Instances 0 .. {@link #getNumMovable()}-1 are movable, the remaining
+ * instances are fixed at their current site.</li>
+ * <li>Sites are all primitive sites of the device, their coordinates are the
+ * column and row of their tile.</li>
+ * <li>Nets are stored as lists of instance ids (CSR arrays), together with the
+ * reverse instance to net lists. Static and clock nets are left out as they do
+ * not influence the placement.</li>
+ * </ul>
+ * Instances of module instances are always fixed, as they can only be moved
+ * together with their module instance.
+ */
+public class PlacementModel {
+
+	private final Design design;
+	private final Device dev;
+
+	private final Instance[] instances;
+	private final int numMovable;
+	private final Map<Instance, Integer> instanceIds;
+
+	private final PrimitiveSite[] sites;
+	private final Map<PrimitiveSite, Integer> siteIds;
+	private final int[] siteX;
+	private final int[] siteY;
+
+	/** Current site of every instance in the design, or -1 for unplaced instances */
+	private final int[] initialSites;
+	/** Compatible sites of every movable instance. Instances of the same type share an array. */
+	private final int[][] candidates;
+
+	private final Net[] nets;
+	private final int[] netStart;
+	private final int[] netInsts;
+	private final int[] instNetStart;
+	private final int[] instNets;
+
+	/**
+	 * Creates the placement model of a design.
+	 * @param design The design to place.
+	 * @param keepExistingPlacement If true, instances that are already placed are fixed.
+	 * Otherwise, all instances that are not part of a module instance are movable.
+	 */
+	public PlacementModel(Design design, boolean keepExistingPlacement) {
+		this.design = design;
+		this.dev = design.getDevice();
+
+		// Sites, in the order of the device's site index
+		List<PrimitiveSite> siteList = new ArrayList<>();
+		for (PrimitiveSite[] ofType : dev.getPrimitiveSiteIndex()) {
+			if (ofType != null)
+				siteList.addAll(Arrays.asList(ofType));
+		}
+		sites = siteList.toArray(new PrimitiveSite[siteList.size()]);
+		siteIds = new HashMap<>(sites.length * 2);
+		siteX = new int[sites.length];
+		siteY = new int[sites.length];
+		for (int i = 0; i < sites.length; i++) {
+			siteIds.put(sites[i], i);
+			Tile tile = sites[i].getTile();
+			siteX[i] = tile.getColumn();
+			siteY[i] = tile.getRow();
+		}
+
+		// Instances, movable ones first, each group sorted by name
+		List<Instance> movable = new ArrayList<>();
+		List<Instance> fixed = new ArrayList<>();
+		for (Instance inst : design.getInstances()) {
+			boolean isFixed = inst.getModuleInstance() != null ||
+					(keepExistingPlacement && inst.isPlaced());
+			if (!isFixed)
+				movable.add(inst);
+			else if (inst.isPlaced())
+				fixed.add(inst);
+		}
+		movable.sort(Comparator.comparing(Instance::getName));
+		fixed.sort(Comparator.comparing(Instance::getName));
+		numMovable = movable.size();
+		List<Instance> all = new ArrayList<>(movable);
+		all.addAll(fixed);
+		instances = all.toArray(new Instance[all.size()]);
+		instanceIds = new HashMap<>(instances.length * 2);
+		initialSites = new int[instances.length];
+		candidates = new int[numMovable][];
+		Map<PrimitiveType, int[]> candidatesByType = new HashMap<>();
+		for (int i = 0; i < instances.length; i++) {
+			Instance inst = instances[i];
+			instanceIds.put(inst, i);
+			initialSites[i] = inst.isPlaced() ? getSiteId(inst.getPrimitiveSite()) : -1;
+			if (i < numMovable) {
+				candidates[i] = candidatesByType.computeIfAbsent(inst.getType(), this::findCandidates);
+				if (candidates[i].length == 0)
+					throw new IllegalArgumentException("No compatible site for instance " + inst.getName() +
+							" of type " + inst.getType());
+			}
+		}
+
+		// Nets, as lists of instance ids
+		List<Net> netList = new ArrayList<>();
+		List<int[]> netPins = new ArrayList<>();
+		int[] instNetCount = new int[instances.length];
+		int pinCount = 0;
+		List<Net> designNets = new ArrayList<>(design.getNets());
+		designNets.sort(Comparator.comparing(Net::getName));
+		for (Net net : designNets) {
+			if (net.isStaticNet() || net.getPins().size() < 2 || net.isClkNet())
+				continue;
+			int[] ids = net.getPins().stream()
+					.map(Pin::getInstance)
+					.filter(instanceIds::containsKey)
+					.mapToInt(instanceIds::get)
+					.distinct()
+					.toArray();
+			if (ids.length < 2)
+				continue;
+			netList.add(net);
+			netPins.add(ids);
+			pinCount += ids.length;
+			for (int id : ids)
+				instNetCount[id]++;
+		}
+		nets = netList.toArray(new Net[netList.size()]);
+		netStart = new int[nets.length + 1];
+		netInsts = new int[pinCount];
+		for (int n = 0; n < nets.length; n++) {
+			int[] ids = netPins.get(n);
+			netStart[n + 1] = netStart[n] + ids.length;
+			System.arraycopy(ids, 0, netInsts, netStart[n], ids.length);
+		}
+		instNetStart = new int[instances.length + 1];
+		for (int i = 0; i < instances.length; i++)
+			instNetStart[i + 1] = instNetStart[i] + instNetCount[i];
+		instNets = new int[pinCount];
+		int[] fill = Arrays.copyOf(instNetStart, instances.length);
+		for (int n = 0; n < nets.length; n++) {
+			for (int p = netStart[n]; p < netStart[n + 1]; p++)
+				instNets[fill[netInsts[p]]++] = n;
+		}
+	}
+
+	private int[] findCandidates(PrimitiveType type) {
+		PrimitiveSite[] compatible = dev.getAllCompatibleSites(type);
+		if (compatible == null)
+			return new int[0];
+		return Arrays.stream(compatible).mapToInt(this::getSiteId).toArray();
+	}
+
+	public Design getDesign() {
+		return design;
+	}
+
+	public Device getDevice() {
+		return dev;
+	}
+
+	public int getNumInstances() {
+		return instances.length;
+	}
+
+	/** Returns the number of movable instances, which have the ids 0 .. getNumMovable()-1 */
+	public int getNumMovable() {
+		return numMovable;
+	}
+
+	public Instance getInstance(int id) {
+		return instances[id];
+	}
+
+	/** Returns the id of the instance or -1 if it is not part of the model */
+	public int getInstanceId(Instance inst) {
+		Integer id = instanceIds.get(inst);
+		return id == null ? -1 : id;
+	}
+
+	public int getNumSites() {
+		return sites.length;
+	}
+
+	public PrimitiveSite getSite(int id) {
+		return sites[id];
+	}
+
+	public int getSiteId(PrimitiveSite site) {
+		Integer id = siteIds.get(site);
+		return id == null ? -1 : id;
+	}
+
+	public int getSiteX(int site) {
+		return siteX[site];
+	}
+
+	public int getSiteY(int site) {
+		return siteY[site];
+	}
+
+	/** Returns the number of tile columns of the device (the range of the site X coordinates) */
+	public int getWidth() {
+		return dev.getColumns();
+	}
+
+	/** Returns the number of tile rows of the device (the range of the site Y coordinates) */
+	public int getHeight() {
+		return dev.getRows();
+	}
+
+	/**
+	 * Returns the current placement of all instances as site ids. The returned array
+	 * may be modified by the caller.
+	 */
+	public int[] getInitialSites() {
+		return Arrays.copyOf(initialSites, initialSites.length);
+	}
+
+	/**
+	 * Returns the compatible sites of a movable instance. The array is shared and must
+	 * not be modified.
+	 */
+	public int[] getCandidates(int inst) {
+		return candidates[inst];
+	}
+
+	public int getNumNets() {
+		return nets.length;
+	}
+
+	public Net getNet(int id) {
+		return nets[id];
+	}
+
+	/** Start of the instance list of the net in {@link #getNetInstances()} */
+	public int getNetStart(int net) {
+		return netStart[net];
+	}
+
+	/** End (exclusive) of the instance list of the net in {@link #getNetInstances()} */
+	public int getNetEnd(int net) {
+		return netStart[net + 1];
+	}
+
+	/** The concatenated instance lists of all nets. Must not be modified. */
+	public int[] getNetInstances() {
+		return netInsts;
+	}
+
+	/** Start of the net list of the instance in {@link #getInstanceNets()} */
+	public int getInstanceNetStart(int inst) {
+		return instNetStart[inst];
+	}
+
+	/** End (exclusive) of the net list of the instance in {@link #getInstanceNets()} */
+	public int getInstanceNetEnd(int inst) {
+		return instNetStart[inst + 1];
+	}
+
+	/** The concatenated net lists of all instances. Must not be modified. */
+	public int[] getInstanceNets() {
+		return instNets;
+	}
+
+	/**
+	 * Computes the half-perimeter wirelength of a net for the given placement.
+	 */
+	public int getNetHPWL(int net, int[] instSite) {
+		int minX = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE;
+		int minY = Integer.MAX_VALUE;
+		int maxY = Integer.MIN_VALUE;
+		for (int p = netStart[net]; p < netStart[net + 1]; p++) {
+			int site = instSite[netInsts[p]];
+			int x = siteX[site];
+			int y = siteY[site];
+			if (x < minX) minX = x;
+			if (x > maxX) maxX = x;
+			if (y < minY) minY = y;
+			if (y > maxY) maxY = y;
+		}
+		return (maxX - minX) + (maxY - minY);
+	}
+
+	/**
+	 * Computes the total half-perimeter wirelength of the given placement.
+	 */
+	public long getTotalHPWL(int[] instSite) {
+		long total = 0;
+		for (int n = 0; n < nets.length; n++)
+			total += getNetHPWL(n, instSite);
+		return total;
+	}
+
+	/**
+	 * Writes the placement of the movable instances to the design.
+	 * @param instSite The site of every instance.
+	 */
+	public void apply(int[] instSite) {
+		// Unplace first, so that instances can swap sites
+		for (int i = 0; i < numMovable; i++) {
+			if (instances[i].isPlaced())
+				instances[i].unPlace();
+		}
+		for (int i = 0; i < numMovable; i++)
+			instances[i].place(sites[instSite[i]]);
+	}
+}
@@ -0,0 +1,635 @@
+/*
+ * Copyright (c) 2010 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.placer;
+
+import edu.byu.ece.rapidSmith.design.Design;
+import edu.byu.ece.rapidSmith.device.PrimitiveSite;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * A simulated annealing placer minimizing the half-perimeter wirelength (HPWL)
+ * of all nets.
+ *
+ * The placement state is kept in primitive arrays (instance to site, site to
+ * instance and the HPWL of every net), so the cost of a move is computed by
+ * only looking at the nets of the moved instances. Moves are generated and
+ * evaluated in parallel batches. The evaluated moves are then committed in
+ * order; a move whose instances or nets were changed by an earlier move of the
+ * same batch is re-evaluated before it is accepted. All random decisions are
+ * derived from the seed and a move counter, so the result does not depend on the
+ * number of threads.
+ *
+ * The annealing schedule follows VPR: the temperature and the move range limit
+ * are adapted to the acceptance rate of the previous temperature. The state of
+ * the annealer can be written to a checkpoint file after every temperature and
+ * a run can be resumed from such a checkpoint.
+ */
+public class SimulatedAnnealingPlacer {
+
+	private static final Logger logger = LoggerFactory.getLogger(SimulatedAnnealingPlacer.class);
+
+	private static final long CHECKPOINT_MAGIC = 0x5253534150310001L;
+
+	private final PlacementModel model;
+	private final long seed;
+
+	/** Site of every instance */
+	private final int[] instSite;
+	/** Instance at every site, or -1 */
+	private final int[] siteInst;
+	/** HPWL of every net */
+	private final int[] netCost;
+	private long totalCost;
+
+	/** Candidate sites of every movable instance, sorted by X coordinate */
+	private final int[][] sortedCandidates;
+	/** X coordinates of the sorted candidates */
+	private final int[][] sortedCandidateX;
+
+	// Annealing state
+	private double temperature = -1;
+	private double rangeLimit;
+	private long moveCounter;
+	private int temperatureStep;
+
+	// Options
+	private double innerNum = 1.0;
+	private int batchSize = 1024;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private Path checkpointFile;
+
+	// Per batch move data
+	private int[] moveInst;
+	private int[] moveFrom;
+	private int[] moveTarget;
+	private int[] moveOther;
+	private long[] moveDelta;
+	private double[] moveRandom;
+	private int[] netStamp;
+	private int[] instStamp;
+	private int stamp;
+
+	/**
+	 * Creates a placer for the given model. The current placement of the model is
+	 * the starting point, unplaced movable instances are placed randomly.
+	 * @param model The design to place.
+	 * @param seed Seed of the random decisions.
+	 */
+	public SimulatedAnnealingPlacer(PlacementModel model, long seed) {
+		this.model = model;
+		this.seed = seed;
+		instSite = model.getInitialSites();
+		siteInst = new int[model.getNumSites()];
+		netCost = new int[model.getNumNets()];
+		netStamp = new int[model.getNumNets()];
+		instStamp = new int[model.getNumInstances()];
+
+		Map<int[], int[][]> sortedByArray = new IdentityHashMap<>();
+		sortedCandidates = new int[model.getNumMovable()][];
+		sortedCandidateX = new int[model.getNumMovable()][];
+		for (int i = 0; i < model.getNumMovable(); i++) {
+			int[][] sorted = sortedByArray.computeIfAbsent(model.getCandidates(i), this::sortByX);
+			sortedCandidates[i] = sorted[0];
+			sortedCandidateX[i] = sorted[1];
+		}
+
+		placeUnplacedInstances();
+		rangeLimit = Math.max(model.getWidth(), model.getHeight());
+	}
+
+	private int[][] sortByX(int[] candidates) {
+		int[] sorted = IntStream.of(candidates).boxed()
+				.sorted((a, b) -> model.getSiteX(a) != model.getSiteX(b) ?
+						Integer.compare(model.getSiteX(a), model.getSiteX(b)) :
+						Integer.compare(model.getSiteY(a), model.getSiteY(b)))
+				.mapToInt(Integer::intValue)
+				.toArray();
+		int[] xs = IntStream.of(sorted).map(model::getSiteX).toArray();
+		return new int[][]{sorted, xs};
+	}
+
+	/**
+	 * Places all movable instances without a site at a random free compatible site.
+	 */
+	private void placeUnplacedInstances() {
+		Arrays.fill(siteInst, -1);
+		for (int i = 0; i < instSite.length; i++) {
+			if (instSite[i] >= 0)
+				siteInst[instSite[i]] = i;
+		}
+		for (int i = 0; i < model.getNumMovable(); i++) {
+			if (instSite[i] >= 0)
+				continue;
+			int[] candidates = model.getCandidates(i);
+			int idx = new MoveRandom(seed, -1 - i).nextInt(candidates.length);
+			int watchDog = 0;
+			while (siteInst[candidates[idx]] >= 0) {
+				if (++idx >= candidates.length) idx = 0;
+				if (++watchDog > candidates.length)
+					throw new IllegalStateException("Placement failed, no free site for instance " +
+							model.getInstance(i).getName());
+			}
+			instSite[i] = candidates[idx];
+			siteInst[candidates[idx]] = i;
+		}
+	}
+
+	private void initCosts() {
+		IntStream.range(0, netCost.length).parallel()
+				.forEach(n -> netCost[n] = model.getNetHPWL(n, instSite));
+		totalCost = 0;
+		for (int cost : netCost)
+			totalCost += cost;
+	}
+
+	/**
+	 * Sets the number of moves per temperature, as a factor of numMovable^(4/3).
+	 * Defaults to 1.
+	 */
+	public void setInnerNum(double innerNum) {
+		this.innerNum = innerNum;
+	}
+
+	/**
+	 * Sets the number of moves that are evaluated in parallel before they are committed.
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sets the number of threads used to evaluate moves.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Sets the file the annealing state is written to after every temperature, or
+	 * null to disable checkpoints.
+	 */
+	public void setCheckpointFile(Path checkpointFile) {
+		this.checkpointFile = checkpointFile;
+	}
+
+	public long getTotalCost() {
+		return totalCost;
+	}
+
+	public double getTemperature() {
+		return temperature;
+	}
+
+	/**
+	 * Returns the site id of every instance of the model.
+	 */
+	public int[] getPlacement() {
+		return Arrays.copyOf(instSite, instSite.length);
+	}
+
+	/**
+	 * Runs (or resumes) the annealing and writes the resulting placement to the design.
+	 */
+	public void place() {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			anneal(pool);
+		} finally {
+			pool.shutdown();
+		}
+		model.apply(instSite);
+	}
+
+	private void anneal(ForkJoinPool pool) {
+		initCosts();
+		int numMovable = model.getNumMovable();
+		if (numMovable == 0 || model.getNumNets() == 0) {
+			logger.info("Nothing to anneal");
+			return;
+		}
+		moveInst = new int[batchSize];
+		moveFrom = new int[batchSize];
+		moveTarget = new int[batchSize];
+		moveOther = new int[batchSize];
+		moveDelta = new long[batchSize];
+		moveRandom = new double[batchSize];
+
+		if (temperature < 0)
+			temperature = getInitialTemperature(pool);
+		long movesPerTemperature = Math.max(1, (long) (innerNum * Math.pow(numMovable, 4.0 / 3.0)));
+		double maxRange = Math.max(model.getWidth(), model.getHeight());
+		logger.info("Annealing {} instances, {} nets, initial cost {}, {} moves per temperature",
+				numMovable, model.getNumNets(), totalCost, movesPerTemperature);
+
+		while (true) {
+			// A zero cost can not get better and would keep the temperature above the limit forever
+			boolean last = totalCost == 0 || temperature <= 0.005 * totalCost / model.getNumNets();
+			if (last)
+				// Final greedy pass
+				temperature = 0;
+			long begin = System.nanoTime();
+			long accepted = 0;
+			for (long done = 0; done < movesPerTemperature; done += batchSize) {
+				int count = (int) Math.min(batchSize, movesPerTemperature - done);
+				accepted += runBatch(pool, count);
+			}
+			double acceptRate = accepted / (double) movesPerTemperature;
+			logger.info("Temperature {}: T={}, cost={}, accepted {}%, range limit {}, {}s",
+					temperatureStep, temperature, totalCost, acceptRate * 100, rangeLimit,
+					(System.nanoTime() - begin) * 1E-9);
+			if (last)
+				break;
+
+			temperature *= getTemperatureFactor(acceptRate);
+			rangeLimit = Math.min(maxRange, Math.max(1, rangeLimit * (1 - 0.44 + acceptRate)));
+			temperatureStep++;
+			if (checkpointFile != null) {
+				try {
+					saveCheckpoint(checkpointFile);
+				} catch (IOException e) {
+					logger.warn("Could not write checkpoint " + checkpointFile, e);
+				}
+			}
+		}
+		assert totalCost == model.getTotalHPWL(instSite);
+	}
+
+	private static double getTemperatureFactor(double acceptRate) {
+		if (acceptRate > 0.96)
+			return 0.5;
+		if (acceptRate > 0.8)
+			return 0.9;
+		if (acceptRate > 0.15)
+			return 0.95;
+		return 0.8;
+	}
+
+	/**
+	 * The initial temperature is 20 times the standard deviation of the cost of random moves.
+	 */
+	private double getInitialTemperature(ForkJoinPool pool) {
+		int count = Math.min(batchSize, model.getNumMovable());
+		long first = moveCounter;
+		pool.submit(() -> IntStream.range(0, count).parallel().forEach(m -> generateMove(m, first + m))).join();
+		moveCounter += count;
+		double sum = 0;
+		double sumSq = 0;
+		int valid = 0;
+		for (int m = 0; m < count; m++) {
+			if (moveTarget[m] < 0)
+				continue;
+			sum += moveDelta[m];
+			sumSq += (double) moveDelta[m] * moveDelta[m];
+			valid++;
+		}
+		if (valid < 2)
+			return 1;
+		double mean = sum / valid;
+		double stdDev = Math.sqrt(Math.max(0, sumSq / valid - mean * mean));
+		return Math.max(1, 20 * stdDev);
+	}
+
+	/**
+	 * Generates and evaluates a batch of moves in parallel and commits them in order.
+	 * @return the number of accepted moves
+	 */
+	private int runBatch(ForkJoinPool pool, int count) {
+		long first = moveCounter;
+		pool.submit(() -> IntStream.range(0, count).parallel().forEach(m -> generateMove(m, first + m))).join();
+		moveCounter += count;
+
+		stamp++;
+		int accepted = 0;
+		for (int m = 0; m < count; m++) {
+			int a = moveInst[m];
+			int target = moveTarget[m];
+			if (target < 0)
+				continue;
+			long delta = moveDelta[m];
+			if (isStale(m)) {
+				// An earlier move of this batch changed the situation, evaluate again.
+				int other = siteInst[target];
+				if (instSite[a] == target || !isSwappable(a, target, other))
+					continue;
+				moveFrom[m] = instSite[a];
+				moveOther[m] = other;
+				delta = evaluate(a, instSite[a], target, other);
+			}
+			if (delta <= 0 || (temperature > 0 && moveRandom[m] < Math.exp(-delta / temperature))) {
+				commit(a, moveFrom[m], target, moveOther[m], delta);
+				accepted++;
+			}
+		}
+		return accepted;
+	}
+
+	private boolean isStale(int m) {
+		int a = moveInst[m];
+		int other = moveOther[m];
+		if (instSite[a] != moveFrom[m] || siteInst[moveTarget[m]] != other)
+			return true;
+		if (instStamp[a] == stamp || (other >= 0 && instStamp[other] == stamp))
+			return true;
+		return touchesStampedNet(a) || (other >= 0 && touchesStampedNet(other));
+	}
+
+	private boolean touchesStampedNet(int inst) {
+		int[] instNets = model.getInstanceNets();
+		for (int i = model.getInstanceNetStart(inst); i < model.getInstanceNetEnd(inst); i++) {
+			if (netStamp[instNets[i]] == stamp)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Generates move number moveNumber into slot m of the batch and evaluates its cost
+	 * against the current placement. Does not modify the placement.
+	 */
+	private void generateMove(int m, long moveNumber) {
+		MoveRandom random = new MoveRandom(seed, moveNumber);
+		int a = random.nextInt(model.getNumMovable());
+		moveInst[m] = a;
+		moveRandom[m] = random.nextDouble();
+		moveTarget[m] = -1;
+
+		int from = instSite[a];
+		int target = pickTarget(a, from, random);
+		if (target < 0)
+			return;
+		int other = siteInst[target];
+		if (!isSwappable(a, target, other))
+			return;
+		moveFrom[m] = from;
+		moveOther[m] = other;
+		moveDelta[m] = evaluate(a, from, target, other);
+		moveTarget[m] = target;
+	}
+
+	/**
+	 * Picks a random candidate site of the instance within the range limit.
+	 */
+	private int pickTarget(int a, int from, MoveRandom random) {
+		int[] candidates = sortedCandidates[a];
+		int[] xs = sortedCandidateX[a];
+		int range = (int) rangeLimit;
+		int x = model.getSiteX(from);
+		int y = model.getSiteY(from);
+		int lo = lowerBound(xs, x - range);
+		int hi = lowerBound(xs, x + range + 1);
+		if (hi <= lo)
+			return -1;
+		for (int tries = 0; tries < 8; tries++) {
+			int site = candidates[lo + random.nextInt(hi - lo)];
+			if (site != from && Math.abs(model.getSiteY(site) - y) <= range)
+				return site;
+		}
+		return -1;
+	}
+
+	private static int lowerBound(int[] values, int key) {
+		int lo = 0;
+		int hi = values.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (values[mid] < key)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Checks if instance a can move to target, swapping with the instance other
+	 * that currently occupies the target (if any).
+	 */
+	private boolean isSwappable(int a, int target, int other) {
+		if (other < 0)
+			return true;
+		if (other >= model.getNumMovable())
+			// fixed
+			return false;
+		PrimitiveSite from = model.getSite(instSite[a]);
+		return from.isCompatiblePrimitiveType(model.getInstance(other).getType());
+	}
+
+	/**
+	 * Computes the cost difference of moving a from its site to target and other
+	 * (if any) to the old site of a.
+	 */
+	private long evaluate(int a, int from, int target, int other) {
+		int[] instNets = model.getInstanceNets();
+		long delta = 0;
+		int aStart = model.getInstanceNetStart(a);
+		int aEnd = model.getInstanceNetEnd(a);
+		for (int i = aStart; i < aEnd; i++) {
+			int net = instNets[i];
+			delta += getMovedHPWL(net, a, target, other, from) - netCost[net];
+		}
+		if (other >= 0) {
+			for (int i = model.getInstanceNetStart(other); i < model.getInstanceNetEnd(other); i++) {
+				int net = instNets[i];
+				if (contains(instNets, aStart, aEnd, net))
+					// already counted with the nets of a
+					continue;
+				delta += getMovedHPWL(net, a, target, other, from) - netCost[net];
+			}
+		}
+		return delta;
+	}
+
+	private static boolean contains(int[] values, int start, int end, int value) {
+		for (int i = start; i < end; i++) {
+			if (values[i] == value)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * HPWL of the net with a at aSite and b (if any) at bSite.
+	 */
+	private int getMovedHPWL(int net, int a, int aSite, int b, int bSite) {
+		int[] netInsts = model.getNetInstances();
+		int minX = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE;
+		int minY = Integer.MAX_VALUE;
+		int maxY = Integer.MIN_VALUE;
+		for (int p = model.getNetStart(net); p < model.getNetEnd(net); p++) {
+			int inst = netInsts[p];
+			int site = inst == a ? aSite : inst == b ? bSite : instSite[inst];
+			int x = model.getSiteX(site);
+			int y = model.getSiteY(site);
+			if (x < minX) minX = x;
+			if (x > maxX) maxX = x;
+			if (y < minY) minY = y;
+			if (y > maxY) maxY = y;
+		}
+		return (maxX - minX) + (maxY - minY);
+	}
+
+	private void commit(int a, int from, int target, int other, long delta) {
+		instSite[a] = target;
+		siteInst[target] = a;
+		siteInst[from] = other;
+		instStamp[a] = stamp;
+		if (other >= 0) {
+			instSite[other] = from;
+			instStamp[other] = stamp;
+		}
+		updateNets(a);
+		if (other >= 0)
+			updateNets(other);
+		totalCost += delta;
+	}
+
+	private void updateNets(int inst) {
+		int[] instNets = model.getInstanceNets();
+		for (int i = model.getInstanceNetStart(inst); i < model.getInstanceNetEnd(inst); i++) {
+			int net = instNets[i];
+			netCost[net] = model.getNetHPWL(net, instSite);
+			netStamp[net] = stamp;
+		}
+	}
+
+	/**
+	 * Writes the current annealing state to a file. The file is replaced atomically.
+	 */
+	public void saveCheckpoint(Path file) throws IOException {
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+			out.writeLong(CHECKPOINT_MAGIC);
+			out.writeLong(seed);
+			out.writeLong(moveCounter);
+			out.writeInt(temperatureStep);
+			out.writeDouble(temperature);
+			out.writeDouble(rangeLimit);
+			out.writeInt(model.getNumMovable());
+			for (int i = 0; i < model.getNumMovable(); i++) {
+				out.writeUTF(model.getInstance(i).getName());
+				out.writeUTF(model.getSite(instSite[i]).getName());
+			}
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Restores the annealing state from a checkpoint written for the same design.
+	 * A following call to {@link #place()} resumes the annealing.
+	 */
+	public void loadCheckpoint(Path file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readLong() != CHECKPOINT_MAGIC)
+				throw new IOException(file + " is not a placer checkpoint");
+			if (in.readLong() != seed)
+				throw new IOException("Checkpoint " + file + " was written with a different seed");
+			long counter = in.readLong();
+			int step = in.readInt();
+			double t = in.readDouble();
+			double range = in.readDouble();
+			int count = in.readInt();
+			if (count != model.getNumMovable())
+				throw new IOException("Checkpoint " + file + " does not match the design");
+			int[] sites = new int[count];
+			for (int i = 0; i < count; i++) {
+				String name = in.readUTF();
+				String siteName = in.readUTF();
+				PrimitiveSite site = model.getDevice().getPrimitiveSite(siteName);
+				if (!name.equals(model.getInstance(i).getName()) || site == null)
+					throw new IOException("Checkpoint " + file + " does not match the design");
+				sites[i] = model.getSiteId(site);
+			}
+
+			for (int i = 0; i < count; i++)
+				siteInst[instSite[i]] = -1;
+			for (int i = 0; i < count; i++) {
+				instSite[i] = sites[i];
+				siteInst[sites[i]] = i;
+			}
+			moveCounter = counter;
+			temperatureStep = step;
+			temperature = t;
+			rangeLimit = range;
+		}
+	}
+
+	/**
+	 * Small deterministic random generator (SplitMix64) seeded by the placer seed and a
+	 * move number, so that each move gets the same random numbers regardless of which
+	 * thread evaluates it.
+	 */
+	private static final class MoveRandom {
+		private long state;
+
+		MoveRandom(long seed, long moveNumber) {
+			state = seed ^ (moveNumber * 0x9E3779B97F4A7C15L);
+		}
+
+		long nextLong() {
+			long z = (state += 0x9E3779B97F4A7C15L);
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			return z ^ (z >>> 31);
+		}
+
+		int nextInt(int bound) {
+			return (int) ((nextLong() >>> 33) % bound);
+		}
+
+		double nextDouble() {
+			return (nextLong() >>> 11) * 0x1.0p-53;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("USAGE: SimulatedAnnealingPlacer <input.xdl> <output.xdl> [checkpoint]");
+			return;
+		}
+		Design design = new Design(Paths.get(args[0]));
+		SimulatedAnnealingPlacer placer = new SimulatedAnnealingPlacer(new PlacementModel(design, true), 0);
+		if (args.length > 2) {
+			Path checkpoint = Paths.get(args[2]);
+			if (Files.exists(checkpoint))
+				placer.loadCheckpoint(checkpoint);
+			placer.setCheckpointFile(checkpoint);
+		}
+		placer.place();
+		design.saveXDLFile(Paths.get(args[1]));
+	}
+}
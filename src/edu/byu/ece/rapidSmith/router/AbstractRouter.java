@@ -34,7 +34,6 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.PriorityQueue;
 
 
@@ -66,10 +65,8 @@ public abstract class AbstractRouter{
 	protected Device dev;
 	/** Utility class to convert to/from wire names and enumerations */
 	protected WireEnumerator we;
-	/** This keeps track of all the used nodes in the chip during routing */
-	protected HashSet<Node> usedNodes;
-	/** Keeps track for each used node by which net it is used by */
-	protected HashMap<Node,LinkedList<Net>> usedNodesMap; // TODO - Does this really need to have multiple values, resources can't be used by multiple nets
+	/** This keeps track of all the used nodes in the chip during routing and the nets using them */
+	protected ResourceOccupancy occupancy;
 	/** This keeps track of all the visited nodes in the chip during routing */
 	protected HashSet<Node> visitedNodes;
 	/** The current working net list */
@@ -132,8 +129,7 @@ public abstract class AbstractRouter{
 		factory = n;
 		// Initialize variables
 		tempNode = factory.newNode();
-		usedNodes = new HashSet<Node>();
-		usedNodesMap = new HashMap<Node, LinkedList<Net>>();
+		occupancy = new ResourceOccupancy();
 		reservedNodes = new HashMap<Net, ArrayList<Node>>();
 		// Create a compare function based on node's cost
 		queue = new PriorityQueue<Node>(16, new Comparator<Node>() {
@@ -150,19 +146,23 @@ public abstract class AbstractRouter{
 		return design;
 	}
 	
+	/**
+	 * @return The used routing resources and the nets using them.
+	 */
+	public ResourceOccupancy getOccupancy(){
+		return occupancy;
+	}
+	
 	/**
 	 * Sets a node (combined tile and wire) as used and maps 
 	 * the usage to the given net.
 	 * @param t The tile specifier for the node to be marked as used.
 	 * @param wire The wire specifier for the node to be marked as used.
-	 * @param net The net using the node.
-	 * @return The node that was set as used.
+	 * @param net The net using the node, null if no net should be mapped.
 	 */
-	protected Node setWireAsUsed(Tile t, int wire, Net net){
-		Node n = factory.newNode(t, wire, null, 0);
-		usedNodes.add(n);
-		addUsedWireMapping(net, n);	
-		return n;
+	protected void setWireAsUsed(Tile t, int wire, Net net){
+		occupancy.setUsed(t, wire);
+		if(net != null) occupancy.addNet(t, wire, net);
 	}
 	
 	/**
@@ -171,13 +171,10 @@ public abstract class AbstractRouter{
 	 * @param t The tile specifier for the node to be marked as unused.
 	 * @param wire The wire specifier for the node to be marked as unused.
 	 * @param net The net currently using the node.
-	 * @return The node that was set as unused.
 	 */
-	protected Node setWireAsUnused(Tile t, int wire, Net net){
-		Node n = factory.newNode(t, wire, null, 0);
-		usedNodes.remove(n);
-		removeUsedWireMapping(net, n);		
-		return n;
+	protected void setWireAsUnused(Tile t, int wire, Net net){
+		occupancy.setUnused(t, wire);
+		if(net != null) occupancy.removeNet(t, wire, net);
 	}
 	
 	/**
@@ -187,14 +184,7 @@ public abstract class AbstractRouter{
 	 * @param n The node used by the given net
 	 */
 	protected void addUsedWireMapping(Net net, Node n){
-		LinkedList<Net> list = usedNodesMap.get(n);
-		if(list == null){ 
-			list = new LinkedList<Net>(); 
-		}
-		if(!list.contains(net)){ 
-			list.add(net);
-			usedNodesMap.put(n, list);
-		}
+		occupancy.addNet(n.tile, n.wire, net);
 	}
 	
 	/**
@@ -204,15 +194,7 @@ public abstract class AbstractRouter{
 	 * @param n The node to be removed.
 	 */
 	protected void removeUsedWireMapping(Net net, Node n){
-		LinkedList<Net> list = usedNodesMap.get(n);
-		if(list == null){ 
-			return; 
-		}
-		if(list.remove(net)){
-			if(list.isEmpty()){
-				usedNodesMap.remove(n);
-			}
-		}
+		occupancy.removeNet(n.tile, n.wire, net);
 	}
 	
 	/**
@@ -233,12 +215,11 @@ public abstract class AbstractRouter{
 	}
 	
 	public boolean isNodeUsed(Tile tile, int wire){
-		tempNode.setTileAndWire(tile, wire);
-		return usedNodes.contains(tempNode);
+		return occupancy.isUsed(tile, wire);
 	}
 	
 	public boolean isNodeUsed(Node node){
-		return usedNodes.contains(node);
+		return occupancy.isUsed(node);
 	}
 	
 	/**
@@ -269,20 +250,25 @@ public abstract class AbstractRouter{
 	}
 	
 	/**
-	 * Checks each node in a PIP to see if there are other nodes that should be
-	 * marked as used. These are wires external to a tile such as
+	 * Receives the tile and wire of a routing resource.
+	 */
+	protected interface ResourceVisitor{
+		void visit(Tile tile, int wire);
+	}
+	
+	/**
+	 * Checks each node in a PIP to see if there are other nodes that are used
+	 * with it. These are wires external to a tile such as
 	 * doubles/pents/hexes/longlines.
 	 * @param pip The pip to check intermediate used nodes for
-	 * @param currentNet The net to associate with the intermediate nodes, null if 
-	 * the usedNodesMap should not be updated
+	 * @param visitor Receives the intermediate nodes
 	 */
-	protected void markIntermediateNodesAsUsed(PIP pip, Net currentNet){
+	protected void forEachIntermediateNode(PIP pip, ResourceVisitor visitor){
 		WireConnection[] wires = pip.getTile().getWireConnections(pip.getEndWire());
 		if(wires != null && wires.length > 1){
 			for(WireConnection w : wires){
 				if(w.getRowOffset() != 0 || w.getColumnOffset() != 0){
-					Node tmp = setWireAsUsed(w.getTile(pip.getTile()), w.getWire(), currentNet);
-					if(currentNet != null) addUsedWireMapping(currentNet, tmp);
+					visitor.visit(w.getTile(pip.getTile()), w.getWire());
 				}
 			}
 		}
@@ -291,35 +277,25 @@ public abstract class AbstractRouter{
 			if(wires != null && wires.length > 1){
 				for(WireConnection w : wires){
 					if(w.getRowOffset() != 0 || w.getColumnOffset() != 0){
-						Node tmp = setWireAsUsed(w.getTile(pip.getTile()), w.getWire(), currentNet);
-						if(currentNet != null) addUsedWireMapping(currentNet, tmp);
+						visitor.visit(w.getTile(pip.getTile()), w.getWire());
 					}
 				}
 			}
 		}
 	}
 	
+	/**
+	 * Marks the intermediate nodes of a PIP as used, see {@link #forEachIntermediateNode}.
+	 * @param pip The pip to check intermediate used nodes for
+	 * @param currentNet The net to associate with the intermediate nodes, null if 
+	 * no net should be mapped to them
+	 */
+	protected void markIntermediateNodesAsUsed(PIP pip, Net currentNet){
+		forEachIntermediateNode(pip, (tile, wire) -> setWireAsUsed(tile, wire, currentNet));
+	}
+	
 	protected void markIntermediateNodesAsUnused(PIP pip, Net currentNet){
-		WireConnection[] wires = pip.getTile().getWireConnections(pip.getEndWire());
-		if(wires != null && wires.length > 1){
-			for(WireConnection w : wires){
-				if(w.getRowOffset() != 0 || w.getColumnOffset() != 0){
-					Node tmp = setWireAsUnused(w.getTile(pip.getTile()), w.getWire(), currentNet);
-					if(currentNet != null) removeUsedWireMapping(currentNet, tmp);
-				}
-			}
-		}
-		if(we.getWireType(pip.getStartWire()).equals(WireType.LONG) && we.getWireType(pip.getEndWire()).equals(WireType.LONG)){
-			wires = pip.getTile().getWireConnections(pip.getStartWire());
-			if(wires != null && wires.length > 1){
-				for(WireConnection w : wires){
-					if(w.getRowOffset() != 0 || w.getColumnOffset() != 0){
-						Node tmp = setWireAsUnused(w.getTile(pip.getTile()), w.getWire(), currentNet);
-						if(currentNet != null) removeUsedWireMapping(currentNet, tmp);
-					}
-				}
-			}
-		}
+		forEachIntermediateNode(pip, (tile, wire) -> setWireAsUnused(tile, wire, currentNet));
 	}	
 }
 
@@ -24,23 +24,65 @@ import edu.byu.ece.rapidSmith.design.Design;
 import edu.byu.ece.rapidSmith.design.Net;
 import edu.byu.ece.rapidSmith.design.PIP;
 import edu.byu.ece.rapidSmith.design.Pin;
+import edu.byu.ece.rapidSmith.device.Tile;
 import edu.byu.ece.rapidSmith.device.WireConnection;
 import edu.byu.ece.rapidSmith.device.WireDirection;
 import edu.byu.ece.rapidSmith.util.MessageGenerator;
 
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
- * This router is a brute force maze router.  It does not have any 
+ * This router is a brute force maze router.  By default it does not have any 
  * mechanism to address routing conflicts.  It is simply provided as
  * an illustration of how to build a router in RapidSmith and use the given
  * framework.  It WILL fail to route some nets on several designs.
+ * 
+ * With {@link #setNegotiatedCongestion(boolean)}, nets may share routing 
+ * resources at a cost while routing. Nets using shared resources are ripped 
+ * up and rerouted with growing costs for shared and often shared resources 
+ * until no resource is used by more than one net, as in PathFinder.
  * @author Chris Lavin
  */
 public class BasicRouter extends AbstractRouter{
 
+	/** Cost of a resource for each other net using it, at a present factor of 1 */
+	private static final int PRESENT_COST = 20;
+	/** Cost added to a resource for each other net using it at the end of an iteration */
+	private static final int HISTORY_COST = 10;
+
+	/** Enables the negotiated congestion loop */
+	private boolean negotiatedCongestion = false;
+	/** Maximum number of negotiated congestion iterations */
+	private int maxIterations = 30;
+	/** Present factor of the first iteration */
+	private float initialPresentFactor = 0.5f;
+	/** Factor the present factor is multiplied with after each iteration */
+	private float presentFactorGrowth = 1.5f;
+
+	/** Current present factor, weighting the cost of shared resources */
+	private float presentFactor;
+	/** Number of nets using each resource during negotiation, indexed by occupancy index */
+	private int[] shareCount = new int[0];
+	/** History cost of each resource, indexed by occupancy index */
+	private int[] historyCost = new int[0];
+
+	/**
+	 * The routing of a net during negotiation, it is only marked as used 
+	 * when negotiation is done.
+	 */
+	private static class NetRouting{
+		ArrayList<PIP> pips;
+		/** Occupancy indices of all resources used by the PIPs */
+		int[] resources;
+		int connections;
+		int failed;
+	}
+
 	/**
 	 * Constructor to initialize router
 	 */
@@ -49,6 +91,34 @@ public class BasicRouter extends AbstractRouter{
 		MessageGenerator.printHeader(this.getClass().getCanonicalName());
 	}
 
+	/**
+	 * Enables or disables the negotiated congestion loop, it is disabled by default.
+	 */
+	public void setNegotiatedCongestion(boolean negotiatedCongestion){
+		this.negotiatedCongestion = negotiatedCongestion;
+	}
+
+	public boolean isNegotiatedCongestion(){
+		return negotiatedCongestion;
+	}
+
+	/**
+	 * @param maxIterations The maximum number of negotiated congestion iterations
+	 */
+	public void setMaxIterations(int maxIterations){
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * Sets how fast the cost of resources used by more than one net grows.
+	 * @param initialPresentFactor The weight of shared resources in the first iteration
+	 * @param presentFactorGrowth The factor the weight grows by in each iteration
+	 */
+	public void setPresentFactor(float initialPresentFactor, float presentFactorGrowth){
+		this.initialPresentFactor = initialPresentFactor;
+		this.presentFactorGrowth = presentFactorGrowth;
+	}
+
 	/**
 	 * Cost function, used to set each node's cost to be prioritized by the queue 
 	 * @param node The node to calculate and set its cost based on currSink.
@@ -150,10 +220,13 @@ public class BasicRouter extends AbstractRouter{
 					if(!(visitedNodes.contains(tmp))){
 
 //updated by Chris Lavin					
-						if(tmp.getConnections() != null && !usedNodes.contains(tmp)){
+						if(tmp.getConnections() != null && !occupancy.isUsed(tmp)){
 							// Make sure we haven't used this node already
 							if(tmp.getConnections() != null){
 								// This looks like a possible candidate for our next node, we'll add it
+								if(negotiatedCongestion){
+									tmp.history = getCongestionCost(tmp.tile, tmp.wire);
+								}
 								setCost(tmp, dev.isRouteThrough(w));
 								visitedNodes.add(tmp);
 								queue.add(tmp);
@@ -254,24 +327,20 @@ public class BasicRouter extends AbstractRouter{
 		StaticSourceHandler ssHandler = new StaticSourceHandler(this);
 		ssHandler.separateStaticSourceNets();
 
+		if(negotiatedCongestion){
+			routeNetsNegotiated();
+			design.setNets(netList);
+			return design;
+		}
+
 		// Start Routing
 		for (int i = 0; i < netList.size(); i++){
 			currNet = netList.get(i);
 
-			// We need to ignore some empty/informational nets
-			if ((currNet.hasAttributes() && currNet.getModuleTemplateNet() == null) || currNet.getPIPs().size() > 0) continue;
-
-			if(currNet.getSource() == null){
-				MessageGenerator.briefError("ERROR: " + currNet.getName() + " does not have a source pins associated with it.");
-				continue;
-			}
+			if(!isNetToRoute(currNet)) continue;
 
 			// release some reservedNodes
-			ArrayList<Node> rNodes = reservedNodes.get(currNet);
-
-			if(rNodes != null){
-				usedNodes.removeAll(rNodes);
-			}
+			releaseReservedNodes(currNet);
 
 			// netPIPs are the pips that belong to a particular net, however, 
 			// because GND/VCC nets can use pips of other nets, we need a usedPIPs
@@ -292,6 +361,160 @@ public class BasicRouter extends AbstractRouter{
 		return design;
 	}
 
+	/**
+	 * Checks if a net needs to be routed.
+	 */
+	private boolean isNetToRoute(Net net){
+		// We need to ignore some empty/informational nets
+		if ((net.hasAttributes() && net.getModuleTemplateNet() == null) || net.getPIPs().size() > 0) return false;
+
+		if(net.getSource() == null){
+			MessageGenerator.briefError("ERROR: " + net.getName() + " does not have a source pins associated with it.");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Releases the nodes reserved for a net, so it can use them.
+	 */
+	private void releaseReservedNodes(Net net){
+		ArrayList<Node> rNodes = reservedNodes.get(net);
+
+		if(rNodes != null){
+			for(Node n : rNodes){
+				occupancy.setUnused(n);
+			}
+		}
+	}
+
+	/**
+	 * Gets the cost of using a resource that other nets already use during negotiation.
+	 */
+	private int getCongestionCost(Tile tile, int wire){
+		int index = occupancy.getIndex(tile, wire);
+		if(index < 0 || index >= shareCount.length){
+			return 0;
+		}
+		return historyCost[index] + (int) (presentFactor * PRESENT_COST * shareCount[index]);
+	}
+
+	private void ensureCongestionArrays(){
+		int count = occupancy.getIndexCount();
+		if(shareCount.length < count){
+			int length = Math.max(count, shareCount.length * 2);
+			shareCount = Arrays.copyOf(shareCount, length);
+			historyCost = Arrays.copyOf(historyCost, length);
+		}
+	}
+
+	/**
+	 * Routes all nets, allowing them to share resources, and reroutes the ones 
+	 * using shared resources until no resource is shared or the maximum number 
+	 * of iterations is reached.
+	 */
+	private void routeNetsNegotiated(){
+		Map<Net, NetRouting> routings = new LinkedHashMap<Net, NetRouting>();
+		ArrayList<Net> toRoute = new ArrayList<Net>();
+		for(Net net : netList){
+			if(isNetToRoute(net)) toRoute.add(net);
+		}
+
+		presentFactor = initialPresentFactor;
+		int overused = 0;
+		for(int iteration = 1; iteration <= maxIterations && !toRoute.isEmpty(); iteration++){
+			for(Net net : toRoute){
+				NetRouting old = routings.get(net);
+				if(old != null){
+					// Rip up
+					addShares(old.resources, -1);
+				}
+				else{
+					releaseReservedNodes(net);
+				}
+				routings.put(net, routeNetNegotiated(net));
+			}
+
+			// Shared resources get more expensive for all following iterations
+			ensureCongestionArrays();
+			overused = 0;
+			for(int i = 0; i < occupancy.getIndexCount(); i++){
+				if(shareCount[i] > 1){
+					overused++;
+					historyCost[i] += HISTORY_COST * (shareCount[i] - 1);
+				}
+			}
+			MessageGenerator.briefMessage("Iteration " + iteration + ": routed " + toRoute.size() + " nets, " + overused + " resources used by more than one net");
+
+			// Only the nets using shared resources are rerouted
+			toRoute = new ArrayList<Net>();
+			if(overused == 0) break;
+			for(Map.Entry<Net, NetRouting> e : routings.entrySet()){
+				for(int r : e.getValue().resources){
+					if(shareCount[r] > 1){
+						toRoute.add(e.getKey());
+						break;
+					}
+				}
+			}
+			presentFactor *= presentFactorGrowth;
+		}
+
+		// Mark the final routes as used in the data structures
+		for(Map.Entry<Net, NetRouting> e : routings.entrySet()){
+			currNet = e.getKey();
+			NetRouting routing = e.getValue();
+			for(PIP pip : routing.pips){
+				setWireAsUsed(pip.getTile(), pip.getStartWire(), currNet);
+				setWireAsUsed(pip.getTile(), pip.getEndWire(), currNet);
+				markIntermediateNodesAsUsed(pip, currNet);
+			}
+			currNet.setPIPs(routing.pips);
+			totalConnections += routing.connections;
+			failedConnections += routing.failed;
+		}
+		if(overused > 0){
+			MessageGenerator.briefError("ERROR: " + overused + " routing resources are still used by more than one net after " + maxIterations + " iterations");
+		}
+	}
+
+	/**
+	 * Routes a net without marking its resources as used, they are only
+	 * counted as shared.
+	 */
+	private NetRouting routeNetNegotiated(Net net){
+		int connections = totalConnections;
+		int failed = failedConnections;
+		currNet = net;
+		netPIPs = new ArrayList<PIP>();
+		routeNet(0);
+
+		NetRouting routing = new NetRouting();
+		routing.pips = netPIPs;
+		routing.connections = totalConnections - connections;
+		routing.failed = failedConnections - failed;
+		// Connections are only counted for the final routes
+		totalConnections = connections;
+		failedConnections = failed;
+
+		ArrayList<Integer> resources = new ArrayList<Integer>();
+		for(PIP pip : netPIPs){
+			resources.add(occupancy.index(pip.getTile(), pip.getStartWire()));
+			resources.add(occupancy.index(pip.getTile(), pip.getEndWire()));
+			forEachIntermediateNode(pip, (tile, wire) -> resources.add(occupancy.index(tile, wire)));
+		}
+		routing.resources = resources.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+		ensureCongestionArrays();
+		addShares(routing.resources, 1);
+		return routing;
+	}
+
+	private void addShares(int[] resources, int delta){
+		for(int r : resources){
+			shareCount[r] += delta;
+		}
+	}
+
 	protected static void printTimeHelper(String timedOperation, long start) {
 		System.out.printf("%s %8.3fs\n", timedOperation,
 				(System.nanoTime() - start) / 1000000000.0);
@@ -301,13 +524,14 @@ public class BasicRouter extends AbstractRouter{
 		long[] runtimes = new long[4];
 		String nl = System.getProperty("line.separator");
 		runtimes[0] = runtimes[1] = System.nanoTime();
-		if (args.length != 2){
-			System.out.println("USAGE: Router <input.xdl> <output.xdl>");
+		if (args.length != 2 && !(args.length == 3 && args[2].equals("-negotiated"))){
+			System.out.println("USAGE: Router <input.xdl> <output.xdl> [-negotiated]");
 			System.exit(0);
 		}
 
 		// Initialize router and load design and device
 		BasicRouter router = new BasicRouter();
+		router.setNegotiatedCongestion(args.length == 3);
 		router.design = new Design();
 		router.design.loadXDLFile(Paths.get(args[0]));
 
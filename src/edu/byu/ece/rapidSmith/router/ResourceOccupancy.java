@@ -0,0 +1,391 @@
+/*
+ * Copyright (c) 2010 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.router;
+
+import edu.byu.ece.rapidSmith.design.Net;
+import edu.byu.ece.rapidSmith.device.Tile;
+import edu.byu.ece.rapidSmith.device.helper.IntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Keeps track of the routing resources (a wire in a tile) used while routing
+ * and of the nets using them.
+ *
+ * Every resource gets a dense index the first time it is seen, the used
+ * resources are a bitset over these indices and the nets using a resource are
+ * kept as net ids in an int array. Checking and marking resources does not
+ * create any objects. Most resources are used by at most one net, resources
+ * shared by more nets (GND/VCC reservations) keep the other ones in a side map.
+ *
+ * The state can be saved with {@link #snapshot()} and restored with
+ * {@link #restore(Snapshot)}, which only copies the arrays. This class is not
+ * thread safe.
+ */
+public class ResourceOccupancy {
+
+	/** Marks free slots of the index table, no (tile, wire) key has this value */
+	private static final long EMPTY = Long.MIN_VALUE;
+	private static final int NO_NET = -1;
+
+	/** Open addressing table from (tile address, wire) to the dense index */
+	private long[] keys;
+	private int[] indices;
+	/** Number of resources with an index */
+	private int size;
+
+	/** One bit per resource, set if it is used */
+	private long[] used;
+	/** The first net using each resource, NO_NET if there is none */
+	private int[] owner;
+	/** Further nets of resources used by more than one net, the arrays are never changed once stored */
+	private IntHashMap<int[]> sharedOwners;
+
+	private final List<Net> nets;
+	private final IdentityHashMap<Net, Integer> netIds;
+
+	public ResourceOccupancy(){
+		keys = new long[1024];
+		Arrays.fill(keys, EMPTY);
+		indices = new int[keys.length];
+		used = new long[8];
+		owner = new int[512];
+		Arrays.fill(owner, NO_NET);
+		sharedOwners = new IntHashMap<int[]>();
+		nets = new ArrayList<Net>();
+		netIds = new IdentityHashMap<Net, Integer>();
+	}
+
+	//========================================================================//
+	// Indices
+	//========================================================================//
+
+	private static long key(Tile tile, int wire){
+		int address = tile == null ? -1 : tile.getUniqueAddress();
+		return ((long) address << 32) | (wire & 0xFFFFFFFFL);
+	}
+
+	private int slot(long key){
+		long h = key * 0x9E3779B97F4A7C15L;
+		int i = (int) (h ^ (h >>> 32)) & (keys.length - 1);
+		while(keys[i] != EMPTY && keys[i] != key){
+			i = (i + 1) & (keys.length - 1);
+		}
+		return i;
+	}
+
+	/**
+	 * Gets the dense index of a resource.
+	 * @return The index, or -1 if the resource has never been marked.
+	 */
+	public int getIndex(Tile tile, int wire){
+		int i = slot(key(tile, wire));
+		return keys[i] == EMPTY ? -1 : indices[i];
+	}
+
+	/**
+	 * Gets the dense index of a resource, creating it if needed. The resource
+	 * stays unused, the index can be used to keep per resource data in arrays.
+	 */
+	public int index(Tile tile, int wire){
+		long key = key(tile, wire);
+		int i = slot(key);
+		if(keys[i] != EMPTY){
+			return indices[i];
+		}
+		int index = size++;
+		keys[i] = key;
+		indices[i] = index;
+		if(size * 2 > keys.length){
+			growTable();
+		}
+		if(index >= owner.length){
+			int length = owner.length * 2;
+			owner = Arrays.copyOf(owner, length);
+			Arrays.fill(owner, index, length, NO_NET);
+		}
+		if((index >> 6) >= used.length){
+			used = Arrays.copyOf(used, used.length * 2);
+		}
+		return index;
+	}
+
+	private void growTable(){
+		long[] oldKeys = keys;
+		int[] oldIndices = indices;
+		keys = new long[oldKeys.length * 2];
+		Arrays.fill(keys, EMPTY);
+		indices = new int[keys.length];
+		for(int j = 0; j < oldKeys.length; j++){
+			if(oldKeys[j] != EMPTY){
+				int i = slot(oldKeys[j]);
+				keys[i] = oldKeys[j];
+				indices[i] = oldIndices[j];
+			}
+		}
+	}
+
+	/**
+	 * @return The number of resources that have been marked so far.
+	 */
+	public int getIndexCount(){
+		return size;
+	}
+
+	private int netId(Net net){
+		Integer id = netIds.get(net);
+		if(id == null){
+			id = nets.size();
+			nets.add(net);
+			netIds.put(net, id);
+		}
+		return id;
+	}
+
+	//========================================================================//
+	// Usage
+	//========================================================================//
+
+	public boolean isUsed(Tile tile, int wire){
+		int index = getIndex(tile, wire);
+		return index >= 0 && isUsed(index);
+	}
+
+	public boolean isUsed(Node node){
+		return isUsed(node.tile, node.wire);
+	}
+
+	/**
+	 * Checks if the resource with a dense index is used.
+	 */
+	public boolean isUsed(int index){
+		return (used[index >> 6] & (1L << index)) != 0;
+	}
+
+	/**
+	 * Marks a resource as used, without changing the nets using it.
+	 */
+	public void setUsed(Tile tile, int wire){
+		int index = index(tile, wire);
+		used[index >> 6] |= 1L << index;
+	}
+
+	public void setUsed(Node node){
+		setUsed(node.tile, node.wire);
+	}
+
+	/**
+	 * Marks a resource as used by a net.
+	 */
+	public void setUsed(Tile tile, int wire, Net net){
+		setUsed(tile, wire);
+		addNet(tile, wire, net);
+	}
+
+	/**
+	 * Marks a resource as unused, without changing the nets using it.
+	 */
+	public void setUnused(Tile tile, int wire){
+		int index = getIndex(tile, wire);
+		if(index >= 0){
+			used[index >> 6] &= ~(1L << index);
+		}
+	}
+
+	public void setUnused(Node node){
+		setUnused(node.tile, node.wire);
+	}
+
+	/**
+	 * Marks a resource as unused and removes a net from the nets using it.
+	 */
+	public void setUnused(Tile tile, int wire, Net net){
+		setUnused(tile, wire);
+		removeNet(tile, wire, net);
+	}
+
+	//========================================================================//
+	// Nets
+	//========================================================================//
+
+	/**
+	 * Adds a net to the nets using a resource, if it is not already one of them.
+	 */
+	public void addNet(Tile tile, int wire, Net net){
+		int index = index(tile, wire);
+		int id = netId(net);
+		if(owner[index] == NO_NET){
+			owner[index] = id;
+			return;
+		}
+		if(owner[index] == id){
+			return;
+		}
+		int[] shared = sharedOwners.get(index);
+		if(shared == null){
+			sharedOwners.put(index, new int[]{id});
+		}
+		else if(indexOf(shared, id) < 0){
+			shared = Arrays.copyOf(shared, shared.length + 1);
+			shared[shared.length - 1] = id;
+			sharedOwners.put(index, shared);
+		}
+	}
+
+	/**
+	 * Removes a net from the nets using a resource.
+	 */
+	public void removeNet(Tile tile, int wire, Net net){
+		int index = getIndex(tile, wire);
+		Integer id = netIds.get(net);
+		if(index < 0 || id == null){
+			return;
+		}
+		int[] shared = sharedOwners.get(index);
+		if(owner[index] == id){
+			if(shared == null){
+				owner[index] = NO_NET;
+				return;
+			}
+			owner[index] = shared[0];
+			removeShared(index, shared, 0);
+		}
+		else if(shared != null){
+			int i = indexOf(shared, id);
+			if(i >= 0){
+				removeShared(index, shared, i);
+			}
+		}
+	}
+
+	private void removeShared(int index, int[] shared, int i){
+		if(shared.length == 1){
+			sharedOwners.remove(index);
+			return;
+		}
+		int[] res = new int[shared.length - 1];
+		System.arraycopy(shared, 0, res, 0, i);
+		System.arraycopy(shared, i + 1, res, i, res.length - i);
+		sharedOwners.put(index, res);
+	}
+
+	private static int indexOf(int[] array, int value){
+		for(int i = 0; i < array.length; i++){
+			if(array[i] == value){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the net using a resource, the first one if there are more.
+	 * @return The net, or null if no net uses the resource.
+	 */
+	public Net getNet(Tile tile, int wire){
+		int index = getIndex(tile, wire);
+		return index < 0 || owner[index] == NO_NET ? null : nets.get(owner[index]);
+	}
+
+	/**
+	 * Gets all nets using a resource, in the order they were added.
+	 * @return A new list of the nets, or null if no net uses the resource.
+	 */
+	public List<Net> getNets(Tile tile, int wire){
+		int index = getIndex(tile, wire);
+		if(index < 0 || owner[index] == NO_NET){
+			return null;
+		}
+		List<Net> res = new ArrayList<Net>(1);
+		res.add(nets.get(owner[index]));
+		int[] shared = sharedOwners.get(index);
+		if(shared != null){
+			for(int id : shared){
+				res.add(nets.get(id));
+			}
+		}
+		return res;
+	}
+
+	public List<Net> getNets(Node node){
+		return getNets(node.tile, node.wire);
+	}
+
+	//========================================================================//
+	// Snapshots
+	//========================================================================//
+
+	/**
+	 * The saved state of the used resources and their nets.
+	 */
+	public static class Snapshot {
+		private final int size;
+		private final long[] used;
+		private final int[] owner;
+		private final IntHashMap<int[]> sharedOwners;
+
+		private Snapshot(int size, long[] used, int[] owner, IntHashMap<int[]> sharedOwners){
+			this.size = size;
+			this.used = used;
+			this.owner = owner;
+			this.sharedOwners = sharedOwners;
+		}
+	}
+
+	/**
+	 * Saves the current state, for example before trying a route that may be
+	 * undone. Costs one copy of the bitset and the net array.
+	 */
+	public Snapshot snapshot(){
+		IntHashMap<int[]> shared = new IntHashMap<int[]>(sharedOwners.size());
+		for(int index : sharedOwners.keyArray()){
+			shared.put(index, sharedOwners.get(index));
+		}
+		return new Snapshot(size, Arrays.copyOf(used, (size + 63) >> 6), Arrays.copyOf(owner, size), shared);
+	}
+
+	/**
+	 * Restores a saved state. Resources first marked after the snapshot are
+	 * unused and have no nets afterwards.
+	 */
+	public void restore(Snapshot snapshot){
+		Arrays.fill(used, 0L);
+		System.arraycopy(snapshot.used, 0, used, 0, snapshot.used.length);
+		System.arraycopy(snapshot.owner, 0, owner, 0, snapshot.size);
+		Arrays.fill(owner, snapshot.size, owner.length, NO_NET);
+		sharedOwners = new IntHashMap<int[]>(snapshot.sharedOwners.size());
+		for(int index : snapshot.sharedOwners.keyArray()){
+			sharedOwners.put(index, snapshot.sharedOwners.get(index));
+		}
+	}
+
+	/**
+	 * Marks all resources as unused by any net.
+	 */
+	public void clear(){
+		Arrays.fill(used, 0L);
+		Arrays.fill(owner, NO_NET);
+		sharedOwners.clear();
+	}
+}
@@ -21,9 +21,15 @@
 package edu.byu.ece.rapidSmith.router;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 
 
@@ -36,6 +42,7 @@ import edu.byu.ece.rapidSmith.design.Pin;
 import edu.byu.ece.rapidSmith.device.Device;
 import edu.byu.ece.rapidSmith.device.PrimitiveSite;
 import edu.byu.ece.rapidSmith.device.PrimitiveType;
+import edu.byu.ece.rapidSmith.device.SiteSpatialIndex;
 import edu.byu.ece.rapidSmith.device.Tile;
 import edu.byu.ece.rapidSmith.device.WireConnection;
 import edu.byu.ece.rapidSmith.device.WireDirection;
@@ -54,6 +61,11 @@ import edu.byu.ece.rapidSmith.util.MessageGenerator;
  */
 public class StaticSourceHandler{
 
+	/** Lookups with fewer pins or tiles are done by the calling thread */
+	private static final int PARALLEL_THRESHOLD = 256;
+	/** Number of nearest SLICE sites looked up at first for a SLICE source */
+	private static final int SLICE_CANDIDATES = 8;
+
 	/** Current Router */
 	private AbstractRouter router;
 	/** Current Device */
@@ -92,6 +104,11 @@ public class StaticSourceHandler{
 
 	FamilyType familyType;
 
+	/** Number of threads used for the lookups of the static sinks and sources */
+	private int threads = ForkJoinPool.getCommonPoolParallelism();
+	/** Pool of the lookups, only set while separating the static nets */
+	private ForkJoinPool pool;
+
 	//================================================================
 // added for Spartan6 adaption
 //----------------------------------------------------------------
@@ -109,7 +126,7 @@ public class StaticSourceHandler{
 		netCount = 0;
 		finalStaticNets = new ArrayList<Net>();
 		tempNode = new Node();
-		reservedGNDVCCResources = new HashMap<Node, Pin>();
+		reservedGNDVCCResources = new LinkedHashMap<Node, Pin>();
 		if(dev.getFamilyType().equals(FamilyType.VIRTEX5)){
 			slicePin = "B";
 		}
@@ -141,6 +158,31 @@ public class StaticSourceHandler{
 
 	}
 
+	/**
+	 * Sets the number of threads used to look up the switch matrix sinks and the
+	 * SLICE sources of the static pins, 1 does everything in the calling thread.
+	 * The nets and the design are always changed by the calling thread in the
+	 * same order, so the result does not depend on the number of threads.
+	 */
+	public void setThreads(int threads){
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Runs a task for the indices 0 to count-1, in the pool if there are enough
+	 * of them. Tasks may only read shared data and write to their own index.
+	 */
+	private void forEachIndex(int count, IntConsumer task){
+		if(pool == null || count < PARALLEL_THRESHOLD){
+			for(int i = 0; i < count; i++){
+				task.accept(i);
+			}
+		}
+		else{
+			pool.submit(() -> IntStream.range(0, count).parallel().forEach(task)).join();
+		}
+	}
+
 	/**
 	 * Reserves a node for a ground or vcc inpin that has
 	 * not been assigned a final net yet.
@@ -148,9 +190,9 @@ public class StaticSourceHandler{
 	 * @param pin The pin for which to reserve the routing resource.
 	 */
 	private boolean addReservedGNDVCCNode(Node node, Pin pin){
-		if(router.usedNodes.contains(node)){
-			LinkedList<Net> nets = router.usedNodesMap.get(node);
-			if(nets == null){
+		if(router.occupancy.isUsed(node)){
+			Net net = router.occupancy.getNet(node.tile, node.wire);
+			if(net == null){
 				Pin p = reservedGNDVCCResources.get(node);
 				if(p == null){
 					return false;
@@ -159,22 +201,15 @@ public class StaticSourceHandler{
 					return false;
 				}
 			}
-			else if(!nets.get(0).getType().equals(pin.getNet().getType())){
+			else if(!net.getType().equals(pin.getNet().getType())){
 				return false;
 			}
 		}
 
-		LinkedList<Net> nets = router.usedNodesMap.get(node);
-		if(nets == null){
-			nets = new LinkedList<Net>();
-			router.usedNodesMap.put(node, nets);
-		}
-		nets.add(pin.getNet());
-
 		// We will update the net reserved list later,
 		// after the pin has been assigned its final net
 		reservedGNDVCCResources.put(node, pin);
-		router.usedNodes.add(node);
+		router.occupancy.setUsed(node.tile, node.wire, pin.getNet());
 		return true;
 	}
 
@@ -185,13 +220,7 @@ public class StaticSourceHandler{
 			router.reservedNodes.put(net, nodes);
 		}
 		nodes.add(node);
-		router.usedNodes.add(node);
-		LinkedList<Net> nets = router.usedNodesMap.get(node);
-		if(nets == null){
-			nets = new LinkedList<Net>();
-			router.usedNodesMap.put(node, nets);
-		}
-		nets.add(net);
+		router.occupancy.setUsed(node.tile, node.wire, net);
 	}
 
 	public Node getSwitchBoxWire(Net net){
@@ -255,12 +284,11 @@ public class StaticSourceHandler{
 	}
 
 	private void unRouteNetForCriticalNode(Node n){
-		LinkedList<Net> previous = router.usedNodesMap.get(n);
-		if(previous == null){
+		List<Net> nets = router.occupancy.getNets(n);
+		if(nets == null){
 			MessageGenerator.briefError("ERROR: Failure to unroute net for node: " + n.toString(we));
 			return;
 		}
-		LinkedList<Net> nets = new LinkedList<Net>(previous);
 		for(Net net : nets){
 			for(PIP p : net.getPIPs()){
 				router.setWireAsUnused(p.getTile(), p.getStartWire(), net);
@@ -279,7 +307,9 @@ public class StaticSourceHandler{
 				}else {
 					nodes.addAll(reservedNodes);
 				}
-				router.usedNodes.addAll(reservedNodes);
+				for(Node node : reservedNodes){
+					router.occupancy.setUsed(node);
+				}
 			}
 		}
 	}
@@ -292,16 +322,23 @@ public class StaticSourceHandler{
 	 * net.
 	 */
 	private ArrayList<Node> reserveCriticalNodes(Net net){
-		ArrayList<Node> reservedNodes = new ArrayList<Node>();
+		return reserveCriticalNodes(net, getSwitchBoxSinks(net));
+	}
 
-		for(Pin p : net.getPins()){
-			if(p.isOutPin()) continue; // Skip outpins
-			int extPin = dev.getPrimitiveExternalPin(p);
-			tempNode.setTileAndWire(p.getInstance().getTile(), extPin);
-			Node reserved = tempNode.getSwitchBoxSink(dev); //,we);
+	/**
+	 * Reserves the critical resources of a net.
+	 * @param net the net to examine.
+	 * @param sinks The switch box sinks of the pins of the net, see {@link #getSwitchBoxSinks(Net)}.
+	 * @return A List of critical resources that should be reserved for the 
+	 * net.
+	 */
+	private ArrayList<Node> reserveCriticalNodes(Net net, Node[] sinks){
+		ArrayList<Node> reservedNodes = new ArrayList<Node>();
 
+		for(Node reserved : sinks){
+			if(reserved == null) continue; // Skip outpins
 			if(reserved.wire == -1) continue;
-			if(router.usedNodes.contains(reserved)){
+			if(router.occupancy.isUsed(reserved)){
 				unRouteNetForCriticalNode(reserved);
 				addReservedNode(reserved, net);
 				continue;
@@ -309,7 +346,7 @@ public class StaticSourceHandler{
 			int criticalResource = getCriticalResource(reserved.wire);
 			if(criticalResource != -1){
 				reserved.setWire(criticalResource);
-				if(router.usedNodes.contains(reserved)){
+				if(router.occupancy.isUsed(reserved)){
 					unRouteNetForCriticalNode(reserved);
 					addReservedNode(reserved, net);
 				}
@@ -322,6 +359,40 @@ public class StaticSourceHandler{
 		return reservedNodes;
 	}
 
+	/**
+	 * Looks up the switch box sinks of the inpins of a net. Nothing is changed,
+	 * so the sinks of several nets can be looked up at the same time.
+	 * @param net The net to examine.
+	 * @return The sink of every pin of the net, null for outpins.
+	 */
+	private Node[] getSwitchBoxSinks(Net net){
+		List<Pin> pins = net.getPins();
+		Node[] sinks = new Node[pins.size()];
+		for(int i = 0; i < sinks.length; i++){
+			Pin p = pins.get(i);
+			if(p.isOutPin()) continue;
+			Node pinNode = new Node(p.getInstance().getTile(), dev.getPrimitiveExternalPin(p), null, 0);
+			sinks[i] = pinNode.getSwitchBoxSink(dev);
+		}
+		return sinks;
+	}
+
+	/**
+	 * Collects the pins of the static nets in order and looks up their switch
+	 * matrix sinks in parallel.
+	 * @param staticSourcedNets The static nets.
+	 * @param pins Gets the pins of the nets.
+	 * @return The switch matrix sink of every pin.
+	 */
+	private Node[] getSwitchMatrixSinks(ArrayList<Net> staticSourcedNets, ArrayList<Pin> pins){
+		for(Net net : staticSourcedNets){
+			pins.addAll(net.getPins());
+		}
+		Node[] sinks = new Node[pins.size()];
+		forEachIndex(sinks.length, i -> sinks[i] = dev.getSwitchMatrixSink(pins.get(i)));
+		return sinks;
+	}
+
 	/**
 	 * This is for Virtex 4 designs only.  It reserves some of the OMUX
 	 * wires for heavily congested switch matrices.
@@ -370,7 +441,7 @@ public class StaticSourceHandler{
 							break;
 						}
 						Node newNode = new Node(node.tile, we.getWireEnum(v4TopOmuxs[reservedTop]), null, 0);
-						while(router.usedNodes.contains(newNode)){
+						while(router.occupancy.isUsed(newNode)){
 
 							reservedTop++;
 							if(reservedTop > 7) {
@@ -378,7 +449,7 @@ public class StaticSourceHandler{
 							}
 							newNode = new Node(node.tile, we.getWireEnum(v4TopOmuxs[reservedTop]), null, 0);
 						}
-						if(!router.usedNodes.contains(newNode)){
+						if(!router.occupancy.isUsed(newNode)){
 							addReservedNode(newNode, n);
 							reservedTop++;
 						}
@@ -388,14 +459,14 @@ public class StaticSourceHandler{
 							break;
 						}
 						Node newNode = new Node(node.tile, we.getWireEnum(v4BottomOmuxs[reservedBot]), null, 0);
-						while(router.usedNodes.contains(newNode)){
+						while(router.occupancy.isUsed(newNode)){
 							reservedBot++;
 							if(reservedBot > 7){
 								break;
 							}
 							newNode = new Node(node.tile, we.getWireEnum(v4BottomOmuxs[reservedBot]), null, 0);
 						}
-						if(!router.usedNodes.contains(newNode)){
+						if(!router.occupancy.isUsed(newNode)){
 							addReservedNode(newNode, n);
 							reservedBot++;
 						}
@@ -410,26 +481,26 @@ public class StaticSourceHandler{
 				if(node == null) continue;
 				if(reservedTop < 8){
 					Node newNode = new Node(node.tile, we.getWireEnum(v4TopOmuxs[reservedTop]), null, 0);
-					while(router.usedNodes.contains(newNode)){
+					while(router.occupancy.isUsed(newNode)){
 						reservedTop++;
 						if(reservedTop > 7) break;
 						newNode = new Node(node.tile, we.getWireEnum(v4TopOmuxs[reservedTop]), null, 0);
 					}
-					if(!router.usedNodes.contains(newNode)){
+					if(!router.occupancy.isUsed(newNode)){
 						addReservedNode(newNode, n);
 						reservedTop++;
 					}
 				}
 				else if(reservedBot < 8){
 					Node newNode = new Node(node.tile, we.getWireEnum(v4BottomOmuxs[reservedBot]), null, 0);
-					while(router.usedNodes.contains(newNode)){
+					while(router.occupancy.isUsed(newNode)){
 						reservedBot++;
 						if(reservedBot > 7) {
 							break;
 						}
 						newNode = new Node(node.tile, we.getWireEnum(v4BottomOmuxs[reservedBot]), null, 0);
 					}
-					if(!router.usedNodes.contains(newNode)){
+					if(!router.occupancy.isUsed(newNode)){
 						addReservedNode(newNode, n);
 						reservedBot++;
 					}
@@ -442,78 +513,83 @@ public class StaticSourceHandler{
 	}
 
 	private HashMap<Tile, PinSorter> sortPinsVirtex4(ArrayList<Net> staticSourcedNets){
-		HashMap<Tile, PinSorter> pinSwitchMatrixMap = new HashMap<Tile, PinSorter>();
+		HashMap<Tile, PinSorter> pinSwitchMatrixMap = new LinkedHashMap<Tile, PinSorter>();
 		Node bounce0 = new Node(); bounce0.wire = we.getWireEnum("BOUNCE0");
 		Node bounce1 = new Node(); bounce1.wire = we.getWireEnum("BOUNCE1");
 		Node bounce2 = new Node(); bounce2.wire = we.getWireEnum("BOUNCE2");
 		Node bounce3 = new Node(); bounce3.wire = we.getWireEnum("BOUNCE3");
 
-		for(Net net : staticSourcedNets){
-			for(Pin pin : net.getPins()){
-				// Switch matrix sink, where the route has to connect through
-				Node switchMatrixSink  = dev.getSwitchMatrixSink(pin);
-				PinSorter tmp = pinSwitchMatrixMap.get(switchMatrixSink.tile);
-				if(tmp == null){
-					tmp = PinSorter.createPinSorter(familyType);
-					pinSwitchMatrixMap.put(switchMatrixSink.tile, tmp);
-				}
+		ArrayList<Pin> pins = new ArrayList<Pin>();
+		Node[] sinks = getSwitchMatrixSinks(staticSourcedNets, pins);
+		for(int i = 0; i < sinks.length; i++){
+			Pin pin = pins.get(i);
+			Net net = pin.getNet();
+			// Switch matrix sink, where the route has to connect through
+			Node switchMatrixSink  = sinks[i];
+			PinSorter tmp = pinSwitchMatrixMap.get(switchMatrixSink.tile);
+			if(tmp == null){
+				tmp = PinSorter.createPinSorter(familyType);
+				pinSwitchMatrixMap.put(switchMatrixSink.tile, tmp);
+			}
 
-				String wireName = we.getWireName(switchMatrixSink.wire);
-				String bounce = v4BounceMap.get(wireName);
-				if(bounce != null && net.getType().equals(NetType.GND) &&
-						router.isNodeUsed(switchMatrixSink.tile, we.getWireEnum(bounce))){
-					bounce0.setTile(switchMatrixSink.tile);
-					bounce1.setTile(switchMatrixSink.tile);
-					bounce2.setTile(switchMatrixSink.tile);
-					bounce3.setTile(switchMatrixSink.tile);
-					if(wireName.startsWith("CE") || wireName.startsWith("SR")){
-
-						if(router.isNodeUsed(bounce0) && router.isNodeUsed(bounce1) &&
-								router.isNodeUsed(bounce2) && router.isNodeUsed(bounce3)){
-							tmp.addPinToSliceList(switchMatrixSink, pin);
-						}
-						else{
-							tmp.addPin(switchMatrixSink, pin);
-						}
+			String wireName = we.getWireName(switchMatrixSink.wire);
+			String bounce = v4BounceMap.get(wireName);
+			if(bounce != null && net.getType().equals(NetType.GND) &&
+					router.isNodeUsed(switchMatrixSink.tile, we.getWireEnum(bounce))){
+				bounce0.setTile(switchMatrixSink.tile);
+				bounce1.setTile(switchMatrixSink.tile);
+				bounce2.setTile(switchMatrixSink.tile);
+				bounce3.setTile(switchMatrixSink.tile);
+				if(wireName.startsWith("CE") || wireName.startsWith("SR")){
+
+					if(router.isNodeUsed(bounce0) && router.isNodeUsed(bounce1) &&
+							router.isNodeUsed(bounce2) && router.isNodeUsed(bounce3)){
+						tmp.addPinToSliceList(switchMatrixSink, pin);
 					}
 					else{
-						tmp.addPinToSliceList(switchMatrixSink, pin);
+						tmp.addPin(switchMatrixSink, pin);
 					}
 				}
 				else{
-					tmp.addPin(switchMatrixSink, pin);
+					tmp.addPinToSliceList(switchMatrixSink, pin);
 				}
 			}
+			else{
+				tmp.addPin(switchMatrixSink, pin);
+			}
 		}
 
 		return pinSwitchMatrixMap;
 	}
 
 	private HashMap<Tile, PinSorter> sortPinsVirtex5(ArrayList<Net> staticSourcedNets){
-		HashMap<Tile, PinSorter> pinSwitchMatrixMap = new HashMap<Tile, PinSorter>();
-		for(Net net : staticSourcedNets){
-			for(Pin pin : net.getPins()){
-
-				Node switchMatrixSink = dev.getSwitchMatrixSink(pin);
-
-				int wire = getCriticalResource(switchMatrixSink.wire);
-
-
-				if(wire != -1){
-					// This pin requires a critical resource, let's try to reserve it
-					Node n = new Node(switchMatrixSink.tile, wire, null, 0);
-					if(!addReservedGNDVCCNode(n, pin)){
-						MessageGenerator.briefError("ERROR: This pin requires the critical resource " + n.toString(we) + " which has already been used.");
-					}
+		HashMap<Tile, PinSorter> pinSwitchMatrixMap = new LinkedHashMap<Tile, PinSorter>();
+		ArrayList<Pin> pins = new ArrayList<Pin>();
+		Node[] sinks = getSwitchMatrixSinks(staticSourcedNets, pins);
+		int[] criticalWires = new int[sinks.length];
+		forEachIndex(sinks.length, i -> criticalWires[i] = getCriticalResource(sinks[i].wire));
+
+		// The critical resources are reserved in pin order, a resource wanted by
+		// pins of GND and VCC nets goes to the first one
+		for(int i = 0; i < sinks.length; i++){
+			Pin pin = pins.get(i);
+			Node switchMatrixSink = sinks[i];
+
+			int wire = criticalWires[i];
+			if(wire != -1){
+				// This pin requires a critical resource, let's try to reserve it
+				Node n = new Node(switchMatrixSink.tile, wire, null, 0);
+				if(!addReservedGNDVCCNode(n, pin)){
+					MessageGenerator.briefError("ERROR: This pin requires the critical resource " + n.toString(we) + " which has already been used.");
 				}
+			}
 
-				PinSorter ps = pinSwitchMatrixMap.get(switchMatrixSink.tile);
-				if(ps == null) {
-					ps = PinSorter.createPinSorter(familyType);
-					pinSwitchMatrixMap.put(switchMatrixSink.tile, ps);
-				}
-				ps.addPin(switchMatrixSink, pin);
+			PinSorter ps = pinSwitchMatrixMap.get(switchMatrixSink.tile);
+			if(ps == null) {
+				ps = PinSorter.createPinSorter(familyType);
+				pinSwitchMatrixMap.put(switchMatrixSink.tile, ps);
 			}
+			ps.addPin(switchMatrixSink, pin);
 		}
 		return pinSwitchMatrixMap;
 	}
@@ -522,27 +598,30 @@ public class StaticSourceHandler{
 // added for Spartan6 adaption
 //----------------------------------------------------------------
 	private HashMap<Tile, PinSorter> sortPinsSpartan6(ArrayList<Net> staticSourcedNets){
-		HashMap<Tile, PinSorter> pinSwitchMatrixMap = new HashMap<Tile, PinSorter>();
-		for(Net net : staticSourcedNets){
-			for(Pin pin : net.getPins()){
-
-				Node switchMatrixSink = dev.getSwitchMatrixSink(pin);
-				int wire = getCriticalResource(switchMatrixSink.wire);
-				if(wire != -1){
-					// This pin requires a critical resource, let's try to reserve it
-					Node n = new Node(switchMatrixSink.tile, wire, null, 0);
-					if(!addReservedGNDVCCNode(n, pin)){
-						MessageGenerator.briefError("ERROR: This pin requires the critical resource " + n.toString(we) + " which has already been used.");
-					}
+		HashMap<Tile, PinSorter> pinSwitchMatrixMap = new LinkedHashMap<Tile, PinSorter>();
+		ArrayList<Pin> pins = new ArrayList<Pin>();
+		Node[] sinks = getSwitchMatrixSinks(staticSourcedNets, pins);
+		int[] criticalWires = new int[sinks.length];
+		forEachIndex(sinks.length, i -> criticalWires[i] = getCriticalResource(sinks[i].wire));
+
+		for(int i = 0; i < sinks.length; i++){
+			Pin pin = pins.get(i);
+			Node switchMatrixSink = sinks[i];
+			int wire = criticalWires[i];
+			if(wire != -1){
+				// This pin requires a critical resource, let's try to reserve it
+				Node n = new Node(switchMatrixSink.tile, wire, null, 0);
+				if(!addReservedGNDVCCNode(n, pin)){
+					MessageGenerator.briefError("ERROR: This pin requires the critical resource " + n.toString(we) + " which has already been used.");
 				}
+			}
 
-				PinSorter ps = pinSwitchMatrixMap.get(switchMatrixSink.tile);
-				if(ps == null) {
-					ps = PinSorter.createPinSorter(familyType);
-					pinSwitchMatrixMap.put(switchMatrixSink.tile, ps);
-				}
-				ps.addPin(switchMatrixSink, pin);
+			PinSorter ps = pinSwitchMatrixMap.get(switchMatrixSink.tile);
+			if(ps == null) {
+				ps = PinSorter.createPinSorter(familyType);
+				pinSwitchMatrixMap.put(switchMatrixSink.tile, ps);
 			}
+			ps.addPin(switchMatrixSink, pin);
 		}
 		return pinSwitchMatrixMap;
 	}
@@ -576,69 +655,78 @@ public class StaticSourceHandler{
 		return dev.getTile(newTileName);
 	}
 
-	//================================================================
-// added for Spartan6 adaption
-//----------------------------------------------------------------
-	public void step3_Spartan6(HashMap<Tile, PinSorter> pinSwitchMatrixMap, HashSet<Tile> contentionTiles){
-
-		for(Tile tile : pinSwitchMatrixMap.keySet()){
-			PinSorter ps = pinSwitchMatrixMap.get(tile);
-			ArrayList<StaticSink> removeThese = new ArrayList<StaticSink>();
-
-			for(StaticSink ss : ps.useTIEOFF){
-				String ssWireName = we.getWireName(ss.switchMatrixSink.wire);
-				String[] fans = s6BounceMap.get(ssWireName);
-				Node newNode = null;
+	/**
+	 * Moves the sinks of a switch matrix tile which cannot get their TIEOFF
+	 * resources to the SLICE sourced sinks. Only the pin sorter of the tile is
+	 * changed, so several tiles can be sorted at the same time.
+	 */
+	private void sortTileSinksSpartan6(Tile tile, PinSorter ps, HashSet<Tile> contentionTiles){
+		Node node = new Node();
+		node.setTile(tile);
+		ArrayList<StaticSink> removeThese = new ArrayList<StaticSink>();
+
+		for(StaticSink ss : ps.useTIEOFF){
+			String ssWireName = we.getWireName(ss.switchMatrixSink.wire);
+			String[] fans = s6BounceMap.get(ssWireName);
+			Node newNode = null;
+
+			for(String fan : fans){
+				node.setWire(we.getWireEnum(fan));
+
+				boolean ableToReserveResource = (!router.occupancy.isUsed(node)) ||
+						(reservedGNDVCCResources.get(node) != null &&
+								reservedGNDVCCResources.get(node).equals(ss.pin));
+
+				// Add this to reserved
+				if(ableToReserveResource){
+					newNode = new Node(tile, we.getWireEnum(fan), null, 0);
+
+					if(newNode != null && ss.pin.getNet().getType().equals(NetType.GND)){
+						if(contentionTiles.contains(tile)){
+							newNode = null;
+						}
+					}
+					break;
+				}
+			}
+			if(newNode == null){
+				removeThese.add(ss);
+				ps.useSLICE.add(ss);
+			}
+		}
+		ps.useTIEOFF.removeAll(removeThese);
 
+		removeThese = new ArrayList<StaticSink>();
+		for(StaticSink ss : ps.attemptTIEOFF){
+			if(ss.pin.getNet().getType().equals(NetType.GND)){
+				String[] fans = s6BounceMap.get(we.getWireName(ss.switchMatrixSink.wire));
+				boolean useSLICE = true;
 				for(String fan : fans){
-					tempNode.setTile(tile);
-					tempNode.setWire(we.getWireEnum(fan));
-
-					boolean ableToReserveResource = (!router.usedNodes.contains(tempNode)) ||
-							(reservedGNDVCCResources.get(tempNode) != null &&
-									reservedGNDVCCResources.get(tempNode).equals(ss.pin));
-
+					node.setWire(we.getWireEnum(fan));
 					// Add this to reserved
-					if(ableToReserveResource){
-						newNode = new Node(tile, we.getWireEnum(fan), null, 0);
-
-						if(newNode != null && ss.pin.getNet().getType().equals(NetType.GND)){
-							if(contentionTiles.contains(tile)){
-								newNode = null;
-							}
-						}
+					if(!router.occupancy.isUsed(node)){
+						useSLICE = false;
 						break;
 					}
 				}
-				if(newNode == null){
-					removeThese.add(ss);
+				if(useSLICE){
 					ps.useSLICE.add(ss);
+					removeThese.add(ss);
 				}
 			}
-			ps.useTIEOFF.removeAll(removeThese);
+		}
+		ps.attemptTIEOFF.removeAll(removeThese);
+	}
 
-			removeThese = new ArrayList<StaticSink>();
-			for(StaticSink ss : ps.attemptTIEOFF){
-				if(ss.pin.getNet().getType().equals(NetType.GND)){
-					String[] fans = s6BounceMap.get(we.getWireName(ss.switchMatrixSink.wire));
-					boolean useSLICE = true;
-					for(String fan : fans){
-						tempNode.setWire(we.getWireEnum(fan));
-						// Add this to reserved
-						if(!router.usedNodes.contains(tempNode)){
-							useSLICE = false;
-							break;
-						}
-					}
-					if(useSLICE){
-						ps.useSLICE.add(ss);
-						removeThese.add(ss);
-					}
-				}
-			}
-			ps.attemptTIEOFF.removeAll(removeThese);
+	//================================================================
+// added for Spartan6 adaption
+//----------------------------------------------------------------
+	public void step3_Spartan6(HashMap<Tile, PinSorter> pinSwitchMatrixMap, HashSet<Tile> contentionTiles){
 
-		}
+		// The sinks of every tile are sorted on their own, this only reads the
+		// used resources so the tiles are sorted in parallel
+		ArrayList<Tile> tiles = new ArrayList<Tile>(pinSwitchMatrixMap.keySet());
+		forEachIndex(tiles.size(), i -> sortTileSinksSpartan6(tiles.get(i), pinSwitchMatrixMap.get(tiles.get(i)), contentionTiles));
 
 		// Handle each group of sinks separately, allocating TIEOFF to those sinks according
 		// to priority
@@ -721,67 +809,31 @@ public class StaticSourceHandler{
 					ss.pin.getInstance().addToNetList(matchingNet);
 				}
 			}
-
-			if(ps.useSLICE.size() > 0){
-				ArrayList<Pin> gnds = new ArrayList<Pin>();
-				ArrayList<Pin> vccs = new ArrayList<Pin>();
-				for(StaticSink ss : ps.useSLICE){
-					if(ss.pin.getNet().getType().equals(NetType.GND)){
-						gnds.add(ss.pin);
-					}
-					else if(ss.pin.getNet().getType().equals(NetType.VCC)){
-						vccs.add(ss.pin);
-					}
-				}
-
-				if(gnds.size() > 0){
-					// Create the new net
-					Net newNet = createNewNet(NetType.GND, gnds);
-					finalStaticNets.add(newNet);
-
-					// Create new instance of SLICE primitive to get source
-					Instance currInst = findClosestAvailableSLICE(ps.useSLICE.get(0).switchMatrixSink.tile, NetType.GND);
-					if(currStaticSourcePin != null){
-						currInst.addToNetList(newNet);
-						newNet.addPin(currStaticSourcePin);
-					}
-					else{
-						router.design.addInstance(currInst);
-						currInst.addToNetList(newNet);
-						Pin source = new Pin(true, slicePin, currInst);
-						newNet.addPin(source);
-					}
-				}
-				if(vccs.size() > 0){
-					// Create the new net
-					Net newNet = createNewNet(NetType.VCC, vccs);
-					finalStaticNets.add(newNet);
-
-					// Create new instance of SLICE primitive to get source
-					Instance currInst = findClosestAvailableSLICE(ps.useSLICE.get(0).switchMatrixSink.tile, NetType.VCC);
-
-					if(currStaticSourcePin != null){
-						currInst.addToNetList(newNet);
-						newNet.addPin(currStaticSourcePin);
-					}
-					else{
-						router.design.addInstance(currInst);
-						currInst.addToNetList(newNet);
-						Pin source = new Pin(true, slicePin, currInst);
-						newNet.addPin(source);
-					}
-				}
-			}
 		}
 
+		createSLICESourcedNets(pinSwitchMatrixMap);
 	}
 //================================================================
 
 	/**
 	 * This method will separate out static sourced nets, partitioning them into localized
-	 * nets
+	 * nets. The switch matrix sinks of the pins and the SLICE source sites are looked
+	 * up with the number of threads given by {@link #setThreads(int)}.
 	 */
 	public void separateStaticSourceNets(){
+		pool = threads > 1 ? new ForkJoinPool(threads) : null;
+		try{
+			separateNets();
+		}
+		finally{
+			if(pool != null){
+				pool.shutdown();
+				pool = null;
+			}
+		}
+	}
+
+	private void separateNets(){
 		ArrayList<Net> netList = router.netList;
 		ArrayList<Net> staticSourcedNets = new ArrayList<Net>();
 
@@ -829,12 +881,23 @@ public class StaticSourceHandler{
 			}
 		}
 
-		for(Net net : netList){
+		// The sinks are looked up in parallel, the nodes are reserved in net order.
+		// Nets unrouted while reserving nodes of other nets get their sinks then.
+		Node[][] netSinks = new Node[netList.size()][];
+		forEachIndex(netSinks.length, i -> {
+			Net net = netList.get(i);
+			if(!net.hasPIPs() && !net.isStaticNet()){
+				netSinks[i] = getSwitchBoxSinks(net);
+			}
+		});
+		for(int i = 0; i < netSinks.length; i++){
+			Net net = netList.get(i);
 			if(!net.hasPIPs() && !net.isStaticNet()){
 				//===========================================================//
 				// Reserve Nodes for Critical Input Pins on Nets
 				//===========================================================//				
-				ArrayList<Node> reservedNodes = reserveCriticalNodes(net);
+				ArrayList<Node> reservedNodes = netSinks[i] != null ?
+						reserveCriticalNodes(net, netSinks[i]) : reserveCriticalNodes(net);
 
 				if(!reservedNodes.isEmpty()){
 					ArrayList<Node> nodes = router.reservedNodes.get(net);
@@ -844,7 +907,9 @@ public class StaticSourceHandler{
 					}else {
 						nodes.addAll(reservedNodes);
 					}
-					router.usedNodes.addAll(reservedNodes);
+					for(Node node : reservedNodes){
+						router.occupancy.setUsed(node);
+					}
 				}
 			}
 		}
@@ -933,15 +998,15 @@ public class StaticSourceHandler{
 							tempNode.setTile(tile);
 							tempNode.setWire(we.getWireEnum(fan));
 						
-						/*if(ssWireName.startsWith("CLK_") && router.usedNodes.contains(tempNode)){
-							LinkedList<Net> net = router.usedNodesMap.get(tempNode);
+						/*if(ssWireName.startsWith("CLK_") && router.occupancy.isUsed(tempNode)){
+							List<Net> net = router.occupancy.getNets(tempNode);
 							if(net.size() == 1){
 								unRouteNetForCriticalNode(tempNode);
 								break;
 							}
 						}*/
 
-							boolean ableToReserveResource = (!router.usedNodes.contains(tempNode)) ||
+							boolean ableToReserveResource = (!router.occupancy.isUsed(tempNode)) ||
 									(reservedGNDVCCResources.get(tempNode) != null &&
 											reservedGNDVCCResources.get(tempNode).equals(ss.pin));
 
@@ -957,7 +1022,7 @@ public class StaticSourceHandler{
 									// Special case when neighboring resources are used (hard macros)
 									tempNode.tile = ss.switchMatrixSink.tile;
 									tempNode.wire = we.getWireEnum("FAN0");
-									if(tempNode.tile == null || router.usedNodes.contains(tempNode)){
+									if(tempNode.tile == null || router.occupancy.isUsed(tempNode)){
 										newNode = null;
 									}
 								}
@@ -968,7 +1033,7 @@ public class StaticSourceHandler{
 									// Special case when neighboring resources are used (hard macros)
 									tempNode.tile = ss.switchMatrixSink.tile;
 									tempNode.wire = we.getWireEnum("FAN7");
-									if(tempNode.tile == null || router.usedNodes.contains(tempNode)){
+									if(tempNode.tile == null || router.occupancy.isUsed(tempNode)){
 										newNode = null;
 									}
 								}
@@ -1004,7 +1069,7 @@ public class StaticSourceHandler{
 							for(String fan : fans){
 								tempNode.setWire(we.getWireEnum(fan));
 								// Add this to reserved
-								if(!router.usedNodes.contains(tempNode)){
+								if(!router.occupancy.isUsed(tempNode)){
 									useSLICE = false;
 									break;
 								}
@@ -1122,59 +1187,10 @@ public class StaticSourceHandler{
 						ss.pin.getInstance().addToNetList(matchingNet);
 					}
 				}
-
-				if(ps.useSLICE.size() > 0){
-					ArrayList<Pin> gnds = new ArrayList<Pin>();
-					ArrayList<Pin> vccs = new ArrayList<Pin>();
-					for(StaticSink ss : ps.useSLICE){
-						if(ss.pin.getNet().getType().equals(NetType.GND)){
-							gnds.add(ss.pin);
-						}
-						else if(ss.pin.getNet().getType().equals(NetType.VCC)){
-							vccs.add(ss.pin);
-						}
-					}
-
-					if(gnds.size() > 0){
-						// Create the new net
-						Net newNet = createNewNet(NetType.GND, gnds);
-						finalStaticNets.add(newNet);
-
-						// Create new instance of SLICE primitive to get source
-						Instance currInst = findClosestAvailableSLICE(ps.useSLICE.get(0).switchMatrixSink.tile, NetType.GND);
-						if(currStaticSourcePin != null){
-							currInst.addToNetList(newNet);
-							newNet.addPin(currStaticSourcePin);
-						}
-						else{
-							router.design.addInstance(currInst);
-							currInst.addToNetList(newNet);
-							Pin source = new Pin(true, slicePin, currInst);
-							newNet.addPin(source);
-						}
-					}
-					if(vccs.size() > 0){
-						// Create the new net
-						Net newNet = createNewNet(NetType.VCC, vccs);
-						finalStaticNets.add(newNet);
-
-						// Create new instance of SLICE primitive to get source
-						Instance currInst = findClosestAvailableSLICE(ps.useSLICE.get(0).switchMatrixSink.tile, NetType.VCC);
-
-						if(currStaticSourcePin != null){
-							currInst.addToNetList(newNet);
-							newNet.addPin(currStaticSourcePin);
-						}
-						else{
-							router.design.addInstance(currInst);
-							currInst.addToNetList(newNet);
-							Pin source = new Pin(true, slicePin, currInst);
-							newNet.addPin(source);
-						}
-					}
-				}
 			}
 
+			createSLICESourcedNets(pinSwitchMatrixMap);
+
 //================================================================
 // added for Spartan6 adaption
 //----------------------------------------------------------------		
@@ -1245,131 +1261,211 @@ public class StaticSourceHandler{
 		inst.addToNetList(net);
 	}
 
-	enum Direction{UP, DOWN, LEFT, RIGHT};
+	/**
+	 * Creates the SLICE sourced nets of all switch matrix tiles, one per tile
+	 * and net type. The nearest SLICE sites of the tiles are looked up in
+	 * parallel, the sources are then picked and the nets created in tile order.
+	 * @param pinSwitchMatrixMap The sorted pins of every switch matrix tile.
+	 */
+	private void createSLICESourcedNets(HashMap<Tile, PinSorter> pinSwitchMatrixMap){
+		ArrayList<PinSorter> sorters = new ArrayList<PinSorter>();
+		for(PinSorter ps : pinSwitchMatrixMap.values()){
+			if(ps.useSLICE.size() > 0){
+				sorters.add(ps);
+			}
+		}
+		List<List<PrimitiveSite>> candidates = new ArrayList<List<PrimitiveSite>>(Collections.nCopies(sorters.size(), (List<PrimitiveSite>) null));
+		if(usesSLICESourceSites()){
+			// Create the shared index before the lookups
+			dev.getSiteSpatialIndex();
+			forEachIndex(sorters.size(), i -> candidates.set(i,
+					getNearestSourceSites(sorters.get(i).useSLICE.get(0).switchMatrixSink.tile, SLICE_CANDIDATES)));
+		}
+
+		for(int s = 0; s < sorters.size(); s++){
+			PinSorter ps = sorters.get(s);
+			ArrayList<Pin> gnds = new ArrayList<Pin>();
+			ArrayList<Pin> vccs = new ArrayList<Pin>();
+			for(StaticSink ss : ps.useSLICE){
+				if(ss.pin.getNet().getType().equals(NetType.GND)){
+					gnds.add(ss.pin);
+				}
+				else if(ss.pin.getNet().getType().equals(NetType.VCC)){
+					vccs.add(ss.pin);
+				}
+			}
+
+			Tile tile = ps.useSLICE.get(0).switchMatrixSink.tile;
+			if(gnds.size() > 0){
+				createSLICESourcedNet(NetType.GND, gnds, tile, candidates.get(s));
+			}
+			if(vccs.size() > 0){
+				createSLICESourcedNet(NetType.VCC, vccs, tile, candidates.get(s));
+			}
+		}
+	}
+
+	private void createSLICESourcedNet(NetType type, ArrayList<Pin> pins, Tile tile, List<PrimitiveSite> candidates){
+		// Create the new net
+		Net newNet = createNewNet(type, pins);
+		finalStaticNets.add(newNet);
+
+		// Create new instance of SLICE primitive to get source
+		Instance currInst = findClosestAvailableSLICE(tile, type, candidates);
+		if(currStaticSourcePin != null){
+			currInst.addToNetList(newNet);
+			newNet.addPin(currStaticSourcePin);
+		}
+		else{
+			router.design.addInstance(currInst);
+			currInst.addToNetList(newNet);
+			Pin source = new Pin(true, slicePin, currInst);
+			newNet.addPin(source);
+		}
+	}
+
+	/**
+	 * @return True if used SLICEs with free LUTs may source static nets, then
+	 * the SLICE sites are taken from {@link #getNearestSourceSites(Tile, int)}.
+	 */
+	private boolean usesSLICESourceSites(){
+		return familyType.equals(FamilyType.VIRTEX5) || familyType.equals(FamilyType.SPARTAN6);
+	}
+
+	/**
+	 * Finds the SLICE sites nearest to a tile which may source a static net,
+	 * used or not. Only reads the device, so several tiles can be looked up at
+	 * the same time.
+	 * @param tile The tile where the sinks to be driven are located.
+	 * @param k The maximum number of sites.
+	 * @return Up to k sites, sorted by increasing distance.
+	 */
+	private List<PrimitiveSite> getNearestSourceSites(Tile tile, int k){
+		return getNearestSourceSites(dev.getSiteSpatialIndex(), getSourceSiteTypes(familyType), tile, k);
+	}
+
+	/**
+	 * @return The types of the SLICE sites which may source static nets
+	 * when {@link #usesSLICESourceSites()}.
+	 */
+	static PrimitiveType[] getSourceSiteTypes(FamilyType familyType){
+		return familyType.equals(FamilyType.SPARTAN6) ?
+				new PrimitiveType[]{PrimitiveType.SLICEX, PrimitiveType.SLICEM} :
+				new PrimitiveType[]{PrimitiveType.SLICEL, PrimitiveType.SLICEM};
+	}
+
+	/**
+	 * Finds the sites of some types nearest to a tile. The sites of each type
+	 * come from the index in a fixed order and are merged with a stable sort,
+	 * so the result only depends on the device and the tile, not on the thread
+	 * doing the lookup.
+	 * @param index The site index of the device.
+	 * @param types The types of the sites.
+	 * @param tile The tile to measure the distance from.
+	 * @param k The maximum number of sites.
+	 * @return Up to k sites, sorted by increasing distance.
+	 */
+	static List<PrimitiveSite> getNearestSourceSites(SiteSpatialIndex index, PrimitiveType[] types, Tile tile, int k){
+		int column = tile.getColumn();
+		int row = tile.getRow();
+		ArrayList<PrimitiveSite> sites = new ArrayList<PrimitiveSite>();
+		for(PrimitiveType type : types){
+			sites.addAll(index.getNearestSites(type, false, column, row, k, null));
+		}
+		sites.sort(Comparator.comparingInt(site ->
+				Math.abs(site.getTile().getColumn() - column) + Math.abs(site.getTile().getRow() - row)));
+		return sites.size() > k ? new ArrayList<PrimitiveSite>(sites.subList(0, k)) : sites;
+	}
 
 	/**
 	 * Finds an available SLICE to be used as a static source.  
 	 * @param tile The tile where the sink to be driven is located
+	 * @param candidates The nearest sites from {@link #getNearestSourceSites(Tile, int)},
+	 * or null to look them up
 	 * @return The newly created instance of the SLICE to source the sink
 	 */
-	private Instance findClosestAvailableSLICE(Tile tile, NetType sourceType){
-		Direction dir = Direction.DOWN;
-		int column = tile.getColumn();
-		int row = tile.getRow();
-		int maxColumn = column+1;
-		int maxRow = row+1;
-		int minColumn = column-1;
-		int minRow = row;
+	private Instance findClosestAvailableSLICE(Tile tile, NetType sourceType, List<PrimitiveSite> candidates){
 		String srcTypeString = sourceType.equals(NetType.VCC) ? "_VCC_SOURCE" : "_GND_SOURCE";
-		boolean isVirtex5 = dev.getFamilyType().equals(FamilyType.VIRTEX5);
-		Tile currentTile;
-		boolean foundFreeSlice = false;
-		while(!foundFreeSlice){
-			switch(dir){
-				case UP:
-					if(row == minRow){
-						dir = Direction.RIGHT;
-						minRow--;
-						column++;
-					}
-					else{
-						row--;
-					}
-					break;
-				case DOWN:
-					if(row == maxRow){
-						dir = Direction.LEFT;
-						maxRow++;
-						column--;
-					}
-					else{
-						row++;
-					}
-					break;
-				case LEFT:
-					if(column == minColumn){
-						dir = Direction.UP;
-						minColumn--;
-						row--;
-					}
-					else{
-						column--;
-					}
-					break;
-				case RIGHT:
-					if(column == maxColumn){
-						dir = Direction.DOWN;
-						maxColumn++;
-						row++;
-					}
-					else{
-						column++;
-					}
-					break;
+		if(!usesSLICESourceSites()){
+			// Only free SLICEs can be used, the site index finds the nearest one directly
+			PrimitiveSite site = router.design.getNearestFreePrimitiveSite(PrimitiveType.SLICEL, tile);
+			if(site == null){
+				MessageGenerator.briefErrorAndExit("Could not find a free SLICE for a static source, I am giving up.");
 			}
-			currentTile = dev.getTile(row, column);
-			if(currentTile != null && currentTile.getPrimitiveSites() != null){
-				for(PrimitiveSite site : currentTile.getPrimitiveSites()){
-
-//================================================================
-// added for Spartan6 adaption
-//----------------------------------------------------------------
-					if(dev.getFamilyType().equals(FamilyType.SPARTAN6)){
-						Instance i=findSLICE_Spartan6(site, srcTypeString);
-						if(i==null){}
-
-						else
-							return i;
-					}
-					else{
-//================================================================
-
-						if(site.getType().equals(PrimitiveType.SLICEL) || site.getType().equals(PrimitiveType.SLICEM)){
-							if(!router.design.getUsedPrimitiveSites().contains(site)){
-								Instance returnMe = new Instance();
-								HashMap<String, Attribute> attributeMap = new HashMap<String, Attribute>();
-								attributeMap.put("_NO_USER_LOGIC", new Attribute("_NO_USER_LOGIC","",""));
-
-								attributeMap.put(srcTypeString, new Attribute(srcTypeString,"",slicePin));
+			return createStaticSourceSLICE(site, srcTypeString);
+		}
 
-								returnMe.place(site);
-								returnMe.setType(PrimitiveType.SLICEL);
-								returnMe.setAttributes(attributeMap);
-								returnMe.setName("XDL_DUMMY_" + returnMe.getTile() + "_" + site.getName());
-								currStaticSourcePin = null;
-								return returnMe;
-							}
-							else if(isVirtex5){
-								// Check all the LUTs in this slice
-								Instance i = router.design.getInstanceAtPrimitiveSite(site);
-								String[] letters = {"A","B","C","D"};
-								for(String letter : letters){
-									if(i.testAttributeValue(letter+"5LUT", "#OFF") &&
-											i.testAttributeValue(letter+"6LUT", "#OFF") &&
-											!i.hasAttribute("_GND_SOURCE") &&
-											!i.hasAttribute("_VCC_SOURCE")){
-										i.addAttribute(new Attribute(new Attribute(srcTypeString,"",letter)));
-										currStaticSourcePin = new Pin(true, letter, i);
-										i.addPin(currStaticSourcePin);
-										return i;
-									}
-								}
-							}
-						}
-					}
-//================================================================
-// added for Spartan6 adaption
-//----------------------------------------------------------------
+		// Used SLICEs can source the net if they have free LUTs, so the sites are
+		// checked by distance, looking further when all of them are taken
+		boolean isSpartan6 = familyType.equals(FamilyType.SPARTAN6);
+		int count = SLICE_CANDIDATES;
+		if(candidates == null){
+			candidates = getNearestSourceSites(tile, count);
+		}
+		while(true){
+			for(PrimitiveSite site : candidates){
+				Instance i = isSpartan6 ? findSLICE_Spartan6(site, srcTypeString) : findSLICE_Virtex5(site, srcTypeString);
+				if(i != null){
+					return i;
 				}
-//================================================================
-
 			}
+			if(candidates.size() < count){
+				break;
+			}
+			count *= 4;
+			candidates = getNearestSourceSites(tile, count);
 		}
 
 		MessageGenerator.briefErrorAndExit("Could not find a free SLICE for a static source, I am giving up.");
 		return null;
 	}
 
+	/**
+	 * Uses a Virtex 5 SLICE site as a static source, if it is free or has an unused LUT.
+	 * @return The SLICE instance, or null if the site cannot be used.
+	 */
+	private Instance findSLICE_Virtex5(PrimitiveSite site, String srcTypeString){
+		if(!router.design.getUsedPrimitiveSites().contains(site)){
+			return createStaticSourceSLICE(site, srcTypeString);
+		}
+		// Check all the LUTs in this slice
+		Instance i = router.design.getInstanceAtPrimitiveSite(site);
+		String[] letters = {"A","B","C","D"};
+		for(String letter : letters){
+			if(i.testAttributeValue(letter+"5LUT", "#OFF") &&
+					i.testAttributeValue(letter+"6LUT", "#OFF") &&
+					!i.hasAttribute("_GND_SOURCE") &&
+					!i.hasAttribute("_VCC_SOURCE")){
+				i.addAttribute(new Attribute(new Attribute(srcTypeString,"",letter)));
+				currStaticSourcePin = new Pin(true, letter, i);
+				i.addPin(currStaticSourcePin);
+				return i;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Creates a SLICEL instance on a free site which only sources a static signal.
+	 * @param site The free SLICE site to use.
+	 * @param srcTypeString The source attribute (_VCC_SOURCE or _GND_SOURCE).
+	 * @return The new instance, not yet added to the design.
+	 */
+	private Instance createStaticSourceSLICE(PrimitiveSite site, String srcTypeString){
+		Instance returnMe = new Instance();
+		HashMap<String, Attribute> attributeMap = new HashMap<String, Attribute>();
+		attributeMap.put("_NO_USER_LOGIC", new Attribute("_NO_USER_LOGIC","",""));
+
+		attributeMap.put(srcTypeString, new Attribute(srcTypeString,"",slicePin));
+
+		returnMe.place(site);
+		returnMe.setType(PrimitiveType.SLICEL);
+		returnMe.setAttributes(attributeMap);
+		returnMe.setName("XDL_DUMMY_" + returnMe.getTile() + "_" + site.getName());
+		currStaticSourcePin = null;
+		return returnMe;
+	}
+
 	//================================================================
 // added for Spartan6 adaption
 //----------------------------------------------------------------	
@@ -19,6 +19,7 @@ import edu.byu.ece.rapidSmith.primitiveDefs.PrimitiveDefList;
 import edu.byu.ece.rapidSmith.primitiveDefs.PrimitiveDefPin;
 import edu.byu.ece.rapidSmith.router.InstanceElement;
 import edu.byu.ece.rapidSmith.router.RoutingElement;
+import edu.byu.ece.rapidSmith.router.wireCluster.RoutingGraph;
 import edu.byu.ece.rapidSmith.timing.TimingCalculator;
 import edu.byu.ece.rapidSmith.timing.TimingCalibration;
 import edu.byu.ece.rapidSmith.timing.logic.IsolatedDelayDesignCreator;
@@ -29,8 +30,6 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
@@ -65,7 +64,13 @@ public class Pathfinder {
 	private Map<Net, NetData> netDatas = new HashMap<>();
 
 	private int localIteration;
-	private PrintWriter netLog;
+
+	private final PathfinderMetrics metrics = new PathfinderMetrics();
+	/** Counts of the net currently being routed, passed to the metrics when it is done */
+	private long netExpanded;
+	private long netQueuePushes;
+	private long netQueuePops;
+	private long netStalePops;
 
 	private final IsolatedDelayDesignCreator isolatedDelayDesignCreator;
 
@@ -80,10 +85,21 @@ public class Pathfinder {
 		isolatedDelayDesignCreator = new IsolatedDelayDesignCreator(design, primitiveDefs, Paths.get("isolatedDelays"));
 	}
 
+	/**
+	 * Create a router that uses an existing node factory, for example the one of a previous router to keep its
+	 * congestion history, see {@link #routeDesignIncremental(Design)}.
+	 */
+	public Pathfinder(Design design, PathfinderNodeFactory pathfinderNodeFactory, TimingCalculator timingCalculator, PrimitiveDefList primitiveDefs, boolean keepExistingRoutes) {
+		this(design, pathfinderNodeFactory, new NodeCostFactory(), timingCalculator, primitiveDefs, keepExistingRoutes);
+	}
 
+	/**
+	 * Create a router that builds the routing graph of the device in memory. To use the graph cached in the
+	 * device database, pass a node factory created from {@link RoutingGraph#loadOrBuild(edu.byu.ece.rapidSmith.device.Device)}.
+	 */
 	public Pathfinder(Design design, TimingCalculator timingCalculator, PrimitiveDefList primitiveDefs, boolean keepExistingRoutes) {
 		this.design = design;
-		pathfinderNodeFactory = new PathfinderNodeFactory(design.getDevice());
+		pathfinderNodeFactory = new PathfinderNodeFactory(RoutingGraph.build(design.getDevice()));
 		this.timingCalculator = timingCalculator;
 		this.primitiveDefs = primitiveDefs;
 		this.keepExistingRoutes = keepExistingRoutes;
@@ -99,6 +115,108 @@ public class Pathfinder {
 		try (Tracer ignored = Tracer.enter("Nets to routs")) {
 			netsToRoute = findNetsToRoute(HashSet::new);
 		}
+		routeNets(netsToRoute);
+
+		Tracer.exit();
+	}
+
+	/**
+	 * Route a changed netlist incrementally (engineering change order).
+	 *
+	 * The nets of this router's design are compared by their pins to the nets of the same name in a previously
+	 * routed design. Nets with the same type and pins keep their routing (taken from the previous design if they
+	 * have none) and their resources are blocked. Only the changed nets are routed, together with unchanged nets
+	 * whose routing uses a pin of a changed net, and unchanged nets whose routing overlaps the routing of another
+	 * unchanged net (e.g. when a net already had PIPs in this design).
+	 *
+	 * To keep the congestion history of the previous run, create this router with
+	 * {@link #Pathfinder(Design, PathfinderNodeFactory, TimingCalculator, PrimitiveDefList, boolean)}, passing the
+	 * {@link #getPathfinderNodeFactory() node factory} of the router that routed the previous design.
+	 *
+	 * @param previous the routed design the netlist was changed from
+	 */
+	public void routeDesignIncremental(Design previous) {
+		Tracer.enterLoop("Route Design Incremental");
+		unrouteable = false;
+		pathfinderNodeFactory.resetRouting();
+		netDatas.clear();
+
+		Set<Net> netsToRoute;
+		try (Tracer ignored = Tracer.enter("Diff nets")) {
+			netsToRoute = findChangedNets(previous);
+		}
+		logger.info("{} of {} nets changed", netsToRoute.size(), design.getNets().size());
+		routeNets(netsToRoute);
+
+		Tracer.exit();
+	}
+
+	/**
+	 * Find the nets that differ from a previous design, copy the routing of the other ones and block their resources
+	 *
+	 * @param previous the previous design
+	 * @return the nets to route
+	 */
+	Set<Net> findChangedNets(Design previous) {
+		Set<Net> changed = new HashSet<>();
+		List<Net> kept = new ArrayList<>();
+		for (Net net : design.getNets()) {
+			Net old = previous.getNet(net.getName());
+			if (old == null || old.getType() != net.getType() || !old.hasPIPs() || !getPinKeys(old).equals(getPinKeys(net))) {
+				net.getPIPs().clear();
+				changed.add(net);
+			} else {
+				if (!net.hasPIPs()) {
+					net.setPIPs(old.getPIPs());
+				}
+				kept.add(net);
+			}
+		}
+
+		//Unchanged nets that overlap an earlier unchanged net are rerouted, the blocked nodes must not be shared
+		Map<PathfinderNode, Net> keptNodes = new HashMap<>();
+		for (Net keptNet : kept) {
+			Set<PathfinderNode> nodes = new HashSet<>();
+			keptNet.getPIPs().forEachPIP((tile, startWire, endWire, direction) -> {
+				nodes.add(pathfinderNodeFactory.getNode(tile, startWire));
+				nodes.add(pathfinderNodeFactory.getNode(tile, endWire));
+			});
+			if (nodes.stream().anyMatch(keptNodes::containsKey)) {
+				keptNet.getPIPs().clear();
+				changed.add(keptNet);
+			} else {
+				nodes.forEach(node -> keptNodes.put(node, keptNet));
+			}
+		}
+
+		//Unchanged nets that use the pin of a changed net have to be rerouted as well
+		Deque<Net> toCheck = new ArrayDeque<>(changed);
+		Net net;
+		while ((net = toCheck.poll()) != null) {
+			for (Pin pin : net.getPins()) {
+				Net conflicting = keptNodes.get(pathfinderNodeFactory.getNode(pin));
+				if (conflicting != null && conflicting != net && changed.add(conflicting)) {
+					conflicting.getPIPs().clear();
+					toCheck.add(conflicting);
+				}
+			}
+		}
+
+		kept.stream().filter(n -> !changed.contains(n)).forEach(this::blockResources);
+		return changed;
+	}
+
+	/**
+	 * Identify the pins of a net independently of the design they are in
+	 */
+	private static Set<String> getPinKeys(Net net) {
+		return net.getPins().stream()
+				.map(pin -> pin.getInstanceName() + "@" + (pin.getInstance() == null ? null : pin.getInstance().getPrimitiveSiteName())
+						+ "." + pin.getName() + (pin.isOutPin() ? ":out" : ":in"))
+				.collect(Collectors.toSet());
+	}
+
+	private void routeNets(Set<Net> netsToRoute) {
 		//Put all static nets into a single net with many sources
 		try (Tracer ignored = Tracer.enter("Merge static nets")) {
 			mergeStaticNets(netsToRoute);
@@ -131,8 +249,6 @@ public class Pathfinder {
 				e.printStackTrace();
 			}
 		});*/
-
-		Tracer.exit();
 	}
 
 	/**
@@ -162,7 +278,10 @@ public class Pathfinder {
 		netData.sourceNodes.forEach(sourceNode -> {
 			//Is the node used?
 			if (netData.routing.contains(sourceNode)) {
-				//Split into a new net
+				//Split into a new net, skipping names of static nets kept from an earlier run
+				while (design.getNet(net.getName() + "_" + i[0]) != null) {
+					i[0]++;
+				}
 				Net split = new Net(net.getName() + "_" + i[0]++, net.getType());
 
 				Pin sourcePin = getStaticSourcePin(sourceNode);
@@ -300,10 +419,15 @@ public class Pathfinder {
 
 			long iterationBegin = System.nanoTime();
 			for (Net net : iterationNets) {
+				netExpanded = 0;
+				netQueuePushes = 0;
+				netQueuePops = 0;
+				netStalePops = 0;
 				long netBegin = System.nanoTime();
 				routeSingleNet(net, globalIterations, resultComparator, expandedNodesConsumer, overusedNodes);
 				long netEnd = System.nanoTime();
-				logNetTime(net.getName(), globalIterations, netEnd - netBegin);
+				metrics.netRouted(net, globalIterations, netDatas.get(net).sinkNodes.size(), netEnd - netBegin,
+						netExpanded, netQueuePushes, netQueuePops, netStalePops);
 			}
 			long iterationEnd = System.nanoTime();
 			long duration = iterationEnd - iterationBegin;
@@ -321,8 +445,10 @@ public class Pathfinder {
 
 			timingCalculator.getCriticalPaths(1E-7).forEach(System.out::println);
 
-			globalIterations++;
+			int routedNets = iterationNets.size();
 			iterationNets = overusedNodes.stream().flatMap(n -> n.getNets().stream()).collect(Collectors.toSet());
+			metrics.iterationFinished(globalIterations, routedNets, overusedNodes.size(), iterationNets.size(), duration, taDuration);
+			globalIterations++;
 			logger.info("Iteration {}: {} nodes in {} nets with overuse, {}s route, {}s timing analysis, {}M expanded nodes, per node: {}µs", globalIterations, overusedNodes.size(), iterationNets.size(), duration * 1E-9, taDuration * 1E-9, expandedNodes[0] / 1000000f, duration * 1E-3 / expandedNodes[0]);
 
 			if (iterationNets.size() < 10) {
@@ -334,6 +460,7 @@ public class Pathfinder {
 			printStatus();
 
 			if (unrouteable) {
+				metrics.routingFinished(false);
 				throw new RuntimeException("Design is not routable!");
 			}
 
@@ -342,6 +469,7 @@ public class Pathfinder {
 			Tracer.exit();
 		}
 
+		metrics.routingFinished(iterationNets.isEmpty());
 		if (!iterationNets.isEmpty()) {
 			throw new RuntimeException("Failed to find a solution within iteration limit.");
 		} else {
@@ -354,12 +482,6 @@ public class Pathfinder {
 		isolatedDelayDesignCreator.saveIsolatedDesignOnce(from.getInstance());
 	}
 
-	private void logNetTime(String name, int globalIterations, long l) {
-		if (netLog != null) {
-			netLog.println(name + "," + globalIterations + "," + l);
-		}
-	}
-
 	protected void restrictRoutethroughs(PrimitiveDefList primitives) {
 		Tracer.enter("Restrict Routethroughs");
 		for (Instance instance : design.getInstances()) {
@@ -546,6 +668,7 @@ public class Pathfinder {
 		}
 
 		startNodes.forEach(node -> queue.add(nodeCostFactory.getNodeCost(node, null, 0, estimateRemainingCost(node, sinkNode))));
+		netQueuePushes += startNodes.size();
 
 		NodeCost current;
 		boolean found = false;
@@ -558,6 +681,7 @@ public class Pathfinder {
 		//We count the routing iterations. In each node, we save the last localIteration we saw it in. If the counts
 		//are equal, we already expanded it in this localIteration.
 		while ((current = queue.poll()) != null) {
+			netQueuePops++;
 			//Did we already see the node?
 			if (current.isValid() && current.getNode().getSeenInLocalIteration() != localIteration) {
 				expandedNodes++;
@@ -579,6 +703,8 @@ public class Pathfinder {
 				} else {
 					enqueueNextNodes(globalIteration, sinkNode, queue, current, globalIteration);
 				}
+			} else {
+				netStalePops++;
 			}
 			nodeCostFactory.recycle(current);
 		}
@@ -598,6 +724,7 @@ public class Pathfinder {
 		nodeCostFactory.recycleAll(queue);
 
 		expandedNodesConsumer.accept(expandedNodes);
+		netExpanded += expandedNodes;
 
 		Tracer.exit();
 	}
@@ -626,6 +753,7 @@ public class Pathfinder {
 			}
 
 			queue.add(nodeCostFactory.getNodeCost(next, current.getNode(), cost, remaining));
+			netQueuePushes++;
 		}
 	}
 
@@ -784,9 +912,9 @@ public class Pathfinder {
 	}
 
 	private void blockResources(Net net) {
-		net.getPIPs().forEach(pip -> {
-			pathfinderNodeFactory.getNode(pip.getTile(), pip.getStartWire()).block();
-			pathfinderNodeFactory.getNode(pip.getTile(), pip.getEndWire()).block();
+		net.getPIPs().forEachPIP((tile, startWire, endWire, direction) -> {
+			pathfinderNodeFactory.getNode(tile, startWire).block();
+			pathfinderNodeFactory.getNode(tile, endWire).block();
 		});
 	}
 
@@ -865,7 +993,7 @@ public class Pathfinder {
 			}
 
 			Pathfinder router = new Pathfinder(design, calculator, primitiveDefs, true);
-			router.netLog = new PrintWriter(Files.newBufferedWriter(Paths.get(args[2] + ".csv")));
+			router.addListener(PathfinderMetrics.csvExporter(Paths.get(args[2] + ".iterations.csv"), Paths.get(args[2] + ".csv")));
 
 			// route design
 			long before = System.nanoTime();
@@ -884,8 +1012,6 @@ public class Pathfinder {
 				design.saveXDLFile(Paths.get(args[2]));
 			}
 
-			router.netLog.close();
-
 //			for (Instance instance : design.getInstances()) {
 //				if (instance.isIOB()) {
 //					logger.info("IOB: " + instance.getName() + " nets: " + instance.getNetList().stream().map(Net::getName).collect(Collectors.joining(" ")));
@@ -906,6 +1032,17 @@ public class Pathfinder {
 		return pathfinderNodeFactory;
 	}
 
+	/**
+	 * Get the statistics of the routing, see {@link PathfinderMetrics}
+	 */
+	public PathfinderMetrics getMetrics() {
+		return metrics;
+	}
+
+	public void addListener(PathfinderListener listener) {
+		metrics.addListener(listener);
+	}
+
 	/**
 	 * Verify correctness of remaining cost estimator.
 	 * Only works right after routing the net when parent links are still valid in the nodes.
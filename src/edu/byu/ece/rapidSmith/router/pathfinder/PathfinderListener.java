@@ -0,0 +1,30 @@
+package edu.byu.ece.rapidSmith.router.pathfinder;
+
+/**
+ * Receives the statistics of a {@link Pathfinder} run while it is routing.
+ *
+ * The methods are called on the routing thread, so they should return quickly.
+ */
+public interface PathfinderListener {
+
+	/**
+	 * Called after a net was routed in a global iteration
+	 */
+	default void netRouted(PathfinderMetrics.NetStats stats) {
+	}
+
+	/**
+	 * Called after each global iteration, including the timing analysis
+	 */
+	default void iterationFinished(PathfinderMetrics.IterationStats stats) {
+	}
+
+	/**
+	 * Called once all nets are routed, or the router gave up
+	 *
+	 * @param metrics the metrics of the whole run
+	 * @param converged false if the router gave up
+	 */
+	default void routingFinished(PathfinderMetrics metrics, boolean converged) {
+	}
+}
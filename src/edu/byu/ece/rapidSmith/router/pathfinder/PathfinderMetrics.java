@@ -0,0 +1,463 @@
+package edu.byu.ece.rapidSmith.router.pathfinder;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import edu.byu.ece.rapidSmith.design.Net;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of a {@link Pathfinder} run.
+ *
+ * The totals are kept in {@link LongAdder}s and can be read from other threads while routing. Every global
+ * iteration is also kept as a record, which is passed to the {@link PathfinderListener}s and can be exported as
+ * JSON or CSV once routing is finished. Every routed net gets a record as well, which is passed to the listeners;
+ * as there is one per net and iteration, they are only kept for the export if {@link #setRecordNets(boolean)}
+ * is enabled. {@link #csvExporter(Path, Path)} writes them while routing instead.
+ */
+public class PathfinderMetrics {
+
+	/** Bucket i of the net time histogram counts nets routed in [2^i, 2^(i+1)) µs, bucket 0 also faster ones */
+	public static final int HISTOGRAM_BUCKETS = 32;
+
+	private final LongAdder routedNets = new LongAdder();
+	private final LongAdder routedSinks = new LongAdder();
+	private final LongAdder nodesExpanded = new LongAdder();
+	private final LongAdder queuePushes = new LongAdder();
+	private final LongAdder queuePops = new LongAdder();
+	private final LongAdder stalePops = new LongAdder();
+	private final LongAdder routeNanos = new LongAdder();
+	private final LongAdder timingNanos = new LongAdder();
+	private final LongAdder[] netTimeHistogram = new LongAdder[HISTOGRAM_BUCKETS];
+
+	private final Queue<NetStats> nets = new ConcurrentLinkedQueue<>();
+	private final List<IterationStats> iterations = new CopyOnWriteArrayList<>();
+	private final List<PathfinderListener> listeners = new CopyOnWriteArrayList<>();
+	private boolean recordNets = false;
+
+	/** Totals at the end of the last iteration, to get the counts of the current one */
+	private long lastExpanded;
+	private long lastPushes;
+	private long lastPops;
+	private long lastStalePops;
+
+	public PathfinderMetrics() {
+		for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+			netTimeHistogram[i] = new LongAdder();
+		}
+	}
+
+	public void addListener(PathfinderListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(PathfinderListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Keep a record of every routed net for {@link #getNets()} and the export, off by default. The records grow
+	 * with the number of nets times the iterations, listeners get them either way.
+	 */
+	public void setRecordNets(boolean recordNets) {
+		this.recordNets = recordNets;
+	}
+
+	//========================================================================//
+	// Recording, called by the router
+	//========================================================================//
+
+	void netRouted(Net net, int iteration, int sinks, long nanos, long expanded, long pushes, long pops, long stale) {
+		routedNets.increment();
+		routedSinks.add(sinks);
+		nodesExpanded.add(expanded);
+		queuePushes.add(pushes);
+		queuePops.add(pops);
+		stalePops.add(stale);
+		long micros = nanos / 1000;
+		int bucket = micros <= 1 ? 0 : Math.min(HISTOGRAM_BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+		netTimeHistogram[bucket].increment();
+
+		NetStats stats = new NetStats(net.getName(), iteration, sinks, nanos, expanded, pushes, pops, stale);
+		if (recordNets) {
+			nets.add(stats);
+		}
+		for (PathfinderListener listener : listeners) {
+			listener.netRouted(stats);
+		}
+	}
+
+	void iterationFinished(int iteration, int routed, int overusedNodes, int overusedNets, long route, long timing) {
+		routeNanos.add(route);
+		timingNanos.add(timing);
+
+		long expanded = nodesExpanded.sum();
+		long pushes = queuePushes.sum();
+		long pops = queuePops.sum();
+		long stale = stalePops.sum();
+		IterationStats stats = new IterationStats(iteration, routed, overusedNodes, overusedNets, route, timing,
+				expanded - lastExpanded, pushes - lastPushes, pops - lastPops, stale - lastStalePops);
+		lastExpanded = expanded;
+		lastPushes = pushes;
+		lastPops = pops;
+		lastStalePops = stale;
+
+		iterations.add(stats);
+		for (PathfinderListener listener : listeners) {
+			listener.iterationFinished(stats);
+		}
+	}
+
+	void routingFinished(boolean converged) {
+		for (PathfinderListener listener : listeners) {
+			listener.routingFinished(this, converged);
+		}
+	}
+
+	//========================================================================//
+	// Queries
+	//========================================================================//
+
+	/** Number of times a net was routed, nets rerouted in later iterations count again */
+	public long getRoutedNets() {
+		return routedNets.sum();
+	}
+
+	public long getRoutedSinks() {
+		return routedSinks.sum();
+	}
+
+	public long getNodesExpanded() {
+		return nodesExpanded.sum();
+	}
+
+	public long getQueuePushes() {
+		return queuePushes.sum();
+	}
+
+	public long getQueuePops() {
+		return queuePops.sum();
+	}
+
+	/** Popped queue entries that were invalidated or whose node was already expanded */
+	public long getStalePops() {
+		return stalePops.sum();
+	}
+
+	public long getRouteNanos() {
+		return routeNanos.sum();
+	}
+
+	public long getTimingNanos() {
+		return timingNanos.sum();
+	}
+
+	public long[] getNetTimeHistogram() {
+		long[] res = new long[HISTOGRAM_BUCKETS];
+		for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+			res[i] = netTimeHistogram[i].sum();
+		}
+		return res;
+	}
+
+	public List<IterationStats> getIterations() {
+		return new ArrayList<>(iterations);
+	}
+
+	/**
+	 * Get the records of the routed nets, empty unless {@link #setRecordNets(boolean)} was enabled
+	 */
+	public List<NetStats> getNets() {
+		return new ArrayList<>(nets);
+	}
+
+	//========================================================================//
+	// Export
+	//========================================================================//
+
+	/**
+	 * Write the totals, the net time histogram and all records as JSON. Nets are only included if they were
+	 * recorded, see {@link #setRecordNets(boolean)}.
+	 */
+	public void writeJson(Writer writer) throws IOException {
+		Map<String, Object> totals = new LinkedHashMap<>();
+		totals.put("routedNets", getRoutedNets());
+		totals.put("routedSinks", getRoutedSinks());
+		totals.put("nodesExpanded", getNodesExpanded());
+		totals.put("queuePushes", getQueuePushes());
+		totals.put("queuePops", getQueuePops());
+		totals.put("stalePops", getStalePops());
+		totals.put("routeNanos", getRouteNanos());
+		totals.put("timingNanos", getTimingNanos());
+
+		Map<String, Object> root = new LinkedHashMap<>();
+		root.put("totals", totals);
+		root.put("netTimeHistogramMicros", getNetTimeHistogram());
+		root.put("iterations", getIterations());
+		root.put("nets", getNets());
+
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.enable(SerializationFeature.INDENT_OUTPUT);
+		mapper.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+		mapper.writeValue(writer, root);
+	}
+
+	/**
+	 * Write one line per global iteration as CSV
+	 */
+	public void writeIterationCsv(Writer writer) {
+		PrintWriter out = new PrintWriter(writer);
+		out.println("iteration,nets,overusedNodes,overusedNets,routeNanos,timingNanos,nodesExpanded,queuePushes,queuePops,stalePops");
+		for (IterationStats s : iterations) {
+			out.println(s.iteration + "," + s.nets + "," + s.overusedNodes + "," + s.overusedNets + "," + s.routeNanos + ","
+					+ s.timingNanos + "," + s.nodesExpanded + "," + s.queuePushes + "," + s.queuePops + "," + s.stalePops);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Write one line per recorded net as CSV, see {@link #setRecordNets(boolean)}
+	 */
+	public void writeNetCsv(Writer writer) {
+		PrintWriter out = new PrintWriter(writer);
+		out.println(NET_CSV_HEADER);
+		for (NetStats s : nets) {
+			out.println(toCsv(s));
+		}
+		out.flush();
+	}
+
+	private static final String NET_CSV_HEADER = "net,iteration,sinks,nanos,nodesExpanded,queuePushes,queuePops,stalePops";
+
+	private static String toCsv(NetStats s) {
+		return csvQuote(s.net) + "," + s.iteration + "," + s.sinks + "," + s.nanos + ","
+				+ s.nodesExpanded + "," + s.queuePushes + "," + s.queuePops + "," + s.stalePops;
+	}
+
+	private static String csvQuote(String s) {
+		if (s.indexOf(',') < 0 && s.indexOf('"') < 0) {
+			return s;
+		}
+		return '"' + s.replace("\"", "\"\"") + '"';
+	}
+
+	/**
+	 * A listener that writes the metrics as JSON once routing is finished
+	 */
+	public static PathfinderListener jsonExporter(Path file) {
+		return new PathfinderListener() {
+			@Override
+			public void routingFinished(PathfinderMetrics metrics, boolean converged) {
+				try (Writer writer = Files.newBufferedWriter(file)) {
+					metrics.writeJson(writer);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * A listener that writes the iterations and nets as CSV. The nets are written while routing, so they do not
+	 * need to be recorded, the iterations once routing is finished.
+	 *
+	 * @param iterationFile file for the iterations, may be null
+	 * @param netFile file for the nets, may be null
+	 */
+	public static PathfinderListener csvExporter(Path iterationFile, Path netFile) {
+		return new PathfinderListener() {
+			private PrintWriter netWriter;
+
+			@Override
+			public void netRouted(NetStats stats) {
+				if (netFile == null) {
+					return;
+				}
+				openNetWriter();
+				netWriter.println(toCsv(stats));
+			}
+
+			private void openNetWriter() {
+				if (netWriter == null) {
+					try {
+						netWriter = new PrintWriter(Files.newBufferedWriter(netFile));
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					netWriter.println(NET_CSV_HEADER);
+				}
+			}
+
+			@Override
+			public void routingFinished(PathfinderMetrics metrics, boolean converged) {
+				try {
+					if (iterationFile != null) {
+						try (Writer writer = Files.newBufferedWriter(iterationFile)) {
+							metrics.writeIterationCsv(writer);
+						}
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				if (netFile != null) {
+					openNetWriter();
+					boolean failed = netWriter.checkError();
+					netWriter.close();
+					//A later run writes the file again
+					netWriter = null;
+					if (failed) {
+						throw new UncheckedIOException(new IOException("Could not write " + netFile));
+					}
+				}
+			}
+		};
+	}
+
+	//========================================================================//
+	// Records
+	//========================================================================//
+
+	/**
+	 * Statistics of routing one net in one global iteration
+	 */
+	public static class NetStats {
+		private final String net;
+		private final int iteration;
+		private final int sinks;
+		private final long nanos;
+		private final long nodesExpanded;
+		private final long queuePushes;
+		private final long queuePops;
+		private final long stalePops;
+
+		NetStats(String net, int iteration, int sinks, long nanos, long nodesExpanded, long queuePushes, long queuePops, long stalePops) {
+			this.net = net;
+			this.iteration = iteration;
+			this.sinks = sinks;
+			this.nanos = nanos;
+			this.nodesExpanded = nodesExpanded;
+			this.queuePushes = queuePushes;
+			this.queuePops = queuePops;
+			this.stalePops = stalePops;
+		}
+
+		public String getNet() {
+			return net;
+		}
+
+		public int getIteration() {
+			return iteration;
+		}
+
+		public int getSinks() {
+			return sinks;
+		}
+
+		public long getNanos() {
+			return nanos;
+		}
+
+		public long getNodesExpanded() {
+			return nodesExpanded;
+		}
+
+		public long getQueuePushes() {
+			return queuePushes;
+		}
+
+		public long getQueuePops() {
+			return queuePops;
+		}
+
+		public long getStalePops() {
+			return stalePops;
+		}
+	}
+
+	/**
+	 * Statistics of one global iteration
+	 */
+	public static class IterationStats {
+		private final int iteration;
+		private final int nets;
+		private final int overusedNodes;
+		private final int overusedNets;
+		private final long routeNanos;
+		private final long timingNanos;
+		private final long nodesExpanded;
+		private final long queuePushes;
+		private final long queuePops;
+		private final long stalePops;
+
+		IterationStats(int iteration, int nets, int overusedNodes, int overusedNets, long routeNanos, long timingNanos,
+				long nodesExpanded, long queuePushes, long queuePops, long stalePops) {
+			this.iteration = iteration;
+			this.nets = nets;
+			this.overusedNodes = overusedNodes;
+			this.overusedNets = overusedNets;
+			this.routeNanos = routeNanos;
+			this.timingNanos = timingNanos;
+			this.nodesExpanded = nodesExpanded;
+			this.queuePushes = queuePushes;
+			this.queuePops = queuePops;
+			this.stalePops = stalePops;
+		}
+
+		public int getIteration() {
+			return iteration;
+		}
+
+		/** Nets routed in this iteration */
+		public int getNets() {
+			return nets;
+		}
+
+		/** Nodes with overuse after this iteration */
+		public int getOverusedNodes() {
+			return overusedNodes;
+		}
+
+		/** Nets using overused nodes, which are rerouted in the next iteration */
+		public int getOverusedNets() {
+			return overusedNets;
+		}
+
+		public long getRouteNanos() {
+			return routeNanos;
+		}
+
+		public long getTimingNanos() {
+			return timingNanos;
+		}
+
+		public long getNodesExpanded() {
+			return nodesExpanded;
+		}
+
+		public long getQueuePushes() {
+			return queuePushes;
+		}
+
+		public long getQueuePops() {
+			return queuePops;
+		}
+
+		public long getStalePops() {
+			return stalePops;
+		}
+	}
+}
@@ -10,6 +10,7 @@ import edu.byu.ece.rapidSmith.device.Tile;
 import edu.byu.ece.rapidSmith.device.WireConnection;
 import edu.byu.ece.rapidSmith.device.WireDirection;
 import edu.byu.ece.rapidSmith.device.WireEnumerator;
+import edu.byu.ece.rapidSmith.router.wireCluster.RoutingGraph;
 import edu.byu.ece.rapidSmith.router.wireCluster.TileWire;
 import edu.byu.ece.rapidSmith.router.wireCluster.WireCluster;
 import org.slf4j.Logger;
@@ -64,6 +65,8 @@ public class PathfinderNode extends WireCluster {
 	private boolean sinkNode;
 
 	private boolean isClockNode;
+	/** Id of the cluster in the cluster index of the factory, -1 if it is not there */
+	private int clusterId = -1;
 
 /*
 	/**
@@ -198,6 +201,8 @@ public class PathfinderNode extends WireCluster {
 			+  getDistance(minY, maxY, sink.minY, sink.maxY);
 	}
 
+	private static final PathfinderNode[] NO_NEIGHBOURS = new PathfinderNode[0];
+	/** All nodes this node connects to, including blocked ones */
 	private PathfinderNode[] neighbours;
 	//private Map<PathfinderNode, Boolean> isPip;
 /*
@@ -223,17 +228,57 @@ public class PathfinderNode extends WireCluster {
 		return neighbours;
 	}*/
 
+	/**
+	 * Get the nodes this node connects to. Sink nodes have no neighbours, and blocked nodes are left out.
+	 *
+	 * The connections are cached, but blocking and sink flags are checked on every call, since they change when
+	 * resources are blocked or the routing is reset.
+	 */
 	public PathfinderNode[] getNeighbours(PathfinderNodeFactory factory) {
-
+		if (isSinkNode()) {
+			return NO_NEIGHBOURS;
+		}
 		if (neighbours == null) {
-			Tracer.enterLoop("neighbours");
-			Set<PathfinderNode> neighbourSet = new HashSet<>();
+			neighbours = findNeighbours(factory);
+		}
+		int blockedCount = 0;
+		for (PathfinderNode node : neighbours) {
+			if (node.isBlocked()) {
+				blockedCount++;
+			}
+		}
+		if (blockedCount == 0) {
+			return neighbours;
+		}
+		PathfinderNode[] res = new PathfinderNode[neighbours.length - blockedCount];
+		int i = 0;
+		for (PathfinderNode node : neighbours) {
+			if (!node.isBlocked()) {
+				res[i++] = node;
+			}
+		}
+		return res;
+	}
+
+	private PathfinderNode[] findNeighbours(PathfinderNodeFactory factory) {
+		Tracer.enterLoop("neighbours");
+		Set<PathfinderNode> neighbourSet = new HashSet<>();
+		final RoutingGraph graph = factory.getRoutingGraph();
+		if (graph != null && clusterId >= 0) {
+			//The connections were already found when building the graph
+			for (int i = 0; i < graph.getSuccessorCount(clusterId); i++) {
+				PathfinderNode node = factory.getNode(graph.getSuccessor(clusterId, i));
+				if (!neighbourSet.add(node)) {
+					throw new RuntimeException("Multiple connections between " + this + " and " + node);
+				}
+			}
+		} else {
 			tileWires.forEach((tileWire -> {
 				WireConnection[] wires = tileWire.tile.getWireConnections(tileWire.wire);
-				if (!isSinkNode() && wires != null) {
+				if (wires != null) {
 					for (WireConnection conn : wires) {
 						PathfinderNode node = factory.getNode(conn.getTile(tileWire.tile), conn.getWire());
-						if (node != this && !node.isBlocked()) {
+						if (node != this) {
 							final boolean notAlreadyContained = neighbourSet.add(node);
 							if (!notAlreadyContained) {
 								throw new RuntimeException("Multiple connections between " + this + " and " + node);
@@ -242,10 +287,9 @@ public class PathfinderNode extends WireCluster {
 					}
 				}
 			}));
-			neighbours = neighbourSet.toArray(new PathfinderNode[neighbourSet.size()]);
-			Tracer.exit();
 		}
-		return neighbours;
+		Tracer.exit();
+		return neighbourSet.toArray(new PathfinderNode[neighbourSet.size()]);
 	}
 
 /*
@@ -330,6 +374,23 @@ public class PathfinderNode extends WireCluster {
 		this.blocked = true;
 	}
 
+	/**
+	 * Forget the routing of a previous run, but keep the historical overuse. The iteration counters
+	 * start again at 0, so a new Pathfinder can use the node.
+	 */
+	public void resetRouting() {
+		currentUsage = 0;
+		lastIterationUsage = 0;
+		seenInLocalIteration = 0;
+		seenInGlobalIteration = 0;
+		nodeCostIteration = 0;
+		currentNodeCost = null;
+		parent = null;
+		nets.clear();
+		blocked = false;
+		sinkNode = false;
+	}
+
 	public boolean isBlocked() {
 		return blocked;
 	}
@@ -393,6 +454,14 @@ public class PathfinderNode extends WireCluster {
 		}
 	}
 
+	public int getClusterId() {
+		return clusterId;
+	}
+
+	void setClusterId(int clusterId) {
+		this.clusterId = clusterId;
+	}
+
 	public boolean isClockNode() {
 		return isClockNode;
 	}
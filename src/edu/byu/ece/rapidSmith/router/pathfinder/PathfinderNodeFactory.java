@@ -4,8 +4,10 @@ import edu.byu.ece.rapidSmith.design.Pin;
 import edu.byu.ece.rapidSmith.device.Device;
 import edu.byu.ece.rapidSmith.device.Tile;
 import edu.byu.ece.rapidSmith.device.WireEnumerator;
+import edu.byu.ece.rapidSmith.router.wireCluster.RoutingGraph;
 import edu.byu.ece.rapidSmith.router.wireCluster.TileWire;
 import edu.byu.ece.rapidSmith.router.wireCluster.WireClusterFactory;
+import edu.byu.ece.rapidSmith.router.wireCluster.WireClusterIndex;
 
 import java.util.Arrays;
 import java.util.Objects;
@@ -15,20 +17,65 @@ import java.util.Objects;
  */
 public class PathfinderNodeFactory extends WireClusterFactory<PathfinderNode> {
     private final Device dev;
+	/** Connections between the nodes, null if they are found through the wire connections */
+	private final RoutingGraph routingGraph;
 
     public PathfinderNodeFactory(Device dev) {
 		super(dev, dev.getWireEnumerator());
 		this.dev = dev;
+		this.routingGraph = null;
     }
 
 	public PathfinderNodeFactory(Device dev, WireEnumerator wireEnumerator) {
 		super(dev, wireEnumerator);
 		this.dev = dev;
+		this.routingGraph = null;
+	}
+
+	/**
+	 * Create the nodes from precomputed clusters, e.g. from {@link WireClusterIndex#build}
+	 */
+	public PathfinderNodeFactory(WireClusterIndex clusterIndex) {
+		super(clusterIndex, clusterIndex.getDevice().getWireEnumerator());
+		this.dev = clusterIndex.getDevice();
+		this.routingGraph = null;
+	}
+
+	/**
+	 * Create the nodes and their connections from a routing graph, e.g. from
+	 * the cache of {@link RoutingGraph#loadOrBuild(Device)}
+	 */
+	public PathfinderNodeFactory(RoutingGraph routingGraph) {
+		super(routingGraph.getClusterIndex(), routingGraph.getDevice().getWireEnumerator());
+		this.dev = routingGraph.getDevice();
+		this.routingGraph = routingGraph;
+	}
+
+	public RoutingGraph getRoutingGraph() {
+		return routingGraph;
 	}
 
 	@Override
 	protected PathfinderNode getRepresentative(TileWire tileWire) {
-		return new PathfinderNode();
+		final PathfinderNode node = new PathfinderNode();
+		node.setClusterId(getClusterIndex().getClusterId(tileWire.tile, tileWire.wire));
+		return node;
+	}
+
+	/**
+	 * Get the node of a cluster of the {@link #getClusterIndex() cluster index}
+	 */
+	public PathfinderNode getNode(int clusterId) {
+		return getCluster(clusterId);
+	}
+
+	/**
+	 * Get the node of a cluster without creating it
+	 *
+	 * @return the node, or null if it was never used
+	 */
+	public PathfinderNode getCreatedNode(int clusterId) {
+		return getCreatedCluster(clusterId);
 	}
 
 	public PathfinderNode getNode(Tile tile, int wire) {
@@ -51,6 +98,14 @@ public class PathfinderNodeFactory extends WireClusterFactory<PathfinderNode> {
 		return cluster;
     }
 
+	/**
+	 * Reset the routing of all nodes created so far, keeping their historical overuse.
+	 * This allows routing a changed design with the congestion history of a previous run.
+	 */
+	public void resetRouting() {
+		getCreatedClusters().forEach(PathfinderNode::resetRouting);
+	}
+
     public PathfinderNode getNode(Pin pin) {
         Objects.requireNonNull(pin);
         try {
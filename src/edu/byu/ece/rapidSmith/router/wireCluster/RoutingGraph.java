@@ -0,0 +1,320 @@
+/*
+ * _______________________________________________________________________________
+ *
+ *  Copyright (c) 2012 TU Dresden, Chair for Embedded Systems
+ *  Copyright (c) 2013-2016 TU Darmstadt, Computer Systems Group
+ *  (http://www.rs.tu-darmstadt.de) All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement: "This product includes
+ *     software developed by the TU Dresden Chair for Embedded Systems, TU Darmstadt Computer Systems Group and
+ *     its contributors."
+ *
+ *  4. Neither the name of the TU Dresden Chair for Embedded Systems, TU Darmstadt Computer Systems Group nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY TU DRESDEN CHAIR FOR EMBEDDED SYSTEMS, TU DARMSTADT COMPUTER SYSTEMS GROUP AND
+ *  CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ *  BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ *  FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ *  REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ *  TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ *  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ *  NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * _______________________________________________________________________________
+ */
+
+
+package edu.byu.ece.rapidSmith.router.wireCluster;
+
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.Tile;
+import edu.byu.ece.rapidSmith.device.WireConnection;
+import edu.byu.ece.rapidSmith.device.database.FileDeviceDatabase;
+import edu.byu.ece.rapidSmith.util.DeviceDatabaseProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+/**
+ * The routing graph of a device on the level of wire clusters: the clusters of a
+ * {@link WireClusterIndex} and, for every cluster, the clusters its wires connect
+ * to (one entry per connection, in the order of the members and their connections).
+ *
+ * The graph only depends on the part, so it can be cached in a binary file in the
+ * folder of the part in the device database, see {@link #loadOrBuild(Device)}.
+ * The file is keyed by the part name and the version of the device file and is
+ * read memory mapped, which takes a fraction of a second instead of walking the
+ * whole device.
+ */
+public class RoutingGraph {
+
+	private static final Logger logger = LoggerFactory.getLogger(RoutingGraph.class);
+
+	private static final int MAGIC = 0x52534752; //RSGR
+	/** Version 2 indexes the PIP targets not listed in their tile, which version 1 dropped */
+	private static final int FILE_VERSION = 2;
+
+	private final WireClusterIndex clusters;
+	/** Start of the successors of every cluster in {@link #successors} */
+	private final int[] successorStart;
+	private final int[] successors;
+
+	private RoutingGraph(WireClusterIndex clusters, int[] successorStart, int[] successors) {
+		this.clusters = clusters;
+		this.successorStart = successorStart;
+		this.successors = successors;
+	}
+
+	public WireClusterIndex getClusterIndex() {
+		return clusters;
+	}
+
+	public Device getDevice() {
+		return clusters.getDevice();
+	}
+
+	public int getSuccessorCount(int cluster) {
+		return successorStart[cluster + 1] - successorStart[cluster];
+	}
+
+	/**
+	 * Get a cluster connected to a cluster
+	 *
+	 * @param cluster the cluster id
+	 * @param i the number of the connection, less than {@link #getSuccessorCount(int)}
+	 * @return the id of the connected cluster
+	 */
+	public int getSuccessor(int cluster, int i) {
+		return successors[successorStart[cluster] + i];
+	}
+
+	//========================================================================//
+	// Build
+	//========================================================================//
+
+	/**
+	 * Builds the clusters and their connections in the common pool
+	 */
+	public static RoutingGraph build(Device dev) {
+		WireClusterIndex clusters = WireClusterIndex.build(dev);
+		int count = clusters.getClusterCount();
+
+		//Count the connections of every cluster, then fill them in at their offsets
+		int[] successorStart = new int[count + 1];
+		IntStream.range(0, count).parallel().forEach(c -> successorStart[c + 1] = forEachSuccessor(clusters, c, null, 0));
+		for (int c = 0; c < count; c++) {
+			successorStart[c + 1] += successorStart[c];
+		}
+		int[] successors = new int[successorStart[count]];
+		IntStream.range(0, count).parallel().forEach(c -> forEachSuccessor(clusters, c, successors, successorStart[c]));
+		return new RoutingGraph(clusters, successorStart, successors);
+	}
+
+	/**
+	 * Walks the connections of a cluster to other clusters
+	 *
+	 * @param successors receives the connected clusters from offset on, null to only count them
+	 * @return the number of connections
+	 */
+	private static int forEachSuccessor(WireClusterIndex clusters, int cluster, int[] successors, int offset) {
+		int count = 0;
+		for (int m = 0; m < clusters.getClusterSize(cluster); m++) {
+			int index = clusters.getMember(cluster, m);
+			Tile tile = clusters.getTile(index);
+			WireConnection[] conns = WireClusterIndex.getConnections(tile, clusters.getWire(index));
+			if (conns == null) {
+				continue;
+			}
+			for (WireConnection conn : conns) {
+				Tile other = conn.getTile(tile);
+				int target = other == null ? -1 : clusters.getClusterId(other, conn.getWire());
+				if (target >= 0 && target != cluster) {
+					if (successors != null) {
+						successors[offset + count] = target;
+					}
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	//========================================================================//
+	// Persistence
+	//========================================================================//
+
+	/**
+	 * Get the cache file of a device, in the folder of the part in the device database
+	 */
+	public static Path getCacheFile(Device dev) {
+		return Paths.get(FileDeviceDatabase.getPartFolderPath(dev.getPartName()), dev.getPartName() + "_routingGraph.dat");
+	}
+
+	/**
+	 * Loads the routing graph of a device from its cache file, see {@link #getCacheFile(Device)}
+	 */
+	public static RoutingGraph loadOrBuild(Device dev) {
+		return loadOrBuild(dev, getCacheFile(dev));
+	}
+
+	/**
+	 * Loads the routing graph of a device from a file, or builds it and writes the
+	 * file if it does not exist, cannot be read or was written for another part or
+	 * device file version. A file that cannot be written is logged and skipped.
+	 *
+	 * @param dev the device
+	 * @param file the cache file
+	 * @return the routing graph
+	 */
+	public static RoutingGraph loadOrBuild(Device dev, Path file) {
+		if (Files.exists(file)) {
+			try {
+				return load(dev, file);
+			} catch (IOException e) {
+				logger.warn("Could not load the routing graph, rebuilding it: {}", e.getMessage());
+			}
+		}
+		logger.info("Building the routing graph of {}", dev.getPartName());
+		RoutingGraph graph = build(dev);
+		try {
+			graph.save(file);
+		} catch (IOException e) {
+			logger.warn("Could not save the routing graph to {}: {}", file, e.getMessage());
+		}
+		return graph;
+	}
+
+	/**
+	 * Get the version of the device file, which is part of the key of the cache file
+	 */
+	private static String getDeviceVersion(Device dev) {
+		String version = null;
+		try {
+			version = DeviceDatabaseProvider.getDeviceDatabase().getDeviceVersion(dev.getPartName());
+		} catch (RuntimeException e) {
+			//No device database, the device was created otherwise
+		}
+		return version != null ? version : Device.deviceFileVersion;
+	}
+
+	/**
+	 * Writes the graph to a file. The file is first written to a new temporary file
+	 * next to the target and then moved, so a concurrent run never maps a partial file.
+	 */
+	public void save(Path file) throws IOException {
+		Path dir = file.toAbsolutePath().getParent();
+		Files.createDirectories(dir);
+		Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+		try {
+			write(tmp);
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private void write(Path tmp) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FILE_VERSION);
+			writeString(out, getDevice().getPartName());
+			writeString(out, getDeviceVersion(getDevice()));
+			writeArray(out, clusters.getTileStarts());
+			writeArray(out, clusters.getWires());
+			writeArray(out, clusters.getClusterIds());
+			writeArray(out, successorStart);
+			writeArray(out, successors);
+		}
+	}
+
+	/**
+	 * Reads a graph written by {@link #save(Path)} for the given device. The file
+	 * is mapped and the arrays are copied out of it with bulk reads.
+	 *
+	 * @throws IOException if the file cannot be read or was written for another part or device file version.
+	 */
+	public static RoutingGraph load(Device dev, Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != FILE_VERSION) {
+				throw new IOException("Unsupported routing graph file: " + file);
+			}
+			String partName = readString(buffer);
+			String version = readString(buffer);
+			if (!partName.equals(dev.getPartName()) || !version.equals(getDeviceVersion(dev))) {
+				throw new IOException(file + " was written for " + partName + " version " + version +
+						", not " + dev.getPartName() + " version " + getDeviceVersion(dev));
+			}
+			int[] tileStart = readArray(buffer);
+			int[] wires = readArray(buffer);
+			int[] clusterOf = readArray(buffer);
+			int[] successorStart = readArray(buffer);
+			int[] successors = readArray(buffer);
+			if (tileStart.length != dev.getRows() * dev.getColumns() + 1 || wires.length != tileStart[tileStart.length - 1]
+					|| clusterOf.length != wires.length || successors.length != successorStart[successorStart.length - 1]) {
+				throw new IOException("Corrupt routing graph file: " + file);
+			}
+			return new RoutingGraph(new WireClusterIndex(dev, tileStart, wires, clusterOf), successorStart, successors);
+		} catch (RuntimeException e) {
+			//Buffer underflows and bad lengths of truncated files
+			throw new IOException("Corrupt routing graph file: " + file, e);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeArray(DataOutputStream out, int[] array) throws IOException {
+		out.writeInt(array.length);
+		for (int v : array) {
+			out.writeInt(v);
+		}
+	}
+
+	private static int[] readArray(ByteBuffer buffer) {
+		int[] array = new int[buffer.getInt()];
+		IntBuffer ints = buffer.asIntBuffer();
+		ints.get(array);
+		buffer.position(buffer.position() + 4 * array.length);
+		return array;
+	}
+}
@@ -43,21 +43,32 @@ package edu.byu.ece.rapidSmith.router.wireCluster;
 
 import edu.byu.ece.rapidSmith.device.Device;
 import edu.byu.ece.rapidSmith.device.Tile;
-import edu.byu.ece.rapidSmith.device.WireConnection;
 import edu.byu.ece.rapidSmith.device.WireEnumerator;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
  * Save a single object for all directly connected wires
  *
+ * The clusters are computed by a {@link WireClusterIndex}, which can be built
+ * in parallel or loaded from a cache file. The representative of a cluster is
+ * only created when the cluster is first used.
+ *
  * @param <T> Content type
  */
 public abstract class WireClusterFactory<T extends IWireCluster> {
 
 
 	protected final WireEnumerator wireEnumerator;
+	private WireClusterIndex clusterIndex;
+	/** The representative of every cluster of the index, by cluster id, null until used */
+	private List<T> representatives;
+	/** Clusters of wires that are not in the index */
 	private WireDataMap<T> clusters = new WireDataMap<>();
 
 
@@ -74,31 +85,33 @@ public abstract class WireClusterFactory<T extends IWireCluster> {
 
 	}
 
+	/**
+	 * Create a WireClusterFactory from precomputed clusters
+	 *
+	 * @param clusterIndex the clusters of the device, see {@link WireClusterIndex#build}
+	 */
+	public WireClusterFactory(WireClusterIndex clusterIndex, WireEnumerator wireEnumerator) {
+		this.wireEnumerator = wireEnumerator;
+
+		initializeClusters(clusterIndex);
+	}
+
 	protected void initializeClusters(Device device) {
 		System.out.println("Initializing clusters");
-		device.getTileMap().values().forEach(tile -> {
-			getWires(tile).forEach(wire -> {
-				final TileWire tw = new TileWire(tile, wire);
-				if (!clusters.containsKey(tw.tile, tw.wire)) {
-					initClusters(tile, wire, getRepresentative(tw));
-				}
-			});
-		});
+		initializeClusters(WireClusterIndex.build(device));
 		System.out.println("finished clusters");
 	}
 
-	private Stream<Integer> getWires(Tile tile) {
-		//Wires for input pins have no outbound connections and are therefore not listed in the routing wires.
-		//We need to grab them separately
-		Stream<Integer> pinWires;
-		if (tile.getPrimitiveSites() != null) {
-			pinWires = Arrays.stream(tile.getPrimitiveSites()).flatMap(site -> site.getPins().values().stream());
-		} else {
-			pinWires = Stream.empty();
-		}
-		Stream<Integer> routingWires = tile.getWires().stream();
+	/**
+	 * Use the clusters of an index
+	 */
+	protected void initializeClusters(WireClusterIndex clusterIndex) {
+		this.clusterIndex = clusterIndex;
+		representatives = new ArrayList<>(Collections.nCopies(clusterIndex.getClusterCount(), (T) null));
+	}
 
-		return Stream.concat(pinWires, routingWires).distinct();
+	public WireClusterIndex getClusterIndex() {
+		return clusterIndex;
 	}
 
 	/**
@@ -112,38 +125,38 @@ public abstract class WireClusterFactory<T extends IWireCluster> {
 	protected abstract T getRepresentative(TileWire tileWire);
 
 
-	private void initClusters(Tile tile, int wire, T representative) {
-		final TileWire tw = new TileWire(tile, wire);
-		final T oldValue = clusters.put(tw.tile, tw.wire, representative);
-		if (oldValue != null) {
-			if (oldValue == representative) {
-				return;
-			} else {
-				merge(representative, oldValue);
-			}
-		} else {
-			representative.add(tw, wireEnumerator);
-		}
-
-		final WireConnection[] conns = tile.getWireConnections(wire);
-		if (conns != null) {
-			for (WireConnection conn : conns) {
-				if (!conn.isPIP()) {
-					initClusters(conn.getTile(tile), conn.getWire(), representative);
-				}
+	/**
+	 * Get the representative of a cluster of the index, creating it on first use
+	 *
+	 * @param clusterId the id of the cluster in {@link #getClusterIndex()}
+	 * @return the representative
+	 */
+	protected T getCluster(int clusterId) {
+		T representative = representatives.get(clusterId);
+		if (representative == null) {
+			representative = getRepresentative(clusterIndex.getTileWire(clusterIndex.getMember(clusterId, 0)));
+			for (int i = 0; i < clusterIndex.getClusterSize(clusterId); i++) {
+				representative.add(clusterIndex.getTileWire(clusterIndex.getMember(clusterId, i)), wireEnumerator);
 			}
+			representatives.set(clusterId, representative);
 		}
+		return representative;
 	}
 
-	private void merge(T representative, T other) {
-		other.streamTileWires().forEach(tw -> {
-			representative.add(tw, wireEnumerator);
-			clusters.put(tw.tile, tw.wire, representative);
-		});
-
+	/**
+	 * Get the representative of a cluster of the index if it was already used
+	 *
+	 * @return the representative, or null if it was not created yet
+	 */
+	protected T getCreatedCluster(int clusterId) {
+		return representatives.get(clusterId);
 	}
 
 	protected T getCluster(Tile tile, int wire) {
+		final int id = tile == null ? -1 : clusterIndex.getClusterId(tile, wire);
+		if (id >= 0) {
+			return getCluster(id);
+		}
 		final T res = clusters.get(tile, wire);
 		if (res==null) {
 			return inputPinCluster(tile, wire);
@@ -161,6 +174,13 @@ public abstract class WireClusterFactory<T extends IWireCluster> {
 
 
 	public Stream<T> getAllClusters() {
-		return clusters.stream();
+		return Stream.concat(IntStream.range(0, representatives.size()).mapToObj(this::getCluster), clusters.stream());
+	}
+
+	/**
+	 * Get the representatives that were already used, without creating the other ones
+	 */
+	public Stream<T> getCreatedClusters() {
+		return Stream.concat(representatives.stream().filter(Objects::nonNull), clusters.stream());
 	}
 }
@@ -0,0 +1,369 @@
+/*
+ * _______________________________________________________________________________
+ *
+ *  Copyright (c) 2012 TU Dresden, Chair for Embedded Systems
+ *  Copyright (c) 2013-2016 TU Darmstadt, Computer Systems Group
+ *  (http://www.rs.tu-darmstadt.de) All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement: "This product includes
+ *     software developed by the TU Dresden Chair for Embedded Systems, TU Darmstadt Computer Systems Group and
+ *     its contributors."
+ *
+ *  4. Neither the name of the TU Dresden Chair for Embedded Systems, TU Darmstadt Computer Systems Group nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY TU DRESDEN CHAIR FOR EMBEDDED SYSTEMS, TU DARMSTADT COMPUTER SYSTEMS GROUP AND
+ *  CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ *  BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ *  FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ *  REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ *  TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ *  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ *  NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * _______________________________________________________________________________
+ */
+
+package edu.byu.ece.rapidSmith.router.wireCluster;
+
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.PrimitiveSite;
+import edu.byu.ece.rapidSmith.device.Tile;
+import edu.byu.ece.rapidSmith.device.WireConnection;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * The clusters of directly connected wires of a device, as computed by
+ * {@link WireClusterFactory}, in arrays.
+ *
+ * Every wire of every tile (routing wires and site pins) gets a dense index:
+ * the wires of a tile are sorted and numbered from the start index of the tile.
+ * The clusters are built with a union-find over these indices, the tiles are
+ * processed in parallel and joined with lock-free unions. A union always links
+ * the larger root below the smaller one, so every cluster ends up with its
+ * smallest index as root no matter in which order the threads run, and the
+ * cluster ids (numbered by their roots) are the same in every build.
+ *
+ * As the build walks all wires of the device, the clusters are cached together
+ * with their connections by {@link RoutingGraph}.
+ */
+public class WireClusterIndex {
+
+	private final Device dev;
+	/** Start of the dense indices of every tile, by unique tile address */
+	private final int[] tileStart;
+	/** The wire of every dense index, sorted within each tile */
+	private final int[] wires;
+	/** The cluster id of every dense index */
+	private final int[] clusterOf;
+	/** Start of the members of every cluster in {@link #members} */
+	private final int[] clusterStart;
+	/** The dense indices of the wires of every cluster, in increasing order */
+	private final int[] members;
+
+	WireClusterIndex(Device dev, int[] tileStart, int[] wires, int[] clusterOf) {
+		this.dev = dev;
+		this.tileStart = tileStart;
+		this.wires = wires;
+		this.clusterOf = clusterOf;
+
+		int clusters = 0;
+		for (int id : clusterOf) {
+			clusters = Math.max(clusters, id + 1);
+		}
+		clusterStart = new int[clusters + 1];
+		for (int id : clusterOf) {
+			clusterStart[id + 1]++;
+		}
+		for (int c = 0; c < clusters; c++) {
+			clusterStart[c + 1] += clusterStart[c];
+		}
+		members = new int[clusterOf.length];
+		int[] next = Arrays.copyOf(clusterStart, clusters);
+		for (int i = 0; i < clusterOf.length; i++) {
+			members[next[clusterOf[i]]++] = i;
+		}
+	}
+
+	//========================================================================//
+	// Queries
+	//========================================================================//
+
+	public Device getDevice() {
+		return dev;
+	}
+
+	/**
+	 * @return the number of wires with a dense index
+	 */
+	public int getWireCount() {
+		return wires.length;
+	}
+
+	public int getClusterCount() {
+		return clusterStart.length - 1;
+	}
+
+	/**
+	 * Get the dense index of a wire
+	 *
+	 * @param tile the tile
+	 * @param wire the wire
+	 * @return the index, or -1 if the wire is not part of the device's routing graph
+	 */
+	public int getIndex(Tile tile, int wire) {
+		int t = tile.getUniqueAddress();
+		int k = Arrays.binarySearch(wires, tileStart[t], tileStart[t + 1], wire);
+		return k < 0 ? -1 : k;
+	}
+
+	/**
+	 * Get the first dense index of a tile. The wires of a tile are the indices from this to the start of the
+	 * next tile address, so all wires can be visited tile by tile without looking up tiles.
+	 *
+	 * @param tileAddress the unique address of the tile, up to the number of tiles
+	 */
+	public int getTileStart(int tileAddress) {
+		return tileStart[tileAddress];
+	}
+
+	public Tile getTile(int index) {
+		int k = Arrays.binarySearch(tileStart, index);
+		if (k < 0) {
+			k = -k - 2;
+		} else {
+			//Skip tiles without wires, which start at the same index
+			while (tileStart[k + 1] == index) {
+				k++;
+			}
+		}
+		return dev.getTile(k);
+	}
+
+	public int getWire(int index) {
+		return wires[index];
+	}
+
+	public TileWire getTileWire(int index) {
+		return new TileWire(getTile(index), wires[index]);
+	}
+
+	public int getClusterId(int index) {
+		return clusterOf[index];
+	}
+
+	/**
+	 * Get the cluster of a wire
+	 *
+	 * @return the cluster id, or -1 if the wire is not part of the device's routing graph
+	 */
+	public int getClusterId(Tile tile, int wire) {
+		int index = getIndex(tile, wire);
+		return index < 0 ? -1 : clusterOf[index];
+	}
+
+	public int getClusterSize(int cluster) {
+		return clusterStart[cluster + 1] - clusterStart[cluster];
+	}
+
+	/**
+	 * Get a wire of a cluster
+	 *
+	 * @param cluster the cluster id
+	 * @param i the number of the wire in the cluster, less than {@link #getClusterSize(int)}
+	 * @return the dense index of the wire
+	 */
+	public int getMember(int cluster, int i) {
+		return members[clusterStart[cluster] + i];
+	}
+
+	int[] getTileStarts() {
+		return tileStart;
+	}
+
+	int[] getWires() {
+		return wires;
+	}
+
+	int[] getClusterIds() {
+		return clusterOf;
+	}
+
+	//========================================================================//
+	// Build
+	//========================================================================//
+
+	/**
+	 * Builds the clusters of a device in the common pool
+	 */
+	public static WireClusterIndex build(Device dev) {
+		int numTiles = dev.getRows() * dev.getColumns();
+
+		//Dense index space, including wires only reached through connections from other tiles
+		int[][] tileWires = new int[numTiles][];
+		IntStream.range(0, numTiles).parallel().forEach(t -> tileWires[t] = getWires(dev.getTile(t)));
+		long[][] reached = new long[numTiles][];
+		IntStream.range(0, numTiles).parallel().forEach(t -> reached[t] = findMissingWires(dev.getTile(t), tileWires));
+		addMissingWires(tileWires, reached);
+
+		int[] tileStart = new int[numTiles + 1];
+		for (int t = 0; t < numTiles; t++) {
+			tileStart[t + 1] = tileStart[t] + tileWires[t].length;
+		}
+		int[] wires = new int[tileStart[numTiles]];
+		for (int t = 0; t < numTiles; t++) {
+			System.arraycopy(tileWires[t], 0, wires, tileStart[t], tileWires[t].length);
+		}
+
+		//Union-find over the connections, except PIPs
+		AtomicIntegerArray parent = new AtomicIntegerArray(wires.length);
+		IntStream.range(0, wires.length).parallel().forEach(i -> parent.set(i, i));
+		IntStream.range(0, numTiles).parallel().forEach(t -> {
+			Tile tile = dev.getTile(t);
+			for (int i = tileStart[t]; i < tileStart[t + 1]; i++) {
+				WireConnection[] conns = getConnections(tile, wires[i]);
+				if (conns == null) {
+					continue;
+				}
+				for (WireConnection conn : conns) {
+					Tile other = conn.getTile(tile);
+					if (conn.isPIP() || other == null) {
+						continue;
+					}
+					int o = other.getUniqueAddress();
+					int j = Arrays.binarySearch(wires, tileStart[o], tileStart[o + 1], conn.getWire());
+					if (j >= 0) {
+						union(parent, i, j);
+					}
+				}
+			}
+		});
+
+		//Compaction, roots are the smallest index of their cluster so they are numbered first
+		int[] clusterOf = new int[wires.length];
+		int clusters = 0;
+		for (int i = 0; i < wires.length; i++) {
+			int root = find(parent, i);
+			clusterOf[i] = root == i ? clusters++ : clusterOf[root];
+		}
+		return new WireClusterIndex(dev, tileStart, wires, clusterOf);
+	}
+
+	/**
+	 * Wires for input pins have no outbound connections and are therefore not
+	 * listed in the routing wires, so they are added separately.
+	 */
+	private static int[] getWires(Tile tile) {
+		if (tile == null) {
+			return new int[0];
+		}
+		IntStream pinWires = IntStream.empty();
+		if (tile.getPrimitiveSites() != null) {
+			for (PrimitiveSite site : tile.getPrimitiveSites()) {
+				pinWires = IntStream.concat(pinWires, site.getPins().values().stream().mapToInt(Integer::intValue));
+			}
+		}
+		IntStream routingWires = tile.getWires().stream().mapToInt(Integer::intValue);
+		return IntStream.concat(pinWires, routingWires).distinct().sorted().toArray();
+	}
+
+	/**
+	 * Finds the wires reached from a tile which are not listed in their own tile.
+	 * Targets of PIPs are included as well, so every wire a connection leads to has
+	 * an index and the routing graph keeps the connection; only connections leaving
+	 * the device are dropped.
+	 *
+	 * @return the wires as (tile address, wire) pairs packed into longs
+	 */
+	private static long[] findMissingWires(Tile tile, int[][] tileWires) {
+		if (tile == null) {
+			return new long[0];
+		}
+		return Arrays.stream(tileWires[tile.getUniqueAddress()])
+				.mapToObj(wire -> getConnections(tile, wire))
+				.filter(conns -> conns != null)
+				.flatMap(Arrays::stream)
+				.filter(conn -> conn.getTile(tile) != null)
+				.filter(conn -> Arrays.binarySearch(tileWires[conn.getTile(tile).getUniqueAddress()], conn.getWire()) < 0)
+				.mapToLong(conn -> ((long) conn.getTile(tile).getUniqueAddress() << 32) | conn.getWire())
+				.toArray();
+	}
+
+	static WireConnection[] getConnections(Tile tile, int wire) {
+		return tile.getWireHashMap() == null ? null : tile.getWireConnections(wire);
+	}
+
+	private static void addMissingWires(int[][] tileWires, long[][] reached) {
+		long[] missing = Arrays.stream(reached).flatMapToLong(Arrays::stream).sorted().distinct().toArray();
+		int i = 0;
+		while (i < missing.length) {
+			int t = (int) (missing[i] >>> 32);
+			int j = i;
+			while (j < missing.length && (int) (missing[j] >>> 32) == t) {
+				j++;
+			}
+			int[] merged = Arrays.copyOf(tileWires[t], tileWires[t].length + j - i);
+			for (int k = i; k < j; k++) {
+				merged[tileWires[t].length + k - i] = (int) missing[k];
+			}
+			Arrays.sort(merged);
+			tileWires[t] = merged;
+			i = j;
+		}
+	}
+
+	/**
+	 * Finds the root of an index, halving the path on the way. Parents only
+	 * ever decrease, so a failed update can be ignored.
+	 */
+	private static int find(AtomicIntegerArray parent, int x) {
+		while (true) {
+			int p = parent.get(x);
+			if (p == x) {
+				return x;
+			}
+			int gp = parent.get(p);
+			if (gp != p) {
+				parent.compareAndSet(x, p, gp);
+			}
+			x = gp;
+		}
+	}
+
+	private static void union(AtomicIntegerArray parent, int a, int b) {
+		while (true) {
+			a = find(parent, a);
+			b = find(parent, b);
+			if (a == b) {
+				return;
+			}
+			//Link the larger root below the smaller one, retry if it got linked meanwhile
+			if (a < b) {
+				int tmp = a;
+				a = b;
+				b = tmp;
+			}
+			if (parent.compareAndSet(a, a, b)) {
+				return;
+			}
+		}
+	}
+}
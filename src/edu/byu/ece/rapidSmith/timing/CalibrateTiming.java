@@ -17,7 +17,9 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -40,6 +42,14 @@ public class CalibrateTiming {
 
 
 	public static TimingCalibration.CalibData loadTestcase(Testcase tc, String directory) {
+		return loadTestcase(tc, directory, path -> true);
+	}
+
+	/**
+	 * Loads a testcase, keeping only the paths accepted by a filter. The report
+	 * is streamed, so only the accepted paths are held in memory.
+	 */
+	public static TimingCalibration.CalibData loadTestcase(Testcase tc, String directory, Predicate<PathDelay> filter) {
 		logger.info("Loading testcase "+tc.xdl);
 		Design design = new Design();
 		design.loadXDLFile(Paths.get(directory + tc.xdl));
@@ -47,10 +57,11 @@ public class CalibrateTiming {
 		File f = new File(directory + tc.xdl);
 		String name = f.getName().split("\\.")[0];
 
+		List<PathDelay> delays = new ArrayList<>();
 		TraceReportXmlParser p = new TraceReportXmlParser();
-		p.parseTWX(directory + tc.twx, design);
+		p.parseTWX(directory + tc.twx, design, filter, delays::add);
 
-		return new TimingCalibration.CalibData(f, design, p.getPathDelays(), name);
+		return new TimingCalibration.CalibData(f, design, delays, name);
 	}
 
 	public static void main(String[] args) throws IOException, ClassNotFoundException {
@@ -1,6 +1,7 @@
 package edu.byu.ece.rapidSmith.timing;
 
 import edu.byu.ece.rapidSmith.design.Attribute;
+import edu.byu.ece.rapidSmith.design.Design;
 import edu.byu.ece.rapidSmith.design.Instance;
 import edu.byu.ece.rapidSmith.design.Pin;
 import edu.byu.ece.rapidSmith.primitiveDefs.PrimitiveDefDetails;
@@ -14,7 +15,17 @@ import edu.byu.ece.rapidSmith.util.SetHelpers;
 import edu.byu.ece.rapidSmith.device.database.FileDeviceDatabase;
 
 import java.io.*;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
@@ -159,6 +170,66 @@ public class CompareTimingReports {
         }
     }
 
+    /**
+     * Compares the paths of a report with our timings while the report is read. At most
+     * a few paths per thread are held in memory, so reports of any size can be compared.
+     * An exception thrown while comparing a path is rethrown by this method.
+     */
+    public static void compareReport(String twxFileName, Design design, Predicate<PathDelay> filter, PrimitiveDefList primitives, TimingCalculator calculator, PrintWriter totalWriter, PrintWriter logicWriter, PrintWriter routingWriter, PrintWriter logicSumWriter, PrintWriter routingSumWriter) throws InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+        Semaphore inFlight = new Semaphore(4 * threads);
+        int[] pending = {0};
+        try {
+            new TraceReportXmlParser().parseTWX(twxFileName, design, filter, pathDelay -> {
+                inFlight.acquireUninterruptibly();
+                completion.submit(() -> {
+                    try {
+                        comparePathTiming(pathDelay, primitives, calculator, totalWriter, logicWriter, routingWriter, logicSumWriter, routingSumWriter);
+                    } finally {
+                        inFlight.release();
+                    }
+                    return null;
+                });
+                pending[0]++;
+                // Fail early, and drop the futures of all finished comparisons
+                Future<Void> done;
+                while ((done = completion.poll()) != null) {
+                    pending[0]--;
+                    rethrowFailure(done);
+                }
+            });
+            for (; pending[0] > 0; pending[0]--) {
+                rethrowFailure(completion.take());
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        }
+    }
+
+    /**
+     * Waits for a comparison and rethrows what it threw.
+     */
+    private static void rethrowFailure(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
     private static void logCompare(PrintWriter w, float xilinx, float ours, PathElement ourElement) {
         /*if (ours > 10000)
             return;*/
@@ -175,7 +246,7 @@ public class CompareTimingReports {
         //w.flush();
     }
 
-    public static void main(String[] args) throws IOException, ClassNotFoundException {
+    public static void main(String[] args) throws IOException, ClassNotFoundException, InterruptedException {
 
         /*System.setErr(new DebugStream(System.err));
         System.setOut(new DebugStream(System.out));*/
@@ -197,9 +268,14 @@ public class CompareTimingReports {
                 //new CalibrateTiming.Testcase("testdaten/clockabuse/blah.xdl","testdaten/clockabuse/blah.twx")
         };
 
-        List<TimingCalibration.CalibData> calibDatas = Arrays.stream(testcases).map(tc -> CalibrateTiming.loadTestcase(tc, directory)).collect(Collectors.toList());
+        //Only load the designs, the reports are streamed while comparing
+        List<Design> designs = Arrays.stream(testcases).map(tc -> {
+            Design design = new Design();
+            design.loadXDLFile(Paths.get(directory + tc.xdl));
+            return design;
+        }).collect(Collectors.toList());
 
-        List<String> partNames = calibDatas.stream().map(calibData -> calibData.design.getPartName()).distinct().collect(Collectors.toList());
+        List<String> partNames = designs.stream().map(Design::getPartName).distinct().collect(Collectors.toList());
 
         if (partNames.size()>1) {
             throw new RuntimeException("Trying to calibrate for multiple parts: "+partNames);
@@ -218,12 +294,12 @@ public class CompareTimingReports {
 
 
 
-        for (TimingCalibration.CalibData calibData : calibDatas) {
+        for (int i = 0; i < testcases.length; i++) {
 
-            String name = calibData.name;
+            String name = new File(testcases[i].xdl).getName().split("\\.")[0];
             System.out.println("Analyzing " + name);
 
-            TimingCalculator calc = new TimingCalculator(primitiveDefs, delayModel, calibData.design, false);
+            TimingCalculator calc = new TimingCalculator(primitiveDefs, delayModel, designs.get(i), false);
 
             PrintWriter totalWriter = new PrintWriter(new FileWriter("dumps/" + name + "-total.dat"));
             PrintWriter logicWriter = new PrintWriter(new FileWriter("dumps/" + name + "-logicSingle.dat"));
@@ -234,10 +310,7 @@ public class CompareTimingReports {
             calc.buildReachables();
 
             try {
-                calibData.delays.parallelStream().forEach(pathDelay -> {
-                    comparePathTiming(pathDelay, primitiveDefs, calc, totalWriter, logicWriter, routingWriter, logicSumWriter, routingSumWriter);
-                    //System.out.println("analyzed");
-                });
+                compareReport(directory + testcases[i].twx, designs.get(i), pathDelay -> true, primitiveDefs, calc, totalWriter, logicWriter, routingWriter, logicSumWriter, routingSumWriter);
             } finally {
                 totalWriter.close();
                 logicWriter.close();
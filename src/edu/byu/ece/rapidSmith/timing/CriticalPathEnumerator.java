@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2010 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ */
+
+package edu.byu.ece.rapidSmith.timing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Finds the K paths with the largest delay between registers of a {@link TimingGraph}
+ * without walking all paths.
+ *
+ * Paths are built backward from their endpoint in a best-first search. A partial
+ * path from an element to the endpoint is ranked by its delay plus the largest
+ * arrival time at the output of its first element, which is the delay of the
+ * worst path it can be completed to. So complete paths come out of the search in
+ * order of decreasing delay, and only the partial paths that can still be among
+ * the K worst are kept: memory is bounded by K and the fan in, not by the number
+ * of paths in the design.
+ *
+ * Paths are returned as element ids of the graph, see {@link ElementPath}.
+ */
+public class CriticalPathEnumerator {
+
+	/** Partial paths are trimmed to the ones still needed once the queue is this much larger */
+	private static final int TRIM_SLACK = 1024;
+
+	private final LevelizedTiming timing;
+	private final TimingGraph graph;
+	private final IntPredicate isStart;
+	/** Largest arrival time at the input of each element over paths from start registers, -inf if there are none */
+	private final double[] arrival;
+
+	/**
+	 * Creates an enumerator for paths starting at all registers.
+	 */
+	public CriticalPathEnumerator(LevelizedTiming timing) {
+		this(timing, id -> true);
+	}
+
+	/**
+	 * Creates an enumerator for paths starting at some registers.
+	 *
+	 * @param timing The timing analysis to report the slack of the paths against
+	 * @param isStart Tells if paths may start at the register with an id
+	 */
+	public CriticalPathEnumerator(LevelizedTiming timing, IntPredicate isStart) {
+		this.timing = timing;
+		this.graph = timing.getGraph();
+		this.isStart = isStart;
+		this.arrival = new double[graph.getElementCount()];
+		Arrays.fill(arrival, Double.NEGATIVE_INFINITY);
+
+		//The arrival times of the analysis include all registers, so they are recalculated for the start registers only
+		for (int elem : graph.forwardOrder) {
+			double out = outputArrival(elem);
+			if (out == Double.NEGATIVE_INFINITY) {
+				continue;
+			}
+			for (int e = graph.getSuccessorStart(elem); e < graph.getSuccessorStart(elem + 1); e++) {
+				int next = graph.getSuccessor(e);
+				arrival[next] = Math.max(arrival[next], out + graph.getDelay(e));
+			}
+		}
+	}
+
+	private double outputArrival(int elem) {
+		if (graph.isRegister(elem)) {
+			return isStart.test(elem) ? 0 : Double.NEGATIVE_INFINITY;
+		}
+		return arrival[elem];
+	}
+
+	//========================================================================//
+	// Queries
+	//========================================================================//
+
+	/**
+	 * Finds the K worst paths of the design.
+	 *
+	 * @return the paths, worst first
+	 */
+	public List<ElementPath> getWorstPaths(int k) {
+		return search(endpoints(), k);
+	}
+
+	/**
+	 * Finds the K worst paths ending at a register.
+	 *
+	 * @param endpoint The id of the register
+	 * @return the paths, worst first
+	 */
+	public List<ElementPath> getWorstPaths(int endpoint, int k) {
+		return search(new int[]{endpoint}, k);
+	}
+
+	/**
+	 * Finds the K worst paths of each endpoint, starting with the endpoints with
+	 * the worst paths. Only the paths of one endpoint are kept at a time.
+	 *
+	 * @param endpoints The maximum number of endpoints to report
+	 * @param k The maximum number of paths per endpoint
+	 * @param consumer Receives the paths of each endpoint, worst first
+	 */
+	public void forEachEndpoint(int endpoints, int k, Consumer<List<ElementPath>> consumer) {
+		int[] ends = endpoints();
+		for (int i = 0; i < ends.length && i < endpoints; i++) {
+			consumer.accept(search(new int[]{ends[i]}, k));
+		}
+	}
+
+	/**
+	 * Returns the ids of all registers with paths ending at them, worst first.
+	 */
+	private int[] endpoints() {
+		List<Integer> ends = new ArrayList<>();
+		for (int i = 0; i < graph.getElementCount(); i++) {
+			if (graph.isRegister(i) && arrival[i] != Double.NEGATIVE_INFINITY) {
+				ends.add(i);
+			}
+		}
+		ends.sort((a, b) -> Double.compare(arrival[b], arrival[a]));
+		return ends.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	//========================================================================//
+	// Search
+	//========================================================================//
+
+	/**
+	 * A path from an element to the endpoint, sharing its tail with the path it was extended from.
+	 */
+	private static class Partial implements Comparable<Partial> {
+		final int element;
+		/** Forward edge from element to the first element of the tail, -1 at the endpoint */
+		final int edge;
+		final double delay;
+		/** Delay of the worst complete path this can become */
+		final double bound;
+		final Partial tail;
+		final long order;
+
+		Partial(int element, int edge, double delay, double bound, Partial tail, long order) {
+			this.element = element;
+			this.edge = edge;
+			this.delay = delay;
+			this.bound = bound;
+			this.tail = tail;
+			this.order = order;
+		}
+
+		@Override
+		public int compareTo(Partial o) {
+			int res = Double.compare(o.bound, bound);
+			return res != 0 ? res : Long.compare(order, o.order);
+		}
+	}
+
+	private List<ElementPath> search(int[] ends, int k) {
+		List<ElementPath> res = new ArrayList<>();
+		PriorityQueue<Partial> queue = new PriorityQueue<>();
+		long order = 0;
+		for (int end : ends) {
+			if (graph.isRegister(end) && arrival[end] != Double.NEGATIVE_INFINITY) {
+				queue.add(new Partial(end, -1, 0, arrival[end], null, order++));
+			}
+		}
+
+		while (res.size() < k && !queue.isEmpty()) {
+			Partial current = queue.poll();
+			if (current.tail != null && graph.isRegister(current.element)) {
+				res.add(toElementPath(current));
+				continue;
+			}
+			for (int p = graph.getPredecessorStart(current.element); p < graph.getPredecessorStart(current.element + 1); p++) {
+				int prev = graph.getPredecessor(p);
+				double out = outputArrival(prev);
+				if (out == Double.NEGATIVE_INFINITY) {
+					continue;
+				}
+				double delay = current.delay + graph.getPredecessorDelay(p);
+				queue.add(new Partial(prev, graph.getPredecessorEdge(p), delay, out + delay, current, order++));
+			}
+
+			//Every partial path can be completed to a path with its bound, and no two of them to the same path,
+			//so only the best ones that are still missing can be part of the result
+			int missing = k - res.size();
+			if (queue.size() > 2 * missing + TRIM_SLACK) {
+				PriorityQueue<Partial> trimmed = new PriorityQueue<>();
+				for (int i = 0; i < missing; i++) {
+					trimmed.add(queue.poll());
+				}
+				queue = trimmed;
+			}
+		}
+		return res;
+	}
+
+	private ElementPath toElementPath(Partial start) {
+		int length = 0;
+		for (Partial p = start; p != null; p = p.tail) {
+			length++;
+		}
+		int[] elements = new int[length];
+		int[] edges = new int[length - 1];
+		int i = 0;
+		for (Partial p = start; p != null; p = p.tail) {
+			elements[i] = p.element;
+			if (p.tail != null) {
+				edges[i] = p.edge;
+			}
+			i++;
+		}
+		return new ElementPath(elements, edges, start.delay, timing.getMaxDelay() - start.delay);
+	}
+
+	/**
+	 * A path of a timing graph from a start register to an endpoint.
+	 */
+	public static class ElementPath {
+		private final int[] elements;
+		private final int[] edges;
+		private final double delay;
+		private final double slack;
+
+		ElementPath(int[] elements, int[] edges, double delay, double slack) {
+			this.elements = elements;
+			this.edges = edges;
+			this.delay = delay;
+			this.slack = slack;
+		}
+
+		/** The ids of the elements, from the start register to the endpoint */
+		public List<Integer> getElements() {
+			List<Integer> res = new ArrayList<>(elements.length);
+			for (int element : elements) {
+				res.add(element);
+			}
+			return Collections.unmodifiableList(res);
+		}
+
+		public int getLength() {
+			return elements.length;
+		}
+
+		public int getElement(int index) {
+			return elements[index];
+		}
+
+		/** The forward edge from element index to element index+1 */
+		public int getEdge(int index) {
+			return edges[index];
+		}
+
+		public int getStart() {
+			return elements[0];
+		}
+
+		public int getEndpoint() {
+			return elements[elements.length - 1];
+		}
+
+		public double getDelay() {
+			return delay;
+		}
+
+		/** Slack against the maximum delay of the analysis */
+		public double getSlack() {
+			return slack;
+		}
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2010 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ */
+
+package edu.byu.ece.rapidSmith.timing;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Static timing analysis on a {@link TimingGraph}.
+ *
+ * Arrival and require times are propagated level by level, the elements of a
+ * level in parallel, with lock free max and min updates of their successors.
+ * The results are the same as the ones of the sequential walks with
+ * {@link DesignWalker}.
+ *
+ * The times are kept in arrays of this object, the graph and its elements are
+ * not changed, so several analyses can run on one graph at the same time. Use
+ * {@link #applyToElements()} to store the times in the elements for code using
+ * {@link edu.byu.ece.rapidSmith.router.RoutingElement#getArrivalTimeInput()}.
+ */
+public class LevelizedTiming {
+
+	/** Levels with fewer elements are handled by the calling thread */
+	private static final int PARALLEL_THRESHOLD = 512;
+
+	private final TimingGraph graph;
+	/** Arrival times at the inputs of the elements, NaN for elements not reached */
+	private final double[] arrival;
+	/** Require times at the outputs of the elements, NaN for elements not reached */
+	private final double[] require;
+	private double maxDelay;
+
+	public LevelizedTiming(TimingGraph graph) {
+		this.graph = graph;
+		this.arrival = new double[graph.getElementCount()];
+		this.require = new double[graph.getElementCount()];
+	}
+
+	public TimingGraph getGraph() {
+		return graph;
+	}
+
+	//========================================================================//
+	// Propagation
+	//========================================================================//
+
+	/**
+	 * Calculates the arrival and require times of all elements, using the common pool.
+	 *
+	 * @return the maximum delay of the design
+	 */
+	public double propagate() {
+		return propagate(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Calculates the arrival and require times of all elements.
+	 *
+	 * @param pool The pool to propagate the levels in
+	 * @return the maximum delay of the design
+	 */
+	public double propagate(ForkJoinPool pool) {
+		TimingGraph g = graph;
+		int count = g.getElementCount();
+
+		//Arrival times, registers start at 0 and are only overwritten by their predecessors
+		AtomicLongArray arrivalBits = filled(count, Double.NEGATIVE_INFINITY);
+		forEachLevel(pool, g.forwardOrder, g.forwardLevels, elem -> {
+			double out = g.isRegister(elem) ? 0 : Double.longBitsToDouble(arrivalBits.get(elem));
+			for (int e = g.getSuccessorStart(elem); e < g.getSuccessorStart(elem + 1); e++) {
+				atomicMax(arrivalBits, g.getSuccessor(e), out + g.getDelay(e));
+			}
+		});
+		double max = 0;
+		for (int i = 0; i < count; i++) {
+			double a = Double.longBitsToDouble(arrivalBits.get(i));
+			if (a == Double.NEGATIVE_INFINITY) {
+				a = g.isRegister(i) ? 0 : Double.NaN;
+			} else if (a > max) {
+				max = a;
+			}
+			arrival[i] = a;
+		}
+		maxDelay = max;
+		final double registerRequire = max;
+
+		//Require times, registers start at the max delay
+		AtomicLongArray requireBits = filled(count, Double.POSITIVE_INFINITY);
+		forEachLevel(pool, g.backwardOrder, g.backwardLevels, elem -> {
+			double in = g.isRegister(elem) ? registerRequire : Double.longBitsToDouble(requireBits.get(elem));
+			for (int e = g.getPredecessorStart(elem); e < g.getPredecessorStart(elem + 1); e++) {
+				atomicMin(requireBits, g.getPredecessor(e), in - g.getPredecessorDelay(e));
+			}
+		});
+		for (int i = 0; i < count; i++) {
+			double r = Double.longBitsToDouble(requireBits.get(i));
+			if (r == Double.POSITIVE_INFINITY) {
+				r = g.isRegister(i) ? max : Double.NaN;
+			}
+			require[i] = r;
+		}
+		return max;
+	}
+
+	/**
+	 * Stores the arrival and require times in the elements of the graph.
+	 * Elements which were not reached keep their times.
+	 */
+	public void applyToElements() {
+		for (int i = 0; i < arrival.length; i++) {
+			if (!Double.isNaN(arrival[i])) {
+				graph.getElement(i).setArrivalTimeInput(arrival[i]);
+			}
+			if (!Double.isNaN(require[i])) {
+				graph.getElement(i).setRequireTimeOutput(require[i]);
+			}
+		}
+	}
+
+	private static void forEachLevel(ForkJoinPool pool, int[] order, int[] levels, IntConsumer visit) {
+		for (int l = 0; l + 1 < levels.length; l++) {
+			int from = levels[l];
+			int to = levels[l + 1];
+			if (to - from < PARALLEL_THRESHOLD) {
+				for (int o = from; o < to; o++) {
+					visit.accept(order[o]);
+				}
+			} else {
+				pool.submit(() -> IntStream.range(from, to).parallel().forEach(o -> visit.accept(order[o]))).join();
+			}
+		}
+	}
+
+	private static AtomicLongArray filled(int count, double value) {
+		AtomicLongArray array = new AtomicLongArray(count);
+		long bits = Double.doubleToLongBits(value);
+		for (int i = 0; i < count; i++) {
+			array.set(i, bits);
+		}
+		return array;
+	}
+
+	private static void atomicMax(AtomicLongArray array, int index, double value) {
+		long current = array.get(index);
+		while (value > Double.longBitsToDouble(current)) {
+			if (array.compareAndSet(index, current, Double.doubleToLongBits(value))) {
+				return;
+			}
+			current = array.get(index);
+		}
+	}
+
+	private static void atomicMin(AtomicLongArray array, int index, double value) {
+		long current = array.get(index);
+		while (value < Double.longBitsToDouble(current)) {
+			if (array.compareAndSet(index, current, Double.doubleToLongBits(value))) {
+				return;
+			}
+			current = array.get(index);
+		}
+	}
+
+	//========================================================================//
+	// Results
+	//========================================================================//
+
+	public double getMaxDelay() {
+		return maxDelay;
+	}
+
+	/** Arrival time at the input of an element, NaN if it was not reached */
+	public double getArrivalTimeInput(int id) {
+		return arrival[id];
+	}
+
+	/** Arrival time at the output of an element, 0 for registers */
+	public double getArrivalTimeOutput(int id) {
+		return graph.isRegister(id) ? 0 : arrival[id];
+	}
+
+	/** Require time at the output of an element, NaN if it was not reached */
+	public double getRequireTimeOutput(int id) {
+		return require[id];
+	}
+
+	/** Require time at the input of an element, the max delay for registers */
+	public double getRequireTimeInput(int id) {
+		return graph.isRegister(id) ? maxDelay : require[id];
+	}
+
+	/**
+	 * Slack of a forward connection of the graph, see
+	 * {@link edu.byu.ece.rapidSmith.router.RoutingElement#getSlackToSuccessor}.
+	 */
+	public double getSlack(int from, int edge) {
+		return getRequireTimeInput(graph.getSuccessor(edge)) - getArrivalTimeOutput(from) - graph.getDelay(edge);
+	}
+}
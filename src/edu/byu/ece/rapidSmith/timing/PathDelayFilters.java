@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2010 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ */
+
+package edu.byu.ece.rapidSmith.timing;
+
+import java.util.function.Predicate;
+
+/**
+ * Filters for the paths of trace reports, to be passed to the streaming
+ * methods of {@link TraceReportXmlParser} and {@link TraceReportParser}.
+ * Filters can be combined with {@link Predicate#and(Predicate)}.
+ */
+public class PathDelayFilters {
+
+	private PathDelayFilters() {
+	}
+
+	/**
+	 * Accepts paths with a slack of at most maxSlack.
+	 */
+	public static Predicate<PathDelay> slackAtMost(float maxSlack) {
+		return path -> path.getSlack() <= maxSlack;
+	}
+
+	/**
+	 * Accepts paths with a delay of at least minDelay.
+	 */
+	public static Predicate<PathDelay> delayAtLeast(float minDelay) {
+		return path -> path.getDelay() >= minDelay;
+	}
+
+	/**
+	 * Accepts paths routed through a net. The nets of path elements are only
+	 * known if the report is parsed with its design.
+	 */
+	public static Predicate<PathDelay> throughNet(String netName) {
+		return path -> path.getMaxDataPath().stream().anyMatch(element ->
+				element instanceof RoutingPathElement
+						&& ((RoutingPathElement) element).getNet() != null
+						&& ((RoutingPathElement) element).getNet().getName().equals(netName));
+	}
+}
@@ -55,6 +55,8 @@ public class TimingCalculator {
 	RegisterFinder registerFinder;
 	private Set<RoutingElement> registers;
 	private double maxDelay;
+	private TimingGraph timingGraph;
+	private LevelizedTiming levelizedTiming;
 
 	private final boolean verbose;
 
@@ -79,14 +81,56 @@ public class TimingCalculator {
 		return maxDelay;
 	}
 
+	/**
+	 * Gets the timing graph of the last timing calculation.
+	 *
+	 * @return the graph, or null if no timings have been calculated yet
+	 */
+	public TimingGraph getTimingGraph() {
+		return timingGraph;
+	}
+
+	/**
+	 * Gets the arrival and require times of the last timing calculation.
+	 *
+	 * @return the times, or null if no timings have been calculated yet
+	 */
+	public LevelizedTiming getLevelizedTiming() {
+		return levelizedTiming;
+	}
+
+	/**
+	 * Builds the timing graph of the design with the delays of the delay model
+	 * of this calculator.
+	 */
+	public TimingGraph buildTimingGraph(BiConsumer<RoutingElement, RoutingElement> unknownDelayConsumer) {
+		if (registers == null) {
+			init();
+		}
+		return TimingGraph.build(registers, primitives, delayModel, unknownDelayConsumer);
+	}
+
+	/**
+	 * Calculates the timings on a graph without changing the elements of the
+	 * design, so calculations on several graphs can run at the same time.
+	 */
+	public static LevelizedTiming calculateTimings(TimingGraph graph) {
+		LevelizedTiming timing = new LevelizedTiming(graph);
+		timing.propagate();
+		return timing;
+	}
+
 	public void calculateTimings(BiConsumer<RoutingElement, RoutingElement> unknownDelayConsumer) {
 		if (registers == null) {
 			init();
 		}
 
 
-		maxDelay = calculateDelay(registers, unknownDelayConsumer);
-		calculateRequire(registers, maxDelay, unknownDelayConsumer);
+		//The graph is rebuilt every time, so changed routes get their new delays
+		timingGraph = buildTimingGraph(unknownDelayConsumer);
+		levelizedTiming = calculateTimings(timingGraph);
+		levelizedTiming.applyToElements();
+		maxDelay = levelizedTiming.getMaxDelay();
 	}
 
 	//TODO make private
@@ -433,58 +477,6 @@ public class TimingCalculator {
 	}
 
 
-	private double calculateDelay(Set<RoutingElement> registers, BiConsumer<RoutingElement, RoutingElement> unknownDelayConsumer) {
-		//We declare maxDelay as an array to be able to access its content from a function
-		double[] maxDelay = new double[1];
-		maxDelay[0] = 0;
-		Consumer<RoutingElement> updateMaxDelay = (RoutingElement elem) -> {
-			if (elem.getArrivalTimeInput() > maxDelay[0]) {
-				maxDelay[0] = elem.getArrivalTimeInput();
-			}
-		};
-
-
-		DesignWalker.walkDesignForward(registers, primitives,
-				//Init registers
-				re -> re.setArrivalTimeInput(0),
-				//Get ArrivalTime
-				elem -> elem.getArrivalTimeOutput(primitives),
-				//When seeing a successor for the first time, its arrival time is undefined. Always set it in this case
-				(elem, next, prevDelay) -> {
-					next.setArrivalTimeInput(prevDelay + elem.getDelayToSuccessor(next, delayModel, primitives, unknownDelayConsumer));
-					updateMaxDelay.accept(next);
-				},
-				//When seeing a successor again, check if the arrival time via this path is larger
-				(elem, next, prevDelay) -> {
-					double nextDelay = prevDelay + elem.getDelayToSuccessor(next, delayModel, primitives, unknownDelayConsumer);
-					if (nextDelay > next.getArrivalTimeInput()) {
-						next.setArrivalTimeInput(nextDelay);
-						updateMaxDelay.accept(next);
-					}
-				}, "Delay analysis");
-		return maxDelay[0];
-	}
-
-	private void calculateRequire(Set<RoutingElement> registers, double maxDelay, BiConsumer<RoutingElement, RoutingElement> unknownDelayConsumer) {
-		DesignWalker.walkDesignBackward(registers, primitives,
-				//Init registers
-				re -> re.setRequireTimeOutput(maxDelay),
-				//Get ArrivalTime
-				elem -> elem.getRequireTimeInput(primitives, maxDelay),
-				//When seeing a successor for the first time, its require time is undefined. Always set it in this case
-				(elem, next, prevRequire) -> {
-					next.setRequireTimeOutput(prevRequire - next.getDelayToSuccessor(elem, delayModel, primitives, unknownDelayConsumer));
-				},
-				//When seeing a successor again, check if the require time via this path is smaller
-				(elem, next, prevRequire) -> {
-					double nextRequire = prevRequire - next.getDelayToSuccessor(elem, delayModel, primitives, unknownDelayConsumer);
-					if (nextRequire < next.getRequireTimeOutput()) {
-						next.setRequireTimeOutput(nextRequire);
-					}
-				}, "Require analysis");
-	}
-
-
 	//We need to remember the PathDelay's top RoutingElement. Therefore, we use this anonymous class internally
 	class PathDelayWithElem {
 
@@ -524,6 +516,10 @@ public class TimingCalculator {
 				});
 	}
 
+	/**
+	 * Gets all paths with a slack of (almost) zero. This walks every such path, which
+	 * can take very long with a lot of reconvergent fan out, see {@link #getWorstPaths(int)}.
+	 */
 	public Stream<PathDelay> getCriticalPaths(double epsilon) {
 		//For all registers
 		return registers.stream()
@@ -553,6 +549,59 @@ public class TimingCalculator {
 				));
 	}
 
+	/**
+	 * Gets the K paths with the largest delay of the last timing calculation, not
+	 * starting at static registers. Only these paths are built.
+	 *
+	 * @return the paths, worst first
+	 */
+	public List<PathDelay> getWorstPaths(int k) {
+		return getCriticalPathEnumerator().getWorstPaths(k).stream()
+				.map(this::toPathDelay)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Gets the K worst paths of each register of the last timing calculation,
+	 * starting with the registers with the worst paths.
+	 *
+	 * @param endpoints The maximum number of registers to report
+	 * @param k The maximum number of paths per register
+	 * @param consumer Receives the paths of each register, worst first
+	 */
+	public void getWorstPathsPerEndpoint(int endpoints, int k, Consumer<List<PathDelay>> consumer) {
+		getCriticalPathEnumerator().forEachEndpoint(endpoints, k, paths -> consumer.accept(paths.stream()
+				.map(this::toPathDelay)
+				.collect(Collectors.toList())));
+	}
+
+	private CriticalPathEnumerator getCriticalPathEnumerator() {
+		if (levelizedTiming == null) {
+			throw new IllegalStateException("No timings have been calculated yet");
+		}
+		return new CriticalPathEnumerator(levelizedTiming, id -> !isStaticReg(timingGraph.getElement(id)));
+	}
+
+	/**
+	 * Builds the PathDelay of a path of the timing graph, the same way pathDelayWalk does.
+	 */
+	private PathDelay toPathDelay(CriticalPathEnumerator.ElementPath path) {
+		PathDelay res = null;
+		RoutingElement top = null;
+		for (int i = path.getLength() - 1; i >= 0; i--) {
+			RoutingElement element = timingGraph.getElement(path.getElement(i));
+			if (res == null) {
+				res = addElementToPathDelay(element, null, null, 0);
+			} else {
+				res = addElementToPathDelay(element, top, res, timingGraph.getDelay(path.getEdge(i)));
+			}
+			top = element;
+		}
+		res.setSource(ieWithType(top));
+		res.setSlack((float) path.getSlack());
+		return res;
+	}
+
 	private Map<RoutingElement, Set<RoutingElement>> reachables;
 
 	public Map<RoutingElement, Set<RoutingElement>> getReachables() {
@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2010 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ */
+
+package edu.byu.ece.rapidSmith.timing;
+
+import edu.byu.ece.rapidSmith.primitiveDefs.PrimitiveDefList;
+import edu.byu.ece.rapidSmith.router.RoutingElement;
+import edu.byu.ece.rapidSmith.timing.routing.DelayModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable copy of the timing graph of a design, built once from the
+ * {@link RoutingElement}s.
+ *
+ * The elements reachable from the registers are numbered, their non clock
+ * connections are stored in CSR arrays together with the delays of a
+ * {@link DelayModel}, and the elements are sorted into levels the same way
+ * {@link DesignWalker#walkDesignForward} and {@link DesignWalker#walkDesignBackward}
+ * visit them: an element is ready when all its non clock predecessors are, and
+ * registers start the walk.
+ *
+ * The graph holds no analysis results, those are kept by {@link LevelizedTiming},
+ * so several analyses can run on the same graph at the same time. Graphs for other
+ * delay models (corners, calibrations) share the connections and levels, see
+ * {@link #withDelays(DelayModel, PrimitiveDefList, BiConsumer)}.
+ */
+public class TimingGraph {
+
+	private static final Logger logger = LoggerFactory.getLogger(TimingGraph.class);
+
+	private final RoutingElement[] elements;
+	private final Map<RoutingElement, Integer> ids;
+	private final boolean[] isRegister;
+
+	/** Forward connections: successors of element i are succ[succStart[i]] to succ[succStart[i+1]-1] */
+	private final int[] succStart;
+	private final int[] succ;
+	private final double[] succDelay;
+	/** Backward connections, the transposed forward connections */
+	private final int[] predStart;
+	private final int[] pred;
+	/** Index of every backward connection in the forward arrays */
+	private final int[] predEdge;
+	private final double[] predDelay;
+
+	/** Elements in forward walk order, level l is forwardOrder[forwardLevels[l]] to forwardOrder[forwardLevels[l+1]-1] */
+	final int[] forwardOrder;
+	final int[] forwardLevels;
+	final int[] backwardOrder;
+	final int[] backwardLevels;
+
+	private TimingGraph(RoutingElement[] elements, Map<RoutingElement, Integer> ids, boolean[] isRegister,
+						int[] succStart, int[] succ, double[] succDelay,
+						int[] predStart, int[] pred, int[] predEdge, double[] predDelay,
+						int[] forwardOrder, int[] forwardLevels,
+						int[] backwardOrder, int[] backwardLevels) {
+		this.elements = elements;
+		this.ids = ids;
+		this.isRegister = isRegister;
+		this.succStart = succStart;
+		this.succ = succ;
+		this.succDelay = succDelay;
+		this.predStart = predStart;
+		this.pred = pred;
+		this.predEdge = predEdge;
+		this.predDelay = predDelay;
+		this.forwardOrder = forwardOrder;
+		this.forwardLevels = forwardLevels;
+		this.backwardOrder = backwardOrder;
+		this.backwardLevels = backwardLevels;
+	}
+
+	/**
+	 * Builds the graph of all elements reachable from the registers.
+	 *
+	 * @param registers All active design registers, as returned by RegisterFinder
+	 * @param primitives Primitive Definitions
+	 * @param delayModel The delay model to get the delays of the connections from
+	 * @param unknownDelayConsumer Called for connections without known delay
+	 */
+	public static TimingGraph build(Set<RoutingElement> registers, PrimitiveDefList primitives,
+									DelayModel delayModel, BiConsumer<RoutingElement, RoutingElement> unknownDelayConsumer) {
+		//Number all elements reachable forward or backward from the registers
+		Map<RoutingElement, Integer> ids = new HashMap<>();
+		List<RoutingElement> elementList = new ArrayList<>();
+		for (RoutingElement reg : registers) {
+			addElement(reg, ids, elementList);
+		}
+		for (boolean forward : new boolean[]{true, false}) {
+			ArrayDeque<RoutingElement> queue = new ArrayDeque<>(registers);
+			Set<RoutingElement> seen = new HashSet<>(registers);
+			while (!queue.isEmpty()) {
+				RoutingElement elem = queue.poll();
+				Set<RoutingElement> next = forward ? elem.getConnectedForward(primitives) : elem.getConnectedBackward(primitives);
+				for (RoutingElement n : next) {
+					if (!n.isClock() && seen.add(n)) {
+						addElement(n, ids, elementList);
+						queue.add(n);
+					}
+				}
+			}
+		}
+		RoutingElement[] elements = elementList.toArray(new RoutingElement[elementList.size()]);
+		int count = elements.length;
+
+		boolean[] isRegister = new boolean[count];
+		int[] forwardNeed = new int[count];
+		int[] backwardNeed = new int[count];
+		for (int i = 0; i < count; i++) {
+			isRegister[i] = elements[i].isRegister(primitives) == RoutingElement.RegisterType.REGISTER;
+			forwardNeed[i] = elements[i].getNonClockConnectedBackwardCount(primitives);
+			backwardNeed[i] = elements[i].getNonClockConnectedForwardCount(primitives);
+		}
+
+		//Forward connections
+		int[] succStart = new int[count + 1];
+		int[] succ = new int[Math.max(16, count)];
+		int edges = 0;
+		for (int i = 0; i < count; i++) {
+			succStart[i] = edges;
+			for (RoutingElement next : elements[i].getConnectedForward(primitives)) {
+				Integer id = next.isClock() ? null : ids.get(next);
+				if (id == null) {
+					continue;
+				}
+				if (edges == succ.length) {
+					succ = Arrays.copyOf(succ, edges * 2);
+				}
+				succ[edges++] = id;
+			}
+		}
+		succStart[count] = edges;
+		succ = Arrays.copyOf(succ, edges);
+
+		int[] registerIds = registers.stream().mapToInt(ids::get).toArray();
+		TimingGraph structure = connect(elements, Collections.unmodifiableMap(ids), isRegister, registerIds,
+				forwardNeed, backwardNeed, succStart, succ);
+		return structure.withDelays(delayModel, primitives, unknownDelayConsumer);
+	}
+
+	/**
+	 * Creates the backward connections and the levels of a graph, the graph
+	 * has no delays yet.
+	 *
+	 * @param forwardNeed Number of predecessors of every element, including ones outside the graph
+	 * @param backwardNeed Number of successors of every element, including ones outside the graph
+	 */
+	static TimingGraph connect(RoutingElement[] elements, Map<RoutingElement, Integer> ids, boolean[] isRegister,
+							   int[] registerIds, int[] forwardNeed, int[] backwardNeed, int[] succStart, int[] succ) {
+		int count = elements.length;
+		int edges = succ.length;
+
+		//Backward connections, by transposing
+		int[] predStart = new int[count + 1];
+		for (int e = 0; e < edges; e++) {
+			predStart[succ[e] + 1]++;
+		}
+		for (int i = 0; i < count; i++) {
+			predStart[i + 1] += predStart[i];
+		}
+		int[] pred = new int[edges];
+		int[] predEdge = new int[edges];
+		int[] fill = Arrays.copyOf(predStart, count);
+		for (int i = 0; i < count; i++) {
+			for (int e = succStart[i]; e < succStart[i + 1]; e++) {
+				int slot = fill[succ[e]]++;
+				pred[slot] = i;
+				predEdge[slot] = e;
+			}
+		}
+
+		int[][] forward = levelize(registerIds, isRegister, forwardNeed, succStart, succ, "Delay analysis");
+		int[][] backward = levelize(registerIds, isRegister, backwardNeed, predStart, pred, "Require analysis");
+
+		return new TimingGraph(elements, ids, isRegister,
+				succStart, succ, null, predStart, pred, predEdge, null,
+				forward[0], forward[1], backward[0], backward[1]);
+	}
+
+	/**
+	 * Creates a graph with the same elements and connections as this one but
+	 * the delays of another delay model, for example of another corner.
+	 *
+	 * @param delayModel The delay model to get the delays of the connections from
+	 * @param primitives Primitive Definitions with the logic delays to use
+	 * @param unknownDelayConsumer Called for connections without known delay
+	 */
+	public TimingGraph withDelays(DelayModel delayModel, PrimitiveDefList primitives,
+								  BiConsumer<RoutingElement, RoutingElement> unknownDelayConsumer) {
+		//The delay model keeps state while calculating, so this runs sequentially
+		double[] delays = new double[succ.length];
+		for (int i = 0; i < elements.length; i++) {
+			for (int e = succStart[i]; e < succStart[i + 1]; e++) {
+				delays[e] = elements[i].getDelayToSuccessor(elements[succ[e]], delayModel, primitives, unknownDelayConsumer);
+			}
+		}
+		return withDelays(delays);
+	}
+
+	/**
+	 * Creates a graph with the same elements and connections as this one and
+	 * the given delays of the forward connections.
+	 */
+	TimingGraph withDelays(double[] delays) {
+		double[] backwardDelays = new double[pred.length];
+		for (int e = 0; e < pred.length; e++) {
+			backwardDelays[e] = delays[predEdge[e]];
+		}
+		return new TimingGraph(elements, ids, isRegister,
+				succStart, succ, delays, predStart, pred, predEdge, backwardDelays,
+				forwardOrder, forwardLevels, backwardOrder, backwardLevels);
+	}
+
+	private static void addElement(RoutingElement elem, Map<RoutingElement, Integer> ids, List<RoutingElement> elementList) {
+		if (!ids.containsKey(elem)) {
+			ids.put(elem, elementList.size());
+			elementList.add(elem);
+		}
+	}
+
+	/**
+	 * Sorts the elements into levels, starting at the registers. Registers
+	 * end paths, so they are only in the first level.
+	 *
+	 * @return the elements in walk order and the start of each level in it
+	 */
+	private static int[][] levelize(int[] registers, boolean[] isRegister, int[] need, int[] start, int[] next, String analysisName) {
+		int[] seen = new int[isRegister.length];
+		int[] order = new int[isRegister.length];
+		int[] levels = new int[16];
+		int size = 0;
+		int levelCount = 0;
+		for (int reg : registers) {
+			order[size++] = reg;
+		}
+		int levelStart = 0;
+		while (levelStart < size) {
+			if (levelCount + 1 >= levels.length) {
+				levels = Arrays.copyOf(levels, levels.length * 2);
+			}
+			levels[levelCount++] = levelStart;
+			int levelEnd = size;
+			for (int o = levelStart; o < levelEnd; o++) {
+				int elem = order[o];
+				for (int e = start[elem]; e < start[elem + 1]; e++) {
+					int n = next[e];
+					if (!isRegister[n] && ++seen[n] == need[n]) {
+						order[size++] = n;
+					}
+				}
+			}
+			levelStart = levelEnd;
+		}
+		levels[levelCount] = size;
+
+		int partial = 0;
+		for (int i = 0; i < seen.length; i++) {
+			if (seen[i] > 0 && seen[i] < need[i]) {
+				partial++;
+			}
+		}
+		if (partial > 0) {
+			logger.warn("only saw {} elements partially in {}!", partial, analysisName);
+		}
+		return new int[][]{Arrays.copyOf(order, size), Arrays.copyOf(levels, levelCount + 1)};
+	}
+
+	//========================================================================//
+	// Access
+	//========================================================================//
+
+	public int getElementCount() {
+		return elements.length;
+	}
+
+	public RoutingElement getElement(int id) {
+		return elements[id];
+	}
+
+	/**
+	 * Gets the id of an element.
+	 *
+	 * @return the id, or -1 if the element is not part of the graph
+	 */
+	public int getId(RoutingElement element) {
+		Integer id = ids.get(element);
+		return id == null ? -1 : id;
+	}
+
+	public boolean isRegister(int id) {
+		return isRegister[id];
+	}
+
+	public int getLevelCount() {
+		return forwardLevels.length - 1;
+	}
+
+	public int getEdgeCount() {
+		return succ.length;
+	}
+
+	/** First forward connection of an element, its connections end at getSuccessorStart(id + 1) */
+	public int getSuccessorStart(int id) {
+		return succStart[id];
+	}
+
+	/** Target of a forward connection */
+	public int getSuccessor(int edge) {
+		return succ[edge];
+	}
+
+	/** Delay of a forward connection */
+	public double getDelay(int edge) {
+		return succDelay[edge];
+	}
+
+	/** First backward connection of an element, its connections end at getPredecessorStart(id + 1) */
+	public int getPredecessorStart(int id) {
+		return predStart[id];
+	}
+
+	/** Source of a backward connection */
+	public int getPredecessor(int backwardEdge) {
+		return pred[backwardEdge];
+	}
+
+	/** The forward connection a backward connection is the transpose of */
+	public int getPredecessorEdge(int backwardEdge) {
+		return predEdge[backwardEdge];
+	}
+
+	/** Delay of a backward connection */
+	public double getPredecessorDelay(int backwardEdge) {
+		return predDelay[backwardEdge];
+	}
+}
@@ -33,6 +33,8 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public class TraceReportParser{
 	
@@ -76,17 +78,44 @@ public class TraceReportParser{
 		pathDelays = new ArrayList<PathDelay>();
 		pathOffsets = new ArrayList<PathOffset>();
 		
+		parseTWR(twrFileName, path -> true, pathDelays::add, pathOffsets::add);
+	}
+	
+	/**
+	 * Parses a report without keeping the paths: each path is passed to a consumer
+	 * as soon as it has been read, so reports of any size can be processed.
+	 * @param twrFileName The report to parse
+	 * @param design The design of the report
+	 * @param filter Decides which delay paths are passed on, see {@link PathDelayFilters}
+	 * @param delayConsumer Receives the delay paths
+	 * @param offsetConsumer Receives the offset paths
+	 */
+	public void parseTWR(String twrFileName, Design design, Predicate<PathDelay> filter,
+						 Consumer<PathDelay> delayConsumer, Consumer<PathOffset> offsetConsumer){
+		this.design = design;
+		parseTWR(twrFileName, filter, delayConsumer, offsetConsumer);
+	}
+	
+	public void parseTWR(String twrFileName, Predicate<PathDelay> filter,
+						 Consumer<PathDelay> delayConsumer, Consumer<PathOffset> offsetConsumer){
 		try{
-			br = new BufferedReader(new FileReader(twrFileName));
-			
-			while((line = br.readLine()) != null){
-				if(line.startsWith(DELAY)){
-					pathDelays.add(parsePathStatement());
-				}
-				else if(line.startsWith(OFFSET)){
-					pathOffsets.add(parseOffsetStatement(line));
+			br = new BufferedReader(new FileReader(twrFileName), 1 << 16);
+			try{
+				while((line = br.readLine()) != null){
+					if(line.startsWith(DELAY)){
+						PathDelay delay = parsePathStatement();
+						if(filter.test(delay)){
+							delayConsumer.accept(delay);
+						}
+					}
+					else if(line.startsWith(OFFSET)){
+						offsetConsumer.accept(parseOffsetStatement(line));
+					}
 				}
 			}
+			finally{
+				br.close();
+			}
 		}
 		catch(FileNotFoundException e){
 			MessageGenerator.briefErrorAndExit("TraceReportParser ERROR: Could not find file: " + twrFileName);
@@ -6,20 +6,22 @@ import edu.byu.ece.rapidSmith.design.Pin;
 import edu.byu.ece.rapidSmith.device.PrimitiveSite;
 import edu.byu.ece.rapidSmith.device.PrimitiveType;
 import edu.byu.ece.rapidSmith.timing.logic.LogicPathElement;
-import org.xml.sax.Attributes;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
 
-import java.io.File;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 /**
  * Created by jakobw on 02.07.15.
@@ -63,24 +65,68 @@ public class TraceReportXmlParser {
         pathDelays = new ArrayList<PathDelay>();
         pathOffsets = new ArrayList<PathOffset>();
 
+        parseTWX(twxFileName, pathDelays::add);
+    }
 
-        SAXParserFactory factory = SAXParserFactory.newInstance();
-        try {
-            SAXParser saxParser = factory.newSAXParser();
-            DefaultHandler handler = new TwxHandler();
-            saxParser.parse( new File(twxFileName), handler );
-        } catch (ParserConfigurationException e) {
-            e.printStackTrace();
-        } catch (SAXException e) {
+    /**
+     * Parses a report without keeping the paths: each path is passed to the consumer
+     * as soon as it has been read, so reports of any size can be processed.
+     *
+     * @param twxFileName The report to parse
+     * @param design The design of the report
+     * @param filter Decides which paths are passed to the consumer, see {@link PathDelayFilters}
+     * @param consumer Receives the paths, in the order of the report
+     */
+    public void parseTWX(String twxFileName, Design design, Predicate<PathDelay> filter, Consumer<PathDelay> consumer){
+        this.design = design;
+
+        for (PrimitiveSite primitiveSite : design.getUsedPrimitiveSites()) {
+            sitesByName.put(primitiveSite.getName(),primitiveSite);
+        }
+
+        parseTWX(twxFileName, filter, consumer);
+    }
+
+    public void parseTWX(String twxFileName, Consumer<PathDelay> consumer){
+        parseTWX(twxFileName, path -> true, consumer);
+    }
+
+    public void parseTWX(String twxFileName, Predicate<PathDelay> filter, Consumer<PathDelay> consumer){
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(twxFileName), 1 << 16)) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            TwxHandler handler = new TwxHandler(filter, consumer);
+            try {
+                while (reader.hasNext()) {
+                    switch (reader.next()) {
+                        case XMLStreamConstants.START_ELEMENT:
+                            handler.startElement(reader);
+                            break;
+                        case XMLStreamConstants.END_ELEMENT:
+                            handler.endElement(reader.getLocalName());
+                            break;
+                        case XMLStreamConstants.CHARACTERS:
+                        case XMLStreamConstants.CDATA:
+                        case XMLStreamConstants.SPACE:
+                            handler.characters(reader.getText());
+                            break;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
         }
-
     }
 
 
-    class TwxHandler extends DefaultHandler{
+    class TwxHandler {
 
         private static final String TW_CONST_OFF_IN = "twConstOffIn";
         private static final String TW_CONST_OFF_OUT = "twConstOffOut";
@@ -114,6 +160,9 @@ public class TraceReportXmlParser {
         private static final String NET = "net";
 		private static final String TW_CLK_PATH = "twClkPath";
 
+        private final Predicate<PathDelay> filter;
+        private final Consumer<PathDelay> consumer;
+
         PathDelay currentPath = null;
 
         //We only know if we should instantiate a LogicPathElement or a RoutingPathElement after we have seen the twDelType.
@@ -127,17 +176,28 @@ public class TraceReportXmlParser {
         private boolean isIOB = false;
         private boolean inClkPath = false;
 
+        TwxHandler(Predicate<PathDelay> filter, Consumer<PathDelay> consumer) {
+            this.filter = filter;
+            this.consumer = consumer;
+        }
 
+        /**
+         * StAX does not report the attribute defaults of the DTD, and twDataPathMaxDelay
+         * is the default of twDataPathType, so a path without the attribute is a setup path.
+         */
+        private boolean isMaxDelayPath(XMLStreamReader reader) {
+            String type = reader.getAttributeValue(null, TW_DATA_PATH_TYPE);
+            return type == null || TW_DATA_PATH_MAX_DELAY.equals(type);
+        }
 
-        @Override
-        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+        public void startElement(XMLStreamReader reader) {
             isIOB = false;
-            switch (qName) {
+            switch (reader.getLocalName()) {
                 case TW_CONST_OFF_IN:
                 case TW_CONST_OFF_OUT: isIOB = true; //fallthrough to next case!
                 case TW_CONST_PATH:
                     //Only look at setup times for now.
-                    if (attributes.getValue(TW_DATA_PATH_TYPE).equals(TW_DATA_PATH_MAX_DELAY)) {
+                    if (isMaxDelayPath(reader)) {
                         currentPath = new PathDelay();
                         break;
                     }
@@ -154,14 +214,13 @@ public class TraceReportXmlParser {
             characters=null;
         }
 
-        @Override
-        public void endElement(String uri, String localName, String qName) {
+        public void endElement(String qName) {
             switch (qName) {
                 case TW_CONST_OFF_IN:
                 case TW_CONST_OFF_OUT:
                 case TW_CONST_PATH:
-                    if (currentPath!=null)
-                        pathDelays.add(currentPath);
+                    if (currentPath!=null && filter.test(currentPath))
+                        consumer.accept(currentPath);
                     currentPath=null;
                     break;
                 case TW_SLACK:
@@ -290,11 +349,10 @@ public class TraceReportXmlParser {
             return result;
         }
 
-        @Override
-        public void characters (char ch[], int start, int length) {
+        public void characters(String text) {
             if (characters==null)
-                characters=new String(ch,start,length);
-            else characters+=new String(ch,start,length);
+                characters=text;
+            else characters+=text;
         }
     }
 }
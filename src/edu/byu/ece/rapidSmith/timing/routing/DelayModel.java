@@ -411,9 +411,9 @@ public abstract class DelayModel {
         	}
         	if(curr_Node.isPIP())
         	{
-        	    PIP curr_PIP = new PIP(curr_Node.getTile(), parent.getWire(), curr_Node.getWire());
-        	    if(net.getPIPs().contains(curr_PIP))
+        	    if(net.getPIPs().contains(curr_Node.getTile(), parent.getWire(), curr_Node.getWire()))
         	    {
+        		PIP curr_PIP = new PIP(curr_Node.getTile(), parent.getWire(), curr_Node.getWire());
         		if(curr_Node.getConnections()!= null)
         		{
         		    for(WireConnection con : curr_Node.getConnections())
@@ -136,7 +136,18 @@ public class DesignDiff{
 		if(!compareAttributes(design1.getAttributes(), design2.getAttributes(), "Design Attributes")){
 			identical = false;
 		}
-		// TODO - Finish this later
+		// Instances and nets, the design properties were compared above
+		for(StructuralDesignDiff.Difference d : StructuralDesignDiff.compare(design1, design2).getDifferences()){
+			if(d.getElement().equals("design")){
+				continue;
+			}
+			if(!verbose) return false;
+			System.out.println(d);
+			for(String line : d.getDetails()){
+				System.out.println("    " + line);
+			}
+			identical = false;
+		}
 		return identical;
 	}
 	
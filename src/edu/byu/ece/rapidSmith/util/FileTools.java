@@ -30,6 +30,7 @@ import edu.byu.ece.rapidSmith.device.PrimitiveType;
 import edu.byu.ece.rapidSmith.device.Tile;
 import edu.byu.ece.rapidSmith.device.WireConnection;
 import edu.byu.ece.rapidSmith.device.helper.HashPool;
+import edu.byu.ece.rapidSmith.device.helper.StringIntHashMap;
 import edu.byu.ece.rapidSmith.device.helper.WireArray;
 import edu.byu.ece.rapidSmith.device.helper.WireArrayConnection;
 import edu.byu.ece.rapidSmith.device.helper.WireHashMap;
@@ -58,6 +59,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 
 /**
  * This class is specifically written to allow for efficient file import/export of different semi-primitive
@@ -146,8 +148,32 @@ public class FileTools {
 		}
 		return tileMap;
 	}
+
+	/**
+	 * Reads a pin map written by {@link #writeHashMap(Hessian2Output, Map)} into
+	 * a map with primitive int values.
+	 */
+	public static StringIntHashMap readPinMap(Hessian2Input dis){
+		StringIntHashMap pinMap = null;
+		try {
+			// Skip the unused name length sum that writeHashMap() writes first
+			dis.readInt();
+			int count = dis.readInt();
+			pinMap = new StringIntHashMap(count);
+			String[] keys = new String[count];
+			for(int i = 0; i < keys.length; i++){
+				keys[i] = dis.readString();
+			}
+			for(int i=0; i < count; i++){
+				pinMap.put(keys[i], dis.readInt());
+			}
+		} catch (IOException e) {
+			MessageGenerator.briefErrorAndExit("Error in readPinMap()");
+		}
+		return pinMap;
+	}
 	
-	public static boolean writeHashMap(Hessian2Output dos, HashMap<String,Integer> map){
+	public static boolean writeHashMap(Hessian2Output dos, Map<String,Integer> map){
 		try {
 			int size = 0;
 			for(String s : map.keySet()){
@@ -354,7 +380,7 @@ public class FileTools {
 		return true;
 	}
 	
-	public static PrimitiveSite readPrimitiveSite(Hessian2Input dis, Device device, ArrayList<HashMap<String,Integer>> primitivePinMaps, PrimitiveType[] typeValues){
+	public static PrimitiveSite readPrimitiveSite(Hessian2Input dis, Device device, ArrayList<StringIntHashMap> primitivePinMaps, PrimitiveType[] typeValues){
 		PrimitiveSite p = new PrimitiveSite();
 		
 		try {
@@ -29,6 +29,8 @@ import edu.byu.ece.rapidSmith.design.NetType;
 import edu.byu.ece.rapidSmith.design.PIP;
 import edu.byu.ece.rapidSmith.design.Pin;
 import edu.byu.ece.rapidSmith.design.Port;
+import edu.byu.ece.rapidSmith.design.parser.DesignParser;
+import edu.byu.ece.rapidSmith.device.Device;
 import edu.byu.ece.rapidSmith.device.PrimitiveSite;
 import edu.byu.ece.rapidSmith.device.PrimitiveType;
 
@@ -39,10 +41,20 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -51,6 +63,11 @@ import java.util.regex.Pattern;
  * This class reads an XDL design file and converts it to a hard macro.  It will
  * also create a VHDL wrapper to be able to instance the hard macro with the original
  * interface of the design.
+ * 
+ * A generator converts a single design and keeps no static state, so designs
+ * can be converted in parallel by separate generators, see
+ * {@link #convertAll(Device, List, Path, int)}. Errors are thrown as
+ * {@link HardMacroException} instead of exiting.
  * @author Chris Lavin
  * Created on: Jan 27, 2010
  * Rewritten on: Jun 16 2010 by Jaren Lamprecht
@@ -59,33 +76,25 @@ import java.util.regex.Pattern;
 public class HardMacroGenerator {
 
 	/** This variable keeps track of which instances should be removed from the original design */
-	private ArrayList<Instance> instancesToRemove;
+	private Set<Instance> instancesToRemove;
 	/** This variable keeps track of which nets should be removed from the original design */
-	private ArrayList<Net> netsToRemove;
+	private Set<Net> netsToRemove;
 	/** This variable keeps track of which instances should be added from the original design */
-	private ArrayList<Instance> instancesToAdd;
+	private Set<Instance> instancesToAdd;
 	/** This variable keeps track of which nets should be added from the original design */
-	private ArrayList<Net> netsToAdd;
+	private Set<Net> netsToAdd;
 	/** The XDL design that will be converted to a hard macro */
 	private Design design;
 	/** The hard macro that will be created, eventually will be added to design */
 	private Module hardMacro;
+	/** The family of the design, only Virtex 4 and 5 are supported */
+	private final boolean virtex4;
+	private final boolean virtex5;
 	/** All of the InstanceTypes that are not allowed in hard macros  */
-	private static HashSet<PrimitiveType> forbiddenTypes;
-	static{
-		// Populate the forbidden types for error checking later
-		forbiddenTypes = new HashSet<PrimitiveType>();
-		forbiddenTypes.add(PrimitiveType.TIEOFF);
-		forbiddenTypes.add(PrimitiveType.IOB);
-		forbiddenTypes.add(PrimitiveType.IOBM);
-		forbiddenTypes.add(PrimitiveType.IOBS);
-		forbiddenTypes.add(PrimitiveType.PMV);
-		forbiddenTypes.add(PrimitiveType.DCM_ADV);
-		forbiddenTypes.add(PrimitiveType.ISERDES);
-		forbiddenTypes.add(PrimitiveType.OSERDES);
-		forbiddenTypes.add(PrimitiveType.ILOGIC);
-		forbiddenTypes.add(PrimitiveType.OLOGIC);
-	}
+	private static final Set<PrimitiveType> forbiddenTypes = Collections.unmodifiableSet(EnumSet.of(
+			PrimitiveType.TIEOFF, PrimitiveType.IOB, PrimitiveType.IOBM, PrimitiveType.IOBS,
+			PrimitiveType.PMV, PrimitiveType.DCM_ADV, PrimitiveType.ISERDES, PrimitiveType.OSERDES,
+			PrimitiveType.ILOGIC, PrimitiveType.OLOGIC));
 	/** The output buffer for the VHDL wrapper to be created */
 	private BufferedWriter vhd;
 	/** The system's line terminator (\r\n:windows, \n:linux,...) */
@@ -96,14 +105,20 @@ public class HardMacroGenerator {
 	private int _busBitNumber;
 	/** Optional file name for comparing VHDL top level names to original (for extra correctness)*/
 	private String originalVHDLFileName;
+	/** Directory for the VHDL wrapper, the working directory if null */
+	private Path outputDirectory;
+	/** The VHDL wrapper file, named after the original design */
+	private Path vhdFile;
 	/**Graceful Failure reason*/
-	private static String gracefulFailureReason;
+	private String gracefulFailureReason;
 	/**infrequent PIPs which constrain placement */
-	private static HashSet<String> forbiddenPips;
-	static {
-		forbiddenPips = new HashSet<String>();
-		forbiddenPips.add("OUT_S");
-	}
+	private static final Set<String> forbiddenPips = Collections.singleton("OUT_S");
+	/** Sites of the SLICEs in the design and the ones to be added, null until a static slice is placed */
+	private Set<PrimitiveSite> sliceLocations;
+	/** Sum of the coordinates of the SLICEs that static slices are centered around */
+	private int sliceXSum;
+	private int sliceYSum;
+	private int sliceCount;
 	/** directions for finding slices */
 	enum direction{up, down, left, right};
 		
@@ -113,21 +128,45 @@ public class HardMacroGenerator {
 	 */
 	public HardMacroGenerator(Design design){
 		this.design = design;
-		if(!(this.design.getExactFamilyName().contains("virtex4") || this.design.getExactFamilyName().contains("virtex5"))){
-			MessageGenerator.briefErrorAndExit("HMG does not support " + design.getExactFamilyName());
+		virtex4 = design.getExactFamilyName().contains("virtex4");
+		virtex5 = design.getExactFamilyName().contains("virtex5");
+		if(!(virtex4 || virtex5)){
+			fail("HMG does not support " + design.getExactFamilyName());
 		}
 
 		// Get the System's line terminator string
 		newLine = System.getProperty("line.separator");
 		
-		instancesToRemove = new ArrayList<Instance>();
-		netsToRemove = new ArrayList<Net>();
-		instancesToAdd = new ArrayList<Instance>();
-		netsToAdd = new ArrayList<Net>();
+		instancesToRemove = new LinkedHashSet<Instance>();
+		netsToRemove = new LinkedHashSet<Net>();
+		instancesToAdd = new LinkedHashSet<Instance>();
+		netsToAdd = new LinkedHashSet<Net>();
 		hardMacro = new Module();
 	
 	}
 	
+	/**
+	 * Sets the directory the VHDL wrapper is written to.
+	 * @param outputDirectory The directory, null for the working directory.
+	 */
+	public void setOutputDirectory(Path outputDirectory){
+		this.outputDirectory = outputDirectory;
+	}
+	
+	/**
+	 * @return The hard macro created by {@link #convertToHardMacro(String)}.
+	 */
+	public Module getHardMacro(){
+		return hardMacro;
+	}
+	
+	/**
+	 * @return The reason the conversion failed gracefully, or null if it did not.
+	 */
+	public String getGracefulFailureReason(){
+		return gracefulFailureReason;
+	}
+	
 	
 	
 	/**
@@ -150,11 +189,7 @@ public class HardMacroGenerator {
 			originalVHDLFileName = design.getName() + "_orig" + ".vhd";
 		}
 		
-		try {
-			vhd = new BufferedWriter(new FileWriter(fileNameVHD));
-		} catch (IOException e) {
-			failAndExit("Problem creating file: " + fileNameVHD);
-		}
+		vhdFile = outputDirectory == null ? Paths.get(fileNameVHD) : outputDirectory.resolve(fileNameVHD);
 
 		for(Instance inst : design.getInstances()){
 			if(inst.getName().startsWith("IOBSLICE_")){
@@ -165,7 +200,7 @@ public class HardMacroGenerator {
 		//check for unplaced instances
 		for(Instance instance: design.getInstances()){
 			if(!instance.isPlaced()){
-				failAndExit("This design is not fully placed.  Did PAR fail?");
+				fail("This design is not fully placed.  Did PAR fail?");
 			}
 		}
 		
@@ -225,7 +260,7 @@ public class HardMacroGenerator {
 		//add the macro to the cleared design
 		design.addModule(hardMacro);
 		if(hardMacro.getInstances().size() == 0){
-			failAndExit("This hard macro does not contain any instances.");
+			fail("This hard macro does not contain any instances.");
 		}
 		hardMacro.setAnchor(hardMacro.getInstances().iterator().next());
 		
@@ -287,11 +322,11 @@ public class HardMacroGenerator {
 							if(pin.getInstance().equals(inst)){
 								pin.setInstance(newSLICE);
 								String pinName = pin.getName();
-								if(design.getExactFamilyName().contains("virtex4")){
+								if(virtex4){
 									if(pinName.equals("CE1")) pin.setPinName("CE");
 									if(pinName.equals("D")) pin.setPinName("BY");
 									if(pinName.equals("Q1")) pin.setPinName("YQ");
-								}else if(design.getExactFamilyName().contains("virtex5")){
+								}else if(virtex5){
 									//TODO V5
 									if(pinName.equals("CE1")) pin.setPinName("CE");
 									if(pinName.equals("D")) pin.setPinName("DX");
@@ -325,11 +360,11 @@ public class HardMacroGenerator {
 							if(pin.getInstance().equals(inst)){
 								pin.setInstance(newSLICE);
 								String pinName = pin.getName();
-								if(design.getExactFamilyName().contains("virtex4")){
+								if(virtex4){
 									if(pinName.equals("OCE")) pin.setPinName("CE");
 									if(pinName.equals("D1")) pin.setPinName("BY");
 									if(pinName.equals("OQ")) pin.setPinName("YQ");
-								}else if(design.getExactFamilyName().contains("virtex5")){
+								}else if(virtex5){
 									//TODO V5
 									if(pinName.equals("OCE")) pin.setPinName("CE");
 									if(pinName.equals("D1")) pin.setPinName("DX");
@@ -456,10 +491,10 @@ public class HardMacroGenerator {
 				}
 				if(!foundBadInstance){
 					inst.getAttributes().clear();
-					if(design.getExactFamilyName().contains("virtex4")){
+					if(virtex4){
 						inst.getAttributes().add(new Attribute("G","","#LUT:D=0"));
 						inst.getAttributes().add(new Attribute("YUSED","","0"));
-					}else if(design.getExactFamilyName().contains("virtex5")){
+					}else if(virtex5){
 						//TODO V5
 						inst.getAttributes().add(new Attribute("D6LUT","","#LUT:O6=0"));
 						inst.getAttributes().add(new Attribute("DUSED","","0"));
@@ -638,13 +673,13 @@ public class HardMacroGenerator {
 		Instance inst = new Instance();
 		inst.setName(name);
 		inst.setType(PrimitiveType.SLICEL);
-		if(design.getExactFamilyName().contains("virtex4")){
+		if(virtex4){
 			inst.getAttributes().add(new Attribute("DYMUX","","BY"));
 			inst.getAttributes().add(new Attribute("FFY","","#FF"));
 			inst.getAttributes().add(new Attribute("FFY_INIT_ATTR","","INIT0"));
 			inst.getAttributes().add(new Attribute("FFY_SR_ATTR","","SRLOW"));
 			inst.getAttributes().add(new Attribute("SYNC_ATTR","","SYNC"));
-		}else if(design.getExactFamilyName().contains("virtex5")){
+		}else if(virtex5){
 			//TODO V5
 			//might need?: inst.getAttributes().add(new Attribute("CEUSED","","0"));
 			inst.getAttributes().add(new Attribute("DFFMUX","","DX"));
@@ -738,10 +773,10 @@ public class HardMacroGenerator {
 				
 				// Remove the TIEOFF, Xilinx will choke if we don't
 				if(net.getSource() == null){
-					failAndExit("This net does not have a source: " + net);
+					fail("This net does not have a source: " + net);
 				}
 				if(!net.getSource().getInstance().getType().equals(PrimitiveType.TIEOFF)){
-					failAndExit("1. This case is unexpected. Talk to Chris about getting it implemented.");
+					fail("1. This case is unexpected. Talk to Chris about getting it implemented.");
 				}
 				
 				instancesToRemove.add(net.getSource().getInstance());
@@ -758,9 +793,9 @@ public class HardMacroGenerator {
 					Instance inst = createStaticSliceSource(net.getType());
 					placeStaticSlice(inst, true);
 					Pin newPin = null;
-					if(design.getExactFamilyName().contains("virtex4")){
+					if(virtex4){
 						 newPin = new Pin(true,"Y",inst);
-					}else if(design.getExactFamilyName().contains("virtex5")){
+					}else if(virtex5){
 						//TODO V5
 						newPin = new Pin(true,"D",inst);
 					}
@@ -806,7 +841,7 @@ public class HardMacroGenerator {
 				// Check if this is a static net
 				if(net.isStaticNet()){
 					if(!net.getSource().getInstance().getType().equals(PrimitiveType.TIEOFF)){
-						failAndExit("2. This case is unexpected. Talk to Chris about getting it implemented.");
+						fail("2. This case is unexpected. Talk to Chris about getting it implemented.");
 					}
 					
 					instancesToRemove.add(net.getSource().getInstance());
@@ -817,9 +852,9 @@ public class HardMacroGenerator {
 					Instance inst = createStaticSliceSource(net.getType());
 					placeStaticSlice(inst, true);
 					Pin newPin = null;
-					if(design.getExactFamilyName().contains("virtex4")){
+					if(virtex4){
 						 newPin = new Pin(true,"Y",inst);
-					}else if(design.getExactFamilyName().contains("virtex5")){
+					}else if(virtex5){
 						//TODO V5
 						newPin = new Pin(true,"D",inst);
 					}
@@ -864,17 +899,17 @@ public class HardMacroGenerator {
 				instancesToAdd.add(newLUT);
 				newOutputNet.setName(net.getName() + "_OUTPUT");
 				Pin newLUTPin = null;
-				if(design.getExactFamilyName().contains("virtex4")){
+				if(virtex4){
 					 newLUTPin = new Pin(true,"Y",newLUT);
-				}else if(design.getExactFamilyName().contains("virtex5")){
+				}else if(virtex5){
 					//TODO V5
 					newLUTPin = new Pin(true,"D",newLUT);
 				}
 				newOutputNet.getPins().add(newLUTPin);
 				Pin newPin = null;
-				if(design.getExactFamilyName().contains("virtex4")){
+				if(virtex4){
 					 newPin = new Pin(false,"G1",newLUT);
-				}else if(design.getExactFamilyName().contains("virtex5")){
+				}else if(virtex5){
 					//TODO V5
 					newPin = new Pin(false,"D1",newLUT);
 				}
@@ -893,7 +928,7 @@ public class HardMacroGenerator {
 			net.getPins().remove(pin);
 		}	
 		if(net.getPins().size() < 1){
-			failAndExit("ERROR: Check net: " + net.getName());
+			fail("ERROR: Check net: " + net.getName());
 		}
 		boolean containsBUFG = false;
 		Pin bufgPin = null;
@@ -924,45 +959,27 @@ public class HardMacroGenerator {
 	 * @param slice The slice to be placed.
 	 */
 	private void placeStaticSlice(Instance slice, boolean updateName){
-		int xAvg = 0;
-		int yAvg = 0;
-		int avg = 0;
-		HashSet<PrimitiveSite> sliceLocations = new HashSet<PrimitiveSite>();
-		// Find all used SLICEs in the current design 
-		for(Instance inst : design.getInstances()){
-			if(inst.getType().equals(PrimitiveType.SLICEL) ||
-					inst.getType().equals(PrimitiveType.SLICEM)){
-				sliceLocations.add(inst.getPrimitiveSite());
-				if(!inst.getName().contains("slice")){
-					xAvg += inst.getInstanceX();
-					yAvg += inst.getInstanceY();
-					avg++;
-				}
+		if(sliceLocations == null){
+			// Find all used SLICEs in the current design once, placed slices are added below
+			sliceLocations = new HashSet<PrimitiveSite>();
+			for(Instance inst : design.getInstances()){
+				addSliceLocation(inst);
 			}
-		}
-		// Also includes SLICEs that will be added to the design
-		for(Instance inst : instancesToAdd){
-			if(inst.getType().equals(PrimitiveType.SLICEL) ||
-					inst.getType().equals(PrimitiveType.SLICEM)){
-				sliceLocations.add(inst.getPrimitiveSite());
-				if(!inst.getName().contains("slice")){
-					xAvg += inst.getInstanceX();
-					yAvg += inst.getInstanceY();
-					avg++;
-				}
+			for(Instance inst : instancesToAdd){
+				addSliceLocation(inst);
 			}
 		}
 		
 		//using the average in this way here is a quick and dirty way to exclude PORT_SLICE_HARD_MACROs
 		//from being included in the averaging so that the new slices are centered correctly
 		
-		if(avg == 0){
-			failAndExit("ERROR: This design contains static outputs (vcc/gnd) that could not " +
+		if(sliceCount == 0){
+			fail("ERROR: This design contains static outputs (vcc/gnd) that could not " +
 			"be supplied by a SLICE.  Does this design have any SLICEs in it?");
 		}
 		
-		xAvg = xAvg / avg;
-		yAvg = yAvg / avg;
+		int xAvg = sliceXSum / sliceCount;
+		int yAvg = sliceYSum / sliceCount;
 		
 		int x = xAvg;
 		int y = yAvg;
@@ -981,6 +998,7 @@ public class HardMacroGenerator {
 						if(updateName){
 							slice.setName("RS_DUMMY_"  + s);
 						}
+						addSliceLocation(slice);
 						return;
 				}
 			}
@@ -1021,6 +1039,22 @@ public class HardMacroGenerator {
 
 	}
 	
+	/**
+	 * Adds a SLICE to the used locations and to the average of placeStaticSlice().
+	 * @param inst The instance, ignored if it is not a SLICE.
+	 */
+	private void addSliceLocation(Instance inst){
+		if(inst.getType().equals(PrimitiveType.SLICEL) ||
+				inst.getType().equals(PrimitiveType.SLICEM)){
+			sliceLocations.add(inst.getPrimitiveSite());
+			if(!inst.getName().contains("slice")){
+				sliceXSum += inst.getInstanceX();
+				sliceYSum += inst.getInstanceY();
+				sliceCount++;
+			}
+		}
+	}
+	
 	/**
 	 * This function will create an new SLICEL that will drive a static 0 or 1 indicated by
 	 * the type
@@ -1031,10 +1065,10 @@ public class HardMacroGenerator {
 		Instance inst = new Instance();
 		inst.setName("RS_DUMMY_CLB");
 		inst.setType(PrimitiveType.SLICEL);
-		if(design.getExactFamilyName().contains("virtex4")){
+		if(virtex4){
 			inst.getAttributes().add(new Attribute("G","","#LUT:D=" + (netType.equals(NetType.GND) ? "0" :"1")));
 			inst.getAttributes().add(new Attribute("YUSED","","0"));
-		}else if(design.getExactFamilyName().contains("virtex5")){
+		}else if(virtex5){
 			//TODO V5
 			inst.getAttributes().add(new Attribute("DUSED","","0"));
 			inst.getAttributes().add(new Attribute("D6LUT","","#LUT:O6=" + (netType.equals(NetType.GND) ? "0" :"1")));
@@ -1050,10 +1084,10 @@ public class HardMacroGenerator {
 		Instance inst = new Instance();
 		inst.setName("XDL_LUT");
 		inst.setType(PrimitiveType.SLICEL);
-		if(design.getExactFamilyName().contains("virtex4")){
+		if(virtex4){
 			inst.getAttributes().add(new Attribute("YUSED","","0"));
 			inst.getAttributes().add(new Attribute("G","","#LUT:D=A1"));			
-		}else if(design.getExactFamilyName().contains("virtex5")){
+		}else if(virtex5){
 			//TODO V5
 			inst.getAttributes().add(new Attribute("DUSED","","0"));
 			inst.getAttributes().add(new Attribute("D6LUT","","#LUT:O6=A1"));
@@ -1220,9 +1254,9 @@ public class HardMacroGenerator {
 				}
 				
 			} catch (FileNotFoundException e1) {
-				failAndExit("Could not find VHDL file: " + originalVHDLFileName);
+				fail("Could not find VHDL file: " + originalVHDLFileName);
 			} catch (IOException e) {
-				failAndExit("Problem reading VHDL file: " + originalVHDLFileName);
+				fail("Problem reading VHDL file: " + originalVHDLFileName);
 			}
 			
 			// Do a little error checking.  Make sure the signal names extracted from XDL
@@ -1233,15 +1267,21 @@ public class HardMacroGenerator {
 				match = signalMap.get(parts[0]);
 				if(match != null){
 					if(!match[1].equals(parts[1])){
-						failAndExit("ERROR: Signal " + match[0] + " has wrong direction.");
+						fail("ERROR: Signal " + match[0] + " has wrong direction.");
 					}
 				}
 				else{
-					failAndExit("ERROR: Supplied VHDL file "+originalVHDLFileName+" does not have top level signal: " + parts[0]);
+					fail("ERROR: Supplied VHDL file "+originalVHDLFileName+" does not have top level signal: " + parts[0]);
 				}
 			}
 		}
 		
+		try {
+			vhd = new BufferedWriter(new FileWriter(vhdFile.toFile()));
+		} catch (IOException e) {
+			fail("Problem creating file: " + vhdFile);
+		}
+		
 		try {
 			vhd.write(newLine);
 			vhd.write("-------------------------------------------------------------------" + newLine);
@@ -1408,7 +1448,7 @@ public class HardMacroGenerator {
 			vhd.write(newLine);
 			vhd.close();
 		} catch (IOException e) {
-			failAndExit("Prolem writing vhd file.");
+			fail("Prolem writing vhd file.");
 		}
 		
 	}
@@ -1475,6 +1515,148 @@ public class HardMacroGenerator {
 		design.setName("GRACEFUL_FAILURE");
 	}
 	
+	/**
+	 * Stops the conversion of this design.
+	 * @param s The error string
+	 */
+	private void fail(String s){
+		throw new HardMacroException(s);
+	}
+	
+	/**
+	 * Thrown if a design cannot be converted to a hard macro.
+	 */
+	public static class HardMacroException extends RuntimeException {
+		private static final long serialVersionUID = 3140512719625208342L;
+		
+		public HardMacroException(String message){
+			super(message);
+		}
+	}
+	
+	/**
+	 * The outcome of converting one design with {@link HardMacroGenerator#convertAll(Device, List, Path, int)}.
+	 */
+	public static class BatchResult {
+		private final Path input;
+		private final Path output;
+		private final String failureReason;
+		
+		BatchResult(Path input, Path output, String failureReason){
+			this.input = input;
+			this.output = output;
+			this.failureReason = failureReason;
+		}
+		
+		public Path getInput(){
+			return input;
+		}
+		
+		/**
+		 * @return The XDL file of the hard macro, null if the conversion failed.
+		 */
+		public Path getOutput(){
+			return output;
+		}
+		
+		/**
+		 * @return Why the conversion failed, null if it succeeded.
+		 */
+		public String getFailureReason(){
+			return failureReason;
+		}
+		
+		public boolean isSuccess(){
+			return failureReason == null;
+		}
+	}
+	
+	/**
+	 * Converts many XDL designs to hard macros concurrently. Every design is
+	 * loaded and converted by its own generator, the device is shared and
+	 * only read. The hard macros are saved as XDL files named after the hard
+	 * macro, the VHDL wrappers are written next to them. Since both names come
+	 * from the design name, designs with the same name as another input are
+	 * not converted.
+	 * @param device The loaded device of all designs. Designs for other parts
+	 * are not converted, they are rejected before their device is loaded.
+	 * @param xdlFiles The XDL files to convert.
+	 * @param outputDirectory The directory to write the hard macros and wrappers to.
+	 * @param threads The number of designs to convert at the same time.
+	 * @return The results, in the order of xdlFiles.
+	 */
+	public static List<BatchResult> convertAll(Device device, List<Path> xdlFiles, Path outputDirectory, int threads){
+		// Find the inputs whose outputs would overwrite each other before converting any
+		HashMap<String, List<Path>> filesByName = new HashMap<String, List<Path>>();
+		List<String> names = new ArrayList<String>(xdlFiles.size());
+		for(Path xdlFile : xdlFiles){
+			String name = new DesignParser(xdlFile).parseDesignName();
+			names.add(name);
+			filesByName.computeIfAbsent(name, k -> new ArrayList<Path>()).add(xdlFile);
+		}
+		
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+		try{
+			List<Future<BatchResult>> futures = new ArrayList<Future<BatchResult>>(xdlFiles.size());
+			for(int i = 0; i < xdlFiles.size(); i++){
+				Path xdlFile = xdlFiles.get(i);
+				List<Path> sameName = filesByName.get(names.get(i));
+				if(sameName.size() > 1){
+					futures.add(null);
+				}
+				else{
+					futures.add(pool.submit(() -> convert(device, xdlFile, outputDirectory)));
+				}
+			}
+			List<BatchResult> results = new ArrayList<BatchResult>(xdlFiles.size());
+			for(int i = 0; i < futures.size(); i++){
+				if(futures.get(i) == null){
+					results.add(new BatchResult(xdlFiles.get(i), null, "Design name " + names.get(i) +
+							" is used by " + filesByName.get(names.get(i)) + ", their outputs would overwrite each other"));
+					continue;
+				}
+				try{
+					results.add(futures.get(i).get());
+				}
+				catch(ExecutionException e){
+					results.add(new BatchResult(xdlFiles.get(i), null, String.valueOf(e.getCause())));
+				}
+				catch(InterruptedException e){
+					Thread.currentThread().interrupt();
+					throw new HardMacroException("Interrupted while converting " + xdlFiles.get(i));
+				}
+			}
+			return results;
+		}
+		finally{
+			pool.shutdownNow();
+		}
+	}
+	
+	private static BatchResult convert(Device device, Path xdlFile, Path outputDirectory){
+		Design input = new Design();
+		try{
+			input.loadXDLFile(xdlFile, device);
+		}
+		catch(IllegalArgumentException e){
+			return new BatchResult(xdlFile, null, e.getMessage());
+		}
+		try{
+			HardMacroGenerator hmTool = new HardMacroGenerator(input);
+			hmTool.setOutputDirectory(outputDirectory);
+			Design output = hmTool.convertToHardMacro(null);
+			if(hmTool.getGracefulFailureReason() != null){
+				return new BatchResult(xdlFile, null, hmTool.getGracefulFailureReason());
+			}
+			Path xdlOutput = outputDirectory.resolve(hmTool.getHardMacro().getName() + ".xdl");
+			output.saveXDLFile(xdlOutput);
+			return new BatchResult(xdlFile, xdlOutput, null);
+		}
+		catch(HardMacroException e){
+			return new BatchResult(xdlFile, null, e.getMessage());
+		}
+	}
+	
 	public static void main(String[] args){
 		if(args.length < 2 || args.length > 3){
 			System.out.println("USAGE: <input.xdl|input.ncd> <output file type: xdl|nmc> [optional: original_vhdl_top.vhd]");
@@ -1495,12 +1677,19 @@ public class HardMacroGenerator {
 			input.loadXDLFile(Paths.get(args[0]));
 		}
 		
-		HardMacroGenerator hmTool = new HardMacroGenerator(input);
-		output = hmTool.convertToHardMacro(originalVHDLFileName);
+		HardMacroGenerator hmTool = null;
+		try{
+			hmTool = new HardMacroGenerator(input);
+			output = hmTool.convertToHardMacro(originalVHDLFileName);
+		}
+		catch(HardMacroException e){
+			failAndExit(e.getMessage());
+			return;
+		}
 		
 		//detect graceful failure
 		if(output.getName().compareTo("GRACEFUL_FAILURE") == 0){
-			failAndExit(gracefulFailureReason);
+			failAndExit(hmTool.getGracefulFailureReason());
 		}
 		
 		// Output NMC if desired
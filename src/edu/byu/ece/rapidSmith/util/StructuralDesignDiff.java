@@ -0,0 +1,448 @@
+/*
+ * Copyright (c) 2010 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.util;
+
+import edu.byu.ece.rapidSmith.design.Attribute;
+import edu.byu.ece.rapidSmith.design.Design;
+import edu.byu.ece.rapidSmith.design.Instance;
+import edu.byu.ece.rapidSmith.design.Net;
+import edu.byu.ece.rapidSmith.design.PIP;
+import edu.byu.ece.rapidSmith.design.Pin;
+
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Compares the instances and nets of two designs by content hashes.
+ *
+ * Every instance gets a 64 bit hash of its name, type, site, bonding and
+ * attributes, every net one of its name, type, attributes, pins and PIPs.
+ * Unordered parts (attributes, pins, PIPs) are combined by adding the hashes
+ * of their elements, so the order they were parsed in does not matter but
+ * repeated elements do, and the details compare them as multisets. The
+ * hashes only depend on names and wire numbers, so they are the same for
+ * every run on the same device. They are computed in parallel, and an
+ * element is only compared in detail if its hash is not found in the other
+ * design. Comparing two designs is therefore linear in their size.
+ *
+ * Two different elements with the same hash would be reported as equal, at
+ * 64 bits this is not expected to happen in practice. Modules are not compared.
+ */
+public class StructuralDesignDiff{
+
+	/** How an element differs between the two designs */
+	public enum Change{
+		/** Only in the second design */
+		ADDED,
+		/** Only in the first design */
+		REMOVED,
+		/** In both designs with different content */
+		CHANGED
+	}
+
+	/**
+	 * A difference of one instance, net or design property.
+	 */
+	public static class Difference{
+		private final Change change;
+		private final String element;
+		private final String name;
+		private final List<String> details;
+
+		Difference(Change change, String element, String name, List<String> details){
+			this.change = change;
+			this.element = element;
+			this.name = name;
+			this.details = details;
+		}
+
+		public Change getChange(){
+			return change;
+		}
+
+		/**
+		 * @return The kind of element, "instance", "net" or "design".
+		 */
+		public String getElement(){
+			return element;
+		}
+
+		public String getName(){
+			return name;
+		}
+
+		/**
+		 * @return What differs for changed elements, as "-" lines for the
+		 * first design and "+" lines for the second one.
+		 */
+		public List<String> getDetails(){
+			return details;
+		}
+
+		@Override
+		public String toString(){
+			return change + " " + element + " " + name;
+		}
+	}
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final List<Difference> differences = new ArrayList<Difference>();
+
+	private StructuralDesignDiff(){
+	}
+
+	/**
+	 * Compares two designs. The designs must not be changed while they are compared.
+	 * @param design1 The first design.
+	 * @param design2 The second design.
+	 * @return The differences between the designs.
+	 */
+	public static StructuralDesignDiff compare(Design design1, Design design2){
+		StructuralDesignDiff diff = new StructuralDesignDiff();
+		diff.compareProperties(design1, design2);
+		diff.compareElements("instance", design1.getInstanceMap(), design2.getInstanceMap(),
+				StructuralDesignDiff::hash, StructuralDesignDiff::instanceDetails);
+		diff.compareElements("net", design1.getNetMap(), design2.getNetMap(),
+				StructuralDesignDiff::hash, StructuralDesignDiff::netDetails);
+		return diff;
+	}
+
+	/**
+	 * @return True if no differences were found.
+	 */
+	public boolean isIdentical(){
+		return differences.isEmpty();
+	}
+
+	/**
+	 * @return The differences, design properties first, then instances and
+	 * nets, each sorted by name.
+	 */
+	public List<Difference> getDifferences(){
+		return Collections.unmodifiableList(differences);
+	}
+
+	/**
+	 * Prints the differences in a diff like format.
+	 * @param out The stream to print to.
+	 */
+	public void print(PrintStream out){
+		for(Difference d : differences){
+			out.println(d);
+			for(String line : d.getDetails()){
+				out.println("    " + line);
+			}
+		}
+	}
+
+	//========================================================================//
+	// Comparison
+	//========================================================================//
+
+	private void compareProperties(Design design1, Design design2){
+		compareProperty("name", design1.getName(), design2.getName());
+		compareProperty("part", design1.getPartName(), design2.getPartName());
+		compareProperty("ncd version", design1.getNCDVersion(), design2.getNCDVersion());
+		compareProperty("hard macro", Boolean.toString(design1.isHardMacro()), Boolean.toString(design2.isHardMacro()));
+		List<String> details = new ArrayList<String>();
+		multisetDifference(attributeStrings(design1.getAttributes()), attributeStrings(design2.getAttributes()), "cfg ", details);
+		if(!details.isEmpty()){
+			differences.add(new Difference(Change.CHANGED, "design", "attributes", details));
+		}
+	}
+
+	private void compareProperty(String name, String value1, String value2){
+		if(value1 == null ? value2 != null : !value1.equals(value2)){
+			differences.add(new Difference(Change.CHANGED, "design", name,
+					Arrays.asList("- " + value1, "+ " + value2)));
+		}
+	}
+
+	/**
+	 * Finds the elements whose hashes are missing in the other design and
+	 * compares only those in detail.
+	 */
+	private <T> void compareElements(String element, Map<String, T> map1, Map<String, T> map2,
+			ToLongFunction<T> hash, ElementDetails<T> details){
+		List<String> names1 = new ArrayList<String>(map1.keySet());
+		List<String> names2 = new ArrayList<String>(map2.keySet());
+		List<T> list1 = new ArrayList<T>(names1.size());
+		for(String name : names1){
+			list1.add(map1.get(name));
+		}
+		List<T> list2 = new ArrayList<T>(names2.size());
+		for(String name : names2){
+			list2.add(map2.get(name));
+		}
+		long[] hashes1 = hashAll(list1, hash);
+		long[] hashes2 = hashAll(list2, hash);
+		long[] sorted1 = hashes1.clone();
+		long[] sorted2 = hashes2.clone();
+		Arrays.parallelSort(sorted1);
+		Arrays.parallelSort(sorted2);
+		if(Arrays.equals(sorted1, sorted2)){
+			return;
+		}
+
+		// The hashes include the names, a missing hash is a changed, added or removed element
+		Set<String> names = new HashSet<String>();
+		for(int i = 0; i < hashes1.length; i++){
+			if(Arrays.binarySearch(sorted2, hashes1[i]) < 0){
+				names.add(names1.get(i));
+			}
+		}
+		for(int i = 0; i < hashes2.length; i++){
+			if(Arrays.binarySearch(sorted1, hashes2[i]) < 0){
+				names.add(names2.get(i));
+			}
+		}
+		List<String> sortedNames = new ArrayList<String>(names);
+		Collections.sort(sortedNames);
+		for(String name : sortedNames){
+			T e1 = map1.get(name);
+			T e2 = map2.get(name);
+			if(e1 == null){
+				differences.add(new Difference(Change.ADDED, element, name, Collections.<String>emptyList()));
+			}
+			else if(e2 == null){
+				differences.add(new Difference(Change.REMOVED, element, name, Collections.<String>emptyList()));
+			}
+			else{
+				differences.add(new Difference(Change.CHANGED, element, name, details.compare(e1, e2)));
+			}
+		}
+	}
+
+	private interface ElementDetails<T>{
+		List<String> compare(T e1, T e2);
+	}
+
+	private static <T> long[] hashAll(List<T> elements, ToLongFunction<T> hash){
+		long[] hashes = new long[elements.size()];
+		IntStream.range(0, hashes.length).parallel().forEach(i -> hashes[i] = hash.applyAsLong(elements.get(i)));
+		return hashes;
+	}
+
+	private static List<String> instanceDetails(Instance inst1, Instance inst2){
+		List<String> details = new ArrayList<String>();
+		if(inst1.getType() != inst2.getType()){
+			details.add("- type " + inst1.getType());
+			details.add("+ type " + inst2.getType());
+		}
+		String site1 = inst1.getPrimitiveSiteName();
+		String site2 = inst2.getPrimitiveSiteName();
+		if(site1 == null ? site2 != null : !site1.equals(site2)){
+			details.add("- placed " + site1);
+			details.add("+ placed " + site2);
+		}
+		if(!Objects.equals(inst1.getBonded(), inst2.getBonded())){
+			details.add("- bonded " + inst1.getBonded());
+			details.add("+ bonded " + inst2.getBonded());
+		}
+		multisetDifference(attributeStrings(inst1.getAttributes()), attributeStrings(inst2.getAttributes()), "cfg ", details);
+		return details;
+	}
+
+	private static List<String> netDetails(Net net1, Net net2){
+		List<String> details = new ArrayList<String>();
+		if(net1.getType() != net2.getType()){
+			details.add("- type " + net1.getType());
+			details.add("+ type " + net2.getType());
+		}
+		multisetDifference(attributeStrings(net1.getAttributes()), attributeStrings(net2.getAttributes()), "cfg ", details);
+		List<String> pins1 = new ArrayList<String>();
+		for(Pin p : net1.getPins()){
+			pins1.add(pinString(p));
+		}
+		List<String> pins2 = new ArrayList<String>();
+		for(Pin p : net2.getPins()){
+			pins2.add(pinString(p));
+		}
+		multisetDifference(pins1, pins2, "", details);
+
+		// PIPs are compared as objects, only the differing ones are turned into strings
+		multisetDifference(net1.getPIPs(), net2.getPIPs(), StructuralDesignDiff::pipString, "", details);
+		return details;
+	}
+
+	private static void multisetDifference(Collection<String> c1, Collection<String> c2, String prefix, List<String> details){
+		multisetDifference(c1, c2, Function.identity(), prefix, details);
+	}
+
+	/**
+	 * Compares two collections as multisets, like the hashes do: an element
+	 * that is repeated more often in one collection is reported once for
+	 * every extra occurrence.
+	 */
+	private static <T> void multisetDifference(Collection<T> c1, Collection<T> c2, Function<T, String> toString,
+			String prefix, List<String> details){
+		Map<T, Integer> counts = new HashMap<T, Integer>();
+		for(T e : c1){
+			counts.merge(e, 1, Integer::sum);
+		}
+		for(T e : c2){
+			counts.merge(e, -1, Integer::sum);
+		}
+		List<String> removed = new ArrayList<String>();
+		List<String> added = new ArrayList<String>();
+		for(Map.Entry<T, Integer> e : counts.entrySet()){
+			int count = e.getValue();
+			if(count != 0){
+				String str = toString.apply(e.getKey());
+				for(int i = 0; i < Math.abs(count); i++){
+					(count > 0 ? removed : added).add(str);
+				}
+			}
+		}
+		Collections.sort(removed);
+		Collections.sort(added);
+		for(String str : removed){
+			details.add("- " + prefix + str);
+		}
+		for(String str : added){
+			details.add("+ " + prefix + str);
+		}
+	}
+
+	private static List<String> attributeStrings(Collection<Attribute> attributes){
+		List<String> res = new ArrayList<String>();
+		if(attributes != null){
+			for(Attribute a : attributes){
+				res.add(a.toString());
+			}
+		}
+		return res;
+	}
+
+	private static String pinString(Pin pin){
+		return pin.getPinType().toString().toLowerCase() + " \"" + pin.getInstanceName() + "\" " + pin.getName();
+	}
+
+	private static String pipString(PIP pip){
+		return pip.toString(pip.getTile().getDevice().getWireEnumerator());
+	}
+
+	//========================================================================//
+	// Hashes
+	//========================================================================//
+
+	/**
+	 * Computes the content hash of an instance.
+	 * @return A hash of the name, type, site, bonding and attributes.
+	 */
+	public static long hash(Instance inst){
+		long h = hash(FNV_OFFSET, inst.getName());
+		h = hash(h, inst.getType().name());
+		h = hash(h, inst.getPrimitiveSiteName());
+		h = hash(h, String.valueOf(inst.getBonded()));
+		return mix(h + hashAttributes(inst.getAttributes()));
+	}
+
+	/**
+	 * Computes the content hash of a net.
+	 * @return A hash of the name, type, attributes, pins and PIPs.
+	 */
+	public static long hash(Net net){
+		long h = hash(FNV_OFFSET, net.getName());
+		h = hash(h, net.getType().name());
+		long pins = 0;
+		for(Pin p : net.getPins()){
+			long ph = hash(FNV_OFFSET, p.getInstanceName());
+			ph = hash(ph, p.getName());
+			pins += mix(ph + p.getPinType().ordinal());
+		}
+		long pips = 0;
+		for(PIP pip : net.getPIPs()){
+			pips += hash(pip);
+		}
+		return mix(mix(h + hashAttributes(net.getAttributes())) + mix(pins) * 31 + mix(pips));
+	}
+
+	private static long hash(PIP pip){
+		long h = hash(FNV_OFFSET, pip.getTile().getName());
+		return mix(h ^ ((long) pip.getStartWire() << 32 | (pip.getEndWire() & 0xFFFFFFFFL)));
+	}
+
+	private static long hashAttributes(Collection<Attribute> attributes){
+		long h = 0;
+		if(attributes != null){
+			for(Attribute a : attributes){
+				long ah = hash(FNV_OFFSET, a.getPhysicalName());
+				ah = hash(ah, a.getLogicalName());
+				ah = hash(ah, a.getValue());
+				h += mix(ah);
+			}
+		}
+		return h;
+	}
+
+	/**
+	 * 64 bit FNV-1a of a string, continuing from h. A separator is hashed
+	 * after the string so that "ab","c" and "a","bc" differ.
+	 */
+	private static long hash(long h, String s){
+		if(s != null){
+			for(int i = 0; i < s.length(); i++){
+				h ^= s.charAt(i);
+				h *= FNV_PRIME;
+			}
+		}
+		h ^= 0xFFFF;
+		return h * FNV_PRIME;
+	}
+
+	/**
+	 * Spreads the bits of a hash, the finalizer of SplitMix64.
+	 */
+	private static long mix(long h){
+		h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+		h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+		return h ^ (h >>> 31);
+	}
+
+	public static void main(String[] args){
+		if(args.length != 2){
+			MessageGenerator.briefMessageAndExit("USAGE: <design1.xdl> <design2.xdl>");
+		}
+		Design design1 = new Design(Paths.get(args[0]));
+		Design design2 = new Design(Paths.get(args[1]));
+
+		StructuralDesignDiff diff = compare(design1, design2);
+		diff.print(System.out);
+		System.out.println(diff.isIdentical() ? "Designs are identical" :
+			diff.getDifferences().size() + " differences found");
+	}
+}
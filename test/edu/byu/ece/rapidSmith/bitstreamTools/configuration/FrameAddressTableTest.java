@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.bitstreamTools.configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.byu.ece.rapidSmith.bitstreamTools.configurationSpecification.BlockSubType;
+import edu.byu.ece.rapidSmith.bitstreamTools.configurationSpecification.DeviceLookup;
+import edu.byu.ece.rapidSmith.bitstreamTools.configurationSpecification.XilinxConfigurationSpecification;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FrameAddressTableTest {
+
+	private static final String[] PARTS = {"XC4VFX12", "XC5VLX20T", "XC6VLX75T"};
+
+	/**
+	 * All FAR addresses of a part in configuration order, counted field by field
+	 * from the specification: minor, column, row, top/bottom and then block type.
+	 */
+	private static List<Integer> countFARs(XilinxConfigurationSpecification spec) {
+		List<Integer> res = new ArrayList<>();
+		int blockTypes = spec.getBlockTypes().size();
+		int topBottom = 0, blockType = 0, row = 0, column = 0, minor = 0;
+		while (blockType < blockTypes) {
+			res.add(FrameAddressRegister.getAddressFromTopBottom(spec, topBottom)
+					| FrameAddressRegister.getAddressFromBlockType(spec, blockType)
+					| FrameAddressRegister.getAddressFromRow(spec, row)
+					| FrameAddressRegister.getAddressFromColumn(spec, column)
+					| FrameAddressRegister.getAddressFromMinor(spec, minor));
+			List<BlockSubType> layout = spec.getBlockSubTypeLayout(spec.getBlockTypes().get(blockType));
+			int rows = topBottom == 0 ? spec.getTopNumberOfRows() : spec.getBottomNumberOfRows();
+			if (++minor < layout.get(column).getFramesPerConfigurationBlock())
+				continue;
+			minor = 0;
+			if (++column < layout.size())
+				continue;
+			column = 0;
+			if (++row < rows)
+				continue;
+			row = 0;
+			if (++topBottom < 2)
+				continue;
+			topBottom = 0;
+			blockType++;
+		}
+		return res;
+	}
+
+	private static XilinxConfigurationSpecification spec(String part) {
+		XilinxConfigurationSpecification spec = DeviceLookup.lookupPartV4V5V6(part);
+		Assert.assertNotNull(part, spec);
+		return spec;
+	}
+
+	@Test
+	public void tableMatchesCountedFARs() {
+		for (String part : PARTS) {
+			XilinxConfigurationSpecification spec = spec(part);
+			FrameAddressTable table = FrameAddressTable.getTable(spec);
+			Assert.assertSame(table, FrameAddressTable.getTable(spec));
+			List<Integer> expected = countFARs(spec);
+			Assert.assertEquals(part, expected.size(), table.getNumberOfFrames());
+			Assert.assertEquals(part, expected.size(), FrameAddressRegister.getNumberOfFrames(spec));
+			for (int i = 0; i < expected.size(); i++) {
+				int far = expected.get(i);
+				Assert.assertEquals(part + " frame " + i, far, table.getFAR(i));
+				Assert.assertEquals(part + " frame " + i, i, table.getConsecutiveAddress(far));
+				Assert.assertEquals(i, FrameAddressRegister.getConsecutiveAddress(spec, far));
+			}
+		}
+	}
+
+	@Test
+	public void registerWalksAllFrames() {
+		for (String part : PARTS) {
+			XilinxConfigurationSpecification spec = spec(part);
+			List<Integer> expected = countFARs(spec);
+			FrameAddressRegister far = new FrameAddressRegister(spec);
+			for (int i = 0; i < expected.size(); i++) {
+				Assert.assertEquals(part + " frame " + i, (int) expected.get(i), far.getAddress());
+				Assert.assertEquals(i, far.getConsecutiveAddress());
+				Assert.assertEquals(i < expected.size() - 1, far.incrementFAR());
+			}
+			Assert.assertFalse(far.validFARAddress());
+
+			FrameAddressRegister random = new FrameAddressRegister(spec);
+			for (int i = expected.size() - 1; i >= 0; i -= 37) {
+				random.setFARAddressFromConsecutiveAddress(i);
+				Assert.assertEquals((int) expected.get(i), random.getAddress());
+			}
+		}
+	}
+
+	@Test
+	public void frameCountsMatchSpecification() {
+		for (String part : PARTS) {
+			XilinxConfigurationSpecification spec = spec(part);
+			FrameAddressTable table = FrameAddressTable.getTable(spec);
+			int start = 0;
+			for (int b = 0; b < spec.getBlockTypes().size(); b++) {
+				List<BlockSubType> layout = spec.getBlockSubTypeLayout(spec.getBlockTypes().get(b));
+				int rowFrames = 0;
+				for (int c = 0; c < layout.size(); c++) {
+					Assert.assertEquals(layout.get(c).getFramesPerConfigurationBlock(),
+							FrameAddressRegister.getFramesPerConfigurationBlock(spec, b, c));
+					rowFrames += layout.get(c).getFramesPerConfigurationBlock();
+				}
+				Assert.assertEquals(layout.size(), FrameAddressRegister.getNumberOfColumns(spec, b));
+				Assert.assertEquals(rowFrames, FrameAddressRegister.getFramesPerRow(spec, b));
+				Assert.assertEquals(rowFrames * spec.getTopNumberOfRows(), FrameAddressRegister.getFramesInTop(spec, b));
+				Assert.assertEquals(rowFrames * spec.getBottomNumberOfRows(), FrameAddressRegister.getFramesInBottom(spec, b));
+				Assert.assertEquals(start, table.getBlockStart(b));
+				start += FrameAddressRegister.getFramesPerFARBlockType(spec, b);
+			}
+			Assert.assertEquals(start, table.getNumberOfFrames());
+		}
+	}
+
+	@Test
+	public void addressesOutsideTheDeviceAreRejected() {
+		XilinxConfigurationSpecification spec = spec("XC5VLX20T");
+		FrameAddressTable table = FrameAddressTable.getTable(spec);
+		int lastBlock = spec.getBlockTypes().size() - 1;
+		Assert.assertEquals(-1, table.getConsecutiveAddress(0, lastBlock + 1, 0, 0, 0));
+		Assert.assertEquals(-1, table.getConsecutiveAddress(2, 0, 0, 0, 0));
+		Assert.assertEquals(-1, table.getConsecutiveAddress(0, 0, spec.getTopNumberOfRows(), 0, 0));
+		Assert.assertEquals(-1, table.getConsecutiveAddress(1, 0, spec.getBottomNumberOfRows(), 0, 0));
+		Assert.assertEquals(-1, table.getConsecutiveAddress(0, 0, 0, table.getNumberOfColumns(0), 0));
+		Assert.assertEquals(-1, table.getConsecutiveAddress(0, 0, 0, 0, table.getFramesPerConfigurationBlock(0, 0)));
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.bitstreamTools.configuration;
+
+import java.util.Random;
+
+import edu.byu.ece.rapidSmith.bitstreamTools.examples.CheckFrameECC;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FrameECCTest {
+
+	/**
+	 * A frame in which about density out of 8 words are random, the others are 0.
+	 */
+	private static Frame randomFrame(Random random, int density) {
+		Frame frame = new Frame(FrameECC.FRAME_SIZE, 0);
+		for (int i = 0; i < FrameECC.FRAME_SIZE; i++) {
+			frame.getData().setData(i, random.nextInt(8) < density ? random.nextInt() : 0);
+		}
+		return frame;
+	}
+
+	@Test
+	public void matchesBitwiseCalculation() {
+		Random random = new Random(42);
+		Frame noMask = new Frame(FrameECC.FRAME_SIZE, 0);
+		for (int i = 0; i < 200; i++) {
+			// Dense, sparse and empty frames and masks
+			Frame frame = randomFrame(random, new int[]{8, 1, 0}[i % 3]);
+			Frame mask = (i % 2 == 0) ? noMask : randomFrame(random, new int[]{8, 1}[i / 2 % 2]);
+			Assert.assertEquals(CheckFrameECC.calculateFrameECCBits(frame, mask, null),
+					FrameECC.calculateECCBits(frame.getData(), mask.getData()));
+		}
+	}
+
+	@Test
+	public void locatesSingleBitErrors() {
+		Random random = new Random(7);
+		for (int density : new int[]{8, 1, 0}) {
+			Frame frame = randomFrame(random, density);
+			FrameData data = frame.getData();
+			data.setData(FrameECC.ECC_WORD,
+					(data.get(FrameECC.ECC_WORD) & 0xFFFFF000) | FrameECC.calculateECCBits(data));
+			Assert.assertEquals(0, FrameECC.getSyndrome(data, null));
+
+			for (int bit = 0; bit < FrameECC.FRAME_SIZE * 32; bit++) {
+				FrameData copy = new FrameData(data);
+				copy.flipBit(bit);
+				int syndrome = FrameECC.getSyndrome(copy, null);
+				Assert.assertEquals(1, Integer.bitCount(syndrome) & 0x1);
+				Assert.assertEquals(bit, FrameECC.getErrorBit(syndrome));
+			}
+
+			FrameData copy = new FrameData(data);
+			copy.flipBit(3);
+			copy.flipBit(1000);
+			int syndrome = FrameECC.getSyndrome(copy, null);
+			Assert.assertNotEquals(0, syndrome);
+			Assert.assertEquals(0, Integer.bitCount(syndrome) & 0x1);
+		}
+	}
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.design;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.PrimitiveSite;
+import edu.byu.ece.rapidSmith.device.PrimitiveType;
+import edu.byu.ece.rapidSmith.device.Tile;
+import edu.byu.ece.rapidSmith.device.TileType;
+import edu.byu.ece.rapidSmith.device.WireConnection;
+import edu.byu.ece.rapidSmith.device.WireEnumerator;
+import edu.byu.ece.rapidSmith.device.helper.WireHashMap;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ModulePlacementCheckerTest {
+
+	private static final int WIDTH = 8;
+	private static final int HEIGHT = 5;
+
+	private Device device;
+	private Design design;
+	private ModuleInstance moduleInstance;
+	private PrimitiveSite templateAnchorSite;
+
+	/**
+	 * Every tile X coordinate has an INT tile and a CLB tile. CLBLM tiles (every third X)
+	 * have a SLICEM and a SLICEL site, CLBLL tiles two SLICEL sites. CLBLL_X4Y2 has no
+	 * sites and INT_X5Y1 lacks the PIP from wire 2 to wire 3.
+	 */
+	private static Device sampleDevice() {
+		return new Device() {{
+			partName = "xc5vlx20tff323";
+			setRows(HEIGHT);
+			setColumns(2 * WIDTH);
+			createTileArray();
+			HashMap<String, Integer> names = new HashMap<>();
+			for (int row = 0; row < HEIGHT; row++) {
+				for (int x = 0; x < WIDTH; x++) {
+					Tile intTile = getTile(row, 2 * x);
+					intTile.setName("INT_X" + x + "Y" + row);
+					intTile.setType(TileType.INT);
+					intTile.setDevice(this);
+					intTile.setWireHashMap(new WireHashMap());
+					intTile.addConnection(1, new WireConnection(2, 0, 0, true));
+					if (x != 5 || row != 1) {
+						intTile.addConnection(2, new WireConnection(3, 0, 0, true));
+					}
+
+					boolean clblm = x % 3 == 0;
+					Tile clb = getTile(row, 2 * x + 1);
+					clb.setName((clblm ? "CLBLM_X" : "CLBLL_X") + x + "Y" + row);
+					clb.setType(clblm ? TileType.CLBLM : TileType.CLBLL);
+					clb.setDevice(this);
+					if (x != 4 || row != 2) {
+						clb.setPrimitiveSites(new PrimitiveSite[]{
+								site(clb, clblm ? PrimitiveType.SLICEM : PrimitiveType.SLICEL, 2 * x, row),
+								site(clb, PrimitiveType.SLICEL, 2 * x + 1, row)});
+					}
+					names.put(intTile.getName(), (row << 16) | (2 * x));
+					names.put(clb.getName(), (row << 16) | (2 * x + 1));
+				}
+			}
+			populateTileMap(names);
+		}};
+	}
+
+	private static PrimitiveSite site(Tile tile, PrimitiveType type, int x, int y) {
+		PrimitiveSite site = new PrimitiveSite();
+		site.setName("SLICE_X" + x + "Y" + y);
+		site.setTile(tile);
+		site.setType(type);
+		return site;
+	}
+
+	/**
+	 * A module of a SLICEL anchor in CLBLL_X1Y0, a SLICEM in CLBLM_X3Y1 and a net
+	 * with PIPs in INT_X1Y0 and INT_X2Y1.
+	 */
+	@Before
+	public void createModuleInstance() {
+		device = sampleDevice();
+		design = new Design();
+		design.setDevice(device);
+		design.setWireEnumerator(new WireEnumerator() {
+			@Override
+			public int getWireEnum(String name) {
+				return -1;
+			}
+		});
+
+		Module module = new Module();
+		module.setName("module");
+		templateAnchorSite = device.getTile("CLBLL_X1Y0").getPrimitiveSites()[1];
+		Instance templateAnchor = new Instance("anchor", PrimitiveType.SLICEL);
+		templateAnchor.place(templateAnchorSite);
+		Instance templateM = new Instance("m", PrimitiveType.SLICEM);
+		templateM.place(device.getTile("CLBLM_X3Y1").getPrimitiveSites()[0]);
+		Instance templateUnplaced = new Instance("unplaced", PrimitiveType.SLICEL);
+		module.addInstance(templateAnchor);
+		module.addInstance(templateM);
+		module.addInstance(templateUnplaced);
+		module.setAnchor(templateAnchor);
+		Net templateNet = new Net("net", NetType.WIRE);
+		templateNet.addPIP(new PIP(device.getTile("INT_X1Y0"), 1, 2));
+		templateNet.addPIP(new PIP(device.getTile("INT_X2Y1"), 2, 3));
+		module.addNet(templateNet);
+
+		moduleInstance = new ModuleInstance("mi", design);
+		moduleInstance.setModule(module);
+		for (Instance template : module.getInstances()) {
+			Instance inst = new Instance("mi/" + template.getName(), template.getType());
+			inst.setModuleTemplateInstance(template);
+			inst.setModuleInstance(moduleInstance);
+			moduleInstance.addInstance(inst);
+			design.addInstance(inst);
+			if (template == templateAnchor) {
+				moduleInstance.setAnchor(inst);
+			}
+		}
+		Net net = new Net("mi/net", NetType.WIRE);
+		net.setModuleTemplateNet(templateNet);
+		net.setModuleInstance(moduleInstance);
+		moduleInstance.addNet(net);
+		design.addNet(net);
+		Assert.assertTrue(moduleInstance.place(templateAnchorSite, device, (mi, site) -> {}));
+	}
+
+	/**
+	 * The placement of the module instance and the used sites of the design.
+	 */
+	private Map<String, Object> state() {
+		Map<String, Object> res = new HashMap<>();
+		for (Instance inst : moduleInstance.getInstances()) {
+			res.put(inst.getName(), inst.getPrimitiveSite());
+		}
+		for (Net net : moduleInstance.getNets()) {
+			res.put(net.getName(), new ArrayList<>(net.getPIPs()));
+		}
+		res.put("used sites", new HashSet<>(design.getUsedPrimitiveSites()));
+		return res;
+	}
+
+	/**
+	 * The valid anchors found by moving the module instance with place()
+	 */
+	private List<PrimitiveSite> placeEverywhere() {
+		return moduleInstance.getAllValidPlacements((mi, site) -> {});
+	}
+
+	@Test
+	public void validPlacementsAreLegal() {
+		List<PrimitiveSite> valid = new ModulePlacementChecker(moduleInstance).getAllValidPlacements();
+		Assert.assertEquals(placeEverywhere(), valid);
+		// The SLICEM has to land in a CLBLM tile, so the anchor is in column 1 or 4. In
+		// column 4, Y0 misses the PIP in INT_X5Y1 and Y2 is the tile without sites.
+		List<String> names = new ArrayList<>();
+		for (PrimitiveSite site : valid) {
+			names.add(site.getName());
+		}
+		names.sort(null);
+		Assert.assertEquals(Arrays.asList("SLICE_X3Y0", "SLICE_X3Y1", "SLICE_X3Y2", "SLICE_X3Y3",
+				"SLICE_X9Y1", "SLICE_X9Y3"), names);
+
+		Set<PrimitiveSite> validSet = new HashSet<>(valid);
+		for (PrimitiveSite anchor : device.getAllCompatibleSites(PrimitiveType.SLICEL)) {
+			boolean placed = moduleInstance.place(anchor, device, (mi, site) -> {});
+			Assert.assertEquals(anchor.getName(), validSet.contains(anchor), placed);
+			if (!placed) {
+				continue;
+			}
+			for (Instance inst : moduleInstance.getInstances()) {
+				PrimitiveSite site = inst.getPrimitiveSite();
+				if (inst.getModuleTemplateInstance().getPrimitiveSite() == null) {
+					continue;
+				}
+				Assert.assertNotNull(site);
+				Assert.assertTrue(site.isCompatiblePrimitiveType(inst.getType()));
+			}
+			Assert.assertSame(anchor, moduleInstance.getAnchor().getPrimitiveSite());
+			for (Net net : moduleInstance.getNets()) {
+				Assert.assertEquals(2, net.getPIPs().size());
+				for (PIP pip : net.getPIPs()) {
+					Assert.assertTrue(pip.getTile().hasPIP(pip));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void checkingHasNoSideEffects() {
+		Map<String, Object> before = state();
+		ModulePlacementChecker checker = new ModulePlacementChecker(moduleInstance, true);
+		checker.getAllValidPlacements();
+		for (PrimitiveSite anchor : device.getAllCompatibleSites(PrimitiveType.SLICEL)) {
+			checker.isValidPlacement(anchor);
+		}
+		new ModulePlacementChecker(moduleInstance).getAllValidPlacements();
+		Assert.assertEquals(before, state());
+		Assert.assertSame(templateAnchorSite, moduleInstance.getAnchor().getPrimitiveSite());
+	}
+
+	@Test
+	public void usedSitesRuleOutAnchors() {
+		List<PrimitiveSite> free = new ModulePlacementChecker(moduleInstance).getAllValidPlacements();
+		// The module instance does not block itself
+		Assert.assertEquals(free, new ModulePlacementChecker(moduleInstance, true).getAllValidPlacements());
+
+		PrimitiveSite blocked = device.getTile("CLBLM_X6Y2").getPrimitiveSites()[0];
+		Instance other = new Instance("other", PrimitiveType.SLICEM);
+		design.addInstance(other);
+		other.place(blocked);
+
+		List<PrimitiveSite> expected = new ArrayList<>();
+		for (PrimitiveSite anchor : free) {
+			Assert.assertTrue(moduleInstance.place(anchor, device, (mi, site) -> {}));
+			boolean overlaps = false;
+			for (Instance inst : moduleInstance.getInstances()) {
+				overlaps |= inst.getPrimitiveSite() == blocked;
+			}
+			if (!overlaps) {
+				expected.add(anchor);
+			}
+		}
+		Assert.assertTrue(moduleInstance.place(templateAnchorSite, device, (mi, site) -> {}));
+		other.place(blocked);
+		Assert.assertTrue(expected.size() < free.size());
+		Assert.assertEquals(expected, new ModulePlacementChecker(moduleInstance, true).getAllValidPlacements());
+		// Without the check the other instance is ignored
+		Assert.assertEquals(free, new ModulePlacementChecker(moduleInstance).getAllValidPlacements());
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.design;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NetlistIndexTest {
+
+	private static final String[] PIN_NAMES = {"A", "B", "O"};
+
+	private int instanceNames;
+	private int netNames;
+
+	private Instance addInstance(Design design) {
+		Instance inst = new Instance("inst" + instanceNames++, null);
+		for (String pinName : PIN_NAMES) {
+			new Pin(pinName.equals("O"), pinName, inst);
+		}
+		design.addInstance(inst);
+		return inst;
+	}
+
+	private Net addNet(Design design) {
+		Net net = new Net("net" + netNames++, NetType.WIRE);
+		design.addNet(net);
+		return net;
+	}
+
+	private static <T> T pick(Random random, List<T> list) {
+		return list.get(random.nextInt(list.size()));
+	}
+
+	private static List<Pin> allPins(Design design) {
+		List<Pin> pins = new ArrayList<>();
+		for (Instance inst : design.getInstances()) {
+			pins.addAll(inst.getPins());
+		}
+		return pins;
+	}
+
+	/**
+	 * Checks every lookup of the index against the objects of the design.
+	 */
+	private static void check(Design design, NetlistIndex index) {
+		List<Pin> pins = allPins(design);
+		Assert.assertEquals(design.getInstances().size(), index.getNumberOfInstances());
+		Assert.assertEquals(design.getNets().size(), index.getNumberOfNets());
+		Assert.assertEquals(pins.size(), index.getNumberOfPins());
+
+		for (Instance inst : design.getInstances()) {
+			int id = index.getId(inst);
+			Assert.assertTrue(id >= 0 && id < index.getInstanceIdLimit());
+			Assert.assertSame(inst, index.getInstance(id));
+		}
+		for (Net net : design.getNets()) {
+			int id = index.getId(net);
+			Assert.assertTrue(id >= 0 && id < index.getNetIdLimit());
+			Assert.assertSame(net, index.getNet(id));
+		}
+		for (Pin pin : pins) {
+			int id = index.getId(pin);
+			Assert.assertTrue(id >= 0 && id < index.getPinIdLimit());
+			Assert.assertSame(pin, index.getPin(id));
+			Assert.assertEquals(index.getId(pin.getInstance()), index.getInstanceOfPin(id));
+			Net net = pin.getNet();
+			int expected = net == null || design.getNet(net.getName()) != net ? NetlistIndex.NO_ID : index.getId(net);
+			Assert.assertEquals(expected, index.getNetOfPin(id));
+		}
+		for (Net net : design.getNets()) {
+			for (Pin pin : pins) {
+				Assert.assertEquals(net.getPins().contains(pin), index.isPinOfNet(pin, net));
+			}
+			int[] pinIds = index.getPinIds(net);
+			for (int i = 0; i < pinIds.length; i++) {
+				Assert.assertSame(net.getPins().get(i), index.getPin(pinIds[i]));
+			}
+		}
+	}
+
+	@Test
+	public void followsNetlistChanges() {
+		Random random = new Random(42);
+		Design design = new Design();
+		for (int i = 0; i < 20; i++) {
+			addInstance(design);
+			addNet(design);
+		}
+		NetlistIndex index = design.getNetlistIndex();
+		check(design, index);
+
+		for (int step = 0; step < 1000; step++) {
+			List<Instance> instances = new ArrayList<>(design.getInstances());
+			List<Net> nets = new ArrayList<>(design.getNets());
+			switch (random.nextInt(6)) {
+				case 0:
+					addInstance(design);
+					break;
+				case 1:
+					addNet(design);
+					break;
+				case 2:
+					if (!instances.isEmpty() && !nets.isEmpty()) {
+						Pin pin = pick(random, allPins(design));
+						if (pin.getNet() == null) {
+							pick(random, nets).addPin(pin);
+						}
+					}
+					break;
+				case 3:
+					if (!nets.isEmpty()) {
+						Net net = pick(random, nets);
+						if (!net.getPins().isEmpty()) {
+							net.removePin(pick(random, net.getPins()));
+						}
+					}
+					break;
+				case 4:
+					if (!nets.isEmpty()) {
+						design.removeNet(pick(random, nets));
+					}
+					break;
+				default:
+					if (!instances.isEmpty()) {
+						design.removeInstance(pick(random, instances));
+					}
+			}
+			check(design, index);
+		}
+		// Removed ids are reused
+		Assert.assertTrue(index.getInstanceIdLimit() < instanceNames);
+		Assert.assertTrue(index.getNetIdLimit() < netNames);
+	}
+}
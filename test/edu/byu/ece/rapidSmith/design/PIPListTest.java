@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.design;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.Tile;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PIPListTest {
+
+	/** Wires at and above this cannot be packed */
+	private static final int WIRE_LIMIT = 1 << 19;
+
+	private static Device device(int rows, int columns) {
+		return new Device() {{
+			setRows(rows);
+			setColumns(columns);
+			createTileArray();
+			for (int row = 0; row < rows; row++) {
+				for (int column = 0; column < columns; column++) {
+					Tile tile = getTile(row, column);
+					tile.setName("INT_X" + column + "Y" + row);
+					tile.setDevice(this);
+				}
+			}
+		}};
+	}
+
+	private final Device device = device(3, 4);
+	private final Device otherDevice = device(2, 2);
+
+	/**
+	 * Checks all fields, PIP.equals() ignores the direction.
+	 */
+	private static void assertPIP(PIP expected, PIP actual) {
+		Assert.assertEquals(expected, actual);
+		Assert.assertSame(expected.getTile(), actual.getTile());
+		Assert.assertEquals(expected.getDirection(), actual.getDirection());
+	}
+
+	private static void assertContents(List<PIP> expected, PIPList list) {
+		Assert.assertEquals(expected.size(), list.size());
+		for (int i = 0; i < expected.size(); i++) {
+			PIP pip = expected.get(i);
+			assertPIP(pip, list.get(i));
+			Assert.assertSame(pip.getTile(), list.getTile(i));
+			Assert.assertEquals(pip.getStartWire(), list.getStartWire(i));
+			Assert.assertEquals(pip.getEndWire(), list.getEndWire(i));
+			Assert.assertEquals(pip.getDirection(), list.getDirection(i));
+		}
+		int[] visited = {0};
+		list.forEachPIP((tile, start, end, direction) -> {
+			PIP pip = expected.get(visited[0]++);
+			Assert.assertSame(pip.getTile(), tile);
+			Assert.assertEquals(pip.getStartWire(), start);
+			Assert.assertEquals(pip.getEndWire(), end);
+			Assert.assertEquals(pip.getDirection(), direction);
+		});
+		Assert.assertEquals(expected.size(), visited[0]);
+	}
+
+	private PIP packedPIP(Random random) {
+		Tile tile = device.getTile(random.nextInt(3), random.nextInt(4));
+		PipDirection[] directions = PipDirection.values();
+		return new PIP(tile, random.nextInt(WIRE_LIMIT), random.nextInt(WIRE_LIMIT),
+				directions[random.nextInt(directions.length)]);
+	}
+
+	private PIP loosePIP(Random random) {
+		switch (random.nextInt(4)) {
+			case 0:
+				return new PIP(null, random.nextInt(100), random.nextInt(100), PipDirection.DIRECTIONAL);
+			case 1:
+				return new PIP(otherDevice.getTile(1, 1), 5, 6, PipDirection.BI_BUFONE);
+			case 2:
+				return new PIP(device.getTile(0, 1), WIRE_LIMIT + random.nextInt(100), 7, PipDirection.DIRECTIONAL);
+			default:
+				return new PIP(device.getTile(2, 3), 1, 2, null);
+		}
+	}
+
+	private PIP randomPIP(Random random) {
+		return random.nextInt(4) == 0 ? loosePIP(random) : packedPIP(random);
+	}
+
+	@Test
+	public void packedEntriesRoundTrip() {
+		Random random = new Random(1);
+		List<PIP> expected = new ArrayList<>();
+		PIPList list = new PIPList();
+		for (int i = 0; i < 100; i++) {
+			PIP pip = packedPIP(random);
+			expected.add(pip);
+			list.add(pip);
+		}
+		list.add(device.getTile(2, 3), WIRE_LIMIT - 1, 0, PipDirection.BI_UNBUFFERED);
+		expected.add(new PIP(device.getTile(2, 3), WIRE_LIMIT - 1, 0, PipDirection.BI_UNBUFFERED));
+		assertContents(expected, list);
+	}
+
+	@Test
+	public void looseEntriesRoundTrip() {
+		Random random = new Random(2);
+		List<PIP> expected = new ArrayList<>();
+		PIPList list = new PIPList();
+		list.add(packedPIP(random));
+		expected.add(list.get(0));
+		for (int i = 0; i < 20; i++) {
+			PIP pip = loosePIP(random);
+			expected.add(pip.clone());
+			list.add(pip);
+		}
+		assertContents(expected, list);
+	}
+
+	@Test
+	public void changingPIPsDoesNotChangeTheList() {
+		PIP packed = new PIP(device.getTile(1, 1), 3, 4, PipDirection.DIRECTIONAL);
+		PIP loose = new PIP(null, 3, 4, PipDirection.DIRECTIONAL);
+		PIPList list = new PIPList();
+		list.add(packed);
+		list.add(loose);
+		packed.setStartWire(9);
+		loose.setStartWire(9);
+		list.get(0).setEndWire(8);
+		list.get(1).setEndWire(8);
+		Assert.assertNotSame(list.get(1), list.get(1));
+		Assert.assertEquals(3, list.getStartWire(0));
+		Assert.assertEquals(3, list.getStartWire(1));
+		Assert.assertEquals(4, list.getEndWire(0));
+		Assert.assertEquals(4, list.getEndWire(1));
+	}
+
+	@Test
+	public void setAndRemoveMatchArrayList() {
+		Random random = new Random(3);
+		List<PIP> expected = new ArrayList<>();
+		PIPList list = new PIPList();
+		for (int step = 0; step < 2000; step++) {
+			int op = random.nextInt(6);
+			if (op <= 1 || expected.isEmpty()) {
+				PIP pip = randomPIP(random);
+				expected.add(pip.clone());
+				list.add(pip);
+			} else if (op == 2) {
+				int index = random.nextInt(expected.size() + 1);
+				PIP pip = randomPIP(random);
+				expected.add(index, pip.clone());
+				list.add(index, pip);
+			} else if (op == 3) {
+				int index = random.nextInt(expected.size());
+				PIP pip = randomPIP(random);
+				assertPIP(expected.set(index, pip.clone()), list.set(index, pip));
+			} else if (op == 4) {
+				int index = random.nextInt(expected.size());
+				assertPIP(expected.remove(index), list.remove(index));
+			} else {
+				PIP pip = expected.get(random.nextInt(expected.size()));
+				Assert.assertEquals(expected.indexOf(pip), list.indexOf(pip));
+				Assert.assertTrue(list.contains(pip.getTile(), pip.getStartWire(), pip.getEndWire()));
+				Assert.assertEquals(expected.remove(pip), list.remove(pip));
+			}
+		}
+		assertContents(expected, list);
+		list.clear();
+		Assert.assertTrue(list.isEmpty());
+		Assert.assertFalse(list.contains(new PIP(null, 1, 2)));
+	}
+
+	@Test
+	public void iteratorMatchesArrayList() {
+		Random random = new Random(4);
+		List<PIP> expected = new ArrayList<>();
+		PIPList list = new PIPList();
+		for (int i = 0; i < 200; i++) {
+			PIP pip = randomPIP(random);
+			expected.add(pip.clone());
+			list.add(pip);
+		}
+		Iterator<PIP> expectedIt = expected.iterator();
+		Iterator<PIP> it = list.iterator();
+		while (expectedIt.hasNext()) {
+			Assert.assertTrue(it.hasNext());
+			assertPIP(expectedIt.next(), it.next());
+			if (random.nextBoolean()) {
+				expectedIt.remove();
+				it.remove();
+			}
+		}
+		Assert.assertFalse(it.hasNext());
+		assertContents(expected, list);
+	}
+
+	@Test
+	public void copyIsIndependent() {
+		Random random = new Random(5);
+		List<PIP> expected = new ArrayList<>();
+		PIPList list = new PIPList();
+		for (int i = 0; i < 50; i++) {
+			PIP pip = randomPIP(random);
+			expected.add(pip.clone());
+			list.add(pip);
+		}
+		PIPList copy = new PIPList(list);
+		assertContents(expected, copy);
+		Assert.assertEquals(list, copy);
+
+		copy.set(0, new PIP(null, 1, 2, PipDirection.DIRECTIONAL));
+		copy.remove(copy.size() - 1);
+		copy.add(packedPIP(random));
+		assertContents(expected, list);
+
+		list.clear();
+		Assert.assertEquals(expected.size(), copy.size());
+	}
+}
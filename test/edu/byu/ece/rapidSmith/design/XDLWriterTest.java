@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.design;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.PrimitiveSite;
+import edu.byu.ece.rapidSmith.device.PrimitiveType;
+import edu.byu.ece.rapidSmith.device.Tile;
+import edu.byu.ece.rapidSmith.device.WireEnumerator;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class XDLWriterTest {
+
+	/**
+	 * Output of the sequential writer (Design.saveXDLFile before XDLWriter) for
+	 * {@link #sampleDesign(int)} with 2 instances: the part up to the nets, then
+	 * the nets without and with sorted PIPs.
+	 */
+	private static final String[] SEQUENTIAL_HEADER = {
+			"design \"sample\" null v3.2 ,",
+			"  cfg \"",
+			"       _DESIGN_PROP::P3_PLACED:",
+			"       _DESIGN_PROP:P3_PLACE_OPTIONS:EFFORT_LEVEL:high\";",
+			"",
+			"",
+			"inst \"inst1\" \"SLICEL\",unplaced  ,",
+			"  cfg \"",
+			"       _INST_PROP::XDL_SHAPE_MEMBER:Shape_1:0,0 A6LUT:lut1:#LUT:O6=A1 \"",
+			"  ;",
+			"inst \"inst0\" \"SLICEL\",placed INT_X0Y0 SITE_0  ,",
+			"  cfg \"",
+			"       _INST_PROP::XDL_SHAPE_MEMBER:Shape_0:0,0 A6LUT:lut0:#LUT:O6=A1 \"",
+			"  ;",
+			"",
+	};
+
+	private static final String[] SEQUENTIAL_NETS = {
+			"  net \"gnd\" gnd,",
+			"  ;",
+			"  net \"net0\" wire,",
+			"  outpin \"inst0\" O ,",
+			"  inpin \"inst1\" A1 ,",
+			"  pip INT_X1Y0 WIRE_1 => WIRE_4 , ",
+			"  pip INT_X2Y1 WIRE_1 == WIRE_3 , ",
+			"  pip INT_X0Y1 WIRE_1 -> WIRE_2 , ",
+			"  ;",
+			"  net \"net1\" wire,cfg \" _NET_PROP::IOSTANDARD:LVCMOS25\",",
+			"  outpin \"inst1\" O ,",
+			"  inpin \"inst0\" A1 ,",
+			"  pip INT_X0Y0 WIRE_2 => WIRE_4 , ",
+			"  pip INT_X1Y1 WIRE_2 == WIRE_3 , ",
+			"  ;",
+			"",
+	};
+
+	private static final String[] SEQUENTIAL_SORTED_NETS = {
+			"  net \"gnd\" gnd,",
+			"  ;",
+			"  net \"net0\" wire,",
+			"  outpin \"inst0\" O ,",
+			"  inpin \"inst1\" A1 ,",
+			"  pip INT_X0Y1 WIRE_1 -> WIRE_2 , ",
+			"  pip INT_X1Y0 WIRE_1 => WIRE_4 , ",
+			"  pip INT_X2Y1 WIRE_1 == WIRE_3 , ",
+			"  ;",
+			"  net \"net1\" wire,cfg \" _NET_PROP::IOSTANDARD:LVCMOS25\",",
+			"  outpin \"inst1\" O ,",
+			"  inpin \"inst0\" A1 ,",
+			"  pip INT_X0Y0 WIRE_2 => WIRE_4 , ",
+			"  pip INT_X1Y1 WIRE_2 == WIRE_3 , ",
+			"  ;",
+			"",
+	};
+
+	/**
+	 * A device of 2 x 3 tiles without routing resources.
+	 */
+	private static Device sampleDevice() {
+		return new Device() {{
+			setRows(2);
+			setColumns(3);
+			createTileArray();
+			for (int row = 0; row < 2; row++) {
+				for (int column = 0; column < 3; column++) {
+					Tile tile = getTile(row, column);
+					tile.setName("INT_X" + column + "Y" + row);
+					tile.setDevice(this);
+				}
+			}
+		}};
+	}
+
+	/**
+	 * Wire names WIRE_0 to WIRE_9.
+	 */
+	private static WireEnumerator sampleWires() {
+		String[] wires = new String[10];
+		for (int i = 0; i < wires.length; i++) {
+			wires[i] = "WIRE_" + i;
+		}
+		return new WireEnumerator() {
+			@Override
+			public String getWireName(int wire) {
+				return wires[wire];
+			}
+
+			@Override
+			public String[] getWires() {
+				return wires;
+			}
+		};
+	}
+
+	/**
+	 * A design without a part, with the given number of instances, each driving
+	 * a net to the next instance, and a ground net.
+	 */
+	static Design sampleDesign(int instances) {
+		Device dev = sampleDevice();
+		Design design = new Design();
+		design.setName("sample");
+		design.setDevice(dev);
+		design.setWireEnumerator(sampleWires());
+		design.addAttribute("_DESIGN_PROP", "", "P3_PLACED:");
+		design.addAttribute("_DESIGN_PROP", "P3_PLACE_OPTIONS", "EFFORT_LEVEL:high");
+
+		Instance[] insts = new Instance[instances];
+		for (int i = 0; i < instances; i++) {
+			Instance inst = new Instance("inst" + i, PrimitiveType.SLICEL);
+			inst.addAttribute("A6LUT", "lut" + i, "#LUT:O6=A1");
+			inst.addAttribute("_INST_PROP", "", "XDL_SHAPE_MEMBER:Shape_" + i + ":0,0");
+			if (i % 2 == 0) {
+				PrimitiveSite site = new PrimitiveSite();
+				site.setName("SITE_" + i);
+				site.setTile(dev.getTile((i / 3) % 2, i % 3));
+				inst.place(site);
+			}
+			new Pin(true, "O", inst);
+			new Pin(false, "A1", inst);
+			design.addInstance(inst);
+			insts[i] = inst;
+		}
+		PipDirection[] directions = PipDirection.values();
+		for (int i = 0; i < instances; i++) {
+			Net net = new Net("net" + i, NetType.WIRE);
+			if (i % 2 == 1) {
+				net.addAttribute("_NET_PROP", "", "IOSTANDARD:LVCMOS25");
+			}
+			net.addPin(insts[i].getPin("O"));
+			net.addPin(insts[(i + 1) % instances].getPin("A1"));
+			// Not in tile order, so sorting the PIPs changes the output
+			for (int p = 2 - i % 2; p >= 0; p--) {
+				int t = (i + 2 * p + 3) % 6;
+				int wire = (i + p) % 8;
+				net.addPIP(new PIP(dev.getTile(t / 3, t % 3), (wire + 1 - p) & 7, wire + 2, directions[(i + p) % directions.length]));
+			}
+			design.addNet(net);
+		}
+		design.addNet(new Net("gnd", NetType.GND));
+		return design;
+	}
+
+	private static String lines(String[]... parts) {
+		String nl = System.getProperty("line.separator");
+		StringBuilder sb = new StringBuilder();
+		for (String[] part : parts) {
+			for (String line : part) {
+				sb.append(line).append(nl);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static String write(Design design, boolean sortPips, int threads) throws IOException {
+		Path file = Files.createTempFile("xdlWriterTest", ".xdl");
+		try {
+			new XDLWriter().setSortPips(sortPips).setThreads(threads).write(design, file);
+			return new String(Files.readAllBytes(file));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void matchesSequentialWriter() throws IOException {
+		Design design = sampleDesign(2);
+		for (int threads : new int[]{1, 4}) {
+			Assert.assertEquals(lines(SEQUENTIAL_HEADER, SEQUENTIAL_NETS), write(design, false, threads));
+			Assert.assertEquals(lines(SEQUENTIAL_HEADER, SEQUENTIAL_SORTED_NETS), write(design, true, threads));
+		}
+	}
+
+	@Test
+	public void parallelOutputMatchesSingleThread() throws IOException {
+		// Several chunks of instances and nets
+		Design design = sampleDesign(1000);
+		for (boolean sortPips : new boolean[]{false, true}) {
+			String expected = write(design, sortPips, 1);
+			Assert.assertEquals(expected, write(design, sortPips, 4));
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.design.parser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.byu.ece.rapidSmith.design.Design;
+import edu.byu.ece.rapidSmith.device.Device;
+
+public class DesignParserTest {
+
+	private static final String HEADER =
+			"# Comment before the header\n" +
+			"design \"top\" xc4vfx12ff668-10 v3.2 ,\n" +
+			"  cfg \"\";\n" +
+			"inst \"a\" \"SLICEL\",placed CLB_X1Y1 SLICE_X0Y0 ,\n" +
+			"  cfg \"\";\n";
+
+	private static Path write(String xdl) throws IOException {
+		Path file = Files.createTempFile("designParserTest", ".xdl");
+		file.toFile().deleteOnExit();
+		Files.write(file, xdl.getBytes(StandardCharsets.US_ASCII));
+		return file;
+	}
+
+	@Test
+	public void readsDesignNameFromHeader() throws IOException {
+		Assert.assertEquals("top", new DesignParser(write(HEADER)).parseDesignName());
+	}
+
+	@Test
+	public void readsHardMacroName() throws IOException {
+		String xdl = "design \"__XILINX_NMC_MACRO\" xc4vfx12ff668-10;\nmodule \"m\" \"a\" , cfg \"\";\n";
+		Assert.assertEquals("__XILINX_NMC_MACRO", new DesignParser(write(xdl)).parseDesignName());
+	}
+
+	@Test
+	public void rejectsOtherPartBeforeLoadingIt() throws IOException {
+		Device dev = new Device() {{
+			partName = "xc5vlx20tff323-2";
+		}};
+		Design design = new Design();
+		try {
+			design.loadXDLFile(write(HEADER), dev);
+			Assert.fail("Design for another part was loaded");
+		} catch (IllegalArgumentException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains("xc4vfx12ff668-10"));
+		}
+		Assert.assertNull(design.getPartName());
+		Assert.assertNull(design.getDevice());
+		Assert.assertNull(design.getWireEnumerator());
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.device;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import edu.byu.ece.rapidSmith.design.Design;
+import edu.byu.ece.rapidSmith.design.Instance;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SiteSpatialIndexTest {
+
+	private static final int ROWS = 14;
+	private static final int COLUMNS = 10;
+
+	private Device device;
+	private Design design;
+
+	/**
+	 * A device where every tile has no site, a SLICEL, a SLICEM or both.
+	 */
+	private static Device sampleDevice(long seed) {
+		Random random = new Random(seed);
+		return new Device() {{
+			partName = "xc5vlx20tff323";
+			setRows(ROWS);
+			setColumns(COLUMNS);
+			createTileArray();
+			for (int row = 0; row < ROWS; row++) {
+				for (int column = 0; column < COLUMNS; column++) {
+					Tile tile = getTile(row, column);
+					tile.setName("CLB_X" + column + "Y" + row);
+					tile.setDevice(this);
+					List<PrimitiveSite> sites = new ArrayList<>();
+					int kind = random.nextInt(4);
+					if ((kind & 1) != 0) {
+						sites.add(site(tile, PrimitiveType.SLICEM, 2 * column, row));
+					}
+					if ((kind & 2) != 0) {
+						sites.add(site(tile, PrimitiveType.SLICEL, 2 * column + 1, row));
+					}
+					if (!sites.isEmpty()) {
+						tile.setPrimitiveSites(sites.toArray(new PrimitiveSite[sites.size()]));
+					}
+				}
+			}
+		}};
+	}
+
+	private static PrimitiveSite site(Tile tile, PrimitiveType type, int x, int y) {
+		PrimitiveSite site = new PrimitiveSite();
+		site.setName("SLICE_X" + x + "Y" + y);
+		site.setTile(tile);
+		site.setType(type);
+		return site;
+	}
+
+	private static int distance(PrimitiveSite site, int column, int row) {
+		return Math.abs(site.getTile().getColumn() - column) + Math.abs(site.getTile().getRow() - row);
+	}
+
+	/**
+	 * The distance of the nearest free site found by scanning all compatible sites,
+	 * or -1 if all of them are used.
+	 */
+	private int bruteForceDistance(PrimitiveType type, int column, int row) {
+		int best = -1;
+		for (PrimitiveSite site : device.getAllCompatibleSites(type)) {
+			if (design.isPrimitiveSiteUsed(site))
+				continue;
+			int d = distance(site, column, row);
+			if (best < 0 || d < best) {
+				best = d;
+			}
+		}
+		return best;
+	}
+
+	private void assertNearestFree(PrimitiveType type) {
+		for (int row = 0; row < ROWS; row++) {
+			for (int column = 0; column < COLUMNS; column++) {
+				PrimitiveSite site = design.getNearestFreePrimitiveSite(type, device.getTile(row, column));
+				int expected = bruteForceDistance(type, column, row);
+				if (expected < 0) {
+					Assert.assertNull(site);
+					continue;
+				}
+				Assert.assertNotNull(site);
+				Assert.assertFalse(site.getName(), design.isPrimitiveSiteUsed(site));
+				Assert.assertTrue(site.isCompatiblePrimitiveType(type));
+				Assert.assertEquals(type + " near " + column + "/" + row, expected, distance(site, column, row));
+			}
+		}
+	}
+
+	@Before
+	public void createDesign() {
+		device = sampleDevice(7);
+		design = new Design();
+		design.setDevice(device);
+	}
+
+	@Test
+	public void nearestFreeSiteMatchesBruteForce() {
+		Random random = new Random(11);
+		List<Instance> placed = new ArrayList<>();
+		// Create the occupancy early so it is kept up to date by placing
+		assertNearestFree(PrimitiveType.SLICEL);
+		for (PrimitiveSite site : device.getAllCompatibleSites(PrimitiveType.SLICEL)) {
+			if (random.nextInt(10) < 7) {
+				Instance inst = new Instance("inst" + placed.size(), site.getType());
+				design.addInstance(inst);
+				inst.place(site);
+				placed.add(inst);
+			}
+		}
+		assertNearestFree(PrimitiveType.SLICEL);
+		assertNearestFree(PrimitiveType.SLICEM);
+
+		// Freed sites are found again
+		for (int i = 0; i < placed.size(); i += 3) {
+			placed.get(i).unPlace();
+		}
+		assertNearestFree(PrimitiveType.SLICEL);
+		assertNearestFree(PrimitiveType.SLICEM);
+	}
+
+	@Test
+	public void fullDeviceHasNoFreeSite() {
+		int i = 0;
+		for (PrimitiveSite site : device.getAllCompatibleSites(PrimitiveType.SLICEL)) {
+			Instance inst = new Instance("inst" + i++, site.getType());
+			design.addInstance(inst);
+			inst.place(site);
+		}
+		// Created after placing, from the used sites of the design
+		Assert.assertEquals(i, design.getSiteOccupancy().getNumberOfUsedSites());
+		Assert.assertEquals(0, design.getSiteOccupancy().getNumberOfFreeSites(PrimitiveType.SLICEM));
+		assertNearestFree(PrimitiveType.SLICEL);
+		Assert.assertNull(design.getNearestFreePrimitiveSite(PrimitiveType.SLICEL, device.getTile(0, 0)));
+	}
+
+	@Test
+	public void nearestSitesAreSortedByDistance() {
+		SiteSpatialIndex index = device.getSiteSpatialIndex();
+		PrimitiveSite[] all = device.getAllCompatibleSites(PrimitiveType.SLICEL);
+		List<Integer> expected = new ArrayList<>();
+		for (PrimitiveSite site : all) {
+			expected.add(distance(site, 4, 6));
+		}
+		expected.sort(null);
+		for (int k : new int[]{1, 5, all.length, all.length + 3}) {
+			List<PrimitiveSite> nearest = index.getNearestSites(PrimitiveType.SLICEL, true, 4, 6, k, null);
+			Assert.assertEquals(Math.min(k, all.length), nearest.size());
+			for (int n = 0; n < nearest.size(); n++) {
+				Assert.assertEquals(expected.get(n).intValue(), distance(nearest.get(n), 4, 6));
+			}
+		}
+		// Without compatible types only SLICEL sites are returned
+		for (PrimitiveSite site : index.getNearestSites(PrimitiveType.SLICEL, false, 4, 6, all.length, null)) {
+			Assert.assertEquals(PrimitiveType.SLICEL, site.getType());
+		}
+	}
+}
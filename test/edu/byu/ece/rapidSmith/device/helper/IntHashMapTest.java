@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.device.helper;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IntHashMapTest {
+
+	@Test
+	public void behavesLikeHashMap() {
+		Random random = new Random(42);
+		IntHashMap<String> map = new IntHashMap<>();
+		HashMap<Integer,String> expected = new HashMap<>();
+		for (int i = 0; i < 20000; i++) {
+			int key = random.nextInt(2000) - 10;
+			switch (random.nextInt(3)) {
+				case 0:
+				case 1:
+					String value = Integer.toString(random.nextInt());
+					Assert.assertEquals(expected.put(key, value), map.put(key, value));
+					break;
+				default:
+					Assert.assertEquals(expected.remove(key), map.remove(key));
+			}
+			Assert.assertEquals(expected.size(), map.size());
+		}
+		for (int key = -10; key < 1990; key++) {
+			Assert.assertEquals(expected.get(key), map.get(key));
+			Assert.assertEquals(expected.containsKey(key), map.containsKey(key));
+		}
+		Assert.assertEquals(expected, map);
+		Assert.assertEquals(expected.hashCode(), map.hashCode());
+	}
+
+	@Test
+	public void stringIntMapBehavesLikeHashMap() {
+		Random random = new Random(7);
+		StringIntHashMap map = new StringIntHashMap();
+		HashMap<String,Integer> expected = new HashMap<>();
+		for (int i = 0; i < 20000; i++) {
+			String key = "PIN" + random.nextInt(500);
+			if (random.nextInt(3) < 2) {
+				int value = random.nextInt(100000);
+				expected.put(key, value);
+				map.put(key, value);
+			} else {
+				Assert.assertEquals(expected.remove(key), map.remove(key));
+			}
+		}
+		for (int k = 0; k < 500; k++) {
+			String key = "PIN" + k;
+			Assert.assertEquals(expected.get(key), map.get(key));
+			int value = expected.containsKey(key) ? expected.get(key) : StringIntHashMap.NO_VALUE;
+			Assert.assertEquals(value, map.getInt(key));
+		}
+		Assert.assertEquals(expected, map);
+	}
+}
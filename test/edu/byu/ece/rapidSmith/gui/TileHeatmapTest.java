@@ -0,0 +1,220 @@
+/*
+ * _______________________________________________________________________________
+ *
+ *  Copyright (c) 2012 TU Dresden, Chair for Embedded Systems
+ *  Copyright (c) 2013-2016 TU Darmstadt, Computer Systems Group
+ *  (http://www.rs.tu-darmstadt.de) All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement: "This product includes
+ *     software developed by the TU Dresden Chair for Embedded Systems, TU Darmstadt Computer Systems Group and
+ *     its contributors."
+ *
+ *  4. Neither the name of the TU Dresden Chair for Embedded Systems, TU Darmstadt Computer Systems Group nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY TU DRESDEN CHAIR FOR EMBEDDED SYSTEMS, TU DARMSTADT COMPUTER SYSTEMS GROUP AND
+ *  CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ *  BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ *  FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ *  REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ *  TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ *  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ *  NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * _______________________________________________________________________________
+ */
+
+package edu.byu.ece.rapidSmith.gui;
+
+import edu.byu.ece.rapidSmith.design.Design;
+import edu.byu.ece.rapidSmith.design.Instance;
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.PrimitiveSite;
+import edu.byu.ece.rapidSmith.device.PrimitiveType;
+import edu.byu.ece.rapidSmith.device.Tile;
+import edu.byu.ece.rapidSmith.device.WireConnection;
+import edu.byu.ece.rapidSmith.device.WireDirection;
+import edu.byu.ece.rapidSmith.device.WireEnumerator;
+import edu.byu.ece.rapidSmith.device.helper.WireHashMap;
+import edu.byu.ece.rapidSmith.router.pathfinder.PathfinderNode;
+import edu.byu.ece.rapidSmith.router.pathfinder.PathfinderNodeFactory;
+import edu.byu.ece.rapidSmith.router.wireCluster.WireClusterIndex;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TileHeatmapTest {
+
+	private static final int ROWS = 3;
+	private static final int COLUMNS = 4;
+
+	private static final WireEnumerator WIRES = new WireEnumerator() {
+		@Override
+		public WireDirection getWireDirection(int wire) {
+			return WireDirection.NONE;
+		}
+
+		@Override
+		public String getWireName(int wire) {
+			return "W" + wire;
+		}
+	};
+
+	/**
+	 * In every tile wire 1 and wire 2 of the tile to the right form one node, wire 2 drives wire 3 through a PIP.
+	 * Every tile has as many SLICEL sites as its column number.
+	 */
+	private static Device device() {
+		return new Device() {{
+			partName = "xc5vlx20tff323";
+			setRows(ROWS);
+			setColumns(COLUMNS);
+			createTileArray();
+			for (int row = 0; row < ROWS; row++) {
+				for (int column = 0; column < COLUMNS; column++) {
+					Tile tile = getTile(row, column);
+					tile.setName("INT_X" + column + "Y" + row);
+					tile.setDevice(this);
+					tile.setWireHashMap(new WireHashMap());
+					//Offsets point backwards: the target is at (row - rowOffset, column - columnOffset)
+					tile.addConnection(1, new WireConnection(2, 0, -1, false));
+					tile.addConnection(2, new WireConnection(3, 0, 0, true));
+					if (column > 0) {
+						PrimitiveSite[] sites = new PrimitiveSite[column];
+						for (int s = 0; s < column; s++) {
+							sites[s] = new PrimitiveSite();
+							sites[s].setName("SLICE_X" + (2 * column + s) + "Y" + row);
+							sites[s].setTile(tile);
+							sites[s].setType(PrimitiveType.SLICEL);
+						}
+						tile.setPrimitiveSites(sites);
+					}
+				}
+			}
+		}
+
+			@Override
+			public WireEnumerator getWireEnumerator() {
+				return WIRES;
+			}
+		};
+	}
+
+	private static void assertValues(float[][] expected, TileHeatmap map) {
+		for (int row = 0; row < ROWS; row++) {
+			for (int column = 0; column < COLUMNS; column++) {
+				Assert.assertEquals(map.getTitle() + " " + column + "/" + row, expected[row][column],
+						map.getValue(row, column), 1e-6);
+			}
+		}
+	}
+
+	@Test
+	public void congestionIsAddedUpPerTile() {
+		Device dev = device();
+		PathfinderNodeFactory factory = new PathfinderNodeFactory(WireClusterIndex.build(dev));
+
+		//Spans tiles 0/0 and 1/0, overused in the first iteration and ripped up since
+		PathfinderNode ripped = factory.getNode(dev.getTile(0, 0), 1);
+		ripped.setCurrentUsage(3);
+		ripped.updateGlobalIteration(1);
+		ripped.setCurrentUsage(1);
+		//Spans tiles 1/1 and 2/1, overused by two
+		PathfinderNode overused = factory.getNode(dev.getTile(1, 1), 1);
+		overused.setCurrentUsage(3);
+		//Only in tile 3/2, overused in both iterations
+		PathfinderNode single = factory.getNode(dev.getTile(2, 3), 3);
+		single.setCurrentUsage(2);
+		single.updateGlobalIteration(2);
+		//Used once, no overuse
+		factory.getNode(dev.getTile(2, 0), 3).setCurrentUsage(1);
+
+		WireClusterIndex index = factory.getClusterIndex();
+		int untouched = index.getClusterId(dev.getTile(0, 3), 3);
+		Assert.assertNull(factory.getCreatedNode(untouched));
+
+		TileHeatmap present = new TileHeatmap(dev, "present");
+		TileHeatmap historical = new TileHeatmap(dev, "historical");
+		float h = 1.5f + 1;
+		float[][] expectedPresent = {
+				{0, 0, 0, 0},
+				{0, 2, 2, 0},
+				{0, 0, 0, 1}};
+		float[][] expectedHistorical = {
+				{1, 1, 0, 0},
+				{0, 0, 0, 0},
+				{0, 0, 0, h}};
+		for (int pass = 0; pass < 2; pass++) {
+			present.clear();
+			historical.clear();
+			TileHeatmap.collectCongestion(factory, present, historical);
+			assertValues(expectedPresent, present);
+			assertValues(expectedHistorical, historical);
+		}
+		Assert.assertEquals(h, historical.getMax(), 1e-6);
+		//Nodes are not created by collecting
+		Assert.assertNull(factory.getCreatedNode(untouched));
+
+		//Either map may be left out
+		TileHeatmap presentOnly = new TileHeatmap(dev, "present");
+		TileHeatmap.collectCongestion(factory, presentOnly, null);
+		assertValues(expectedPresent, presentOnly);
+	}
+
+	@Test
+	public void siteUtilizationIsAFraction() {
+		Design design = new Design();
+		design.setDevice(device());
+		List<Instance> instances = new ArrayList<>();
+		for (int row = 0; row < ROWS; row++) {
+			for (int column = 1; column < COLUMNS; column++) {
+				//Tiles of row r have r sites used, at most all of them
+				PrimitiveSite[] sites = design.getDevice().getTile(row, column).getPrimitiveSites();
+				for (int s = 0; s < Math.min(row, sites.length); s++) {
+					Instance inst = new Instance("inst" + instances.size(), PrimitiveType.SLICEL);
+					design.addInstance(inst);
+					inst.place(sites[s]);
+					instances.add(inst);
+				}
+			}
+		}
+		Instance unplaced = new Instance("unplaced", PrimitiveType.SLICEL);
+		design.addInstance(unplaced);
+
+		TileHeatmap utilization = TileHeatmap.siteUtilization(design);
+		for (int row = 0; row < ROWS; row++) {
+			for (int column = 0; column < COLUMNS; column++) {
+				float value = utilization.getValue(row, column);
+				Assert.assertTrue(value >= 0 && value <= 1);
+				float expected = column == 0 ? 0 : Math.min(row, column) / (float) column;
+				Assert.assertEquals(column + "/" + row, expected, value, 1e-6);
+			}
+		}
+		Assert.assertEquals(1, utilization.getMax(), 1e-6);
+
+		//Moving an instance only counts it at its new site
+		Instance moved = instances.get(0);
+		Tile from = moved.getTile();
+		moved.place(design.getDevice().getTile(0, 3).getPrimitiveSites()[0]);
+		TileHeatmap after = TileHeatmap.siteUtilization(design);
+		Assert.assertEquals(utilization.getValue(from) - 1f / from.getPrimitiveSites().length, after.getValue(from), 1e-6);
+		Assert.assertEquals(1f / 3, after.getValue(0, 3), 1e-6);
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.placer;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import edu.byu.ece.rapidSmith.design.Design;
+import edu.byu.ece.rapidSmith.design.Instance;
+import edu.byu.ece.rapidSmith.design.Net;
+import edu.byu.ece.rapidSmith.design.NetType;
+import edu.byu.ece.rapidSmith.design.Pin;
+import edu.byu.ece.rapidSmith.device.PrimitiveSite;
+import edu.byu.ece.rapidSmith.device.PrimitiveType;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AnalyticalPlacerTest {
+
+	/** Anchor weight of the first solve, see AnalyticalPlacer */
+	private static final double MIN_ANCHOR_WEIGHT = 1E-3;
+
+	private static Instance instance(Design design, String name) {
+		Instance inst = new Instance(name, PrimitiveType.SLICEL);
+		design.addInstance(inst);
+		return inst;
+	}
+
+	private static void addNet(Design design, String name, Instance... insts) {
+		Net net = new Net(name, NetType.WIRE);
+		for (int p = 0; p < insts.length; p++) {
+			Pin pin = new Pin(p == 0, (p == 0 ? "O" : "I") + name, insts[p]);
+			insts[p].addPin(pin);
+			net.addPin(pin);
+		}
+		design.addNet(net);
+	}
+
+	/**
+	 * Solves the quadratic wirelength system of the model with Gaussian elimination:
+	 * clique nets with weight 1/(pins-1) and the first iteration's anchors to the
+	 * start positions.
+	 */
+	private static double[][] solveDirectly(PlacementModel model, double[] startX, double[] startY) {
+		int n = model.getNumMovable();
+		double[][] a = new double[n][n];
+		double[][] b = new double[2][n];
+		int[] sites = model.getInitialSites();
+		int[] netInsts = model.getNetInstances();
+		for (int i = 0; i < n; i++) {
+			a[i][i] = MIN_ANCHOR_WEIGHT;
+			b[0][i] = MIN_ANCHOR_WEIGHT * startX[i];
+			b[1][i] = MIN_ANCHOR_WEIGHT * startY[i];
+		}
+		for (int net = 0; net < model.getNumNets(); net++) {
+			int start = model.getNetStart(net);
+			int end = model.getNetEnd(net);
+			double w = 1.0 / (end - start - 1);
+			for (int p = start; p < end; p++) {
+				for (int q = start; q < end; q++) {
+					int i = netInsts[p];
+					int j = netInsts[q];
+					if (i == j || i >= n)
+						continue;
+					a[i][i] += w;
+					if (j < n) {
+						a[i][j] -= w;
+					} else {
+						b[0][i] += w * model.getSiteX(sites[j]);
+						b[1][i] += w * model.getSiteY(sites[j]);
+					}
+				}
+			}
+		}
+		for (int col = 0; col < n; col++) {
+			for (int row = col + 1; row < n; row++) {
+				double f = a[row][col] / a[col][col];
+				for (int k = col; k < n; k++)
+					a[row][k] -= f * a[col][k];
+				b[0][row] -= f * b[0][col];
+				b[1][row] -= f * b[1][col];
+			}
+		}
+		double[][] res = new double[2][n];
+		for (int row = n - 1; row >= 0; row--) {
+			for (int dim = 0; dim < 2; dim++) {
+				double sum = b[dim][row];
+				for (int k = row + 1; k < n; k++)
+					sum -= a[row][k] * res[dim][k];
+				res[dim][row] = sum / a[row][row];
+			}
+		}
+		return res;
+	}
+
+	private static AnalyticalPlacer firstSolve(PlacementModel model) {
+		AnalyticalPlacer placer = new AnalyticalPlacer(model);
+		placer.setIterations(1);
+		placer.setCGTolerance(1E-12);
+		placer.place();
+		return placer;
+	}
+
+	@Test
+	public void chainBetweenFixedInstancesIsEvenlySpaced() {
+		Design design = new Design();
+		design.setDevice(SimulatedAnnealingPlacerTest.sampleDevice());
+		Instance left = instance(design, "f0");
+		Instance right = instance(design, "f1");
+		left.place(design.getDevice().getPrimitiveSite("SLICE_X0Y3"));
+		right.place(design.getDevice().getPrimitiveSite("SLICE_X10Y3"));
+		Instance[] chain = new Instance[4];
+		for (int i = 0; i < chain.length; i++) {
+			chain[i] = instance(design, "m" + i);
+		}
+		addNet(design, "n0", left, chain[0]);
+		for (int i = 0; i + 1 < chain.length; i++) {
+			addNet(design, "n" + (i + 1), chain[i], chain[i + 1]);
+		}
+		addNet(design, "n4", chain[3], right);
+
+		PlacementModel model = new PlacementModel(design, true);
+		Assert.assertEquals(4, model.getNumMovable());
+		AnalyticalPlacer placer = firstSolve(model);
+		// The weak anchors to the center of the device hardly move the chain
+		double[] x = placer.getGlobalX();
+		double[] y = placer.getGlobalY();
+		for (int i = 0; i < chain.length; i++) {
+			Assert.assertEquals(2 * (i + 1), x[i], 0.01);
+			Assert.assertEquals(3, y[i], 0.01);
+		}
+		Assert.assertTrue(placer.getCGIterations() > 0);
+
+		// Legalized on the row of the fixed instances, in chain order
+		for (int i = 0; i < chain.length; i++) {
+			Assert.assertEquals("SLICE_X" + 2 * (i + 1) + "Y3", chain[i].getPrimitiveSite().getName());
+		}
+		Assert.assertEquals("SLICE_X0Y3", left.getPrimitiveSite().getName());
+		Assert.assertEquals("SLICE_X10Y3", right.getPrimitiveSite().getName());
+	}
+
+	@Test
+	public void solutionMatchesDirectSolve() {
+		Design design = SimulatedAnnealingPlacerTest.sampleDesign(40, 30, 13);
+		// Some fixed instances, the others start unplaced
+		for (int i = 0; i < 40; i += 7) {
+			design.getInstance("inst" + i).place(design.getDevice().getPrimitiveSite("SLICE_X" + i % 12 + "Y" + i / 4));
+		}
+		PlacementModel model = new PlacementModel(design, true);
+		Assert.assertEquals(34, model.getNumMovable());
+		// Unplaced instances start at the center of their sites
+		double[] start = new double[model.getNumMovable()];
+		Arrays.fill(start, 5.5);
+		double[][] expected = solveDirectly(model, start, start);
+
+		AnalyticalPlacer placer = firstSolve(model);
+		Assert.assertArrayEquals(expected[0], placer.getGlobalX(), 1E-6);
+		Assert.assertArrayEquals(expected[1], placer.getGlobalY(), 1E-6);
+
+		Set<PrimitiveSite> used = new HashSet<>();
+		for (Instance inst : design.getInstances()) {
+			Assert.assertTrue(used.add(inst.getPrimitiveSite()));
+		}
+	}
+}
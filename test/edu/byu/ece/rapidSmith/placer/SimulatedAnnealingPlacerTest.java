@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.placer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import edu.byu.ece.rapidSmith.design.Design;
+import edu.byu.ece.rapidSmith.design.Instance;
+import edu.byu.ece.rapidSmith.design.Net;
+import edu.byu.ece.rapidSmith.design.NetType;
+import edu.byu.ece.rapidSmith.design.Pin;
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.PrimitiveSite;
+import edu.byu.ece.rapidSmith.device.PrimitiveType;
+import edu.byu.ece.rapidSmith.device.Tile;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SimulatedAnnealingPlacerTest {
+
+	private static final int ROWS = 12;
+	private static final int COLUMNS = 12;
+
+	/** Offset of the temperature in a checkpoint: magic, seed, move counter and step */
+	private static final int CHECKPOINT_TEMPERATURE = 8 + 8 + 8 + 4;
+
+	/**
+	 * A device with one SLICEL site in every tile.
+	 */
+	static Device sampleDevice() {
+		return new Device() {{
+			partName = "xc5vlx20tff323";
+			setRows(ROWS);
+			setColumns(COLUMNS);
+			createTileArray();
+			for (int row = 0; row < ROWS; row++) {
+				for (int column = 0; column < COLUMNS; column++) {
+					Tile tile = getTile(row, column);
+					tile.setName("CLBLL_X" + column + "Y" + row);
+					tile.setDevice(this);
+					PrimitiveSite site = new PrimitiveSite();
+					site.setName("SLICE_X" + column + "Y" + row);
+					site.setTile(tile);
+					site.setType(PrimitiveType.SLICEL);
+					tile.setPrimitiveSites(new PrimitiveSite[]{site});
+					getPrimitiveSites().put(site.getName(), site);
+				}
+			}
+		}};
+	}
+
+	/**
+	 * An unplaced design of a chain of instances plus random nets of 2 to 5 instances.
+	 */
+	static Design sampleDesign(int instances, int randomNets, long seed) {
+		Design design = new Design();
+		design.setDevice(sampleDevice());
+		Random random = new Random(seed);
+		for (int i = 0; i < instances; i++) {
+			Instance inst = new Instance("inst" + i, PrimitiveType.SLICEL);
+			design.addInstance(inst);
+		}
+		for (int i = 0; i + 1 < instances; i++) {
+			addNet(design, "chain" + i, i, i + 1);
+		}
+		for (int n = 0; n < randomNets; n++) {
+			int[] ids = random.ints(0, instances).distinct().limit(2 + random.nextInt(4)).toArray();
+			addNet(design, "net" + n, ids);
+		}
+		return design;
+	}
+
+	private static void addNet(Design design, String name, int... ids) {
+		Net net = new Net(name, NetType.WIRE);
+		for (int p = 0; p < ids.length; p++) {
+			Instance inst = design.getInstance("inst" + ids[p]);
+			Pin pin = new Pin(p == 0, (p == 0 ? "O" : "I") + name, inst);
+			inst.addPin(pin);
+			net.addPin(pin);
+		}
+		design.addNet(net);
+	}
+
+	private static void assertLegal(Design design) {
+		Set<PrimitiveSite> used = new HashSet<>();
+		for (Instance inst : design.getInstances()) {
+			Assert.assertTrue(inst.getName(), inst.isPlaced());
+			Assert.assertTrue(used.add(inst.getPrimitiveSite()));
+			Assert.assertSame(inst, design.getInstanceAtPrimitiveSite(inst.getPrimitiveSite()));
+		}
+	}
+
+	/**
+	 * Runs one greedy pass over the current placement of the design by resuming
+	 * from a checkpoint whose temperature is 0.
+	 */
+	private static SimulatedAnnealingPlacer greedyPass(Design design, long seed, int batchSize) throws IOException {
+		PlacementModel model = new PlacementModel(design, false);
+		SimulatedAnnealingPlacer placer = new SimulatedAnnealingPlacer(model, seed);
+		placer.setBatchSize(batchSize);
+		Path checkpoint = Files.createTempFile("annealing", ".ckpt");
+		checkpoint.toFile().deleteOnExit();
+		placer.saveCheckpoint(checkpoint);
+		byte[] bytes = Files.readAllBytes(checkpoint);
+		ByteBuffer.wrap(bytes).putDouble(CHECKPOINT_TEMPERATURE, 0);
+		Files.write(checkpoint, bytes);
+		placer.loadCheckpoint(checkpoint);
+		placer.place();
+		Assert.assertEquals(0, placer.getTemperature(), 0);
+		return placer;
+	}
+
+	@Test
+	public void costNeverRisesWithoutTemperature() throws IOException {
+		Design design = sampleDesign(100, 60, 3);
+		PlacementModel model = new PlacementModel(design, false);
+		// Random start
+		SimulatedAnnealingPlacer start = new SimulatedAnnealingPlacer(model, 1);
+		model.apply(start.getPlacement());
+		long initial = model.getTotalHPWL(start.getPlacement());
+		long cost = initial;
+
+		// Large batches make many moves stale, they are evaluated again or dropped
+		for (int round = 0; round < 6; round++) {
+			SimulatedAnnealingPlacer placer = greedyPass(design, round, round % 2 == 0 ? 4096 : 7);
+			PlacementModel placed = new PlacementModel(design, false);
+			long after = placed.getTotalHPWL(placed.getInitialSites());
+			Assert.assertEquals(after, placer.getTotalCost());
+			Assert.assertTrue(after + " > " + cost, after <= cost);
+			assertLegal(design);
+			cost = after;
+		}
+		Assert.assertTrue(cost < initial);
+	}
+
+	@Test
+	public void annealingImprovesRandomPlacement() {
+		Design design = sampleDesign(100, 60, 5);
+		PlacementModel model = new PlacementModel(design, false);
+		SimulatedAnnealingPlacer placer = new SimulatedAnnealingPlacer(model, 9);
+		long initial = model.getTotalHPWL(placer.getPlacement());
+		placer.setInnerNum(0.5);
+		placer.place();
+		assertLegal(design);
+		Assert.assertEquals(model.getTotalHPWL(placer.getPlacement()), placer.getTotalCost());
+		Assert.assertTrue(placer.getTotalCost() < initial / 2);
+	}
+
+	@Test
+	public void resultDoesNotDependOnThreads() {
+		int[] expected = null;
+		for (int threads : new int[]{1, 4}) {
+			Design design = sampleDesign(60, 40, 8);
+			SimulatedAnnealingPlacer placer = new SimulatedAnnealingPlacer(new PlacementModel(design, false), 4);
+			placer.setThreads(threads);
+			placer.setBatchSize(64);
+			placer.setInnerNum(0.3);
+			placer.place();
+			if (expected == null) {
+				expected = placer.getPlacement();
+			} else {
+				Assert.assertArrayEquals(expected, placer.getPlacement());
+			}
+		}
+	}
+
+	@Test
+	public void smallDesignReachesOptimum() {
+		// Two instances on one net end up in neighboring tiles, and the annealer stops
+		Design design = sampleDesign(2, 0, 1);
+		SimulatedAnnealingPlacer placer = new SimulatedAnnealingPlacer(new PlacementModel(design, false), 2);
+		placer.place();
+		Assert.assertEquals(1, placer.getTotalCost());
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.router;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import edu.byu.ece.rapidSmith.design.Net;
+import edu.byu.ece.rapidSmith.design.NetType;
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.Tile;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResourceOccupancyTest {
+
+	private final Device device = new Device() {{
+		setRows(4);
+		setColumns(5);
+		createTileArray();
+		for (int row = 0; row < 4; row++) {
+			for (int column = 0; column < 5; column++) {
+				Tile tile = getTile(row, column);
+				tile.setName("INT_X" + column + "Y" + row);
+				tile.setDevice(this);
+			}
+		}
+	}};
+
+	private final Net[] nets = new Net[6];
+
+	{
+		for (int i = 0; i < nets.length; i++) {
+			nets[i] = new Net("net" + i, NetType.WIRE);
+		}
+	}
+
+	/**
+	 * The expected state, kept with plain collections.
+	 */
+	private static class Model {
+		final Set<String> used = new HashSet<>();
+		final Map<String, List<Net>> nets = new HashMap<>();
+
+		Model copy() {
+			Model res = new Model();
+			res.used.addAll(used);
+			for (Map.Entry<String, List<Net>> e : nets.entrySet()) {
+				res.nets.put(e.getKey(), new ArrayList<>(e.getValue()));
+			}
+			return res;
+		}
+
+		void addNet(String key, Net net) {
+			List<Net> list = nets.computeIfAbsent(key, k -> new ArrayList<>());
+			if (!list.contains(net)) {
+				list.add(net);
+			}
+		}
+
+		void removeNet(String key, Net net) {
+			List<Net> list = nets.get(key);
+			if (list != null) {
+				list.remove(net);
+				if (list.isEmpty()) {
+					nets.remove(key);
+				}
+			}
+		}
+	}
+
+	private static String key(Tile tile, int wire) {
+		return (tile == null ? "null" : tile.getName()) + "/" + wire;
+	}
+
+	private Tile tile(int i) {
+		return i < 0 ? null : device.getTile(i / 5 % 4, i % 5);
+	}
+
+	/**
+	 * Checks all resources with a tile index in [-1, tiles) and a wire in [0, wires).
+	 */
+	private void assertState(Model model, ResourceOccupancy occupancy, int tiles, int wires) {
+		for (int t = -1; t < tiles; t++) {
+			for (int w = 0; w < wires; w++) {
+				Tile tile = tile(t);
+				String key = key(tile, w);
+				Assert.assertEquals(key, model.used.contains(key), occupancy.isUsed(tile, w));
+				List<Net> expected = model.nets.get(key);
+				Assert.assertEquals(key, expected, occupancy.getNets(tile, w));
+				Assert.assertSame(expected == null ? null : expected.get(0), occupancy.getNet(tile, w));
+			}
+		}
+	}
+
+	/**
+	 * Applies random changes to both the occupancy and the model.
+	 */
+	private void mutate(Random random, Model model, ResourceOccupancy occupancy, int steps, int tiles, int wires) {
+		for (int step = 0; step < steps; step++) {
+			Tile tile = tile(random.nextInt(tiles + 1) - 1);
+			int wire = random.nextInt(wires);
+			String key = key(tile, wire);
+			Net net = nets[random.nextInt(nets.length)];
+			switch (random.nextInt(6)) {
+				case 0:
+					occupancy.setUsed(tile, wire);
+					model.used.add(key);
+					break;
+				case 1:
+					occupancy.setUsed(tile, wire, net);
+					model.used.add(key);
+					model.addNet(key, net);
+					break;
+				case 2:
+					occupancy.setUnused(tile, wire);
+					model.used.remove(key);
+					break;
+				case 3:
+					occupancy.setUnused(tile, wire, net);
+					model.used.remove(key);
+					model.removeNet(key, net);
+					break;
+				case 4:
+					occupancy.addNet(tile, wire, net);
+					model.addNet(key, net);
+					break;
+				default:
+					occupancy.removeNet(tile, wire, net);
+					model.removeNet(key, net);
+					break;
+			}
+		}
+	}
+
+	@Test
+	public void markAndClear() {
+		ResourceOccupancy occupancy = new ResourceOccupancy();
+		Tile tile = device.getTile(1, 2);
+		Assert.assertFalse(occupancy.isUsed(tile, 7));
+		Assert.assertEquals(-1, occupancy.getIndex(tile, 7));
+
+		occupancy.setUsed(tile, 7, nets[0]);
+		occupancy.addNet(tile, 7, nets[1]);
+		occupancy.addNet(tile, 7, nets[0]);
+		Assert.assertTrue(occupancy.isUsed(tile, 7));
+		Assert.assertTrue(occupancy.isUsed(occupancy.getIndex(tile, 7)));
+		Assert.assertFalse(occupancy.isUsed(tile, 8));
+		Assert.assertFalse(occupancy.isUsed(device.getTile(2, 1), 7));
+		Assert.assertEquals(nets[0], occupancy.getNet(tile, 7));
+		Assert.assertEquals(2, occupancy.getNets(tile, 7).size());
+
+		// The first net leaves, the shared one takes its place
+		occupancy.removeNet(tile, 7, nets[0]);
+		Assert.assertSame(nets[1], occupancy.getNet(tile, 7));
+		Assert.assertTrue(occupancy.isUsed(tile, 7));
+
+		occupancy.setUnused(tile, 7, nets[1]);
+		Assert.assertFalse(occupancy.isUsed(tile, 7));
+		Assert.assertNull(occupancy.getNets(tile, 7));
+
+		occupancy.setUsed(tile, 3, nets[2]);
+		occupancy.addNet(tile, 3, nets[3]);
+		occupancy.clear();
+		Assert.assertFalse(occupancy.isUsed(tile, 3));
+		Assert.assertNull(occupancy.getNet(tile, 3));
+		Assert.assertNull(occupancy.getNets(tile, 3));
+		// Indices stay after clearing
+		Assert.assertEquals(2, occupancy.getIndexCount());
+	}
+
+	@Test
+	public void randomChangesMatchModel() {
+		Random random = new Random(1);
+		ResourceOccupancy occupancy = new ResourceOccupancy();
+		Model model = new Model();
+		mutate(random, model, occupancy, 20000, 20, 10);
+		assertState(model, occupancy, 20, 10);
+	}
+
+	@Test
+	public void indicesSurviveGrowth() {
+		// Far more resources than the initial table, bitset and net array hold
+		ResourceOccupancy occupancy = new ResourceOccupancy();
+		int wires = 500;
+		int[][] indices = new int[21][wires];
+		for (int t = -1; t < 20; t++) {
+			for (int w = 0; w < wires; w++) {
+				indices[t + 1][w] = occupancy.index(tile(t), w);
+				if ((t + w) % 3 == 0) {
+					occupancy.setUsed(tile(t), w, nets[(t + 1 + w) % nets.length]);
+				}
+			}
+		}
+		Assert.assertEquals(21 * wires, occupancy.getIndexCount());
+		Set<Integer> distinct = new HashSet<>();
+		for (int t = -1; t < 20; t++) {
+			for (int w = 0; w < wires; w++) {
+				int index = indices[t + 1][w];
+				Assert.assertTrue(distinct.add(index));
+				Assert.assertEquals(index, occupancy.getIndex(tile(t), w));
+				Assert.assertEquals(index, occupancy.index(tile(t), w));
+				boolean used = (t + w) % 3 == 0;
+				Assert.assertEquals(used, occupancy.isUsed(tile(t), w));
+				Assert.assertSame(used ? nets[(t + 1 + w) % nets.length] : null, occupancy.getNet(tile(t), w));
+			}
+		}
+		Assert.assertEquals(21 * wires, occupancy.getIndexCount());
+	}
+
+	@Test
+	public void restoreUndoesLaterChanges() {
+		Random random = new Random(2);
+		ResourceOccupancy occupancy = new ResourceOccupancy();
+		Model model = new Model();
+		mutate(random, model, occupancy, 3000, 10, 20);
+		ResourceOccupancy.Snapshot snapshot = occupancy.snapshot();
+		Model saved = model.copy();
+		Model restored = model.copy();
+
+		// Later changes include new resources past the snapshot and growth of all arrays
+		mutate(random, model, occupancy, 20000, 20, 100);
+		assertState(model, occupancy, 20, 100);
+
+		occupancy.restore(snapshot);
+		assertState(saved, occupancy, 20, 100);
+
+		// The snapshot is not changed by working on the restored state
+		mutate(random, restored, occupancy, 3000, 20, 100);
+		assertState(restored, occupancy, 20, 100);
+		occupancy.restore(snapshot);
+		assertState(saved, occupancy, 20, 100);
+	}
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.router;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.PrimitiveSite;
+import edu.byu.ece.rapidSmith.device.PrimitiveType;
+import edu.byu.ece.rapidSmith.device.SiteSpatialIndex;
+import edu.byu.ece.rapidSmith.device.Tile;
+import edu.byu.ece.rapidSmith.util.FamilyType;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StaticSourceHandlerTest {
+
+	private static final int ROWS = 24;
+	private static final int COLUMNS = 30;
+
+	/**
+	 * A device with SLICEL sites in every third column and SLICEM sites in
+	 * every seventh, both types in some tiles and other sites in between.
+	 */
+	private static Device sampleDevice() {
+		return new Device() {{
+			setRows(ROWS);
+			setColumns(COLUMNS);
+			createTileArray();
+			for (int row = 0; row < ROWS; row++) {
+				for (int column = 0; column < COLUMNS; column++) {
+					Tile tile = getTile(row, column);
+					tile.setName("CLB_X" + column + "Y" + row);
+					tile.setDevice(this);
+					List<PrimitiveSite> sites = new ArrayList<>();
+					if (column % 3 == 1) {
+						sites.add(site(tile, PrimitiveType.SLICEL, column, 2 * row));
+						sites.add(site(tile, PrimitiveType.SLICEL, column, 2 * row + 1));
+					}
+					if (column % 7 == 0) {
+						sites.add(site(tile, PrimitiveType.SLICEM, column + 100, row));
+					}
+					if (column % 5 == 2) {
+						sites.add(site(tile, PrimitiveType.TIEOFF, column, row));
+					}
+					if (!sites.isEmpty()) {
+						tile.setPrimitiveSites(sites.toArray(new PrimitiveSite[sites.size()]));
+					}
+				}
+			}
+		}};
+	}
+
+	private static PrimitiveSite site(Tile tile, PrimitiveType type, int x, int y) {
+		PrimitiveSite site = new PrimitiveSite();
+		site.setName(type + "_X" + x + "Y" + y);
+		site.setTile(tile);
+		site.setType(type);
+		return site;
+	}
+
+	private static int distance(PrimitiveSite site, Tile tile) {
+		return Math.abs(site.getTile().getColumn() - tile.getColumn()) + Math.abs(site.getTile().getRow() - tile.getRow());
+	}
+
+	private static boolean isSourceType(PrimitiveSite site, PrimitiveType[] types) {
+		return Arrays.asList(types).contains(site.getType());
+	}
+
+	/**
+	 * The first SLICE site found by the spiral search StaticSourceHandler used
+	 * before the site index, starting below the tile and circling outward.
+	 */
+	private static PrimitiveSite spiralSearch(Device dev, Tile tile, PrimitiveType[] types) {
+		int column = tile.getColumn();
+		int row = tile.getRow();
+		int maxColumn = column + 1;
+		int maxRow = row + 1;
+		int minColumn = column - 1;
+		int minRow = row;
+		char dir = 'D';
+		for (int steps = 0; steps < 16 * ROWS * COLUMNS; steps++) {
+			switch (dir) {
+				case 'U':
+					if (row == minRow) {
+						dir = 'R';
+						minRow--;
+						column++;
+					} else {
+						row--;
+					}
+					break;
+				case 'D':
+					if (row == maxRow) {
+						dir = 'L';
+						maxRow++;
+						column--;
+					} else {
+						row++;
+					}
+					break;
+				case 'L':
+					if (column == minColumn) {
+						dir = 'U';
+						minColumn--;
+						row--;
+					} else {
+						column--;
+					}
+					break;
+				default:
+					if (column == maxColumn) {
+						dir = 'D';
+						maxColumn++;
+						row++;
+					} else {
+						column++;
+					}
+					break;
+			}
+			Tile current = dev.getTile(row, column);
+			if (current != null && current.getPrimitiveSites() != null) {
+				for (PrimitiveSite site : current.getPrimitiveSites()) {
+					if (isSourceType(site, types)) {
+						return site;
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	private static List<List<PrimitiveSite>> lookUpAll(Device dev, PrimitiveType[] types, int k, ForkJoinPool pool) {
+		SiteSpatialIndex index = dev.getSiteSpatialIndex();
+		List<Tile> tiles = new ArrayList<>();
+		for (int row = 0; row < ROWS; row++) {
+			for (int column = 0; column < COLUMNS; column++) {
+				tiles.add(dev.getTile(row, column));
+			}
+		}
+		if (pool == null) {
+			return tiles.stream().map(t -> StaticSourceHandler.getNearestSourceSites(index, types, t, k))
+					.collect(Collectors.toList());
+		}
+		return pool.submit(() -> tiles.parallelStream()
+				.map(t -> StaticSourceHandler.getNearestSourceSites(index, types, t, k))
+				.collect(Collectors.toList())).join();
+	}
+
+	@Test
+	public void nearestSitesMatchBruteForce() {
+		Device dev = sampleDevice();
+		PrimitiveType[] types = StaticSourceHandler.getSourceSiteTypes(FamilyType.VIRTEX5);
+		List<PrimitiveSite> all = new ArrayList<>();
+		for (PrimitiveType type : types) {
+			all.addAll(Arrays.asList(dev.getAllPrimitiveSitesOfType(type)));
+		}
+		int k = 8;
+		List<List<PrimitiveSite>> nearest = lookUpAll(dev, types, k, null);
+		for (int row = 0; row < ROWS; row++) {
+			for (int column = 0; column < COLUMNS; column++) {
+				Tile tile = dev.getTile(row, column);
+				List<PrimitiveSite> sites = nearest.get(row * COLUMNS + column);
+				List<Integer> expected = all.stream().map(s -> distance(s, tile)).sorted().limit(k)
+						.collect(Collectors.toList());
+				List<Integer> actual = sites.stream().map(s -> distance(s, tile)).collect(Collectors.toList());
+				Assert.assertEquals(tile.getName(), expected, actual);
+				Assert.assertEquals(k, new HashSet<>(sites).size());
+				for (PrimitiveSite site : sites) {
+					Assert.assertTrue(isSourceType(site, types));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void nearestSiteIsNoFurtherThanSpiralSearch() {
+		Device dev = sampleDevice();
+		PrimitiveType[] types = StaticSourceHandler.getSourceSiteTypes(FamilyType.VIRTEX5);
+		List<List<PrimitiveSite>> nearest = lookUpAll(dev, types, 1, null);
+		int closer = 0;
+		for (int row = 0; row < ROWS; row++) {
+			for (int column = 0; column < COLUMNS; column++) {
+				Tile tile = dev.getTile(row, column);
+				PrimitiveSite site = nearest.get(row * COLUMNS + column).get(0);
+				PrimitiveSite old = spiralSearch(dev, tile, types);
+				Assert.assertNotNull(old);
+				Assert.assertTrue(tile.getName(), distance(site, tile) <= distance(old, tile));
+				if (distance(site, tile) < distance(old, tile)) {
+					closer++;
+				}
+			}
+		}
+		// The spiral visits whole rings, so it sometimes misses a closer site
+		Assert.assertTrue(closer > 0);
+	}
+
+	@Test
+	public void lookupsDoNotDependOnThreads() {
+		Device dev = sampleDevice();
+		for (FamilyType family : new FamilyType[]{FamilyType.VIRTEX5, FamilyType.SPARTAN6}) {
+			PrimitiveType[] types = StaticSourceHandler.getSourceSiteTypes(family);
+			List<List<PrimitiveSite>> expected = lookUpAll(dev, types, 8, null);
+			for (int threads : new int[]{1, 2, 8}) {
+				ForkJoinPool pool = new ForkJoinPool(threads);
+				try {
+					for (int round = 0; round < 3; round++) {
+						Assert.assertEquals(expected, lookUpAll(dev, types, 8, pool));
+					}
+				} finally {
+					pool.shutdown();
+				}
+			}
+			// The index of another copy of the device gives the same sites
+			List<List<PrimitiveSite>> copy = lookUpAll(sampleDevice(), types, 8, null);
+			for (int i = 0; i < expected.size(); i++) {
+				Assert.assertEquals(names(expected.get(i)), names(copy.get(i)));
+			}
+		}
+	}
+
+	private static List<String> names(List<PrimitiveSite> sites) {
+		return sites.stream().map(PrimitiveSite::getName).collect(Collectors.toList());
+	}
+}
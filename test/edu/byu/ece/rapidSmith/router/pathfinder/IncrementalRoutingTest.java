@@ -0,0 +1,238 @@
+package edu.byu.ece.rapidSmith.router.pathfinder;
+
+import edu.byu.ece.rapidSmith.design.Design;
+import edu.byu.ece.rapidSmith.design.Instance;
+import edu.byu.ece.rapidSmith.design.Net;
+import edu.byu.ece.rapidSmith.design.NetType;
+import edu.byu.ece.rapidSmith.design.PIP;
+import edu.byu.ece.rapidSmith.design.Pin;
+import edu.byu.ece.rapidSmith.design.PipDirection;
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.PrimitiveSite;
+import edu.byu.ece.rapidSmith.device.PrimitiveType;
+import edu.byu.ece.rapidSmith.device.Tile;
+import edu.byu.ece.rapidSmith.device.WireConnection;
+import edu.byu.ece.rapidSmith.device.WireDirection;
+import edu.byu.ece.rapidSmith.device.WireEnumerator;
+import edu.byu.ece.rapidSmith.device.helper.StringIntHashMap;
+import edu.byu.ece.rapidSmith.device.helper.WireHashMap;
+import edu.byu.ece.rapidSmith.router.wireCluster.RoutingGraph;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Checks which nets {@link Pathfinder#routeDesignIncremental(Design)} routes again and which keep their routing.
+ */
+public class IncrementalRoutingTest {
+
+	private static final int COLUMNS = 10;
+
+	//Site pin wires
+	private static final int OUT = 10;
+	private static final int OUT2 = 13;
+	private static final int IN = 11;
+	private static final int BYPASS = 12;
+	//Routing wires, START drives END of the tile to the right
+	private static final int START = 20;
+	private static final int END = 21;
+
+	private Device device;
+	private PathfinderNodeFactory factory;
+
+	/**
+	 * A row of tiles with one site each. The outputs of a site reach the inputs of the
+	 * site to the right, either directly or through its bypass pin.
+	 */
+	@Before
+	public void createDevice() {
+		WireEnumerator wireEnumerator = new WireEnumerator() {
+			@Override
+			public WireDirection getWireDirection(int wire) {
+				return WireDirection.NONE;
+			}
+
+			@Override
+			public String getWireName(int wire) {
+				return "W" + wire;
+			}
+		};
+		device = new Device() {{
+			partName = "xc5vlx20tff323";
+			setRows(1);
+			setColumns(COLUMNS);
+			createTileArray();
+			for (int column = 0; column < COLUMNS; column++) {
+				Tile tile = getTile(0, column);
+				tile.setName("CLB_X" + column + "Y0");
+				tile.setDevice(this);
+				tile.setWireHashMap(new WireHashMap());
+				tile.addConnection(OUT, new WireConnection(START, 0, 0, true));
+				tile.addConnection(OUT2, new WireConnection(START, 0, 0, true));
+				tile.addConnection(START, new WireConnection(END, 0, -1, false));
+				tile.addConnection(END, new WireConnection(IN, 0, 0, true));
+				tile.addConnection(END, new WireConnection(BYPASS, 0, 0, true));
+				tile.addConnection(BYPASS, new WireConnection(IN, 0, 0, true));
+
+				PrimitiveSite site = new PrimitiveSite();
+				site.setName("SLICE_X" + column + "Y0");
+				site.setTile(tile);
+				site.setType(PrimitiveType.SLICEL);
+				StringIntHashMap pins = new StringIntHashMap();
+				pins.put("O", OUT);
+				pins.put("O2", OUT2);
+				pins.put("I", IN);
+				pins.put("B", BYPASS);
+				site.setPins(pins);
+				tile.setPrimitiveSites(new PrimitiveSite[]{site});
+			}
+		}
+
+			@Override
+			public WireEnumerator getWireEnumerator() {
+				return wireEnumerator;
+			}
+		};
+		factory = new PathfinderNodeFactory(RoutingGraph.build(device));
+	}
+
+	private static Design design() {
+		Design design = new Design();
+		for (int column = 0; column < COLUMNS; column++) {
+			Instance inst = new Instance("inst" + column, PrimitiveType.SLICEL);
+			design.addInstance(inst);
+		}
+		return design;
+	}
+
+	private void place(Design design) {
+		for (int column = 0; column < COLUMNS; column++) {
+			design.getInstance("inst" + column).place(device.getTile(0, column).getPrimitiveSites()[0]);
+		}
+	}
+
+	/**
+	 * Adds a net with pins given as column and pin name, the first one is the source
+	 */
+	private static Net net(Design design, String name, Object... pins) {
+		Net net = new Net(name, NetType.WIRE);
+		for (int i = 0; i < pins.length; i += 2) {
+			Instance inst = design.getInstance("inst" + pins[i]);
+			Pin pin = new Pin(i == 0, (String) pins[i + 1], inst);
+			inst.addPin(pin);
+			net.addPin(pin);
+		}
+		design.addNet(net);
+		return net;
+	}
+
+	/**
+	 * The PIPs from an output of a site to the input of the site to the right
+	 */
+	private List<PIP> route(int column, int out, boolean viaBypass) {
+		Tile tile = device.getTile(0, column);
+		Tile next = device.getTile(0, column + 1);
+		List<PIP> pips = new ArrayList<>();
+		pips.add(new PIP(tile, out, START, PipDirection.DIRECTIONAL));
+		if (viaBypass) {
+			pips.add(new PIP(next, END, BYPASS, PipDirection.DIRECTIONAL));
+			pips.add(new PIP(next, BYPASS, IN, PipDirection.DIRECTIONAL));
+		} else {
+			pips.add(new PIP(next, END, IN, PipDirection.DIRECTIONAL));
+		}
+		return pips;
+	}
+
+	private boolean isBlocked(int column, int wire) {
+		return factory.getNode(device.getTile(0, column), wire).isBlocked();
+	}
+
+	@Test
+	public void onlyChangedAndConflictingNetsAreRouted() {
+		Design previous = design();
+		place(previous);
+		net(previous, "a", 0, "O", 1, "I").setPIPs(route(0, OUT, false));
+		net(previous, "b", 2, "O", 3, "I").setPIPs(route(2, OUT, false));
+		net(previous, "c", 4, "O", 5, "I").setPIPs(route(4, OUT, true));
+		net(previous, "e", 8, "O", 9, "I").setPIPs(route(8, OUT, false));
+		net(previous, "f", 8, "O2", 9, "B").setPIPs(route(8, OUT2, false));
+		net(previous, "unrouted", 6, "O2", 7, "B");
+
+		Design design = design();
+		place(design);
+		//Unchanged
+		Net a = net(design, "a", 0, "O", 1, "I");
+		//Gets another sink, the bypass pin c runs through
+		Net b = net(design, "b", 2, "O", 3, "I", 5, "B");
+		Net c = net(design, "c", 4, "O", 5, "I");
+		//New
+		Net d = net(design, "d", 6, "O", 7, "I");
+		//e and f share the routing wires of tile 8, f keeps the PIPs it already has
+		Net e = net(design, "e", 8, "O", 9, "I");
+		Net f = net(design, "f", 8, "O2", 9, "B");
+		f.setPIPs(Arrays.asList(new PIP(device.getTile(0, 8), OUT2, START, PipDirection.DIRECTIONAL),
+				new PIP(device.getTile(0, 9), END, BYPASS, PipDirection.DIRECTIONAL)));
+		//Was not routed before
+		Net unrouted = net(design, "unrouted", 6, "O2", 7, "B");
+
+		Pathfinder pathfinder = new Pathfinder(design, factory, null, null, true);
+		Set<Net> changed = pathfinder.findChangedNets(previous);
+
+		Assert.assertTrue(changed.containsAll(Arrays.asList(b, c, d, unrouted)));
+		Assert.assertFalse(changed.contains(a));
+		//Exactly one of the overlapping nets keeps its routing
+		Assert.assertTrue(changed.contains(e) != changed.contains(f));
+		Assert.assertEquals(5, changed.size());
+		for (Net net : changed) {
+			Assert.assertFalse(net.getName(), net.hasPIPs());
+		}
+
+		//a keeps the routing of the previous design, its wires are blocked
+		Assert.assertEquals(route(0, OUT, false), new ArrayList<>(a.getPIPs()));
+		Assert.assertTrue(isBlocked(0, OUT));
+		Assert.assertTrue(isBlocked(0, START));
+		Assert.assertTrue(isBlocked(1, END));
+		Assert.assertTrue(isBlocked(1, IN));
+
+		//The wires of the rerouted nets are free
+		Assert.assertFalse(isBlocked(2, START));
+		Assert.assertFalse(isBlocked(4, START));
+		Assert.assertFalse(isBlocked(5, BYPASS));
+		Assert.assertFalse(isBlocked(6, START));
+
+		//The shared wires are blocked for the net that kept its routing
+		Net keptOverlap = changed.contains(e) ? f : e;
+		Assert.assertTrue(keptOverlap.hasPIPs());
+		Assert.assertTrue(isBlocked(8, START));
+		Assert.assertEquals(keptOverlap == e, isBlocked(9, IN));
+		Assert.assertEquals(keptOverlap == f, isBlocked(9, BYPASS));
+	}
+
+	@Test
+	public void unchangedDesignKeepsAllRoutes() {
+		Design previous = design();
+		place(previous);
+		for (int column = 0; column < COLUMNS - 1; column += 2) {
+			net(previous, "n" + column, column, "O", column + 1, "I").setPIPs(route(column, OUT, column % 4 == 0));
+		}
+		Design design = design();
+		place(design);
+		List<Net> nets = new ArrayList<>();
+		for (int column = 0; column < COLUMNS - 1; column += 2) {
+			nets.add(net(design, "n" + column, column, "O", column + 1, "I"));
+		}
+
+		Pathfinder pathfinder = new Pathfinder(design, factory, null, null, true);
+		Assert.assertTrue(pathfinder.findChangedNets(previous).isEmpty());
+		for (Net net : nets) {
+			int column = Integer.parseInt(net.getName().substring(1));
+			Assert.assertEquals(route(column, OUT, column % 4 == 0), new ArrayList<>(net.getPIPs()));
+			Assert.assertTrue(isBlocked(column, START));
+		}
+	}
+}
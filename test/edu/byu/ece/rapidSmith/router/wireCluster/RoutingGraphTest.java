@@ -0,0 +1,227 @@
+/*
+ * _______________________________________________________________________________
+ *
+ *  Copyright (c) 2012 TU Dresden, Chair for Embedded Systems
+ *  Copyright (c) 2013-2016 TU Darmstadt, Computer Systems Group
+ *  (http://www.rs.tu-darmstadt.de) All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement: "This product includes
+ *     software developed by the TU Dresden Chair for Embedded Systems, TU Darmstadt Computer Systems Group and
+ *     its contributors."
+ *
+ *  4. Neither the name of the TU Dresden Chair for Embedded Systems, TU Darmstadt Computer Systems Group nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY TU DRESDEN CHAIR FOR EMBEDDED SYSTEMS, TU DARMSTADT COMPUTER SYSTEMS GROUP AND
+ *  CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ *  BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ *  FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ *  REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ *  TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ *  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ *  LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ *  NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * _______________________________________________________________________________
+ */
+
+package edu.byu.ece.rapidSmith.router.wireCluster;
+
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.Tile;
+import edu.byu.ece.rapidSmith.device.WireConnection;
+import edu.byu.ece.rapidSmith.device.helper.WireHashMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class RoutingGraphTest {
+
+	private static final int ROWS = 3;
+	private static final int COLUMNS = 4;
+
+	/** A wire that only appears as the target of PIPs, it is not listed in any tile */
+	private static final int PIP_ONLY_WIRE = 99;
+
+	/**
+	 * A device without sites: in every tile wire 1 drives wire 2 of the tile to the
+	 * right, wire 2 drives wire 3 of the same tile through a PIP, and wire 3 drives
+	 * the unlisted wire {@link #PIP_ONLY_WIRE} of the tile below through a PIP.
+	 */
+	private static Device device(String part) {
+		return new Device() {{
+			partName = part;
+			setRows(ROWS);
+			setColumns(COLUMNS);
+			createTileArray();
+			for (int row = 0; row < ROWS; row++) {
+				for (int column = 0; column < COLUMNS; column++) {
+					Tile tile = getTile(row, column);
+					tile.setName("INT_X" + column + "Y" + row);
+					tile.setDevice(this);
+					tile.setWireHashMap(new WireHashMap());
+					//Offsets point backwards: the target is at (row - rowOffset, column - columnOffset)
+					tile.addConnection(1, new WireConnection(2, 0, -1, false));
+					tile.addConnection(2, new WireConnection(3, 0, 0, true));
+					tile.addConnection(3, new WireConnection(PIP_ONLY_WIRE, -1, 0, true));
+				}
+			}
+		}};
+	}
+
+	private static Path tempFile() throws IOException {
+		Path file = Files.createTempFile("routingGraphTest", ".dat");
+		file.toFile().deleteOnExit();
+		return file;
+	}
+
+	private static List<Integer> successors(RoutingGraph graph, int cluster) {
+		List<Integer> res = new ArrayList<>();
+		for (int i = 0; i < graph.getSuccessorCount(cluster); i++) {
+			res.add(graph.getSuccessor(cluster, i));
+		}
+		return res;
+	}
+
+	private static void assertSameGraph(RoutingGraph expected, RoutingGraph actual) {
+		WireClusterIndex e = expected.getClusterIndex();
+		WireClusterIndex a = actual.getClusterIndex();
+		Assert.assertArrayEquals(e.getTileStarts(), a.getTileStarts());
+		Assert.assertArrayEquals(e.getWires(), a.getWires());
+		Assert.assertArrayEquals(e.getClusterIds(), a.getClusterIds());
+		Assert.assertEquals(e.getClusterCount(), a.getClusterCount());
+		for (int c = 0; c < e.getClusterCount(); c++) {
+			Assert.assertEquals(successors(expected, c), successors(actual, c));
+		}
+	}
+
+	@Test
+	public void pipTargetsOutsideTheirTileAreSuccessors() {
+		Device dev = device("xc5vlx20tff323");
+		RoutingGraph graph = RoutingGraph.build(dev);
+		WireClusterIndex index = graph.getClusterIndex();
+		for (int row = 0; row < ROWS; row++) {
+			for (int column = 0; column < COLUMNS; column++) {
+				Tile tile = dev.getTile(row, column);
+				int cluster = index.getClusterId(tile, 3);
+				Assert.assertTrue(cluster >= 0);
+				Tile below = dev.getTile(row + 1, column);
+				if (below == null) {
+					//Connections leaving the device are dropped
+					Assert.assertEquals(0, graph.getSuccessorCount(cluster));
+					continue;
+				}
+				int target = index.getClusterId(below, PIP_ONLY_WIRE);
+				Assert.assertTrue(tile.getName(), target >= 0);
+				Assert.assertEquals(1, index.getClusterSize(target));
+				Assert.assertEquals(Arrays.asList(target), successors(graph, cluster));
+
+				//Wire 1 and wire 2 of the tile to the right form one cluster, which reaches wire 3 through the PIP
+				Tile right = dev.getTile(row, column + 1);
+				if (right != null) {
+					int wires = index.getClusterId(tile, 1);
+					Assert.assertEquals(wires, index.getClusterId(right, 2));
+					Assert.assertTrue(successors(graph, wires).contains(index.getClusterId(right, 3)));
+				}
+			}
+		}
+		//The top row has no PIP into its unlisted wire
+		Assert.assertEquals(-1, index.getClusterId(dev.getTile(0, 0), PIP_ONLY_WIRE));
+	}
+
+	@Test
+	public void saveAndLoadRoundTrip() throws IOException {
+		Device dev = device("xc5vlx20tff323");
+		RoutingGraph graph = RoutingGraph.build(dev);
+		Path file = tempFile();
+		graph.save(file);
+		RoutingGraph loaded = RoutingGraph.load(dev, file);
+		Assert.assertSame(dev, loaded.getDevice());
+		assertSameGraph(graph, loaded);
+
+		//Building again gives the same file
+		Path again = tempFile();
+		RoutingGraph.build(dev).save(again);
+		Assert.assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(again));
+	}
+
+	@Test
+	public void rejectsOtherFiles() throws IOException {
+		Device dev = device("xc5vlx20tff323");
+		Path file = tempFile();
+		RoutingGraph.build(dev).save(file);
+		byte[] bytes = Files.readAllBytes(file);
+
+		//Another part
+		assertRejected(device("xc5vlx30ff324"), file);
+
+		//Wrong magic number
+		Path other = tempFile();
+		byte[] bad = bytes.clone();
+		bad[0] ^= 1;
+		Files.write(other, bad);
+		assertRejected(dev, other);
+
+		//Another file version
+		bad = bytes.clone();
+		ByteBuffer.wrap(bad).putInt(4, ByteBuffer.wrap(bytes).getInt(4) + 1);
+		Files.write(other, bad);
+		assertRejected(dev, other);
+
+		//Truncated in the header and in the arrays
+		for (int length : new int[]{0, 6, 12, bytes.length / 2, bytes.length - 1}) {
+			Files.write(other, Arrays.copyOf(bytes, length));
+			assertRejected(dev, other);
+		}
+	}
+
+	private static void assertRejected(Device dev, Path file) {
+		try {
+			RoutingGraph.load(dev, file);
+			Assert.fail("Loaded a routing graph that does not fit");
+		} catch (IOException e) {
+			//Expected
+		}
+	}
+
+	@Test
+	public void loadOrBuildReplacesBadFiles() throws IOException {
+		Device dev = device("xc5vlx20tff323");
+		RoutingGraph expected = RoutingGraph.build(dev);
+		Path file = tempFile();
+		Files.write(file, new byte[]{1, 2, 3});
+		assertSameGraph(expected, RoutingGraph.loadOrBuild(dev, file));
+
+		//The file was rewritten and loads now
+		assertSameGraph(expected, RoutingGraph.load(dev, file));
+		assertSameGraph(expected, RoutingGraph.loadOrBuild(dev, file));
+
+		//A file for another part is replaced as well
+		Device other = device("xc5vlx30ff324");
+		RoutingGraph otherGraph = RoutingGraph.loadOrBuild(other, file);
+		Assert.assertSame(other, otherGraph.getDevice());
+		assertSameGraph(otherGraph, RoutingGraph.load(other, file));
+		assertRejected(dev, file);
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.timing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+import edu.byu.ece.rapidSmith.timing.CriticalPathEnumerator.ElementPath;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CriticalPathEnumeratorTest {
+
+	private boolean[] isRegister;
+	private int[][] successors;
+	private double[][] delays;
+
+	/**
+	 * Builds a random DAG: elements only connect to elements with a larger id,
+	 * delays are whole numbers so sums are exact in any order. Elements without
+	 * predecessors are registers, as every other element must be reached from
+	 * the registers.
+	 */
+	private TimingGraph randomGraph(Random random, int count, int maxFanout) {
+		isRegister = new boolean[count];
+		successors = new int[count][];
+		delays = new double[count][];
+		boolean[] hasPredecessor = new boolean[count];
+		for (int i = 0; i < count; i++) {
+			isRegister[i] = i < 3 || i >= count - 3 || random.nextInt(5) == 0 || !hasPredecessor[i];
+			int fanout = Math.min(count - i - 1, random.nextInt(maxFanout + 1));
+			int[] next = fanout == 0 ? new int[0] : random.ints(i + 1, count).distinct().limit(fanout).toArray();
+			successors[i] = next;
+			delays[i] = new double[next.length];
+			for (int j = 0; j < next.length; j++) {
+				delays[i][j] = 1 + random.nextInt(20);
+				hasPredecessor[next[j]] = true;
+			}
+		}
+		return LevelizedTimingTest.graph(isRegister, successors, delays);
+	}
+
+	/**
+	 * Delays of all paths from start registers to registers, without registers
+	 * in between, found by walking every path.
+	 */
+	private List<Double> bruteForce(IntPredicate isStart, int endpoint) {
+		List<Double> res = new ArrayList<>();
+		for (int start = 0; start < isRegister.length; start++) {
+			if (isRegister[start] && isStart.test(start)) {
+				walk(start, 0, endpoint, res);
+			}
+		}
+		res.sort((a, b) -> Double.compare(b, a));
+		return res;
+	}
+
+	private void walk(int elem, double delay, int endpoint, List<Double> res) {
+		for (int j = 0; j < successors[elem].length; j++) {
+			int next = successors[elem][j];
+			double d = delay + delays[elem][j];
+			if (isRegister[next]) {
+				if (endpoint < 0 || next == endpoint) {
+					res.add(d);
+				}
+			} else {
+				walk(next, d, endpoint, res);
+			}
+		}
+	}
+
+	/**
+	 * Checks that the paths are real, different, and have the K largest delays
+	 * of the brute force paths.
+	 */
+	private static void assertWorst(TimingGraph g, List<Double> expected, List<ElementPath> paths, int k,
+			IntPredicate isStart) {
+		Assert.assertEquals(Math.min(k, expected.size()), paths.size());
+		Set<List<Integer>> seen = new HashSet<>();
+		for (int i = 0; i < paths.size(); i++) {
+			ElementPath path = paths.get(i);
+			Assert.assertEquals(expected.get(i), path.getDelay(), 0);
+			Assert.assertTrue(g.isRegister(path.getStart()));
+			Assert.assertTrue(isStart.test(path.getStart()));
+			Assert.assertTrue(g.isRegister(path.getEndpoint()));
+
+			double delay = 0;
+			List<Integer> edges = new ArrayList<>();
+			for (int e = 0; e < path.getLength() - 1; e++) {
+				int elem = path.getElement(e);
+				int edge = path.getEdge(e);
+				Assert.assertTrue(edge >= g.getSuccessorStart(elem) && edge < g.getSuccessorStart(elem + 1));
+				Assert.assertEquals(path.getElement(e + 1), g.getSuccessor(edge));
+				if (e > 0) {
+					Assert.assertFalse(g.isRegister(elem));
+				}
+				delay += g.getDelay(edge);
+				edges.add(edge);
+			}
+			Assert.assertEquals(path.getDelay(), delay, 0);
+			Assert.assertTrue("Path found twice", seen.add(edges));
+		}
+	}
+
+	@Test
+	public void smallGraph() {
+		// reg0 -> a2 -> reg4, reg0 -> b3 -> reg4, reg1 -> b3, reg1 -> reg4
+		TimingGraph g = LevelizedTimingTest.graph(new boolean[]{true, true, false, false, true},
+				new int[][]{{2, 3}, {3, 4}, {4}, {4}, {}},
+				new double[][]{{1, 2}, {4, 3}, {3}, {5}, {}});
+		LevelizedTiming timing = new LevelizedTiming(g);
+		timing.propagate();
+		List<ElementPath> paths = new CriticalPathEnumerator(timing).getWorstPaths(10);
+		Assert.assertEquals(4, paths.size());
+		Assert.assertEquals(Arrays.asList(1, 3, 4), paths.get(0).getElements());
+		Assert.assertEquals(Arrays.asList(0, 3, 4), paths.get(1).getElements());
+		Assert.assertEquals(Arrays.asList(0, 2, 4), paths.get(2).getElements());
+		Assert.assertEquals(Arrays.asList(1, 4), paths.get(3).getElements());
+		Assert.assertEquals(9, paths.get(0).getDelay(), 0);
+		Assert.assertEquals(0, paths.get(0).getSlack(), 0);
+		Assert.assertEquals(6, paths.get(3).getSlack(), 0);
+	}
+
+	@Test
+	public void randomGraphsMatchBruteForce() {
+		Random random = new Random(7);
+		for (int round = 0; round < 30; round++) {
+			TimingGraph g = randomGraph(random, 10 + random.nextInt(30), 4);
+			LevelizedTiming timing = new LevelizedTiming(g);
+			timing.propagate();
+			IntPredicate all = id -> true;
+			CriticalPathEnumerator enumerator = new CriticalPathEnumerator(timing);
+			List<Double> expected = bruteForce(all, -1);
+			for (int k : new int[]{1, 5, 1000}) {
+				assertWorst(g, expected, enumerator.getWorstPaths(k), k, all);
+			}
+
+			// Per endpoint, and only from some start registers
+			IntPredicate even = id -> id % 2 == 0;
+			CriticalPathEnumerator someStarts = new CriticalPathEnumerator(timing, even);
+			for (int end = 0; end < isRegister.length; end++) {
+				if (isRegister[end]) {
+					assertWorst(g, bruteForce(all, end), enumerator.getWorstPaths(end, 3), 3, all);
+					assertWorst(g, bruteForce(even, end), someStarts.getWorstPaths(end, 3), 3, even);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void manyPathsAreTrimmed() {
+		// Layers of 8 elements fully connected to the next layer, so there are
+		// 8^6 paths and the partial paths are trimmed while searching
+		int layers = 7;
+		int width = 8;
+		int count = layers * width;
+		Random random = new Random(11);
+		isRegister = new boolean[count];
+		successors = new int[count][];
+		delays = new double[count][];
+		for (int i = 0; i < count; i++) {
+			int layer = i / width;
+			isRegister[i] = layer == 0 || layer == layers - 1;
+			int fanout = layer == layers - 1 ? 0 : width;
+			successors[i] = new int[fanout];
+			delays[i] = new double[fanout];
+			for (int j = 0; j < fanout; j++) {
+				successors[i][j] = (layer + 1) * width + j;
+				delays[i][j] = random.nextInt(1000);
+			}
+		}
+		TimingGraph g = LevelizedTimingTest.graph(isRegister, successors, delays);
+		LevelizedTiming timing = new LevelizedTiming(g);
+		timing.propagate();
+		CriticalPathEnumerator enumerator = new CriticalPathEnumerator(timing);
+
+		List<Double> expected = bruteForce(id -> true, -1);
+		assertWorst(g, expected, enumerator.getWorstPaths(200), 200, id -> true);
+
+		// Endpoints come worst first
+		List<Double> worstPerEndpoint = new ArrayList<>();
+		enumerator.forEachEndpoint(width, 5, paths -> {
+			int end = paths.get(0).getEndpoint();
+			assertWorst(g, bruteForce(id -> true, end), paths, 5, id -> true);
+			worstPerEndpoint.add(paths.get(0).getDelay());
+		});
+		Assert.assertEquals(width, worstPerEndpoint.size());
+		for (int i = 1; i < width; i++) {
+			Assert.assertTrue(worstPerEndpoint.get(i - 1) >= worstPerEndpoint.get(i));
+		}
+		Assert.assertEquals(expected.get(0), worstPerEndpoint.get(0), 0);
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.timing;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import edu.byu.ece.rapidSmith.router.RoutingElement;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LevelizedTimingTest {
+
+	/**
+	 * Builds a graph without routing elements. Element i connects to
+	 * successors[i][j] with delay delays[i][j].
+	 */
+	static TimingGraph graph(boolean[] isRegister, int[][] successors, double[][] delays) {
+		int count = isRegister.length;
+		int[] succStart = new int[count + 1];
+		for (int i = 0; i < count; i++) {
+			succStart[i + 1] = succStart[i] + successors[i].length;
+		}
+		int[] succ = new int[succStart[count]];
+		double[] delay = new double[succ.length];
+		int[] forwardNeed = new int[count];
+		int[] backwardNeed = new int[count];
+		for (int i = 0; i < count; i++) {
+			for (int j = 0; j < successors[i].length; j++) {
+				succ[succStart[i] + j] = successors[i][j];
+				delay[succStart[i] + j] = delays[i][j];
+				forwardNeed[successors[i][j]]++;
+			}
+			backwardNeed[i] = successors[i].length;
+		}
+		int[] registers = new int[count];
+		int registerCount = 0;
+		for (int i = 0; i < count; i++) {
+			if (isRegister[i]) {
+				registers[registerCount++] = i;
+			}
+		}
+		return TimingGraph.connect(new RoutingElement[count], Collections.<RoutingElement, Integer>emptyMap(),
+				isRegister, Arrays.copyOf(registers, registerCount), forwardNeed, backwardNeed, succStart, succ)
+				.withDelays(delay);
+	}
+
+	@Test
+	public void smallGraph() {
+		// reg0 -> a1 -> b2 -> reg3, reg0 -> b2
+		TimingGraph g = graph(new boolean[]{true, false, false, true},
+				new int[][]{{1, 2}, {2}, {3}, {}},
+				new double[][]{{1, 5}, {2}, {4}, {}});
+		LevelizedTiming timing = new LevelizedTiming(g);
+		Assert.assertEquals(9, timing.propagate(), 0);
+		Assert.assertEquals(9, timing.getMaxDelay(), 0);
+
+		Assert.assertEquals(1, timing.getArrivalTimeInput(1), 0);
+		Assert.assertEquals(5, timing.getArrivalTimeInput(2), 0);
+		Assert.assertEquals(9, timing.getArrivalTimeInput(3), 0);
+		Assert.assertEquals(0, timing.getArrivalTimeOutput(3), 0);
+
+		Assert.assertEquals(5, timing.getRequireTimeOutput(2), 0);
+		Assert.assertEquals(3, timing.getRequireTimeOutput(1), 0);
+		Assert.assertEquals(0, timing.getRequireTimeOutput(0), 0);
+		Assert.assertEquals(9, timing.getRequireTimeInput(3), 0);
+
+		// reg0 -> a1 has 2 slack, reg0 -> b2 none
+		Assert.assertEquals(2, timing.getSlack(0, g.getSuccessorStart(0)), 0);
+		Assert.assertEquals(0, timing.getSlack(0, g.getSuccessorStart(0) + 1), 0);
+	}
+
+	@Test
+	public void largeGraphMatchesSequentialWalk() {
+		// Wide layers, so levels are propagated in parallel
+		Random random = new Random(42);
+		int layers = 8;
+		int width = 2000;
+		int count = layers * width;
+		boolean[] isRegister = new boolean[count];
+		int[][] successors = new int[count][];
+		double[][] delays = new double[count][];
+		for (int i = 0; i < count; i++) {
+			int layer = i / width;
+			isRegister[i] = layer == 0 || layer == layers - 1;
+			if (layer == layers - 1) {
+				successors[i] = new int[0];
+				delays[i] = new double[0];
+				continue;
+			}
+			int fanout = 1 + random.nextInt(3);
+			successors[i] = new int[fanout];
+			delays[i] = new double[fanout];
+			for (int j = 0; j < fanout; j++) {
+				// The first connection reaches every element of the next layer
+				successors[i][j] = (layer + 1) * width + (j == 0 ? i % width : random.nextInt(width));
+				delays[i][j] = random.nextInt(1000) / 10.0;
+			}
+		}
+		TimingGraph g = graph(isRegister, successors, delays);
+
+		// Sequential reference, the layers are already in topological order
+		double[] arrival = new double[count];
+		Arrays.fill(arrival, Double.NaN);
+		double max = 0;
+		for (int i = 0; i < count; i++) {
+			double out = isRegister[i] ? 0 : arrival[i];
+			if (Double.isNaN(out)) {
+				continue;
+			}
+			for (int j = 0; j < successors[i].length; j++) {
+				int n = successors[i][j];
+				double a = out + delays[i][j];
+				if (Double.isNaN(arrival[n]) || a > arrival[n]) {
+					arrival[n] = a;
+				}
+				max = Math.max(max, a);
+			}
+		}
+		double[] require = new double[count];
+		Arrays.fill(require, Double.NaN);
+		for (int i = count - 1; i >= 0; i--) {
+			for (int j = 0; j < successors[i].length; j++) {
+				int n = successors[i][j];
+				double in = isRegister[n] ? max : require[n];
+				if (!Double.isNaN(in) && (Double.isNaN(require[i]) || in - delays[i][j] < require[i])) {
+					require[i] = in - delays[i][j];
+				}
+			}
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			LevelizedTiming timing = new LevelizedTiming(g);
+			Assert.assertEquals(max, timing.propagate(pool), 0);
+			for (int i = 0; i < count; i++) {
+				if (!isRegister[i]) {
+					Assert.assertEquals(arrival[i], timing.getArrivalTimeInput(i), 1e-9);
+				}
+				if (i < count - width) {
+					Assert.assertEquals(require[i], timing.getRequireTimeOutput(i), 1e-9);
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.timing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.byu.ece.rapidSmith.design.Design;
+import edu.byu.ece.rapidSmith.design.Instance;
+import edu.byu.ece.rapidSmith.design.Net;
+import edu.byu.ece.rapidSmith.design.NetType;
+import edu.byu.ece.rapidSmith.design.Pin;
+import edu.byu.ece.rapidSmith.device.PrimitiveSite;
+import edu.byu.ece.rapidSmith.device.PrimitiveType;
+import edu.byu.ece.rapidSmith.timing.logic.LogicPathElement;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TraceReportXmlParserTest {
+
+	/**
+	 * A trce report cut down to three paths between two flip-flops: a setup path
+	 * without twDataPathType, a hold path and a setup path that names its type.
+	 */
+	private static final String TWX = String.join("\n",
+			"<?xml version=\"1.0\" encoding=\"UTF-8\"?>",
+			"<!DOCTYPE twReport [",
+			"<!ELEMENT twConstPath ANY>",
+			"<!ATTLIST twConstPath twDataPathType CDATA \"twDataPathMaxDelay\">",
+			"]>",
+			"<twReport><twBody><twVerboseRpt><twConst>",
+			"<twConstPath anchorID=\"1\">",
+			"<twSlack>1.250</twSlack>",
+			"<twSrc BELType=\"FF\">reg_a</twSrc>",
+			"<twDest BELType=\"FF\">reg_b</twDest>",
+			"<twTotPathDel>1.600</twTotPathDel>",
+			"<twDelConst>3.000</twDelConst>",
+			"<twDetPath maxSiteLen=\"14\">",
+			"<twSrc BELType=\"FF\">reg_a</twSrc>",
+			"<twDest BELType=\"FF\">reg_b</twDest>",
+			"<twLogLvls>1</twLogLvls>",
+			"<twSrcSite>SLICE_X0Y0.AQ</twSrcSite>",
+			"<twPathDel><twSite>SLICE_X0Y0.CLK</twSite><twDelType>Tcko</twDelType>",
+			"<twDelInfo twEdge=\"twRising\">0.450</twDelInfo><twComp>reg_a</twComp><twBEL>reg_a</twBEL></twPathDel>",
+			"<twPathDel><twSite>SLICE_X1Y0.A1</twSite><twDelType>net</twDelType><twFanCnt>1</twFanCnt>",
+			"<twDelInfo twEdge=\"twRising\">0.800</twDelInfo><twComp>n1</twComp></twPathDel>",
+			"<twPathDel><twSite>SLICE_X1Y0.CLK</twSite><twDelType>Tas</twDelType>",
+			"<twDelInfo twEdge=\"twRising\">0.350</twDelInfo><twComp>reg_b</twComp><twBEL>lut_b</twBEL><twBEL>reg_b</twBEL></twPathDel>",
+			"<twLogDel>0.800</twLogDel><twRouteDel>0.800</twRouteDel><twTotDel>1.600</twTotDel>",
+			"</twDetPath>",
+			"<twClkPath><twSrc>clk</twSrc><twDest>reg_b</twDest></twClkPath>",
+			"</twConstPath>",
+			"<twConstPath anchorID=\"2\" twDataPathType=\"twDataPathMinDelay\">",
+			"<twSlack>0.100</twSlack>",
+			"<twSrc BELType=\"FF\">reg_a</twSrc>",
+			"<twDest BELType=\"FF\">reg_b</twDest>",
+			"<twTotPathDel>0.500</twTotPathDel>",
+			"<twDetPath maxSiteLen=\"14\">",
+			"<twPathDel><twSite>SLICE_X1Y0.A1</twSite><twDelType>net</twDelType><twFanCnt>1</twFanCnt>",
+			"<twDelInfo twEdge=\"twRising\">0.500</twDelInfo><twComp>n1</twComp></twPathDel>",
+			"</twDetPath>",
+			"</twConstPath>",
+			"<twConstPath anchorID=\"3\" twDataPathType=\"twDataPathMaxDelay\">",
+			"<twSlack>2.000</twSlack>",
+			"<twSrc BELType=\"FF\">reg_b</twSrc>",
+			"<twDest BELType=\"FF\">reg_a</twDest>",
+			"<twTotPathDel>0.900</twTotPathDel>",
+			"<twDelConst>3.000</twDelConst>",
+			"<twDetPath maxSiteLen=\"14\">",
+			"<twLogLvls>0</twLogLvls>",
+			"<twPathDel><twSite>SLICE_X0Y0.CLK</twSite><twDelType>Tdick</twDelType>",
+			"<twDelInfo twEdge=\"twRising\">0.900</twDelInfo><twComp>reg_a</twComp><twBEL>reg_a</twBEL></twPathDel>",
+			"</twDetPath>",
+			"</twConstPath>",
+			"</twConst></twVerboseRpt></twBody></twReport>");
+
+	private Design design;
+	private Net n1;
+	private String twxFile;
+
+	@Before
+	public void createDesign() throws IOException {
+		design = new Design();
+		Instance a = instance("reg_a", "SLICE_X0Y0", "AQ", "CLK");
+		Instance b = instance("reg_b", "SLICE_X1Y0", "AQ", "A1", "CLK");
+		n1 = new Net("n1", NetType.WIRE);
+		n1.addPin(a.getPin("AQ"));
+		n1.addPin(b.getPin("A1"));
+		design.addNet(n1);
+
+		Path file = Files.createTempFile("traceReport", ".twx");
+		file.toFile().deleteOnExit();
+		Files.write(file, TWX.getBytes(StandardCharsets.UTF_8));
+		twxFile = file.toString();
+	}
+
+	/**
+	 * Places a new SLICEL instance with one output pin and input pins
+	 */
+	private Instance instance(String name, String siteName, String outPin, String... inPins) {
+		PrimitiveSite site = new PrimitiveSite();
+		site.setName(siteName);
+		site.setType(PrimitiveType.SLICEL);
+		Instance inst = new Instance(name, PrimitiveType.SLICEL);
+		inst.addPin(new Pin(true, outPin, inst));
+		for (String pin : inPins) {
+			inst.addPin(new Pin(false, pin, inst));
+		}
+		design.addInstance(inst);
+		inst.place(site);
+		return inst;
+	}
+
+	@Test
+	public void setupPathsAreStreamed() {
+		List<PathDelay> paths = new ArrayList<>();
+		new TraceReportXmlParser().parseTWX(twxFile, design, path -> true, paths::add);
+
+		// The hold path is skipped, the path without twDataPathType is a setup path
+		Assert.assertEquals(2, paths.size());
+		PathDelay first = paths.get(0);
+		Assert.assertEquals("reg_a", first.getSource());
+		Assert.assertEquals("reg_b", first.getDestination());
+		Assert.assertEquals(1.25f, first.getSlack(), 0);
+		Assert.assertEquals(1.6f, first.getDelay(), 0);
+		Assert.assertEquals(3f, first.getDelayConstraint(), 0);
+		Assert.assertEquals(1, first.getLevelsOfLogic());
+		Assert.assertEquals(0.8f, first.getDataPathDelay(), 0);
+		Assert.assertEquals(0.8f, first.getRoutingDelay(), 0);
+
+		List<PathElement> elements = first.getMaxDataPath();
+		Assert.assertEquals(3, elements.size());
+		LogicPathElement clockToOut = (LogicPathElement) elements.get(0);
+		Assert.assertSame(design.getInstance("reg_a").getPin("CLK"), clockToOut.getPin());
+		Assert.assertEquals("Tcko", clockToOut.getType());
+		Assert.assertEquals(0.45f, clockToOut.getDelay(), 0);
+		Assert.assertEquals(Arrays.asList("reg_a"), clockToOut.getLogicalResources());
+		RoutingPathElement net = (RoutingPathElement) elements.get(1);
+		Assert.assertSame(design.getInstance("reg_b").getPin("A1"), net.getPin());
+		Assert.assertSame(n1, net.getNet());
+		Assert.assertEquals(1, net.getFanout());
+		Assert.assertEquals(0.8f, net.getDelay(), 0);
+		LogicPathElement setup = (LogicPathElement) elements.get(2);
+		Assert.assertEquals(2, setup.getLogicalResources().size());
+
+		PathDelay second = paths.get(1);
+		Assert.assertEquals("reg_b", second.getSource());
+		Assert.assertEquals("reg_a", second.getDestination());
+		Assert.assertEquals(2f, second.getSlack(), 0);
+		Assert.assertEquals(1, second.getMaxDataPath().size());
+	}
+
+	@Test
+	public void filterSelectsStreamedPaths() {
+		List<PathDelay> paths = new ArrayList<>();
+		new TraceReportXmlParser().parseTWX(twxFile, design, PathDelayFilters.slackAtMost(1.5f), paths::add);
+		Assert.assertEquals(1, paths.size());
+		Assert.assertEquals("reg_a", paths.get(0).getSource());
+
+		paths.clear();
+		new TraceReportXmlParser().parseTWX(twxFile, design, PathDelayFilters.throughNet("n1"), paths::add);
+		Assert.assertEquals(1, paths.size());
+		Assert.assertEquals(1.6f, paths.get(0).getDelay(), 0);
+	}
+
+	@Test
+	public void streamingMatchesCollectedPaths() {
+		TraceReportXmlParser parser = new TraceReportXmlParser();
+		parser.parseTWX(twxFile, design);
+		List<PathDelay> streamed = new ArrayList<>();
+		new TraceReportXmlParser().parseTWX(twxFile, design, path -> true, streamed::add);
+
+		Assert.assertEquals(streamed.size(), parser.getPathDelays().size());
+		for (int i = 0; i < streamed.size(); i++) {
+			PathDelay expected = parser.getPathDelays().get(i);
+			PathDelay actual = streamed.get(i);
+			Assert.assertEquals(expected.getSource(), actual.getSource());
+			Assert.assertEquals(expected.getDestination(), actual.getDestination());
+			Assert.assertEquals(expected.getSlack(), actual.getSlack(), 0);
+			Assert.assertEquals(expected.getMaxDataPath().size(), actual.getMaxDataPath().size());
+		}
+	}
+}
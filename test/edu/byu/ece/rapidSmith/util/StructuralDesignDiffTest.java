@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2010-2011 Brigham Young University
+ *
+ * This file is part of the BYU RapidSmith Tools.
+ *
+ * BYU RapidSmith Tools is free software: you may redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * BYU RapidSmith Tools is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * A copy of the GNU General Public License is included with the BYU
+ * RapidSmith Tools. It can be found at doc/gpl2.txt. You may also
+ * get a copy of the license at <http://www.gnu.org/licenses/>.
+ *
+ */
+package edu.byu.ece.rapidSmith.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import edu.byu.ece.rapidSmith.design.Attribute;
+import edu.byu.ece.rapidSmith.design.Design;
+import edu.byu.ece.rapidSmith.design.Instance;
+import edu.byu.ece.rapidSmith.design.Net;
+import edu.byu.ece.rapidSmith.design.NetType;
+import edu.byu.ece.rapidSmith.design.PIP;
+import edu.byu.ece.rapidSmith.design.Pin;
+import edu.byu.ece.rapidSmith.device.Device;
+import edu.byu.ece.rapidSmith.device.PrimitiveSite;
+import edu.byu.ece.rapidSmith.device.PrimitiveType;
+import edu.byu.ece.rapidSmith.device.Tile;
+import edu.byu.ece.rapidSmith.device.WireEnumerator;
+import edu.byu.ece.rapidSmith.util.StructuralDesignDiff.Change;
+import edu.byu.ece.rapidSmith.util.StructuralDesignDiff.Difference;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StructuralDesignDiffTest {
+
+	private static final WireEnumerator WIRES = new WireEnumerator() {
+		@Override
+		public String getWireName(int wire) {
+			return "W" + wire;
+		}
+	};
+
+	/** Shared by all designs, so PIPs of different designs are equal */
+	private static final Device DEVICE = new Device() {{
+		partName = "xc5vlx20tff323";
+		setRows(1);
+		setColumns(2);
+		createTileArray();
+		for (int column = 0; column < 2; column++) {
+			Tile tile = getTile(0, column);
+			tile.setName("CLBLL_X" + column + "Y0");
+			tile.setDevice(this);
+			PrimitiveSite site = new PrimitiveSite();
+			site.setName("SLICE_X" + column + "Y0");
+			site.setTile(tile);
+			site.setType(PrimitiveType.SLICEL);
+			tile.setPrimitiveSites(new PrimitiveSite[]{site});
+		}
+	}
+
+		@Override
+		public WireEnumerator getWireEnumerator() {
+			return WIRES;
+		}
+	};
+
+	private static PrimitiveSite site(int column) {
+		return DEVICE.getTile(0, column).getPrimitiveSites()[0];
+	}
+
+	private static PIP pip(int start, int end) {
+		return new PIP(DEVICE.getTile(0, 0), start, end);
+	}
+
+	private static Instance instance(Design design, String name, int column) {
+		Instance inst = new Instance(name, PrimitiveType.SLICEL);
+		design.addInstance(inst);
+		if (column >= 0) {
+			inst.place(site(column));
+		}
+		return inst;
+	}
+
+	private static Net net(Design design, String name, String... pins) {
+		Net net = new Net(name, NetType.WIRE);
+		for (int p = 0; p < pins.length; p++) {
+			Instance inst = design.getInstance(pins[p]);
+			Pin pin = new Pin(p == 0, p == 0 ? "AQ" : "A1", inst);
+			inst.addPin(pin);
+			net.addPin(pin);
+		}
+		design.addNet(net);
+		return net;
+	}
+
+	/**
+	 * Instances a, b and c and nets n1 (a to b, two PIPs), n2 (a to c) and n3 (b to a).
+	 */
+	private static Design original() {
+		Design design = new Design();
+		design.setName("top");
+		design.setDevice(DEVICE);
+		Instance a = instance(design, "a", 0);
+		a.addAttribute("A6LUT", "a/lut", "#LUT:O6=A1");
+		a.addAttribute("AFF", "a/ff", "#FF");
+		Instance b = instance(design, "b", 1);
+		b.addAttribute("AFF", "b/ff", "#FF");
+		instance(design, "c", -1);
+		Net n1 = net(design, "n1", "a", "b");
+		n1.addPIP(pip(1, 2));
+		n1.addPIP(pip(2, 3));
+		net(design, "n2", "a", "c");
+		net(design, "n3", "b", "a").addAttribute("_MAX_DELAY", "", "2");
+		return design;
+	}
+
+	private static List<String> details(StructuralDesignDiff diff, int index) {
+		return diff.getDifferences().get(index).getDetails();
+	}
+
+	@Test
+	public void sameContentIsIdentical() {
+		StructuralDesignDiff diff = StructuralDesignDiff.compare(original(), original());
+		Assert.assertTrue(diff.isIdentical());
+
+		// Attributes, pins and PIPs in a different order
+		Design reordered = new Design();
+		reordered.setName("top");
+		reordered.setDevice(DEVICE);
+		instance(reordered, "c", -1);
+		Instance b = instance(reordered, "b", 1);
+		b.addAttribute("AFF", "b/ff", "#FF");
+		Instance a = instance(reordered, "a", 0);
+		a.addAttribute("AFF", "a/ff", "#FF");
+		a.addAttribute("A6LUT", "a/lut", "#LUT:O6=A1");
+		net(reordered, "n3", "b", "a").addAttribute("_MAX_DELAY", "", "2");
+		net(reordered, "n2", "a", "c");
+		Net n1 = net(reordered, "n1", "a", "b");
+		n1.addPIP(pip(2, 3));
+		n1.addPIP(pip(1, 2));
+		Assert.assertTrue(StructuralDesignDiff.compare(original(), reordered).isIdentical());
+		Assert.assertEquals(StructuralDesignDiff.hash(original().getNet("n1")), StructuralDesignDiff.hash(n1));
+	}
+
+	@Test
+	public void addedRemovedAndChangedElements() {
+		Design changed = original();
+		// b is moved and its attribute changed, c removed and d added
+		Instance b = changed.getInstance("b");
+		b.place(site(0));
+		b.getAttribute("AFF").setValue("#LATCH");
+		changed.removeInstance("c");
+		instance(changed, "d", -1);
+		// n1 loses a PIP and gets a new one, n2 is removed, n4 added
+		Net n1 = changed.getNet("n1");
+		n1.getPIPs().remove(pip(2, 3));
+		n1.addPIP(pip(3, 4));
+		changed.removeNet("n2");
+		net(changed, "n4", "d", "b");
+		changed.setName("top2");
+
+		StructuralDesignDiff diff = StructuralDesignDiff.compare(original(), changed);
+		Assert.assertFalse(diff.isIdentical());
+		List<String> found = new ArrayList<>();
+		for (Difference d : diff.getDifferences()) {
+			found.add(d.toString());
+		}
+		Assert.assertEquals(Arrays.asList(
+				"CHANGED design name",
+				"CHANGED instance b",
+				"REMOVED instance c",
+				"ADDED instance d",
+				"CHANGED net n1",
+				"REMOVED net n2",
+				"ADDED net n4"), found);
+
+		Assert.assertEquals(Arrays.asList("- top", "+ top2"), details(diff, 0));
+		Assert.assertEquals(Arrays.asList(
+				"- placed SLICE_X1Y0",
+				"+ placed SLICE_X0Y0",
+				"- cfg " + new Attribute("AFF", "b/ff", "#FF"),
+				"+ cfg " + new Attribute("AFF", "b/ff", "#LATCH")), details(diff, 1));
+		Assert.assertEquals(Collections.emptyList(), details(diff, 2));
+		Assert.assertEquals(Collections.emptyList(), details(diff, 3));
+		Assert.assertEquals(Arrays.asList(
+				"- " + pip(2, 3).toString(WIRES),
+				"+ " + pip(3, 4).toString(WIRES)), details(diff, 4));
+		Assert.assertEquals(Change.CHANGED, diff.getDifferences().get(4).getChange());
+		Assert.assertEquals("net", diff.getDifferences().get(4).getElement());
+		Assert.assertEquals("n1", diff.getDifferences().get(4).getName());
+	}
+
+	@Test
+	public void repeatedElementsAreDifferences() {
+		// A PIP and a pin that are listed twice change the hash, the details name them
+		Design changed = original();
+		changed.getNet("n1").addPIP(pip(1, 2));
+		Net n2 = changed.getNet("n2");
+		Pin repeated = new Pin(false, "A1", changed.getInstance("c"));
+		n2.addPin(repeated);
+		changed.getNet("n3").addAttribute("_MAX_DELAY", "", "2");
+
+		StructuralDesignDiff diff = StructuralDesignDiff.compare(original(), changed);
+		List<String> found = new ArrayList<>();
+		for (Difference d : diff.getDifferences()) {
+			found.add(d.toString());
+		}
+		Assert.assertEquals(Arrays.asList("CHANGED net n1", "CHANGED net n2", "CHANGED net n3"), found);
+		Assert.assertEquals(Arrays.asList("+ " + pip(1, 2).toString(WIRES)), details(diff, 0));
+		Assert.assertEquals(Arrays.asList("+ inpin \"c\" A1"), details(diff, 1));
+		Assert.assertEquals(Arrays.asList("+ cfg " + new Attribute("_MAX_DELAY", "", "2")), details(diff, 2));
+		for (Difference d : diff.getDifferences()) {
+			Assert.assertFalse(d.getName(), d.getDetails().isEmpty());
+		}
+
+		// Removing the repeated elements again makes the designs identical
+		changed.getNet("n1").getPIPs().remove(2);
+		n2.getPins().remove(repeated);
+		changed.getNet("n3").getAttributes().remove(1);
+		Assert.assertTrue(StructuralDesignDiff.compare(original(), changed).isIdentical());
+	}
+}